@@ -371,12 +371,16 @@ public class RundeckAPICentralDispatcher implements CentralDispatcher {
                 final String id = node1.selectSingleNode("@id").getStringValue();
                 final Node jobname = node1.selectSingleNode("job/name");
                 final Node desc = node1.selectSingleNode("description");
-                final String name;
+                final Node status = node1.selectSingleNode("@status");
+                String name;
                 if (null != jobname) {
                     name = jobname.getStringValue();
                 } else {
                     name = desc.getStringValue();
                 }
+                if (null != status && "queued".equals(status.getStringValue())) {
+                    name += " (queued)";
+                }
                 String url = node1.selectSingleNode("@href").getStringValue();
                 url = makeAbsoluteURL(url);
                 logger.info("\t" + ": " + name + " [" + id + "] <" + url + ">");
@@ -17,6 +17,7 @@
 package com.dtolabs.rundeck.core.authorization;
 
 import javax.security.auth.Subject;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -60,4 +61,16 @@ public interface Authorization {
      */
     Set<Decision> evaluate(Set<Map<String, String>> resources, Subject subject, Set<String> actions, 
             Set<Attribute> environment);
+
+    /**
+     * Make a multiple resource determination, returning whether each resource and action pair is authorized.
+     *
+     * @param resources
+     * @param subject
+     * @param actions
+     * @param environment
+     * @return decision matrix
+     */
+    DecisionMatrix evaluateMatrix(List<Map<String, String>> resources, Subject subject, List<String> actions,
+            Set<Attribute> environment);
 }
@@ -305,4 +305,9 @@ public abstract class BaseAclsAuthorization implements Authorization, LegacyAuth
             Set<String> action, Set<Attribute> environment) {
         return this.authorization.evaluate(resources, subject, action, environment);
     }
+
+    public DecisionMatrix evaluateMatrix(List<Map<String, String>> resources, Subject subject,
+            List<String> actions, Set<Attribute> environment) {
+        return this.authorization.evaluateMatrix(resources, subject, actions, environment);
+    }
 }
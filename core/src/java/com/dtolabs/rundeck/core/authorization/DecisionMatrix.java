@@ -0,0 +1,157 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* DecisionMatrix.java
+*
+*/
+package com.dtolabs.rundeck.core.authorization;
+
+import java.util.*;
+
+/**
+ * DecisionMatrix is the result of evaluating a list of resources against a list of actions, containing whether each
+ * resource and action pair is authorized.
+ */
+public class DecisionMatrix {
+    private final List<Map<String, String>> resources;
+    private final List<String> actions;
+    private final Map<Map<String, String>, Integer> resourceIndex;
+    private final Map<String, Integer> actionIndex;
+    private final BitSet authorized;
+
+    /**
+     * Create a matrix with no authorized pairs
+     *
+     * @param resources resources
+     * @param actions   actions
+     */
+    public DecisionMatrix(final Collection<Map<String, String>> resources, final Collection<String> actions) {
+        this.resources = Collections.unmodifiableList(new ArrayList<Map<String, String>>(resources));
+        this.actions = Collections.unmodifiableList(new ArrayList<String>(actions));
+        resourceIndex = new HashMap<Map<String, String>, Integer>();
+        for (int i = 0; i < this.resources.size(); i++) {
+            final Map<String, String> resource = this.resources.get(i);
+            if (!resourceIndex.containsKey(resource)) {
+                resourceIndex.put(new HashMap<String, String>(resource), i);
+            }
+        }
+        actionIndex = new HashMap<String, Integer>();
+        for (int i = 0; i < this.actions.size(); i++) {
+            if (!actionIndex.containsKey(this.actions.get(i))) {
+                actionIndex.put(this.actions.get(i), i);
+            }
+        }
+        authorized = new BitSet(this.resources.size() * this.actions.size());
+    }
+
+    public List<Map<String, String>> getResources() {
+        return resources;
+    }
+
+    public List<String> getActions() {
+        return actions;
+    }
+
+    /**
+     * Return the index of the resource, or -1 if it is not in the matrix
+     *
+     * @param resource resource
+     *
+     * @return index
+     */
+    public int indexOfResource(final Map<String, String> resource) {
+        final Integer index = resourceIndex.get(resource);
+        return null != index ? index : -1;
+    }
+
+    /**
+     * Return the index of the action, or -1 if it is not in the matrix
+     *
+     * @param action action
+     *
+     * @return index
+     */
+    public int indexOfAction(final String action) {
+        final Integer index = actionIndex.get(action);
+        return null != index ? index : -1;
+    }
+
+    public void setAuthorized(final int resource, final int action, final boolean value) {
+        authorized.set(bit(resource, action), value);
+    }
+
+    public boolean isAuthorized(final int resource, final int action) {
+        return authorized.get(bit(resource, action));
+    }
+
+    /**
+     * Return true if the resource and action are in the matrix and authorized
+     *
+     * @param resource resource
+     * @param action   action
+     *
+     * @return true if authorized
+     */
+    public boolean isAuthorized(final Map<String, String> resource, final String action) {
+        final int r = indexOfResource(resource);
+        final int a = indexOfAction(action);
+        return r >= 0 && a >= 0 && isAuthorized(r, a);
+    }
+
+    /**
+     * Return the resources which are authorized for the action
+     *
+     * @param action action
+     *
+     * @return list of resources, in the order of the matrix
+     */
+    public List<Map<String, String>> getAuthorizedResources(final String action) {
+        final ArrayList<Map<String, String>> list = new ArrayList<Map<String, String>>();
+        final int a = indexOfAction(action);
+        if (a >= 0) {
+            for (int r = 0; r < resources.size(); r++) {
+                if (isAuthorized(r, a)) {
+                    list.add(resources.get(r));
+                }
+            }
+        }
+        return list;
+    }
+
+    /**
+     * @return the number of authorized resource and action pairs
+     */
+    public int countAuthorized() {
+        return authorized.cardinality();
+    }
+
+    private int bit(final int resource, final int action) {
+        if (resource < 0 || resource >= resources.size() || action < 0 || action >= actions.size()) {
+            throw new IndexOutOfBoundsException("resource: " + resource + ", action: " + action);
+        }
+        return resource * actions.size() + action;
+    }
+
+    @Override
+    public String toString() {
+        return "DecisionMatrix{" +
+               "resources=" + resources.size() +
+               ", actions=" + actions +
+               ", authorized=" + countAuthorized() +
+               '}';
+    }
+}
@@ -23,6 +23,7 @@ import javax.security.auth.Subject;
 import java.io.File;
 import java.io.PrintStream;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -178,4 +179,15 @@ public class NoAuthorization implements Authorization, LegacyAuthorization {
         }
         return decisions;
     }
+
+    public DecisionMatrix evaluateMatrix(final List<Map<String, String>> resources, final Subject subject,
+            final List<String> actions, final Set<Attribute> environment) {
+        final DecisionMatrix matrix = new DecisionMatrix(resources, actions);
+        for (int r = 0; r < matrix.getResources().size(); r++) {
+            for (int a = 0; a < matrix.getActions().size(); a++) {
+                matrix.setAuthorized(r, a, true);
+            }
+        }
+        return matrix;
+    }
 }
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* DecisionCache.java
+*
+*/
+package com.dtolabs.rundeck.core.authorization.providers;
+
+import com.dtolabs.rundeck.core.authentication.Group;
+import com.dtolabs.rundeck.core.authentication.LdapGroup;
+import com.dtolabs.rundeck.core.authentication.Username;
+import com.dtolabs.rundeck.core.authorization.Attribute;
+import com.dtolabs.rundeck.core.authorization.Decision;
+
+import javax.naming.InvalidNameException;
+import javax.naming.ldap.LdapName;
+import javax.security.auth.Subject;
+import java.util.*;
+
+/**
+ * DecisionCache is a bounded LRU cache of authorization decisions, keyed by the roles of the subject, the resource,
+ * the action and the environment. All entries are discarded when the generation of the policies changes.
+ */
+public class DecisionCache {
+    public static final int DEFAULT_MAX_SIZE = 4096;
+
+    private final LinkedHashMap<Key, Decision> entries;
+    private long generation = -1;
+    private long hitCount;
+    private long missCount;
+
+    public DecisionCache() {
+        this(DEFAULT_MAX_SIZE);
+    }
+
+    public DecisionCache(final int maxSize) {
+        if (maxSize < 1) {
+            throw new IllegalArgumentException("maxSize must be positive: " + maxSize);
+        }
+        entries = new LinkedHashMap<Key, Decision>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<Key, Decision> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Return the cached decision, or null if it is not cached.
+     *
+     * @param key        the key
+     * @param generation current generation of the policies, if it differs from the generation of the cached entries
+     *                   they are discarded
+     *
+     * @return the decision or null
+     */
+    public synchronized Decision get(final Key key, final long generation) {
+        if (generation != this.generation) {
+            entries.clear();
+            this.generation = generation;
+        }
+        final Decision decision = entries.get(key);
+        if (null != decision) {
+            hitCount++;
+        } else {
+            missCount++;
+        }
+        return decision;
+    }
+
+    /**
+     * Cache a decision, unless the generation is not the current generation.
+     *
+     * @param key        the key
+     * @param generation the generation of the policies used to make the decision
+     * @param decision   the decision
+     */
+    public synchronized void put(final Key key, final long generation, final Decision decision) {
+        if (generation == this.generation) {
+            entries.put(key, decision);
+        }
+    }
+
+    /**
+     * Remove all entries
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * Return the set of names of the username and group principals of the subject which are used to match policies.
+     * LDAP group names are normalized in the same way as the policy matching does, and invalid LDAP names are
+     * ignored.
+     *
+     * @param subject the subject
+     *
+     * @return set of role names, prefixed by the principal type
+     */
+    public static Set<String> roles(final Subject subject) {
+        final HashSet<String> roles = new HashSet<String>();
+        for (final Username username : subject.getPrincipals(Username.class)) {
+            roles.add("user:" + username.getName());
+        }
+        for (final Group group : subject.getPrincipals(Group.class)) {
+            if (group instanceof LdapGroup) {
+                try {
+                    roles.add("ldap:" + new LdapName(group.getName()).toString());
+                } catch (InvalidNameException e) {
+                    //ignored by policy matching
+                }
+            } else {
+                roles.add("group:" + group.getName());
+            }
+        }
+        return roles;
+    }
+
+    /**
+     * Return the environment attributes as strings
+     *
+     * @param environment environment
+     *
+     * @return set of attribute strings
+     */
+    static Set<String> environment(final Set<Attribute> environment) {
+        final HashSet<String> env = new HashSet<String>();
+        if (null != environment) {
+            for (final Attribute attribute : environment) {
+                env.add(attribute.toString());
+            }
+        }
+        return env;
+    }
+
+    /**
+     * Key for a decision, copies the input so that later changes to it do not affect the key.
+     */
+    public static class Key {
+        private final Set<String> roles;
+        private final Map<String, String> resource;
+        private final String action;
+        private final Set<String> environment;
+        private final int hash;
+
+        public Key(final Subject subject, final Map<String, String> resource, final String action,
+                   final Set<Attribute> environment) {
+            this(roles(subject), resource, action, environment(environment));
+        }
+
+        Key(final Set<String> roles, final Map<String, String> resource, final String action,
+            final Set<String> environment) {
+            this.roles = roles;
+            this.resource = new HashMap<String, String>(resource);
+            this.action = action;
+            this.environment = environment;
+            int result = roles.hashCode();
+            result = 31 * result + this.resource.hashCode();
+            result = 31 * result + action.hashCode();
+            result = 31 * result + environment.hashCode();
+            hash = result;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return hash == key.hash && action.equals(key.action) && resource.equals(key.resource)
+                   && roles.equals(key.roles) && environment.equals(key.environment);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
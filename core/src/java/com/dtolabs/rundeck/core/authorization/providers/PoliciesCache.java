@@ -33,11 +33,7 @@ import javax.xml.parsers.ParserConfigurationException;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
-import java.util.Set;
+import java.util.*;
 
 /**
  * PoliciesCache retains PolicyDocument objects for inserted Files, and reloads them if file modification time changes.
@@ -59,6 +55,10 @@ public class PoliciesCache implements Iterable<PolicyCollection> {
     private HashMap<File, Long> expiry = new HashMap<File, Long>();
     private DocumentBuilder builder;
     private File rootDir;
+    private long generation;
+    private long checkInterval;
+    private long lastCheck;
+    private List<File> files = Collections.emptyList();
 
     public PoliciesCache(File rootDir) throws ParserConfigurationException {
         this.rootDir = rootDir;
@@ -97,17 +97,28 @@ public class PoliciesCache implements Iterable<PolicyCollection> {
     public synchronized PolicyCollection getDocument(final File file) throws PoliciesParseException {
         if(!file.exists()) {
             expiry.remove(file);
-            cache.remove(file);
+            if (null != cache.remove(file)) {
+                generation++;
+            }
             return null;
         }
         final long lastmod = file.lastModified();
         final Long cachetime = expiry.get(file);
         final PolicyCollection entry;
         if (null == cachetime || lastmod > cachetime) {
-            entry = createEntry(file);
+            try {
+                entry = createEntry(file);
+            } catch (PoliciesParseException e) {
+                if (null != cache.remove(file)) {
+                    expiry.remove(file);
+                    generation++;
+                }
+                throw e;
+            }
             if (null != entry) {
                 expiry.put(file, lastmod);
                 cache.put(file, entry);
+                generation++;
             }
         } else {
             entry = cache.get(file);
@@ -115,6 +126,73 @@ public class PoliciesCache implements Iterable<PolicyCollection> {
         return entry;
     }
 
+    /**
+     * Set the minimum time between directory scans performed by {@link #refresh()}
+     *
+     * @param checkInterval interval in milliseconds, 0 to scan on every call
+     */
+    public synchronized void setCheckInterval(final long checkInterval) {
+        this.checkInterval = checkInterval;
+    }
+
+    /**
+     * Return the generation of the cache, which changes whenever a policy file is loaded, reloaded or removed.
+     *
+     * @return generation
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Scan the directory for added, modified or removed policy files, unless the last scan was within the check
+     * interval, and return the resulting generation.
+     *
+     * @return generation
+     */
+    public synchronized long refresh() {
+        final long now = System.currentTimeMillis();
+        if (lastCheck > 0 && now - lastCheck < checkInterval) {
+            return generation;
+        }
+        lastCheck = now;
+        final File[] list = listDirFiles();
+        final Set<File> found = new HashSet<File>();
+        files = null != list ? Arrays.asList(list) : Collections.<File>emptyList();
+        if (null != list) {
+            for (final File file : list) {
+                found.add(file);
+                try {
+                    getDocument(file);
+                } catch (PoliciesParseException e) {
+                    logger.warn("Unable to parse aclpolicy: " + file + ". Reason " + e.getMessage());
+                }
+            }
+        }
+        if (cache.keySet().retainAll(found)) {
+            expiry.keySet().retainAll(found);
+            generation++;
+        }
+        return generation;
+    }
+
+    /**
+     * Return the loaded documents in the order of the files found by the last {@link #refresh()}, without checking
+     * the files for changes.
+     *
+     * @return list of documents
+     */
+    public synchronized List<PolicyCollection> listDocuments() {
+        final ArrayList<PolicyCollection> list = new ArrayList<PolicyCollection>();
+        for (final File file : files) {
+            final PolicyCollection document = cache.get(file);
+            if (null != document) {
+                list.add(document);
+            }
+        }
+        return list;
+    }
+
     public Iterator<PolicyCollection> iterator() {
         return new cacheIterator(Arrays.asList(listDirFiles()).iterator());
     }
@@ -48,8 +48,8 @@ import java.util.*;
 public class PoliciesDocument implements PolicyCollection {
     private Document document;
     private File file;
-    private ArrayList<String> groupNames;
-    private ArrayList<Policy> policies;
+    private volatile ArrayList<String> groupNames;
+    private volatile ArrayList<Policy> policies;
     private long count = Long.MIN_VALUE;
     private static final XPath xpath = XPathFactory.newInstance().newXPath();
 
@@ -106,7 +106,7 @@ public class PoliciesDocument implements PolicyCollection {
         if (null != groupNames) {
             return groupNames;
         }
-        groupNames = new ArrayList<String>();
+        final ArrayList<String> names = new ArrayList<String>();
         NodeList groups;
         try {
             groups = (NodeList) allGroups.evaluate(document, XPathConstants.NODESET);
@@ -118,8 +118,9 @@ public class PoliciesDocument implements PolicyCollection {
             if (result == null || result.length() <= 0) {
                 continue;
             }
-            groupNames.add(result);
+            names.add(result);
         }
+        groupNames = names;
         return groupNames;
     }
 
@@ -144,14 +145,16 @@ public class PoliciesDocument implements PolicyCollection {
         if (null != policies) {
             return policies;
         }
-        policies = new ArrayList<Policy>();
+        final ArrayList<Policy> list = new ArrayList<Policy>();
 
         NodeList policiesToEvaluate = (NodeList) allPolicies.evaluate(document, XPathConstants.NODESET);
         for (int i = 0 ; i < policiesToEvaluate.getLength() ; i++) {
 
             Node policy = policiesToEvaluate.item(i);
-            policies.add(new PolicyNode(policy));
+            list.add(new PolicyNode(policy));
         }
+        //assign when complete, the document may be shared by threads
+        policies = list;
         return policies;
     }
 
@@ -23,13 +23,12 @@ import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
 
 import javax.security.auth.Subject;
-import javax.xml.namespace.NamespaceContext;
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.xpath.*;
 import java.io.File;
 import java.io.IOException;
 import java.util.*;
 import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
 
 /**
  * Policies represent the policies as described in the policies file(s).
@@ -40,57 +39,26 @@ public class PoliciesXml {
     
     static final String NS_AD = "http://dtolabs.com/rundeck/activedirectory";
     static final String NS_LDAP = "http://dtolabs.com/rundeck/ldap";
-    private static final XPath xpath = XPathFactory.newInstance().newXPath();
     private final List<File> policyFiles = new ArrayList<File>();
 
-    private final XPathExpression count;
-    private final XPathExpression allPolicies;
-    private final XPathExpression byUserName;
-    private final XPathExpression byGroup;
-
-    private PoliciesCache cache;
+    private final PolicyRepository repository;
 
     
     public PoliciesXml(final PoliciesCache cache) {
-        this.cache = cache;
-        xpath.setNamespaceContext(new NamespaceContext() {
-
-            @SuppressWarnings("rawtypes")
-            public Iterator getPrefixes(String namespaceURI) { return null; }
-            public String getPrefix(String namespaceURI) { return null; }
-
-            public String getNamespaceURI(String prefix) {
-                if(prefix.equals("ldap")) {
-                    return NS_LDAP;
-                } else if(prefix.equals("ActiveDirectory")) {
-                    return NS_AD;
-                } else {
-                    return ""; // 1.6 = XMLConstants.NULL_NS_URI;
-                }
-            }
-        });
+        this(new PolicyRepository(cache));
+    }
 
-        try {
-            this.count = xpath.compile("count(//policy)");
-            this.allPolicies = xpath.compile("//policy");
-            this.byUserName = xpath.compile("by/user/@username");
-            this.byGroup = xpath.compile("by/group/@name | by/group/@ldap:name");
-        } catch (XPathExpressionException e) {
-            throw new IllegalArgumentException(e);
-        }
+    /**
+     * Create policies which are a view of the repository
+     *
+     * @param repository the repository
+     */
+    public PoliciesXml(final PolicyRepository repository) {
+        this.repository = repository;
     }
     
     public int count() {
-        int count = 0;
-        for(PolicyCollection f : cache) {
-
-            try {
-                count += f.countPolicies();
-            } catch (InvalidCollection e) {
-                // TODO squash
-            }
-        }
-        return count;
+        return getSnapshot().count();
     }
     
     /**
@@ -100,33 +68,105 @@ public class PoliciesXml {
      * @throws PoliciesParseException Thrown when there is a problem parsing a file.
      */
     public static PoliciesXml load(File rootPath) throws IOException, PoliciesParseException {
+        return load(rootPath, 0);
+    }
+
+    /**
+     * Load the policies contained in the root path, checking the files for changes at most once in the check
+     * interval.
+     *
+     * @param rootPath      directory
+     * @param checkInterval minimum time between checks for modified files in milliseconds
+     *
+     * @return policies
+     *
+     * @throws PoliciesParseException Thrown when there is a problem parsing a file.
+     */
+    public static PoliciesXml load(File rootPath, long checkInterval) throws IOException, PoliciesParseException {
+        return new PoliciesXml(new PolicyRepository(rootPath, checkInterval, DecisionCache.DEFAULT_MAX_SIZE));
+    }
+
+    /**
+     * Return the current snapshot of the policies from the repository
+     *
+     * @return snapshot
+     */
+    public PolicyRepository.Snapshot getSnapshot() {
+        return repository.getSnapshot();
+    }
+
+    public PolicyRepository getRepository() {
+        return repository;
+    }
+
+    /**
+     * Return the generation of the current snapshot of the policies
+     *
+     * @return generation
+     */
+    public long refresh() {
+        return getSnapshot().getGeneration();
+    }
 
-        PoliciesXml p = null;
+    /**
+     * Return the contexts of the current snapshot which match the subject.
+     */
+    public List<AclContext> narrowContext(Subject subject, Set<Attribute> environment) {
+        return getSnapshot().narrowContext(subject, environment);
+    }
+
+    final static private XPathExpression allCommands;
+
+    static {
         try {
-            p = new PoliciesXml(new PoliciesCache(rootPath));
-        } catch (ParserConfigurationException e) {
-            throw new PoliciesParseException(e);
+            allCommands = XPathFactory.newInstance().newXPath().compile("descendant-or-self::command");
+        } catch (XPathExpressionException e) {
+            throw new IllegalArgumentException(e);
         }
-        
-        return p;
     }
 
-    public List<AclContext> narrowContext(Subject subject, Set<Attribute> environment) {
-        
-        List<AclContext> matchedContexts = new ArrayList<AclContext>();
-        for(final PolicyCollection f : cache) {
-            try {
-                matchedContexts.addAll(f.matchedContexts(subject, environment));
-            } catch (InvalidCollection e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            } 
+    /**
+     * A command element of a policy, with the actions and attribute patterns compiled.
+     */
+    static class Command {
+        final Map<String, String> attributes = new HashMap<String, String>();
+        final Map<String, Pattern> patterns = new HashMap<String, Pattern>();
+        final String actionsValue;
+        final Set<String> actions;
+        final String name;
+
+        Command(final Node command, final String name) {
+            this.name = name;
+            final NamedNodeMap attrs = command.getAttributes();
+            for (int i = 0; i < attrs.getLength(); i++) {
+                final Node item = attrs.item(i);
+                attributes.put(item.getNodeName(), item.getNodeValue());
+                try {
+                    patterns.put(item.getNodeName(), Pattern.compile(item.getNodeValue()));
+                } catch (PatternSyntaxException e) {
+                    //not a valid pattern, it will fail when matched
+                }
+            }
+            actionsValue = attributes.get("actions");
+            actions = null != actionsValue ? new HashSet<String>(Arrays.asList(actionsValue.split(","))) : null;
+        }
+
+        /**
+         * @return true if the command declares all of the resource properties
+         */
+        boolean declares(final Set<String> keys) {
+            return attributes.keySet().containsAll(keys);
+        }
+
+        boolean matches(final String key, final String input) {
+            final Pattern pattern = patterns.get(key);
+            if (null == pattern) {
+                return Pattern.matches(attributes.get(key), input);
+            }
+            return pattern.matcher(input).matches();
         }
-        return matchedContexts;
     }
-    
-    final static private Map<String, XPathExpression> commandFilterCache = new HashMap<String, XPathExpression>();
-    
+
     public static class Context implements AclContext {
         public Context(Node policy) {
             super();
@@ -134,7 +174,30 @@ public class PoliciesXml {
         }
 
         final private Node policy;
-        
+        private volatile List<Command> commands;
+
+        /**
+         * Return the command elements of the policy, compiling them on first use.
+         */
+        private List<Command> getCommands() throws XPathExpressionException {
+            if (null == commands) {
+                synchronized (this) {
+                    if (null == commands) {
+                        final NodeList nodes;
+                        synchronized (allCommands) {
+                            nodes = (NodeList) allCommands.evaluate(policy, XPathConstants.NODESET);
+                        }
+                        final List<Command> list = new ArrayList<Command>(nodes.getLength());
+                        for (int i = 0; i < nodes.getLength(); i++) {
+                            final Node command = nodes.item(i);
+                            list.add(new Command(command, generateJobName(policy, command)));
+                        }
+                        commands = list;
+                    }
+                }
+            }
+            return commands;
+        }
 
         /* (non-Javadoc)
          * @see com.dtolabs.rundeck.core.authorization.providers.AclContext#includes(java.util.Map, java.lang.String)
@@ -145,95 +208,65 @@ public class PoliciesXml {
             List<ContextEvaluation> evaluations = new ArrayList<ContextEvaluation>();
             
             try {
-                StringBuilder filter = new StringBuilder();
-                Iterator<String> iter = resource.keySet().iterator();
-                while(iter.hasNext()) {
-                    
-                    String next = iter.next();
-                    
-                    if(next != null && next.length() > 0) {
-                        filter.append('@').append(next);
-                    }
-                    
-                    if(iter.hasNext()) {
-                        filter.append(" and ");
-                    }
-                }
-                
-                String filterString = filter.toString();
-                if(!commandFilterCache.containsKey(filterString)) {
-                    commandFilterCache.put(filterString, xpath.compile("descendant-or-self::command["+filterString+"]"));
+                if (resource.isEmpty() || resource.containsKey("")) {
+                    throw new XPathExpressionException("Invalid command filter for resource: " + resource.keySet());
                 }
-                
-                NodeList commands = (NodeList) commandFilterCache.get(filterString).evaluate(policy, XPathConstants.NODESET);
-                
-                for(int i = 0; i < commands.getLength(); i++) {
-                    
-                    Node command = commands.item(i);                    
-                    NamedNodeMap attributes = command.getAttributes();
+                for (final Command command : getCommands()) {
+                    // only commands which declare all of the resource properties are considered
+                    if (!command.declares(resource.keySet())) {
+                        continue;
+                    }
                     
                     // check actions.
-                    Node actionAttr = attributes.getNamedItem("actions");
-                    if(actionAttr == null) {
+                    if(command.actionsValue == null) {
                         // assume no actions can be taken.
-                        evaluations.add(new ContextEvaluation(Code.REJECTED_NO_ACTIONS_DECLARED, 
-                                generateJobName(this.policy, command)));
+                        evaluations.add(new ContextEvaluation(Code.REJECTED_NO_ACTIONS_DECLARED, command.name));
                         continue;
                     }
                     
-                    String actionsNodeValue = actionAttr.getNodeValue();
-                    if(actionsNodeValue.length() <= 0) {
-                        evaluations.add(new ContextEvaluation(Code.REJECTED_ACTIONS_DECLARED_EMPTY, 
-                                generateJobName(this.policy, command)));
+                    if(command.actionsValue.length() <= 0) {
+                        evaluations.add(new ContextEvaluation(Code.REJECTED_ACTIONS_DECLARED_EMPTY, command.name));
                         continue;
                     }
                     
                     // special case.  '*' matches anything.
-                    if(!"*".equals(actionsNodeValue)) {
-                        List<String> actions = Arrays.asList(actionsNodeValue.split(","));
-                        if(!actions.contains(action)) {
-                            evaluations.add(new ContextEvaluation(Code.REJECTED_NO_ACTIONS_MATCHED, 
-                                    generateJobName(this.policy, command)));
+                    if(!"*".equals(command.actionsValue)) {
+                        if(!command.actions.contains(action)) {
+                            evaluations.add(new ContextEvaluation(Code.REJECTED_NO_ACTIONS_MATCHED, command.name));
                             continue;
                         }
                     }
                     
                     // all must match
                     boolean matched = true;
-                    Iterator<String> resourceKeyIter = resource.keySet().iterator();
-                    while(matched && resourceKeyIter.hasNext()) {
-                        String key = resourceKeyIter.next();
-                        Node attr = attributes.getNamedItem(key);
-                        
-                        // if resource matches command attribute, either literally or via regex on command, continue.
-                        String matchField = attr.getNodeValue();
+                    for (final Map.Entry<String, String> entry : resource.entrySet()) {
+                        final String key = entry.getKey();
                         
                         // special case.
-                        if(matchField.equals("*")) {
+                        if(command.attributes.get(key).equals("*")) {
                             continue;
                         }
                          
-                        String input = resource.get(key);
+                        String input = entry.getValue();
                         if(input == null || input.length() <= 0) {
                             evaluations.add(
-                                    new ContextEvaluation(Code.REJECTED_NO_RESOURCE_PROPERTY_PROVIDED, 
-                                            generateJobName(policy, command)));
+                                    new ContextEvaluation(Code.REJECTED_NO_RESOURCE_PROPERTY_PROVIDED, command.name));
                             matched = false;
                             break;
                         }
                         
-                        if(!Pattern.matches(matchField, input)) {
+                        // if resource matches command attribute, either literally or via regex on command, continue.
+                        if(!command.matches(key, input)) {
                             matched = false;
                             evaluations.add(
-                                    new ContextEvaluation(Code.REJECTED_RESOURCE_PROPERTY_NOT_MATCHED, 
-                                            generateJobName(policy, command)));
+                                    new ContextEvaluation(Code.REJECTED_RESOURCE_PROPERTY_NOT_MATCHED, command.name));
                             break;
                         }
                                
                     }
                     
                     if(matched) {
-                        evaluations.add(new ContextEvaluation(Code.GRANTED_ACTIONS_AND_COMMANDS_MATCHED, generateJobName(policy, command)));
+                        evaluations.add(new ContextEvaluation(Code.GRANTED_ACTIONS_AND_COMMANDS_MATCHED, command.name));
                         return new ContextDecision(Code.GRANTED_ACTIONS_AND_COMMANDS_MATCHED, true, evaluations);
                     }
                 }
@@ -322,17 +355,6 @@ public class PoliciesXml {
      */
     @Deprecated
     public List<String> listAllRoles() {
-        List<String> results = new ArrayList<String>();
-        for(PolicyCollection f: cache) {
-            try {
-                results.addAll(f.groupNames());
-                
-            } catch (InvalidCollection e) {
-                // TODO Auto-generated catch block
-                e.printStackTrace();
-            } 
-        }
-
-        return results;
+        return new ArrayList<String>(getSnapshot().listAllRoles());
     }
 }
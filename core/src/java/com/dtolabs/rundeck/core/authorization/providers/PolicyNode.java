@@ -43,6 +43,7 @@ public class PolicyNode implements Policy {
     Node policyNode;
     HashSet<String> usernames;
     Set<Object> groups;
+    private PoliciesXml.Context context;
 
     public PolicyNode(Node policyNode) throws XPathExpressionException {
         this.policyNode = policyNode;
@@ -93,8 +94,14 @@ public class PolicyNode implements Policy {
         }
     }
 
-    public PoliciesXml.Context getContext() {
-        return new PoliciesXml.Context(policyNode);
+    /**
+     * Return the context for the policy, the same instance is returned so that it is compiled only once
+     */
+    public synchronized PoliciesXml.Context getContext() {
+        if (null == context) {
+            context = new PoliciesXml.Context(policyNode);
+        }
+        return context;
     }
 
     public Set<Object> getGroups() {
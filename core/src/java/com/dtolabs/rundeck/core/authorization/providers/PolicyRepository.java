@@ -0,0 +1,273 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* PolicyRepository.java
+*
+*/
+package com.dtolabs.rundeck.core.authorization.providers;
+
+import com.dtolabs.rundeck.core.authorization.Attribute;
+import org.apache.log4j.Logger;
+
+import javax.security.auth.Subject;
+import javax.xml.parsers.ParserConfigurationException;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * PolicyRepository holds the policies loaded from a directory of .aclpolicy files as an immutable {@link Snapshot},
+ * which is replaced when the files change. A shared repository for a directory is returned by {@link
+ * #getInstance(java.io.File)}, its directory is scanned for modified files in the background, so that authorization
+ * objects for the directory are only views of the current snapshot. A repository created with the constructor
+ * instead checks for modified files when the snapshot is requested, at most once per check interval.
+ */
+public class PolicyRepository {
+    static Logger logger = Logger.getLogger(PolicyRepository.class.getName());
+    /**
+     * Time between background scans of the directory of a shared repository, in milliseconds
+     */
+    public static final long DEFAULT_CHECK_INTERVAL = 1000;
+
+    private static final ConcurrentHashMap<File, PolicyRepository> instances =
+        new ConcurrentHashMap<File, PolicyRepository>();
+    private static ScheduledExecutorService watcher;
+
+    private final File directory;
+    private final PoliciesCache cache;
+    private final DecisionCache decisionCache;
+    private final boolean watched;
+    private volatile Snapshot snapshot;
+
+    /**
+     * Create a repository which checks for modified files when the snapshot is requested
+     *
+     * @param directory     directory of .aclpolicy files
+     * @param checkInterval minimum time between checks for modified files in milliseconds
+     * @param cacheSize     maximum size of the decision cache
+     *
+     * @throws PoliciesParseException if the XML parser cannot be configured
+     */
+    public PolicyRepository(final File directory, final long checkInterval, final int cacheSize) throws
+        PoliciesParseException {
+        this(directory, createCache(directory), checkInterval, cacheSize, false);
+    }
+
+    /**
+     * Create a repository for an existing cache, which checks for modified files whenever the snapshot is requested
+     *
+     * @param cache the cache
+     */
+    public PolicyRepository(final PoliciesCache cache) {
+        this(null, cache, 0, DecisionCache.DEFAULT_MAX_SIZE, false);
+    }
+
+    private PolicyRepository(final File directory, final PoliciesCache cache, final long checkInterval,
+                             final int cacheSize, final boolean watched) {
+        this.directory = directory;
+        this.cache = cache;
+        this.cache.setCheckInterval(checkInterval);
+        this.decisionCache = new DecisionCache(cacheSize);
+        this.watched = watched;
+        this.snapshot = new Snapshot(-1, Collections.<PolicyCollection>emptyList());
+    }
+
+    private static PoliciesCache createCache(final File directory) throws PoliciesParseException {
+        try {
+            return new PoliciesCache(directory);
+        } catch (ParserConfigurationException e) {
+            throw new PoliciesParseException(e);
+        }
+    }
+
+    /**
+     * Return the shared repository for the directory, loading it if necessary. The directory of a shared repository
+     * is scanned for modified files every {@link #DEFAULT_CHECK_INTERVAL} milliseconds in a background thread.
+     *
+     * @param directory directory of .aclpolicy files
+     *
+     * @return the repository
+     *
+     * @throws PoliciesParseException if the XML parser cannot be configured
+     */
+    public static PolicyRepository getInstance(final File directory) throws PoliciesParseException {
+        File key;
+        try {
+            key = directory.getCanonicalFile();
+        } catch (IOException e) {
+            key = directory.getAbsoluteFile();
+        }
+        final PolicyRepository existing = instances.get(key);
+        if (null != existing) {
+            return existing;
+        }
+        synchronized (instances) {
+            final PolicyRepository found = instances.get(key);
+            if (null != found) {
+                return found;
+            }
+            final PolicyRepository repository = new PolicyRepository(directory, createCache(directory), 0,
+                DecisionCache.DEFAULT_MAX_SIZE, true);
+            repository.refresh();
+            instances.put(key, repository);
+            watch(repository);
+            return repository;
+        }
+    }
+
+    private static synchronized void watch(final PolicyRepository repository) {
+        if (null == watcher) {
+            watcher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(final Runnable runnable) {
+                    final Thread thread = new Thread(runnable, "PolicyRepository watcher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        watcher.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                try {
+                    repository.refresh();
+                } catch (Throwable t) {
+                    logger.error("Unable to refresh aclpolicy files in " + repository.getDirectory() + ": " + t
+                        .getMessage(), t);
+                }
+            }
+        }, DEFAULT_CHECK_INTERVAL, DEFAULT_CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Check the files for changes, and replace the snapshot if they have changed.
+     *
+     * @return the current snapshot
+     */
+    public synchronized Snapshot refresh() {
+        final long generation = cache.refresh();
+        if (generation != snapshot.getGeneration()) {
+            final long start = System.currentTimeMillis();
+            snapshot = new Snapshot(generation, cache.listDocuments());
+            logger.debug("Loaded aclpolicy files in " + directory + " generation " + generation + " in " + (
+                System.currentTimeMillis() - start) + "ms");
+        }
+        return snapshot;
+    }
+
+    /**
+     * Return the current snapshot. If the repository is not shared, the files are first checked for changes.
+     *
+     * @return the snapshot
+     */
+    public Snapshot getSnapshot() {
+        if (watched) {
+            return snapshot;
+        }
+        return refresh();
+    }
+
+    /**
+     * @return the decision cache shared by authorization objects using this repository
+     */
+    public DecisionCache getDecisionCache() {
+        return decisionCache;
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * An immutable set of loaded policy collections. Contexts matching a set of roles are cached within the snapshot.
+     */
+    public static class Snapshot {
+        private final long generation;
+        private final List<PolicyCollection> collections;
+        private final ConcurrentHashMap<Set<String>, List<AclContext>> contextsByRoles =
+            new ConcurrentHashMap<Set<String>, List<AclContext>>();
+        private List<String> roles;
+
+        Snapshot(final long generation, final List<PolicyCollection> collections) {
+            this.generation = generation;
+            this.collections = Collections.unmodifiableList(new ArrayList<PolicyCollection>(collections));
+        }
+
+        public long getGeneration() {
+            return generation;
+        }
+
+        public List<PolicyCollection> getCollections() {
+            return collections;
+        }
+
+        /**
+         * Return the contexts which match the subject. Policies are matched only by the username and group
+         * principals of the subject, so the result is cached for the set of roles.
+         */
+        public List<AclContext> narrowContext(final Subject subject, final Set<Attribute> environment) {
+            final Set<String> key = DecisionCache.roles(subject);
+            final List<AclContext> cached = contextsByRoles.get(key);
+            if (null != cached) {
+                return cached;
+            }
+            final List<AclContext> matchedContexts = new ArrayList<AclContext>();
+            for (final PolicyCollection f : collections) {
+                try {
+                    matchedContexts.addAll(f.matchedContexts(subject, environment));
+                } catch (InvalidCollection e) {
+                    logger.warn("Unable to match policies in " + f + ": " + e.getMessage(), e);
+                }
+            }
+            final List<AclContext> result = Collections.unmodifiableList(matchedContexts);
+            contextsByRoles.put(key, result);
+            return result;
+        }
+
+        /**
+         * @return the number of policies
+         */
+        public int count() {
+            int count = 0;
+            for (final PolicyCollection f : collections) {
+                try {
+                    count += f.countPolicies();
+                } catch (InvalidCollection e) {
+                    logger.warn("Unable to count policies in " + f + ": " + e.getMessage(), e);
+                }
+            }
+            return count;
+        }
+
+        /**
+         * @return the group names used by all policies
+         */
+        public synchronized List<String> listAllRoles() {
+            if (null == roles) {
+                final List<String> results = new ArrayList<String>();
+                for (final PolicyCollection f : collections) {
+                    try {
+                        results.addAll(f.groupNames());
+                    } catch (InvalidCollection e) {
+                        logger.warn("Unable to list roles in " + f + ": " + e.getMessage(), e);
+                    }
+                }
+                roles = Collections.unmodifiableList(results);
+            }
+            return roles;
+        }
+    }
+}
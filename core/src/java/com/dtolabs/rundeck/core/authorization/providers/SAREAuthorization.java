@@ -22,6 +22,7 @@ package com.dtolabs.rundeck.core.authorization.providers;
 import com.dtolabs.rundeck.core.authorization.Attribute;
 import com.dtolabs.rundeck.core.authorization.Authorization;
 import com.dtolabs.rundeck.core.authorization.Decision;
+import com.dtolabs.rundeck.core.authorization.DecisionMatrix;
 import com.dtolabs.rundeck.core.authorization.Explanation;
 import com.dtolabs.rundeck.core.authorization.Explanation.Code;
 import com.dtolabs.rundeck.core.authorization.providers.PoliciesXml.Context;
@@ -47,10 +48,12 @@ public class SAREAuthorization implements Authorization {
     
     private final PoliciesXml policies;
     private final File baseDirectory;
+    private final DecisionCache decisionCache;
     private long decisionsMade;
     
     /**
-     * Create an authorization object that uses understands the .aclpolicy files.
+     * Create an authorization object that uses understands the .aclpolicy files. The policies are shared with all
+     * authorization objects for the directory.
      * 
      * @param directory The directory to ready *.aclpolicy from.
      * 
@@ -58,8 +61,41 @@ public class SAREAuthorization implements Authorization {
      * @throws PoliciesParseException
      */
     public SAREAuthorization(File directory) throws IOException, PoliciesParseException {
-        policies = PoliciesXml.load(directory);
-        baseDirectory = directory;
+        this(PolicyRepository.getInstance(directory));
+    }
+
+    /**
+     * Create an authorization object that uses understands the .aclpolicy files, with policies which are not
+     * shared.
+     *
+     * @param directory     The directory to ready *.aclpolicy from.
+     * @param checkInterval minimum time between checks for modified policy files in milliseconds
+     * @param cacheSize     maximum number of decisions to cache
+     *
+     * @throws IOException
+     * @throws PoliciesParseException
+     */
+    public SAREAuthorization(File directory, long checkInterval, int cacheSize) throws IOException,
+        PoliciesParseException {
+        this(new PolicyRepository(directory, checkInterval, cacheSize));
+    }
+
+    /**
+     * Create an authorization object that is a view of the policy repository
+     *
+     * @param repository the repository
+     */
+    public SAREAuthorization(PolicyRepository repository) {
+        policies = new PoliciesXml(repository);
+        baseDirectory = repository.getDirectory();
+        decisionCache = repository.getDecisionCache();
+    }
+
+    /**
+     * @return the policy repository
+     */
+    public PolicyRepository getRepository() {
+        return policies.getRepository();
     }
     
     /**
@@ -73,18 +109,11 @@ public class SAREAuthorization implements Authorization {
     }
     
     /**
-     * 
-     * @param resource
-     * @param subject
-     * @param action
-     * @param environment
-     * @return decision
+     * Check the resource and subject
+     *
+     * @throws IllegalArgumentException if they are invalid
      */
-    private Decision internalEvaluate(Map<String, String> resource, Subject subject, String action, 
-            Set<Attribute> environment) {
-        
-        long start = System.currentTimeMillis();
-        
+    private static void validate(Map<String, String> resource, Subject subject) {
         if(resource == null) {
             throw new IllegalArgumentException("Resource does not identify any resource because it's an empty resource property or null.");
         } else {
@@ -99,6 +128,22 @@ public class SAREAuthorization implements Authorization {
         }
         
         if(subject == null) throw new IllegalArgumentException("Invalid subject, subject is null.");
+    }
+
+    /**
+     * 
+     * @param resource
+     * @param subject
+     * @param action
+     * @param environment
+     * @param contexts the contexts matching the subject
+     * @return decision
+     */
+    private Decision internalEvaluate(Map<String, String> resource, Subject subject, String action, 
+            Set<Attribute> environment, List<AclContext> contexts) {
+        
+        long start = System.currentTimeMillis();
+        
         if(action == null || action.length() <= 0) {
             return authorize(false, "No action provided.", Code.REJECTED_NO_ACTION_PROVIDED, resource, subject, action, environment, System.currentTimeMillis() - start);
         }
@@ -109,17 +154,12 @@ public class SAREAuthorization implements Authorization {
         
         this.decisionsMade++;
         
-        long narrowStart = System.currentTimeMillis();
-        List<AclContext> contexts = policies.narrowContext(subject, environment);
-        long narrowDuration = System.currentTimeMillis() - narrowStart;
-        
         if(contexts.size() <= 0) {
             return authorize(false, "No context matches subject or environment", Code.REJECTED_NO_SUBJECT_OR_ENV_FOUND, resource, subject, action, environment, System.currentTimeMillis() - start);
         }
         
         ContextDecision contextDecision = null;
         
-        long contextIncludeStart = System.currentTimeMillis();
         for(AclContext ctx : contexts) {
             contextDecision = ctx.includes(resource, action);
             if(contextDecision.granted()) {
@@ -134,43 +174,120 @@ public class SAREAuthorization implements Authorization {
             return createAuthorize(false, contextDecision, resource, subject, action, environment, System.currentTimeMillis() - start);
         }
     }
+
+    /**
+     * Evaluates decisions for a single subject and environment. The roles of the subject, the policy snapshot and
+     * the matching contexts are determined once for all of the decisions.
+     */
+    private class Batch {
+        private final Subject subject;
+        private final Set<Attribute> environment;
+        private final Set<String> roles;
+        private final Set<String> environmentKey;
+        private final PolicyRepository.Snapshot snapshot;
+        private List<AclContext> contexts;
+
+        Batch(Subject subject, Set<Attribute> environment) {
+            if(subject == null) throw new IllegalArgumentException("Invalid subject, subject is null.");
+            this.subject = subject;
+            this.environment = null != environment ? environment : Collections.<Attribute>emptySet();
+            this.roles = DecisionCache.roles(subject);
+            this.environmentKey = DecisionCache.environment(this.environment);
+            this.snapshot = policies.getSnapshot();
+        }
+
+        /**
+         * Return the decision for the resource and action
+         *
+         * @param wrap if true, a cached decision is returned with this resource, subject and environment, otherwise
+         *             the cached decision is returned
+         */
+        Decision decide(Map<String, String> resource, String action, boolean wrap) {
+            final long start = System.currentTimeMillis();
+            validate(resource, subject);
+            if (action == null || action.length() <= 0) {
+                return internalEvaluate(resource, subject, action, environment, null);
+            }
+            final DecisionCache.Key key = new DecisionCache.Key(roles, resource, action, environmentKey);
+            final Decision cached = decisionCache.get(key, snapshot.getGeneration());
+            final Decision decision;
+            if (null != cached) {
+                decision = wrap ? createAuthorize(cached.isAuthorized(), cached.explain(), resource, subject, action,
+                    environment, System.currentTimeMillis() - start) : cached;
+            } else {
+                if (null == contexts) {
+                    contexts = snapshot.narrowContext(subject, environment);
+                }
+                decision = internalEvaluate(resource, subject, action, environment, contexts);
+                decisionCache.put(key, snapshot.getGeneration(), decision);
+            }
+            if (logger.isDebugEnabled()) {
+                StringBuilder sb = new StringBuilder();
+                sb.append("Evaluating ").append(decision).append(" (").append(decision.evaluationDuration()).append(
+                    "ms)").append(null != cached ? " (cached)" : "").append(':');
+
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                PrintStream pw = new PrintStream(out, true);
+                decision.explain().describe(pw);
+                sb.append(out.toString());
+
+                logger.debug(sb.toString());
+            }
+            return decision;
+        }
+    }
     
     /**
-     * 
+     * Return a cached decision if the policies have not changed, otherwise evaluate the decision. The explanation is
+     * only rendered to the log if debug logging is enabled.
      */
     public Decision evaluate(Map<String, String> resource, Subject subject, 
             String action, Set<Attribute> environment) {     
-        
-        Decision decision = internalEvaluate(resource, subject, action, environment);
-        StringBuilder sb = new StringBuilder();
-        sb.append("Evaluating ").append(decision).append(" (").append(decision.evaluationDuration()).append("ms)").append(':');
-        
-        ByteArrayOutputStream out = new ByteArrayOutputStream();
-        PrintStream pw = new PrintStream(out, true);
-        decision.explain().describe(pw);
-        sb.append(out.toString());
-        
-        logger.info(sb.toString());
-
-        return decision;
+        validate(resource, subject);
+        return new Batch(subject, environment).decide(resource, action, true);
     }
 
     public Set<Decision> evaluate(Set<Map<String, String>> resources, Subject subject, Set<String> actions,
             Set<Attribute> environment) {
         
+        final Batch batch = new Batch(subject, environment);
         Set<Decision> decisions = new HashSet<Decision>();
-        long duration=0;
         for(Map<String, String> resource: resources) {
             for(String action: actions) {
-                final Decision decision = evaluate(resource, subject, action, environment);
-                duration += decision.evaluationDuration();
-                decisions.add(decision);
+                decisions.add(batch.decide(resource, action, true));
             }
         }
         return decisions;
     }
-    
-    
+
+    /**
+     * Evaluate all of the resources and actions, the matching contexts are narrowed once for the subject and
+     * environment, and duplicate resources are only evaluated once.
+     */
+    public DecisionMatrix evaluateMatrix(List<Map<String, String>> resources, Subject subject, List<String> actions,
+            Set<Attribute> environment) {
+        for (final Map<String, String> resource : resources) {
+            validate(resource, subject);
+        }
+        final Batch batch = new Batch(subject, environment);
+        final DecisionMatrix matrix = new DecisionMatrix(resources, actions);
+        final List<Map<String, String>> rows = matrix.getResources();
+        final List<String> columns = matrix.getActions();
+        for (int r = 0; r < rows.size(); r++) {
+            final Map<String, String> resource = rows.get(r);
+            final int first = matrix.indexOfResource(resource);
+            for (int a = 0; a < columns.size(); a++) {
+                final boolean authorized;
+                if (first < r) {
+                    authorized = matrix.isAuthorized(first, a);
+                } else {
+                    authorized = batch.decide(resource, columns.get(a), false).isAuthorized();
+                }
+                matrix.setAuthorized(r, a, authorized);
+            }
+        }
+        return matrix;
+    }
     
     private static Decision authorize(final boolean authorized, final String reason, 
             final Code reasonId, final Map<String, String> resource, final Subject subject, 
@@ -257,7 +374,7 @@ public class SAREAuthorization implements Authorization {
 
     @Override
     public String toString() {
-        return getClass().getName() + " (" + this.policies.count() + ") [" + this.baseDirectory.toString() + "]";
+        return getClass().getName() + " (" + this.policies.count() + ") [" + this.baseDirectory + "]";
     }
 
     /**
@@ -29,6 +29,7 @@ import com.dtolabs.rundeck.core.execution.*;
 import com.dtolabs.rundeck.core.execution.commands.InterpreterResult;
 import com.dtolabs.rundeck.core.execution.dispatch.Dispatchable;
 import com.dtolabs.rundeck.core.execution.dispatch.DispatcherResult;
+import com.dtolabs.rundeck.core.execution.dispatch.NodeDispatchListener;
 import com.dtolabs.rundeck.core.execution.service.NodeExecutorResult;
 
 import java.io.File;
@@ -160,6 +161,10 @@ public class CLIExecutionListener implements ExecutionListener {
         return failedNodesListener;
     }
 
+    public NodeDispatchListener getNodeDispatchListener() {
+        return null;
+    }
+
 
     public boolean isTerse() {
         return terse;
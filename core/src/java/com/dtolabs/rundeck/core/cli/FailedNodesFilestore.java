@@ -25,6 +25,8 @@ import java.util.Collection;
 import java.util.Properties;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Set;
 
 import org.apache.log4j.Logger;
 
@@ -86,6 +88,10 @@ public class FailedNodesFilestore {
     static class Listener implements FailedNodesListener {
         static Logger logger = Logger.getLogger(FailedNodesFilestore.class);
         File failedNodesFile;
+        /**
+         * failed and aborted node names, all of which are stored so that they can be retried
+         */
+        final Set<String> nodeNames = new HashSet<String>();
 
         public Listener(final File failedNodesFile) {
             this.failedNodesFile = failedNodesFile;
@@ -103,10 +109,19 @@ public class FailedNodesFilestore {
         }
 
         public void nodesFailed(final Map<String,Object> failedNodeNames) {
+            store(failedNodeNames.keySet());
+        }
+
+        public void nodesAborted(final Collection<String> names) {
+            store(names);
+        }
+
+        private void store(final Collection<String> names) {
             if (null != failedNodesFile) {
-                if (failedNodeNames.size() > 0) {
+                if (names.size() > 0) {
+                    nodeNames.addAll(names);
                     //store failed node list into file, echo Commandline with nodelist
-                    if (storeFailedNodes(failedNodeNames.keySet(), failedNodesFile)) {
+                    if (storeFailedNodes(nodeNames, failedNodesFile)) {
                         logger.info("Stored failed node list in: " + failedNodesFile.getAbsolutePath());
                     } else {
                         logger.error("Unable to store failed node list in file: " + failedNodesFile.getAbsolutePath());
@@ -92,7 +92,7 @@ public class Framework extends FrameworkResourceParent {
     private boolean allowUserInput = true;
     private static final String FRAMEWORK_USERINPUT_DISABLED = "framework.userinput.disabled";
 
-    final HashMap<String,FrameworkSupportService> services = new HashMap<String, FrameworkSupportService>();
+    final HashMap<String,FrameworkSupportService> services;
     /**
      * This is the root. Does not return a parent.
      *
@@ -241,6 +241,7 @@ public class Framework extends FrameworkResourceParent {
                       final Authenticator authentication,
                       final LegacyAuthorization authorization) {
         super("framework", new File(null == rdeck_base_dir ? Constants.getSystemBaseDir() : rdeck_base_dir), null);
+        services = new HashMap<String, FrameworkSupportService>();
         if(null==getBaseDir()) {
             throw new NullPointerException(
                 "rdeck_base_dir was not set in constructor and system property rdeck.base was not defined");
@@ -297,11 +298,55 @@ public class Framework extends FrameworkResourceParent {
             logger.debug("Framework.initialize() time: " + (end - start) + "ms");
         }
     }
+    /**
+     * Create a view of a Framework, which shares the configuration, project manager and services of the framework but
+     * has its own authentication and authorization managers.
+     *
+     * @param framework      the framework
+     * @param authentication authentication manager, or null to use the one from the framework
+     * @param authorization  authorization manager, or null to use the one from the framework
+     */
+    private Framework(final Framework framework,
+                      final Authenticator authentication,
+                      final LegacyAuthorization authorization) {
+        super("framework", framework.getBaseDir(), null);
+        lookup = framework.lookup;
+        projectsBase = framework.projectsBase;
+        homeDir = framework.homeDir;
+        services = framework.services;
+        projectResourceMgr = framework.projectResourceMgr;
+        centralDispatcherMgr = framework.centralDispatcherMgr;
+        nodeAuthResolutionStrategy = framework.nodeAuthResolutionStrategy;
+        allowUserInput = framework.allowUserInput;
+        authenticationMgr = null != authentication ? authentication : framework.authenticationMgr;
+        authorizationMgr = null != authorization ? authorization : framework.authorizationMgr;
+    }
+
+    /**
+     * Return a new Framework for a user which shares the configuration, project manager and services of this
+     * instance, and uses the given authentication and authorization managers. Unlike {@link #getInstance(String,
+     * Authenticator, LegacyAuthorization)} no configuration files are read and no services are created, so a single
+     * Framework can be created at startup and a view of it created for each user session or execution.
+     * <p/>
+     * Changes to the view's authentication, authorization, central dispatcher or user input settings do not affect
+     * this instance.
+     *
+     * @param authentication authentication manager, or null to use the one from this instance
+     * @param authorization  authorization manager, or null to use the one from this instance
+     *
+     * @return the view
+     */
+    public Framework createView(final Authenticator authentication, final LegacyAuthorization authorization) {
+        return new Framework(this, authentication, authorization);
+    }
+
     /**
      * Return a service by name
      */
     public FrameworkSupportService getService(String name) {
-        return services.get(name);
+        synchronized (services) {
+            return services.get(name);
+        }
     }
     /**
      * Set a service by name
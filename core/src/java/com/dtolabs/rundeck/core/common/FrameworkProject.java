@@ -29,7 +29,6 @@ import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Properties;
 import java.util.regex.Matcher;
@@ -247,9 +246,6 @@ public class FrameworkProject extends FrameworkResourceParent {
         return getNodes(new File(path));
     }
 
-    private HashMap<File, Long> nodesFileTimes = new HashMap<File, Long>();
-    private HashMap<File, Nodes> nodesCache = new HashMap<File, Nodes>();
-
     /**
      * Returns a {@link Nodes} object conatining the nodes config data.
      *
@@ -270,23 +266,15 @@ public class FrameworkProject extends FrameworkResourceParent {
 
     }
     /**
-     * Returns a {@link Nodes} object conatining the nodes config data.
+     * Returns a {@link Nodes} object conatining the nodes config data. The parsed nodes are shared with other
+     * FrameworkProject instances via the {@link NodesCache}.
      *
      * @param nodesFile the source file
      * @param format
      * @return an instance of {@link Nodes}
      */
     public Nodes getNodes(final File nodesFile, final Nodes.Format format) throws NodeFileParserException {
-        final Long modtime = nodesFile.lastModified();
-        if ( null == nodesCache.get(nodesFile) || !modtime.equals(nodesFileTimes.get(nodesFile)) ) {
-            final Nodes nodes = Nodes.create(this, nodesFile, format);
-            nodesFileTimes.put(nodesFile, modtime);
-            nodesCache.put(nodesFile, nodes);
-            return nodes;
-        } else {
-            return nodesCache.get(nodesFile);
-        }
-
+        return NodesCache.getInstance().getNodes(this, nodesFile, format);
     }
 
     /**
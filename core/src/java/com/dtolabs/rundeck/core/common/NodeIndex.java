@@ -0,0 +1,399 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* NodeIndex.java
+*
+*/
+package com.dtolabs.rundeck.core.common;
+
+import com.dtolabs.rundeck.core.utils.NodeSet;
+
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * NodeIndex is an immutable index of a set of nodes, which evaluates {@link NodeSet} filters against inverted indexes
+ * of the node attributes instead of testing each node.
+ * <p/>
+ * Each node is assigned a position in name order, and each distinct value of the name, hostname, os-* attributes,
+ * other attributes and tags has a posting list of the positions of the nodes with that value. A filter selector is
+ * compiled once per filter: literal selectors look up their posting lists directly, and regular expressions are
+ * tested once per distinct value rather than once per node. The results are the same as {@link
+ * NodeSet#shouldExclude(INodeEntry)}.
+ */
+public class NodeIndex {
+    private static final Pattern REGEX_META = Pattern.compile("[\\\\^$.|?*+()\\[\\]{}]");
+
+    private final INodeEntry[] nodes;
+    private final Map<String, Integer> positions;
+    private final ValueIndex names = new ValueIndex();
+    private final ValueIndex hostnames = new ValueIndex();
+    private final ValueIndex osFamilies = new ValueIndex();
+    private final ValueIndex osArchs = new ValueIndex();
+    private final ValueIndex osNames = new ValueIndex();
+    private final ValueIndex osVersions = new ValueIndex();
+    private final ValueIndex tags = new ValueIndex();
+    private final BitSet tagged = new BitSet();
+    private final Map<String, ValueIndex> attributes = new HashMap<String, ValueIndex>();
+
+    /**
+     * Create an index of the nodes
+     *
+     * @param entries the nodes, with unique node names
+     */
+    public NodeIndex(final Collection<INodeEntry> entries) {
+        nodes = entries.toArray(new INodeEntry[entries.size()]);
+        Arrays.sort(nodes, new Comparator<INodeEntry>() {
+            public int compare(final INodeEntry nodeA, final INodeEntry nodeB) {
+                return nodeA.getNodename().compareTo(nodeB.getNodename());
+            }
+        });
+        positions = new HashMap<String, Integer>();
+        for (int i = 0; i < nodes.length; i++) {
+            final INodeEntry node = nodes[i];
+            positions.put(node.getNodename(), i);
+            names.add(node.getNodename(), i);
+            hostnames.add(node.getHostname(), i);
+            osFamilies.add(node.getOsFamily(), i);
+            osArchs.add(node.getOsArch(), i);
+            osNames.add(node.getOsName(), i);
+            osVersions.add(node.getOsVersion(), i);
+            if (null != node.getTags() && node.getTags().size() > 0) {
+                tagged.set(i);
+                for (final Object tag : node.getTags()) {
+                    if (null != tag) {
+                        tags.addTag(tag.toString(), i);
+                    }
+                }
+            }
+            if (null != node.getAttributes()) {
+                for (final Map.Entry<String, String> entry : node.getAttributes().entrySet()) {
+                    ValueIndex index = attributes.get(entry.getKey());
+                    if (null == index) {
+                        index = new ValueIndex();
+                        attributes.put(entry.getKey(), index);
+                    }
+                    index.add(entry.getValue(), i);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the number of nodes
+     *
+     * @return the count
+     */
+    public int size() {
+        return nodes.length;
+    }
+
+    /**
+     * Return all nodes, sorted by node name
+     *
+     * @return list of nodes
+     */
+    public List<INodeEntry> listNodes() {
+        return new ArrayList<INodeEntry>(Arrays.asList(nodes));
+    }
+
+    /**
+     * Return the nodes matched by the nodeset, sorted by node name.
+     *
+     * @param nodeSet the filter, or null to return all nodes
+     *
+     * @return list of matching nodes
+     */
+    public List<INodeEntry> filterNodes(final NodeSet nodeSet) {
+        final BitSet matched = match(nodeSet);
+        final List<INodeEntry> list = new ArrayList<INodeEntry>(matched.cardinality());
+        for (int i = matched.nextSetBit(0); i >= 0; i = matched.nextSetBit(i + 1)) {
+            list.add(nodes[i]);
+        }
+        return list;
+    }
+
+    /**
+     * Return the nodes in the collection matched by the nodeset, in the order of the collection. Nodes which are not
+     * in the index are not returned.
+     *
+     * @param nodeEntries source nodes
+     * @param nodeSet     the filter, or null to match all nodes
+     *
+     * @return list of matching nodes from this index
+     */
+    public List<INodeEntry> filterNodes(final Collection<? extends INodeBase> nodeEntries, final NodeSet nodeSet) {
+        final BitSet matched = match(nodeSet);
+        final List<INodeEntry> list = new ArrayList<INodeEntry>();
+        for (final INodeBase nodeEntry : nodeEntries) {
+            final Integer pos = positions.get(nodeEntry.getNodename());
+            if (null != pos && matched.get(pos)) {
+                list.add(nodes[pos]);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Return the positions of the nodes not excluded by the nodeset, with the same logic as {@link
+     * NodeSet#shouldExclude(INodeEntry)}
+     */
+    private BitSet match(final NodeSet nodeSet) {
+        final BitSet all = new BitSet(nodes.length);
+        all.set(0, nodes.length);
+        if (null == nodeSet) {
+            return all;
+        }
+        if (null != nodeSet.getSingleNodeName()) {
+            final BitSet result = new BitSet(nodes.length);
+            final Integer pos = positions.get(nodeSet.getSingleNodeName());
+            if (null != pos) {
+                result.set(pos);
+            }
+            return result;
+        }
+        final NodeSet.Include includes = nodeSet.getInclude();
+        final NodeSet.Exclude excludes = nodeSet.getExclude();
+        final BitSet includesMatch = null != includes ? match(includes) : new BitSet();
+        if (null == excludes || excludes.isBlank()) {
+            return includesMatch;
+        }
+        final BitSet notExcluded = (BitSet) all.clone();
+        notExcluded.andNot(match(excludes));
+        if (null == includes || includes.isBlank()) {
+            return notExcluded;
+        } else if (includes.isDominant()) {
+            includesMatch.or(notExcluded);
+            return includesMatch;
+        } else {
+            includesMatch.and(notExcluded);
+            return includesMatch;
+        }
+    }
+
+    /**
+     * Return the positions of the nodes matched by the selector, with the same logic as {@link
+     * NodeSet.SetSelector#matches(INodeEntry)}
+     */
+    private BitSet match(final NodeSet.SetSelector selector) {
+        if (selector.isBlank()) {
+            return new BitSet();
+        }
+        BitSet result = null;
+        result = and(result, hostnames, selector.getHostname());
+        result = and(result, names, selector.getName());
+        result = and(result, osFamilies, selector.getOsfamily());
+        result = and(result, osArchs, selector.getOsarch());
+        result = and(result, osNames, selector.getOsname());
+        result = and(result, osVersions, selector.getOsversion());
+        if (!isBlank(selector.getTags())) {
+            result = and(result, matchTags(selector.getTags()));
+        }
+        final Map<String, String> attrSelectors = selector.getAttributesMap();
+        if (null != attrSelectors) {
+            for (final Map.Entry<String, String> entry : attrSelectors.entrySet()) {
+                if (null != result && result.isEmpty()) {
+                    break;
+                }
+                final ValueIndex index = attributes.get(entry.getKey());
+                if (null == index || null == entry.getValue()) {
+                    result = new BitSet();
+                } else {
+                    result = and(result, index.match(compileValue(entry.getValue())));
+                }
+            }
+        }
+        if (null == result) {
+            //only blank selectors, e.g. an empty attribute collection
+            result = new BitSet(nodes.length);
+            result.set(0, nodes.length);
+        }
+        return result;
+    }
+
+    private static BitSet and(final BitSet result, final ValueIndex index, final String selector) {
+        if (isBlank(selector) || null != result && result.isEmpty()) {
+            return result;
+        }
+        return and(result, index.match(compileValue(selector)));
+    }
+
+    private static BitSet and(final BitSet result, final BitSet match) {
+        if (null == result) {
+            return match;
+        }
+        result.and(match);
+        return result;
+    }
+
+    private static boolean isBlank(final String value) {
+        return null == value || "".equals(value.trim());
+    }
+
+    /**
+     * Match a tag expression, where "," separates alternatives and "+" requires all terms of an alternative, with the
+     * logic of NodeSet.matchesInputSet
+     */
+    private BitSet matchTags(final String selector) {
+        if (selector.indexOf("+") < 0 && selector.indexOf(",") < 0) {
+            return tags.match(SelectorTerm.create(selector, Collections.singleton(selector)));
+        }
+        final BitSet result = new BitSet();
+        for (final String clause : new HashSet<String>(Arrays.asList(selector.split(",")))) {
+            BitSet clauseMatch = null;
+            for (final String term : new HashSet<String>(Arrays.asList(clause.split("\\+")))) {
+                final BitSet termMatch = tags.match(SelectorTerm.create(term, Collections.singleton(term.trim())));
+                clauseMatch = and(clauseMatch, termMatch);
+                if (clauseMatch.isEmpty()) {
+                    break;
+                }
+            }
+            //a clause without terms matches any node with tags
+            result.or(null != clauseMatch ? clauseMatch : tagged);
+        }
+        return result;
+    }
+
+    /**
+     * Compile a selector for a single valued attribute, with the logic of NodeSet.matchesInput: the selector matches
+     * the value as a regular expression or string, or one of its comma separated parts equals the value.
+     */
+    private static SelectorTerm compileValue(final String selector) {
+        return SelectorTerm.create(selector, Arrays.asList(selector.split(",")));
+    }
+
+    /**
+     * The compiled form of a selector string, which matches a value with the logic of {@link
+     * NodeSet#matchRegexOrEquals(String, String)}, or if it equals one of a set of literal strings.
+     */
+    static class SelectorTerm {
+        private final Set<String> literals;
+        private final Pattern pattern;
+        private final PatternSyntaxException error;
+
+        private SelectorTerm(final Set<String> literals, final Pattern pattern, final PatternSyntaxException error) {
+            this.literals = literals;
+            this.pattern = pattern;
+            this.error = error;
+        }
+
+        /**
+         * Compile the selector
+         *
+         * @param selector selector string, a regular expression wrapped in "/" characters, or a string which is
+         *                 treated as a regular expression if it is valid, and is also compared for equality
+         * @param literals additional strings which match if equal to the value
+         *
+         * @return the compiled term
+         */
+        static SelectorTerm create(final String selector, final Collection<String> literals) {
+            final Set<String> values = new HashSet<String>(literals);
+            Pattern pattern = null;
+            PatternSyntaxException error = null;
+            if (selector.length() >= 2 && selector.indexOf('/') == 0
+                && selector.lastIndexOf('/') == selector.length() - 1) {
+                //explicit regex, which must be valid
+                try {
+                    pattern = Pattern.compile(selector.substring(1, selector.length() - 1).trim());
+                } catch (PatternSyntaxException e) {
+                    error = e;
+                }
+            } else {
+                final String trimmed = selector.trim();
+                values.add(trimmed);
+                if (REGEX_META.matcher(trimmed).find()) {
+                    try {
+                        pattern = Pattern.compile(trimmed);
+                    } catch (PatternSyntaxException e) {
+                        //only equality is tested
+                    }
+                }
+                //otherwise the regex can only match the trimmed string itself
+            }
+            return new SelectorTerm(values, pattern, error);
+        }
+
+        /**
+         * Return true if only the literal values can match
+         */
+        boolean isLiteral() {
+            return null == pattern && null == error;
+        }
+
+        Set<String> getLiterals() {
+            return literals;
+        }
+
+        boolean matches(final String value) {
+            if (literals.contains(value)) {
+                return true;
+            }
+            if (null != error) {
+                throw error;
+            }
+            return null != pattern && pattern.matcher(value).matches();
+        }
+    }
+
+    /**
+     * Posting lists for each distinct value of an attribute
+     */
+    private static class ValueIndex {
+        private final Map<String, BitSet> postings = new HashMap<String, BitSet>();
+
+        /**
+         * Add a single valued attribute, blank values are never matched so they are not indexed
+         */
+        void add(final String value, final int pos) {
+            if (!isBlank(value)) {
+                addTag(value, pos);
+            }
+        }
+
+        void addTag(final String value, final int pos) {
+            BitSet posting = postings.get(value);
+            if (null == posting) {
+                posting = new BitSet();
+                postings.put(value, posting);
+            }
+            posting.set(pos);
+        }
+
+        /**
+         * Return the positions of nodes with a value matched by the term
+         */
+        BitSet match(final SelectorTerm term) {
+            final BitSet result = new BitSet();
+            if (term.isLiteral()) {
+                for (final String literal : term.getLiterals()) {
+                    final BitSet posting = postings.get(literal);
+                    if (null != posting) {
+                        result.or(posting);
+                    }
+                }
+            } else {
+                for (final Map.Entry<String, BitSet> entry : postings.entrySet()) {
+                    if (term.matches(entry.getKey())) {
+                        result.or(entry.getValue());
+                    }
+                }
+            }
+            return result;
+        }
+    }
+}
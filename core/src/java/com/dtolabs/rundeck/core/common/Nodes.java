@@ -36,6 +36,7 @@ public class Nodes implements NodeReceiver {
 
     private final HashMap<String,INodeEntry> nodes;
     private final HashMap<String, INodeEntry> nodesByHostname;
+    private NodeIndex index;
 
     final private FrameworkProject project;
     private boolean valid;
@@ -101,6 +102,7 @@ public class Nodes implements NodeReceiver {
         if (null == nodes.get(fwkNode)) {
             nodes.put(fwkNode, project.getFrameworkProjectMgr().getFramework().createFrameworkNode());
         }
+        index = new NodeIndex(nodes.values());
 
     }
 
@@ -133,9 +135,18 @@ public class Nodes implements NodeReceiver {
      * @return Collection of INodeEntry objects
      */
     public Collection<INodeEntry> listNodes() {
-        final List<INodeEntry> l = new ArrayList<INodeEntry>(nodes.values());
-        Collections.sort(l, new NodeEntryComparator());
-        return l;
+        return getIndex().listNodes();
+    }
+
+    /**
+     * Return the index of the nodes, which is rebuilt if nodes have been added since it was created
+     * @return the index
+     */
+    public synchronized NodeIndex getIndex() {
+        if (null == index) {
+            index = new NodeIndex(nodes.values());
+        }
+        return index;
     }
     /**
      * Return the size of the set of nodes
@@ -203,9 +214,10 @@ public class Nodes implements NodeReceiver {
      * Put a filled node entry into the dataset
      * @param iNodeEntry
      */
-    public void putNode(final INodeEntry iNodeEntry) {
+    public synchronized void putNode(final INodeEntry iNodeEntry) {
         nodes.put(iNodeEntry.getNodename(), iNodeEntry);
         nodesByHostname.put(iNodeEntry.getHostname(), iNodeEntry);
+        index = null;
     }
 
     /**
@@ -235,14 +247,7 @@ public class Nodes implements NodeReceiver {
      * @return collection of matching {@link INodeEntry} objects
      */
     public Collection<INodeEntry> filterNodes(final Collection<? extends INodeBase> nodeEntries, final NodeSet nodeSet) {
-        final ArrayList<INodeEntry> list = new ArrayList<INodeEntry>();
-        for (final INodeBase nodeEntry: nodeEntries) {
-            final INodeEntry entry = getNode(nodeEntry.getNodename());
-            if (null != entry && (null == nodeSet || !nodeSet.shouldExclude(entry))) {
-                list.add(entry); // should not be excluded so include it
-            }
-        }
-        return list;
+        return getIndex().filterNodes(nodeEntries, nodeSet);
     }
 
    /**
@@ -266,10 +271,10 @@ public class Nodes implements NodeReceiver {
      * using the values from {@link #listNodes()} and the nodeset parameter
      *
      * @param nodeset NodeSet object to apply filters from
-     * @return collection of matching {@link INodeEntry} objects
+     * @return collection of matching {@link INodeEntry} objects, sorted by node name
      */
     public Collection<INodeEntry> filterNodes(final NodeSet nodeset) {
-        return filterNodes(listNodes(), nodeset);
+        return getIndex().filterNodes(nodeset);
     }
 
     /**
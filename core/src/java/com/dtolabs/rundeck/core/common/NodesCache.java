@@ -0,0 +1,211 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* NodesCache.java
+*
+*/
+package com.dtolabs.rundeck.core.common;
+
+import org.apache.log4j.Logger;
+
+import java.io.File;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * NodesCache is a process wide cache of parsed {@link Nodes}, shared by all {@link FrameworkProject} instances. An
+ * entry is keyed by the resources file path and format, and the framework node name (which is added to the nodes), and
+ * is reparsed when the file modification time or size changes. Concurrent requests for an entry which is being loaded
+ * wait for the single parse to complete instead of parsing the file themselves.
+ */
+public class NodesCache {
+    static Logger logger = Logger.getLogger(NodesCache.class.getName());
+    private static final NodesCache instance = new NodesCache();
+
+    private final ConcurrentHashMap<Key, Entry> entries = new ConcurrentHashMap<Key, Entry>();
+    private final AtomicLong parseCount = new AtomicLong();
+    private final AtomicLong parseTime = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+
+    /**
+     * Create a cache separate from the shared instance
+     */
+    NodesCache() {
+    }
+
+    /**
+     * Return the shared instance
+     *
+     * @return the cache
+     */
+    public static NodesCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Return the Nodes for the file, parsing it if it is not cached or has changed since it was cached.
+     *
+     * @param project   the project, used to parse the file
+     * @param nodesFile the resources file
+     * @param format    file format
+     *
+     * @return the nodes
+     *
+     * @throws NodeFileParserException if a parsing error occurs
+     */
+    public Nodes getNodes(final FrameworkProject project, final File nodesFile, final Nodes.Format format) throws
+        NodeFileParserException {
+        final Key key = new Key(nodesFile.getAbsolutePath(), format,
+            project.getFrameworkProjectMgr().getFramework().getFrameworkNodeName());
+        final long modtime = nodesFile.lastModified();
+        final long size = nodesFile.length();
+        while (true) {
+            final Entry entry = entries.get(key);
+            if (null != entry && entry.modtime == modtime && entry.size == size) {
+                hitCount.incrementAndGet();
+                return get(key, entry);
+            }
+            final Entry created = new Entry(modtime, size, new Callable<Nodes>() {
+                public Nodes call() throws Exception {
+                    return parse(project, nodesFile, format);
+                }
+            });
+            final boolean added = null == entry ? null == entries.putIfAbsent(key, created)
+                                                : entries.replace(key, entry, created);
+            if (added) {
+                created.task.run();
+                return get(key, created);
+            }
+            //another thread replaced the entry, check it again
+        }
+    }
+
+    private Nodes parse(final FrameworkProject project, final File nodesFile, final Nodes.Format format) throws
+        NodeFileParserException {
+        final long start = System.currentTimeMillis();
+        final Nodes nodes = Nodes.create(project, nodesFile, format);
+        final long time = System.currentTimeMillis() - start;
+        parseCount.incrementAndGet();
+        parseTime.addAndGet(time);
+        logger.debug("Parsed nodes file " + nodesFile.getAbsolutePath() + " in " + time + "ms, "
+                     + nodes.countNodes() + " nodes");
+        return nodes;
+    }
+
+    /**
+     * Wait for the entry to load, and remove it if loading failed so that it will be retried
+     */
+    private Nodes get(final Key key, final Entry entry) throws NodeFileParserException {
+        try {
+            return entry.task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new NodeFileParserException("Interrupted waiting for nodes file to load: " + key.path, e);
+        } catch (ExecutionException e) {
+            entries.remove(key, entry);
+            final Throwable cause = e.getCause();
+            if (cause instanceof NodeFileParserException) {
+                throw (NodeFileParserException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new NodeFileParserException(e);
+        }
+    }
+
+    /**
+     * Remove all entries
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Return the number of times a nodes file has been parsed
+     *
+     * @return count
+     */
+    public long getParseCount() {
+        return parseCount.get();
+    }
+
+    /**
+     * Return the total time spent parsing nodes files in milliseconds
+     *
+     * @return time
+     */
+    public long getParseTime() {
+        return parseTime.get();
+    }
+
+    /**
+     * Return the number of requests which were satisfied by a cached or loading entry
+     *
+     * @return count
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    private static class Entry {
+        final long modtime;
+        final long size;
+        final FutureTask<Nodes> task;
+
+        Entry(final long modtime, final long size, final Callable<Nodes> loader) {
+            this.modtime = modtime;
+            this.size = size;
+            this.task = new FutureTask<Nodes>(loader);
+        }
+    }
+
+    private static class Key {
+        final String path;
+        final Nodes.Format format;
+        final String frameworkNodeName;
+
+        Key(final String path, final Nodes.Format format, final String frameworkNodeName) {
+            this.path = path;
+            this.format = format;
+            this.frameworkNodeName = frameworkNodeName;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass()) {
+                return false;
+            }
+            final Key key = (Key) o;
+            return path.equals(key.path) && format == key.format
+                   && (null != frameworkNodeName ? frameworkNodeName.equals(key.frameworkNodeName)
+                                                 : null == key.frameworkNodeName);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = path.hashCode();
+            result = 31 * result + format.hashCode();
+            result = 31 * result + (null != frameworkNodeName ? frameworkNodeName.hashCode() : 0);
+            return result;
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* DataContextTemplate.java
+*
+*/
+package com.dtolabs.rundeck.core.dispatcher;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * DataContextTemplate is a string parsed once into literal text and data context references, which can then be
+ * rendered with the data for each node without parsing it again.  Templates are immutable and can be shared between
+ * threads.
+ * <p/>
+ * Two forms are supported, with the same results as the methods of {@link DataContextUtils}: property references of
+ * the form '${key.name}', which are replaced with the shell-escaped value (see {@link
+ * DataContextUtils#replaceDataReferences(String, java.util.Map)}), and tokens of the form '@key.name@' as used in
+ * scripts, which are replaced with the value as-is (see {@link DataContextUtils#replaceTokensInScript(String,
+ * java.util.Map, com.dtolabs.rundeck.core.common.Framework)}).
+ */
+public class DataContextTemplate {
+    private static final Pattern REFERENCE = Pattern.compile("\\$\\{([^\\s.]+)\\.([^\\s}]+)\\}");
+    private static final char TOKEN = '@';
+
+    private final boolean tokens;
+    /**
+     * For references: literal text preceding each reference, and the text after the last one. For tokens: the text
+     * between each token character.
+     */
+    private final String[] texts;
+    /**
+     * For references: the original text of each reference.
+     */
+    private final String[] originals;
+    /**
+     * For references: the key and name of each reference.  For tokens: the possible key and name pairs for each text,
+     * split at each '.' character, or null.
+     */
+    private final String[][] keys;
+    private final String[][] names;
+
+    private DataContextTemplate(final boolean tokens, final String[] texts, final String[] originals,
+                                final String[][] keys, final String[][] names) {
+        this.tokens = tokens;
+        this.texts = texts;
+        this.originals = originals;
+        this.keys = keys;
+        this.names = names;
+    }
+
+    /**
+     * Parse a string containing property references of the form '${key.name}'
+     *
+     * @param input input string
+     *
+     * @return template
+     */
+    public static DataContextTemplate compileReferences(final String input) {
+        final List<String> texts = new ArrayList<String>();
+        final List<String> originals = new ArrayList<String>();
+        final List<String[]> keys = new ArrayList<String[]>();
+        final List<String[]> names = new ArrayList<String[]>();
+        final Matcher m = REFERENCE.matcher(input);
+        int last = 0;
+        while (m.find()) {
+            texts.add(input.substring(last, m.start()));
+            originals.add(m.group(0));
+            keys.add(new String[]{m.group(1)});
+            names.add(new String[]{m.group(2)});
+            last = m.end();
+        }
+        texts.add(input.substring(last));
+        return new DataContextTemplate(false, texts.toArray(new String[texts.size()]),
+            originals.toArray(new String[originals.size()]), keys.toArray(new String[keys.size()][]),
+            names.toArray(new String[names.size()][]));
+    }
+
+    /**
+     * Parse script content containing tokens of the form '@key.name@'
+     *
+     * @param input script content
+     *
+     * @return template
+     */
+    public static DataContextTemplate compileTokens(final String input) {
+        final List<String> texts = new ArrayList<String>();
+        int last = 0;
+        int next;
+        while ((next = input.indexOf(TOKEN, last)) >= 0) {
+            texts.add(input.substring(last, next));
+            last = next + 1;
+        }
+        texts.add(input.substring(last));
+        final String[][] keys = new String[texts.size()][];
+        final String[][] names = new String[texts.size()][];
+        for (int i = 1; i < texts.size(); i++) {
+            final String text = texts.get(i);
+            final List<Integer> dots = new ArrayList<Integer>();
+            for (int j = text.indexOf('.'); j >= 0; j = text.indexOf('.', j + 1)) {
+                dots.add(j);
+            }
+            if (dots.isEmpty()) {
+                continue;
+            }
+            keys[i] = new String[dots.size()];
+            names[i] = new String[dots.size()];
+            for (int j = 0; j < dots.size(); j++) {
+                keys[i][j] = text.substring(0, dots.get(j));
+                names[i][j] = text.substring(dots.get(j) + 1);
+            }
+        }
+        return new DataContextTemplate(true, texts.toArray(new String[texts.size()]), null, keys, names);
+    }
+
+    /**
+     * Read and parse script content containing tokens of the form '@key.name@'
+     *
+     * @param reader script content, which is read but not closed
+     *
+     * @return template
+     *
+     * @throws IOException if an error occurs reading the content
+     */
+    public static DataContextTemplate compileTokens(final Reader reader) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        final char[] buf = new char[8192];
+        int len;
+        while ((len = reader.read(buf)) >= 0) {
+            sb.append(buf, 0, len);
+        }
+        return compileTokens(sb.toString());
+    }
+
+    /**
+     * Return the value of the reference or token at the index, or null if the data does not contain it
+     */
+    private String lookup(final int index, final Map<String, Map<String, String>> data) {
+        final String[] k = keys[index];
+        if (null == k) {
+            return null;
+        }
+        for (int i = 0; i < k.length; i++) {
+            final Map<String, String> map = data.get(k[i]);
+            if (null != map) {
+                final String value = map.get(names[index][i]);
+                if (null != value) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Render the template with the data
+     *
+     * @param data data context
+     *
+     * @return rendered string
+     */
+    public String render(final Map<String, Map<String, String>> data) {
+        if (1 == texts.length) {
+            return texts[0];
+        }
+        final StringBuilder sb = new StringBuilder();
+        render(data, sb);
+        return sb.toString();
+    }
+
+    /**
+     * Render the template with the data, appending the result to a buffer
+     *
+     * @param data data context
+     * @param sb   buffer
+     */
+    public void render(final Map<String, Map<String, String>> data, final StringBuilder sb) {
+        if (tokens) {
+            renderTokens(data, sb);
+            return;
+        }
+        sb.append(texts[0]);
+        for (int i = 0; i < originals.length; i++) {
+            final String value = null != data ? lookup(i, data) : null;
+            sb.append(null != value ? DataContextUtils.escapeShell(value) : originals[i]);
+            sb.append(texts[i + 1]);
+        }
+    }
+
+    /**
+     * A token starts at each token character which is not the end of a replaced token, and extends to the next token
+     * character.  If the token is not in the data, the starting token character is output, and the ending token
+     * character starts the next token.
+     */
+    private void renderTokens(final Map<String, Map<String, String>> data, final StringBuilder sb) {
+        sb.append(texts[0]);
+        int i = 1;
+        while (i < texts.length) {
+            final String value = i < texts.length - 1 && null != data ? lookup(i, data) : null;
+            if (null != value) {
+                sb.append(value);
+                sb.append(texts[i + 1]);
+                i += 2;
+            } else {
+                sb.append(TOKEN);
+                sb.append(texts[i]);
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Render the template with the data, and write it to the writer, with each line ending in the system line
+     * separator.  This matches the content of files written by {@link com.dtolabs.rundeck.core.execution.script.ScriptfileUtils#writeScriptTempfile(com.dtolabs.rundeck.core.common.Framework,
+     * java.io.Reader)}.
+     *
+     * @param data   data context
+     * @param writer writer
+     *
+     * @throws IOException if an error occurs writing
+     */
+    public void writeLines(final Map<String, Map<String, String>> data, final Writer writer) throws IOException {
+        final StringBuilder sb = new StringBuilder();
+        render(data, sb);
+        writeLines(sb, writer);
+    }
+
+    /**
+     * Write the content with each line ending in the system line separator, treating "\n", "\r" and "\r\n" as line
+     * endings in the same way as {@link java.io.BufferedReader#readLine()}.
+     */
+    static void writeLines(final CharSequence content, final Writer writer) throws IOException {
+        final String linesep = System.getProperty("line.separator");
+        final int len = content.length();
+        int start = 0;
+        int i = 0;
+        while (i < len) {
+            final char c = content.charAt(i);
+            if ('\n' == c || '\r' == c) {
+                writer.append(content, start, i).write(linesep);
+                i++;
+                if ('\r' == c && i < len && '\n' == content.charAt(i)) {
+                    i++;
+                }
+                start = i;
+            } else {
+                i++;
+            }
+        }
+        if (start < len) {
+            writer.append(content, start, len).write(linesep);
+        }
+    }
+}
@@ -32,10 +32,7 @@ import org.apache.tools.ant.taskdefs.ExecTask;
 import org.apache.tools.ant.types.Environment;
 
 import java.io.*;
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.regex.Matcher;
+import java.util.*;
 import java.util.regex.Pattern;
 
 /**
@@ -50,6 +47,67 @@ public class DataContextUtils {
      * Prefix string used for all environment variable names
      */
     public static final String ENV_VAR_PREFIX = "RD_";
+    /**
+     * Maximum number of compiled property reference strings to keep
+     */
+    private static final int REFERENCE_CACHE_SIZE = 1024;
+    /**
+     * Maximum number of compiled scripts to keep
+     */
+    private static final int SCRIPT_CACHE_SIZE = 32;
+    /**
+     * Maximum length of a script to keep compiled
+     */
+    private static final int SCRIPT_CACHE_MAX_LENGTH = 256 * 1024;
+    private static final Pattern SHELL_CHARS = Pattern.compile("([&><|;\\\\`])");
+    private static final Pattern SHELL_QUOTED_CHARS = Pattern.compile("([\\\\`])");
+    private static final Pattern WINDOWS_SHELL_CHARS = Pattern.compile("([&><|;^`])");
+    private static final Pattern WINDOWS_SHELL_QUOTED_CHARS = Pattern.compile("([`^])");
+
+    private static final Map<String, DataContextTemplate> referenceTemplates = templateCache(REFERENCE_CACHE_SIZE);
+    private static final Map<String, DataContextTemplate> scriptTemplates = templateCache(SCRIPT_CACHE_SIZE);
+
+    private static Map<String, DataContextTemplate> templateCache(final int maxSize) {
+        return Collections.synchronizedMap(new LinkedHashMap<String, DataContextTemplate>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(final Map.Entry<String, DataContextTemplate> eldest) {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    /**
+     * Return the compiled template for a string containing property references, which is cached
+     *
+     * @param input input string
+     *
+     * @return template
+     */
+    public static DataContextTemplate compileDataReferences(final String input) {
+        DataContextTemplate template = referenceTemplates.get(input);
+        if (null == template) {
+            template = DataContextTemplate.compileReferences(input);
+            referenceTemplates.put(input, template);
+        }
+        return template;
+    }
+
+    /**
+     * Return the compiled template for script content containing tokens, which is cached unless the script is large
+     *
+     * @param script script content
+     *
+     * @return template
+     */
+    public static DataContextTemplate compileScriptTokens(final String script) {
+        DataContextTemplate template = scriptTemplates.get(script);
+        if (null == template) {
+            template = DataContextTemplate.compileTokens(script);
+            if (script.length() <= SCRIPT_CACHE_MAX_LENGTH) {
+                scriptTemplates.put(script, template);
+            }
+        }
+        return template;
+    }
 
 
     /**
@@ -88,20 +146,7 @@ public class DataContextUtils {
      * @return string with values substituted, or original string
      */
     public static String replaceDataReferences(final String input, final Map<String, Map<String, String>> data) {
-        final Pattern p = Pattern.compile("\\$\\{([^\\s.]+)\\.([^\\s}]+)\\}");
-        final Matcher m = p.matcher(input);
-        final StringBuffer sb = new StringBuffer();
-        while (m.find()) {
-            final String key = m.group(1);
-            final String nm = m.group(2);
-            if (null!=key && null!=nm && null!=data.get(key) && null!= data.get(key).get(nm)) {
-                m.appendReplacement(sb, Matcher.quoteReplacement(escapeShell(data.get(key).get(nm))));
-            }else {
-                m.appendReplacement(sb, Matcher.quoteReplacement(m.group(0)));
-            }
-        }
-        m.appendTail(sb);
-        return sb.toString();
+        return compileDataReferences(input).render(data);
     }
 
     /**
@@ -118,9 +163,9 @@ public class DataContextUtils {
         if (s.startsWith("'") && s.endsWith("'")) {
             return s;
         } else if (s.startsWith("\"") && s.endsWith("\"")) {
-            return s.replaceAll("([\\\\`])", "\\\\$1");
+            return SHELL_QUOTED_CHARS.matcher(s).replaceAll("\\\\$1");
         }
-        return s.replaceAll("([&><|;\\\\`])", "\\\\$1");
+        return SHELL_CHARS.matcher(s).replaceAll("\\\\$1");
     }
 
     /**
@@ -137,9 +182,9 @@ public class DataContextUtils {
         if (s.startsWith("'") && s.endsWith("'")) {
             return s;
         } else if (s.startsWith("\"") && s.endsWith("\"")) {
-            return s.replaceAll("([`^])", "^$1");
+            return WINDOWS_SHELL_QUOTED_CHARS.matcher(s).replaceAll("^$1");
         }
-        return s.replaceAll("([&><|;^`])", "^$1");
+        return WINDOWS_SHELL_CHARS.matcher(s).replaceAll("^$1");
     }
 
 
@@ -167,13 +212,14 @@ public class DataContextUtils {
      */
     public static File replaceTokensInFile(final File sourceFile, final Map<String, Map<String, String>> dataContext,
                                            final Framework framework) throws IOException {
-        //use ReplaceTokens to replace tokens within the file
-        final ReplaceTokens replaceTokens = new ReplaceTokens(new InputStreamReader(new FileInputStream(sourceFile)));
-        final Map<String, String> toks = flattenDataContext(dataContext);
-        configureReplaceTokens(toks, replaceTokens);
-        final File temp = ScriptfileUtils.writeScriptTempfile(framework, replaceTokens);
-        ScriptfileUtils.setExecutePermissions(temp);
-        return temp;
+        final Reader reader = new InputStreamReader(new FileInputStream(sourceFile));
+        final DataContextTemplate template;
+        try {
+            template = DataContextTemplate.compileTokens(reader);
+        } finally {
+            reader.close();
+        }
+        return writeScriptTempfile(framework, template, dataContext);
     }
 
     /**
@@ -187,14 +233,7 @@ public class DataContextUtils {
      */
     public static File replaceTokensInScript(final String script, final Map<String, Map<String, String>> dataContext,
                                            final Framework framework) throws IOException {
-        //use ReplaceTokens to replace tokens within the content
-        final Reader read = new StringReader(script);
-        final ReplaceTokens replaceTokens = new ReplaceTokens(read);
-        final Map<String, String> toks = flattenDataContext(dataContext);
-        configureReplaceTokens(toks, replaceTokens);
-        final File temp = ScriptfileUtils.writeScriptTempfile(framework, replaceTokens);
-        ScriptfileUtils.setExecutePermissions(temp);
-        return temp;
+        return writeScriptTempfile(framework, compileScriptTokens(script), dataContext);
     }
     /**
      * Copies the source stream to a temp file, replacing the @key.X@ tokens with the values from the data context
@@ -208,11 +247,26 @@ public class DataContextUtils {
     public static File replaceTokensInStream(final InputStream stream, final Map<String, Map<String, String>> dataContext,
                                            final Framework framework) throws IOException {
 
-        //use ReplaceTokens to replace tokens within the stream
-        final ReplaceTokens replaceTokens = new ReplaceTokens(new InputStreamReader(stream));
-        final Map<String, String> toks = flattenDataContext(dataContext);
-        configureReplaceTokens(toks, replaceTokens);
-        final File temp = ScriptfileUtils.writeScriptTempfile(framework, replaceTokens);
+        //the stream is left open for the caller to close
+        return writeScriptTempfile(framework, DataContextTemplate.compileTokens(new InputStreamReader(stream)),
+            dataContext);
+    }
+
+    /**
+     * Render the template with the data context to a new temp file, with each line ending in the system line
+     * separator, and set the execute permissions of the file
+     */
+    private static File writeScriptTempfile(final Framework framework, final DataContextTemplate template,
+                                            final Map<String, Map<String, String>> dataContext) throws IOException {
+        final File temp = File.createTempFile("dispatch", ".tmp", new File(framework.getProperty(
+            "framework.var.dir")));
+        final Writer writer = new BufferedWriter(new FileWriter(temp));
+        try {
+            template.writeLines(dataContext, writer);
+        } finally {
+            writer.close();
+        }
+        temp.deleteOnExit();
         ScriptfileUtils.setExecutePermissions(temp);
         return temp;
     }
@@ -27,6 +27,7 @@ import com.dtolabs.rundeck.core.common.INodeEntry;
 import com.dtolabs.rundeck.core.execution.commands.CommandInterpreter;
 import com.dtolabs.rundeck.core.execution.commands.InterpreterResult;
 import com.dtolabs.rundeck.core.execution.dispatch.Dispatchable;
+import com.dtolabs.rundeck.core.execution.dispatch.NodeDispatchListener;
 import com.dtolabs.rundeck.core.execution.dispatch.DispatcherResult;
 import com.dtolabs.rundeck.core.execution.service.NodeExecutorResult;
 
@@ -70,6 +71,12 @@ public interface ExecutionListener {
      */
     public FailedNodesListener getFailedNodesListener();
 
+    /**
+     * Return a listener for the start and completion of dispatch to each node
+     *
+     * @return listener, or null
+     */
+    public NodeDispatchListener getNodeDispatchListener();
 
     /**
      * Called when executionb begins
@@ -100,4 +100,12 @@ public interface ExecutionService extends FrameworkSupportService {
      */
     public NodeExecutorResult executeCommand(ExecutionContext context, String[] command, INodeEntry node) throws
         ExecutionException;
+
+    /**
+     * Execute a command within the context on the node, with the local file as its input.
+     *
+     * @throws ExecutionException if the node executor for the node does not support input
+     */
+    public NodeExecutorResult executeCommandWithInput(ExecutionContext context, String[] command, File input,
+                                                      INodeEntry node) throws ExecutionException;
 }
@@ -230,6 +230,17 @@ class ExecutionServiceImpl implements ExecutionService {
 
     public NodeExecutorResult executeCommand(final ExecutionContext context, final String[] command,
                                              final INodeEntry node) throws ExecutionException {
+        return executeCommand(context, command, null, node);
+    }
+
+    public NodeExecutorResult executeCommandWithInput(final ExecutionContext context, final String[] command,
+                                                      final File input, final INodeEntry node) throws
+        ExecutionException {
+        return executeCommand(context, command, input, node);
+    }
+
+    private NodeExecutorResult executeCommand(final ExecutionContext context, final String[] command,
+                                              final File input, final INodeEntry node) throws ExecutionException {
 
         if (null != context.getExecutionListener()) {
             context.getExecutionListener().beginNodeExecution(context, command, node);
@@ -240,6 +251,10 @@ class ExecutionServiceImpl implements ExecutionService {
         } catch (ExecutionServiceException e) {
             throw new ExecutionException(e);
         }
+        if (null != input && !(nodeExecutor instanceof InputNodeExecutor)) {
+            throw new ExecutionException(
+                "Node executor for node '" + node.getNodename() + "' does not support input: " + nodeExecutor);
+        }
 
         //create node context for node and substitute data references in command
         final Map<String, Map<String, String>> nodeDataContext =
@@ -252,7 +267,11 @@ class ExecutionServiceImpl implements ExecutionService {
         try {
             final ExecutionContextImpl nodeContext = ExecutionContextImpl.createExecutionContextImpl(context,
                 nodeDataContext);
-            result = nodeExecutor.executeCommand(nodeContext, nodeCommand, node);
+            if (null != input) {
+                result = ((InputNodeExecutor) nodeExecutor).executeCommand(nodeContext, nodeCommand, input, node);
+            } else {
+                result = nodeExecutor.executeCommand(nodeContext, nodeCommand, node);
+            }
         } finally {
             loggingReformatter.resetOutputStreams();
             if (null != context.getExecutionListener()) {
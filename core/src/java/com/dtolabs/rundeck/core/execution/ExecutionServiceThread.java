@@ -47,10 +47,10 @@ public class ExecutionServiceThread extends ServiceThreadBase {
     }
 
     public void run() {
-        if (null == this.eservice || null == this.eitem || null==this.econtext) {
-            throw new IllegalStateException("project or execution detail not instantiated");
-        }
         try {
+            if (null == this.eservice || null == this.eitem || null==this.econtext) {
+                throw new IllegalStateException("project or execution detail not instantiated");
+            }
             result = eservice.executeItem(econtext, eitem);
             success = result.isSuccess();
             if (null != result.getException()) {
@@ -62,6 +62,8 @@ public class ExecutionServiceThread extends ServiceThreadBase {
         } catch (ExecutionException e) {
             e.printStackTrace();
             thrown = e;
+        } finally {
+            complete();
         }
     }
 
@@ -40,6 +40,14 @@ public interface FailedNodesListener {
      */
     public void nodesFailed(Map<String,Object> failures);
 
+    /**
+     * Called with the names of nodes whose execution was aborted, or not started, because execution on another node
+     * failed.
+     *
+     * @param names node names
+     */
+    public void nodesAborted(Collection<String> names);
+
     /**
      * Called if no nodes failed during execution.
      */
@@ -23,18 +23,26 @@
 */
 package com.dtolabs.rundeck.core.execution;
 
+import org.apache.log4j.Logger;
+
 import java.util.*;
 
 /**
  * ServiceThreadBase is ...
+ * <p/>
+ * A {@link ServiceThreadListener} can be added to be notified when the execution finishes, instead of joining the
+ * thread. Subclasses must call {@link #complete()} when the execution is finished.
  *
  * @author Greg Schueler <a href="mailto:greg@dtosolutions.com">greg@dtosolutions.com</a>
  */
 public class ServiceThreadBase extends Thread {
+    static Logger logger = Logger.getLogger(ServiceThreadBase.class.getName());
     volatile boolean success = false;
     private volatile boolean aborted = false;
     volatile Throwable thrown;
     volatile Object resultObject;
+    private final List<ServiceThreadListener> listeners = new ArrayList<ServiceThreadListener>();
+    private boolean completed = false;
 
     public void abort() {
         if (isAlive()) {
@@ -58,4 +66,55 @@ public class ServiceThreadBase extends Thread {
     public Object getResultObject() {
         return resultObject;
     }
+
+    /**
+     * Add a listener to be notified when the execution has finished.  If it has already finished, the listener is
+     * notified immediately.
+     *
+     * @param listener the listener
+     */
+    public void addCompletionListener(final ServiceThreadListener listener) {
+        synchronized (listeners) {
+            if (!completed) {
+                listeners.add(listener);
+                return;
+            }
+        }
+        notifyListener(listener);
+    }
+
+    /**
+     * Return true if the execution has finished
+     */
+    public boolean isCompleted() {
+        synchronized (listeners) {
+            return completed;
+        }
+    }
+
+    /**
+     * Mark the execution as finished, and notify the listeners
+     */
+    protected void complete() {
+        final List<ServiceThreadListener> toNotify;
+        synchronized (listeners) {
+            if (completed) {
+                return;
+            }
+            completed = true;
+            toNotify = new ArrayList<ServiceThreadListener>(listeners);
+            listeners.clear();
+        }
+        for (final ServiceThreadListener listener : toNotify) {
+            notifyListener(listener);
+        }
+    }
+
+    private void notifyListener(final ServiceThreadListener listener) {
+        try {
+            listener.threadCompleted(this);
+        } catch (Throwable t) {
+            logger.error("Execution completion listener failed for thread " + getName() + ": " + t.getMessage(), t);
+        }
+    }
 }
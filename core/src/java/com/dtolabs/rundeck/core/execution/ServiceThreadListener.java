@@ -0,0 +1,34 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* ServiceThreadListener.java
+*
+*/
+package com.dtolabs.rundeck.core.execution;
+
+/**
+ * ServiceThreadListener is notified when a {@link ServiceThreadBase} has finished its execution.
+ */
+public interface ServiceThreadListener {
+    /**
+     * Called once after the thread has finished its execution, and the result is available.  It is called by the
+     * service thread itself, or by the thread adding the listener if the execution had already finished.
+     *
+     * @param thread the thread
+     */
+    public void threadCompleted(ServiceThreadBase thread);
+}
@@ -49,10 +49,10 @@ public class WorkflowExecutionServiceThread extends ServiceThreadBase {
     }
 
     public void run() {
-        if (null == this.weservice || null == this.weitem || null == this.econtext) {
-            throw new IllegalStateException("project or execution detail not instantiated");
-        }
         try {
+            if (null == this.weservice || null == this.weitem || null == this.econtext) {
+                throw new IllegalStateException("project or execution detail not instantiated");
+            }
             final WorkflowExecutor executorForItem = weservice.getExecutorForItem(weitem);
             result = executorForItem.executeWorkflow(econtext,weitem);
             success = result.isSuccess();
@@ -63,6 +63,8 @@ public class WorkflowExecutionServiceThread extends ServiceThreadBase {
         } catch (Throwable e) {
             e.printStackTrace(System.err);
             thrown = e;
+        } finally {
+            complete();
         }
     }
 
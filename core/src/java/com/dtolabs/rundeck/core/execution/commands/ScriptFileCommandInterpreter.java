@@ -30,18 +30,41 @@ import com.dtolabs.rundeck.core.execution.ExecutionContext;
 import com.dtolabs.rundeck.core.execution.ExecutionException;
 import com.dtolabs.rundeck.core.execution.ExecutionItem;
 import com.dtolabs.rundeck.core.execution.ExecutionService;
+import com.dtolabs.rundeck.core.execution.impl.common.BaseFileCopier;
 import com.dtolabs.rundeck.core.execution.service.*;
 
-import java.io.File;
+import java.io.*;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 
 /**
  * ExecFileCommandInterpreter is ...
+ * <p/>
+ * Scripts are run in one of two modes.  In "copy" mode, the default, the script is copied to the node, made
+ * executable, and then executed.  In "pipe" mode, the script is written to the standard input of the shell on the node,
+ * in a single remote command.  Pipe mode is used if the node attribute {@value #SCRIPT_EXEC_MODE_ATTRIBUTE}, or else
+ * the project or framework property {@value #SCRIPT_EXEC_MODE_PROPERTY}, is "pipe", and the node executor supports
+ * input.  It is not used for windows nodes, or for scripts which start with an interpreter line for a program which is
+ * not a shell, and the script must not read its own standard input.
  *
  * @author Greg Schueler <a href="mailto:greg@dtosolutions.com">greg@dtosolutions.com</a>
  */
 public class ScriptFileCommandInterpreter implements CommandInterpreter {
     public static final String SERVICE_IMPLEMENTATION_NAME = "script";
+    public static final String SCRIPT_EXEC_MODE_ATTRIBUTE = "script-exec-mode";
+    public static final String SCRIPT_EXEC_MODE_PROPERTY = "project.script-exec-mode";
+    public static final String MODE_COPY = "copy";
+    public static final String MODE_PIPE = "pipe";
+    /**
+     * Shells which can read the script from standard input with "-s"
+     */
+    static final List<String> PIPE_SHELLS = Arrays.asList("sh", "bash", "ksh", "zsh", "dash");
+    static final String DEFAULT_PIPE_SHELL = "sh";
+    /**
+     * Maximum length of the interpreter line read from the start of a script
+     */
+    private static final int MAX_INTERPRETER_LINE = 1024;
     private Framework framework;
 
     public ScriptFileCommandInterpreter(Framework framework) {
@@ -52,6 +75,32 @@ public class ScriptFileCommandInterpreter implements CommandInterpreter {
         InterpreterException {
         final ScriptFileCommand script = (ScriptFileCommand) item;
         final ExecutionService executionService = framework.getExecutionService();
+        InputStream stream = null;
+        if (null == script.getScript() && null == script.getServerScriptFilePath()) {
+            stream = script.getScriptAsStream();
+        }
+        if (isPipeMode(context, node)) {
+            final String[] shell;
+            try {
+                if (null != script.getScript()) {
+                    shell = pipeShellCommand(new BufferedReader(new StringReader(script.getScript())));
+                } else if (null != script.getServerScriptFilePath()) {
+                    shell = pipeShellCommand(new File(script.getServerScriptFilePath()));
+                } else {
+                    stream = new BufferedInputStream(stream);
+                    shell = pipeShellCommand((BufferedInputStream) stream);
+                }
+            } catch (IOException e) {
+                throw new InterpreterException(e);
+            }
+            if (null != shell) {
+                return pipeScript(context, script, stream, shell, node);
+            }
+            if (null != context.getExecutionListener()) {
+                context.getExecutionListener().log(3,
+                    "Script interpreter is not a shell, copying the script to node: " + node.getNodename());
+            }
+        }
         final String filepath; //result file path
         try {
             if (null != script.getScript()) {
@@ -60,7 +109,7 @@ public class ScriptFileCommandInterpreter implements CommandInterpreter {
                 filepath = executionService.fileCopyFile(context, new File(
                     script.getServerScriptFilePath()), node);
             } else {
-                filepath = executionService.fileCopyFileStream(context, script.getScriptAsStream(), node);
+                filepath = executionService.fileCopyFileStream(context, stream, node);
             }
         } catch (FileCopierException e) {
             throw new InterpreterException(e);
@@ -80,23 +129,138 @@ public class ScriptFileCommandInterpreter implements CommandInterpreter {
                 }
             }
 
-            final String[] args = script.getArgs();
-            //replace data references
-            String[] newargs=null;
-            if(null!=args && args.length>0) {
-                newargs = new String[args.length + 1];
-                final String[] replargs= DataContextUtils.replaceDataReferences(args, context.getDataContext());
-                newargs[0]=filepath;
-                System.arraycopy(replargs, 0, newargs, 1, replargs.length);
-            }else{
-                newargs= new String[]{filepath};
-            }
             //XXX: windows specific call?
 
-            return framework.getExecutionService().executeCommand(context, newargs, node);
+            return framework.getExecutionService().executeCommand(context,
+                commandWithArgs(new String[]{filepath}, script.getArgs(), context), node);
             //TODO: remove remote temp file after exec?
         } catch (ExecutionException e) {
             throw new InterpreterException(e);
         }
     }
+
+    /**
+     * Write the script with data references replaced to a local temp file, and execute the shell on the node with the
+     * file as its input.
+     */
+    private InterpreterResult pipeScript(final ExecutionContext context, final ScriptFileCommand script,
+                                         final InputStream stream, final String[] shell, final INodeEntry node) throws
+        InterpreterException {
+        final File tempfile;
+        try {
+            tempfile = BaseFileCopier.writeScriptTempFile(context,
+                null != script.getServerScriptFilePath() ? new File(script.getServerScriptFilePath()) : null,
+                stream, script.getScript(), node);
+        } catch (FileCopierException e) {
+            throw new InterpreterException(e);
+        }
+        try {
+            return framework.getExecutionService().executeCommandWithInput(context,
+                commandWithArgs(shell, script.getArgs(), context), tempfile, node);
+        } catch (ExecutionException e) {
+            throw new InterpreterException(e);
+        } finally {
+            if (!tempfile.delete()) {
+                tempfile.deleteOnExit();
+            }
+        }
+    }
+
+    /**
+     * Return the command followed by the script args with data references replaced
+     */
+    private static String[] commandWithArgs(final String[] command, final String[] args,
+                                            final ExecutionContext context) {
+        if (null == args || args.length < 1) {
+            return command;
+        }
+        final String[] replargs = DataContextUtils.replaceDataReferences(args, context.getDataContext());
+        final String[] newargs = new String[command.length + replargs.length];
+        System.arraycopy(command, 0, newargs, 0, command.length);
+        System.arraycopy(replargs, 0, newargs, command.length, replargs.length);
+        return newargs;
+    }
+
+    /**
+     * Return true if the script should be piped to the node
+     */
+    private boolean isPipeMode(final ExecutionContext context, final INodeEntry node) {
+        if ("windows".equalsIgnoreCase(node.getOsFamily())) {
+            return false;
+        }
+        String mode = null;
+        if (null != node.getAttributes()) {
+            mode = node.getAttributes().get(SCRIPT_EXEC_MODE_ATTRIBUTE);
+        }
+        if (null == mode) {
+            mode = framework.getProjectProperty(context.getFrameworkProject(), SCRIPT_EXEC_MODE_PROPERTY);
+        }
+        if (!MODE_PIPE.equals(mode)) {
+            return false;
+        }
+        try {
+            return framework.getNodeExecutorForNodeAndProject(node, context.getFrameworkProject())
+                instanceof InputNodeExecutor;
+        } catch (ExecutionServiceException e) {
+            return false;
+        }
+    }
+
+    private static String[] pipeShellCommand(final File file) throws IOException {
+        final BufferedReader reader = new BufferedReader(new FileReader(file));
+        try {
+            return pipeShellCommand(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Read the interpreter line from the stream, and reset it to the start
+     */
+    private static String[] pipeShellCommand(final BufferedInputStream stream) throws IOException {
+        stream.mark(MAX_INTERPRETER_LINE);
+        final byte[] buf = new byte[MAX_INTERPRETER_LINE];
+        int len = 0;
+        int c;
+        while (len < buf.length && (c = stream.read()) >= 0 && c != '\n') {
+            buf[len++] = (byte) c;
+        }
+        stream.reset();
+        return pipeShellCommand(new BufferedReader(new StringReader(new String(buf, 0, len))));
+    }
+
+    /**
+     * Return the command which reads the script from standard input, followed by "--" so that the script args follow,
+     * or null if the script has an interpreter line for a program which is not a known shell.
+     *
+     * @param reader reader for the start of the script
+     *
+     * @return shell command
+     *
+     * @throws IOException on io error
+     */
+    static String[] pipeShellCommand(final BufferedReader reader) throws IOException {
+        final String line = reader.readLine();
+        final ArrayList<String> command = new ArrayList<String>();
+        if (null != line && line.startsWith("#!")) {
+            command.addAll(Arrays.asList(line.substring(2).trim().split("\\s+")));
+            if (command.isEmpty() || "".equals(command.get(0))) {
+                return null;
+            }
+            String program = command.get(0);
+            program = program.substring(program.lastIndexOf('/') + 1);
+            if ("env".equals(program) && command.size() > 1) {
+                program = command.get(1);
+            }
+            if (!PIPE_SHELLS.contains(program)) {
+                return null;
+            }
+        } else {
+            command.add(DEFAULT_PIPE_SHELL);
+        }
+        command.add("-s");
+        command.add("--");
+        return command.toArray(new String[command.size()]);
+    }
 }
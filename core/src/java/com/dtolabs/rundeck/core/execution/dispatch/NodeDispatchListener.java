@@ -0,0 +1,54 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* NodeDispatchListener.java
+*
+*/
+package com.dtolabs.rundeck.core.execution.dispatch;
+
+import com.dtolabs.rundeck.core.common.INodeEntry;
+import com.dtolabs.rundeck.core.execution.StatusResult;
+
+/**
+ * NodeDispatchListener is notified as the dispatch to each node starts and completes, rather than when the dispatch
+ * to the whole node set is complete. The methods may be called concurrently from the threads running the node tasks
+ * of a parallel dispatch.
+ */
+public interface NodeDispatchListener {
+    /**
+     * Called before dispatching to the node
+     *
+     * @param node the node
+     */
+    public void nodeStarted(INodeEntry node);
+
+    /**
+     * Called when dispatch to the node succeeded
+     *
+     * @param node   the node
+     * @param result the result
+     */
+    public void nodeFinished(INodeEntry node, StatusResult result);
+
+    /**
+     * Called when dispatch to the node failed
+     *
+     * @param node    the node
+     * @param failure the unsuccessful {@link StatusResult}, the Throwable thrown, or a message
+     */
+    public void nodeFailed(INodeEntry node, Object failure);
+}
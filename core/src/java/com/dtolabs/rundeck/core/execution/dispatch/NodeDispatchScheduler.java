@@ -0,0 +1,523 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* NodeDispatchScheduler.java
+*
+*/
+package com.dtolabs.rundeck.core.execution.dispatch;
+
+import com.dtolabs.rundeck.core.utils.ThreadContext;
+import org.apache.log4j.Logger;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * NodeDispatchScheduler is a process wide pool of threads which run the node tasks of parallel dispatches. Each {@link
+ * Dispatch} has its own queue of tasks and a limit on the number of its tasks which run at once, and the pool has a
+ * limit on the number of threads. Pooled threads take tasks from the dispatches which can run more tasks in round
+ * robin order, so that concurrent executions share the threads fairly.
+ * <p/>
+ * The thread which executes a dispatch also runs its tasks while it waits, so every dispatch makes progress even if
+ * all pooled threads are busy, including dispatches started from within a node task. The values of inheritable thread
+ * locals registered with {@link ThreadContext} in the dispatching thread are installed in the pooled threads while they
+ * run its tasks.
+ * <p/>
+ * A dispatch can be cancelled with {@link Dispatch#cancel()}, for example by a task which failed: tasks which have not
+ * started are not run, and the {@link TaskCancellation} of each running task is cancelled.
+ * <p/>
+ * The maximum number of threads of the shared instance is set by the system property {@value #MAX_THREADS_PROPERTY},
+ * and the pool statistics are exported via JMX as {@value #OBJECT_NAME}.
+ */
+public class NodeDispatchScheduler implements NodeDispatchSchedulerMBean {
+    static Logger logger = Logger.getLogger(NodeDispatchScheduler.class.getName());
+    public static final String MAX_THREADS_PROPERTY = "rdeck.dispatch.maxthreads";
+    public static final int DEFAULT_MAX_THREADS = 200;
+    /**
+     * Time an idle pooled thread waits for work before exiting, in milliseconds
+     */
+    public static final long DEFAULT_KEEP_ALIVE = 60000;
+    public static final String OBJECT_NAME = "com.dtolabs.rundeck:type=NodeDispatchScheduler";
+    private static NodeDispatchScheduler instance;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition work = lock.newCondition();
+    /**
+     * Dispatches which have tasks that can be run
+     */
+    private final LinkedList<Dispatch> ready = new LinkedList<Dispatch>();
+    private final long keepAlive;
+    private int maxThreads;
+    private int threadCount;
+    private int idleThreads;
+    private int queuedTasks;
+    private int activeTasks;
+    private int dispatchCount;
+    private long completedTasks;
+    private int threadSequence;
+
+    /**
+     * Create a scheduler separate from the shared instance
+     *
+     * @param maxThreads maximum number of pooled threads
+     * @param keepAlive  time an idle thread waits for work before exiting, in milliseconds
+     */
+    NodeDispatchScheduler(final int maxThreads, final long keepAlive) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("maxThreads must be positive: " + maxThreads);
+        }
+        this.maxThreads = maxThreads;
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * Return the shared instance
+     *
+     * @return the scheduler
+     */
+    public static synchronized NodeDispatchScheduler getInstance() {
+        if (null == instance) {
+            int max = Integer.getInteger(MAX_THREADS_PROPERTY, DEFAULT_MAX_THREADS);
+            if (max < 1) {
+                logger.warn("Invalid value for " + MAX_THREADS_PROPERTY + ": " + max + ", using default: "
+                            + DEFAULT_MAX_THREADS);
+                max = DEFAULT_MAX_THREADS;
+            }
+            instance = new NodeDispatchScheduler(max, DEFAULT_KEEP_ALIVE);
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(instance, new ObjectName(OBJECT_NAME));
+            } catch (Exception e) {
+                logger.debug("Unable to register " + OBJECT_NAME + ": " + e.getMessage(), e);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Create a dispatch
+     *
+     * @param concurrency maximum number of its tasks to run at once
+     *
+     * @return the dispatch
+     */
+    public Dispatch createDispatch(final int concurrency) {
+        return new Dispatch(Math.max(1, concurrency));
+    }
+
+    /**
+     * Wake or start a thread if there is work to do. Must be called with the lock held.
+     */
+    private void signalWorker() {
+        if (ready.isEmpty()) {
+            return;
+        }
+        if (idleThreads > 0) {
+            work.signal();
+        } else if (threadCount < maxThreads) {
+            threadCount++;
+            final Thread thread = new Thread(new Worker(), "NodeDispatch-" + (++threadSequence));
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    /**
+     * Wait for the next task for a pooled thread
+     *
+     * @return the task, or null if the thread should exit, in which case it is no longer counted
+     */
+    private Task next() {
+        lock.lock();
+        try {
+            while (ready.isEmpty()) {
+                if (threadCount > maxThreads) {
+                    threadCount--;
+                    return null;
+                }
+                final boolean signalled;
+                idleThreads++;
+                try {
+                    signalled = work.await(keepAlive, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    threadCount--;
+                    return null;
+                } finally {
+                    idleThreads--;
+                }
+                if (!signalled && ready.isEmpty()) {
+                    threadCount--;
+                    return null;
+                }
+            }
+            final Dispatch dispatch = ready.removeFirst();
+            dispatch.inReady = false;
+            final Task task = new Task(dispatch, dispatch.take());
+            signalWorker();
+            return task;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Runs tasks until there is no work for the keep alive time
+     */
+    private class Worker implements Runnable {
+        public void run() {
+            //values inherited from the thread which started this one do not apply to the tasks
+            ThreadContext.clear();
+            boolean exited = false;
+            try {
+                Task task;
+                while (null != (task = next())) {
+                    final ThreadContext previous = task.dispatch.context.install();
+                    try {
+                        task.dispatch.run(task.callable);
+                    } finally {
+                        previous.install();
+                    }
+                }
+                exited = true;
+            } finally {
+                if (!exited) {
+                    lock.lock();
+                    try {
+                        threadCount--;
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+            }
+        }
+    }
+
+    private static class Task {
+        final Dispatch dispatch;
+        final Callable<?> callable;
+
+        Task(final Dispatch dispatch, final Callable<?> callable) {
+            this.dispatch = dispatch;
+            this.callable = callable;
+        }
+    }
+
+    /**
+     * A set of node tasks which are run by {@link #execute()}
+     */
+    public class Dispatch {
+        private final int concurrency;
+        private final LinkedList<Callable<?>> pending = new LinkedList<Callable<?>>();
+        private final Condition changed = lock.newCondition();
+        private final List<TaskCancellation> running = new ArrayList<TaskCancellation>();
+        private ThreadContext context;
+        private boolean started;
+        private boolean cancelled;
+        private boolean inReady;
+        private int active;
+        private int remaining;
+        private Throwable failure;
+
+        private Dispatch(final int concurrency) {
+            this.concurrency = concurrency;
+        }
+
+        /**
+         * Add a task, before the dispatch is executed
+         *
+         * @param callable the task
+         */
+        public void add(final Callable<?> callable) {
+            lock.lock();
+            try {
+                if (started) {
+                    throw new IllegalStateException("Dispatch has already been executed");
+                }
+                pending.add(callable);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Run all tasks and wait for them to complete. If the waiting thread is interrupted, the dispatch is
+         * cancelled.
+         *
+         * @throws DispatcherException if a task threw an exception, or the thread was interrupted
+         */
+        public void execute() throws DispatcherException {
+            context = ThreadContext.capture();
+            lock.lock();
+            try {
+                if (started) {
+                    throw new IllegalStateException("Dispatch has already been executed");
+                }
+                started = true;
+                remaining = pending.size();
+                queuedTasks += remaining;
+                dispatchCount++;
+                if (runnable()) {
+                    ready.addLast(this);
+                    inReady = true;
+                    signalWorker();
+                }
+            } finally {
+                lock.unlock();
+            }
+            boolean done = false;
+            try {
+                while (!done) {
+                    Callable<?> callable = null;
+                    lock.lock();
+                    try {
+                        while (remaining > 0 && !runnable()) {
+                            changed.await();
+                        }
+                        if (remaining > 0) {
+                            callable = take();
+                        } else {
+                            done = true;
+                        }
+                    } finally {
+                        lock.unlock();
+                    }
+                    if (null != callable) {
+                        run(callable);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new DispatcherException("Interrupted waiting for node dispatch", e);
+            } finally {
+                if (!done) {
+                    cancel();
+                }
+                lock.lock();
+                try {
+                    dispatchCount--;
+                } finally {
+                    lock.unlock();
+                }
+            }
+            if (null != failure) {
+                throw new DispatcherException("Node dispatch failed: " + failure, failure);
+            }
+        }
+
+        /**
+         * Return true if a task can be started. Must be called with the lock held.
+         */
+        private boolean runnable() {
+            return !pending.isEmpty() && active < concurrency;
+        }
+
+        /**
+         * Take the next task, and update the ready queue. Must be called with the lock held.
+         */
+        private Callable<?> take() {
+            final Callable<?> callable = pending.removeFirst();
+            active++;
+            activeTasks++;
+            queuedTasks--;
+            if (runnable() && !inReady) {
+                ready.addLast(this);
+                inReady = true;
+            } else if (!runnable() && inReady) {
+                ready.remove(this);
+                inReady = false;
+            }
+            return callable;
+        }
+
+        /**
+         * Cancel the dispatch: tasks which have not started are not run, and running tasks other than the one run by
+         * the current thread are cancelled. {@link #execute()} still waits for the running tasks to complete.
+         */
+        public void cancel() {
+            final ArrayList<TaskCancellation> tocancel = new ArrayList<TaskCancellation>();
+            lock.lock();
+            try {
+                if (cancelled) {
+                    return;
+                }
+                cancelled = true;
+                queuedTasks -= pending.size();
+                remaining -= pending.size();
+                pending.clear();
+                if (inReady) {
+                    ready.remove(this);
+                    inReady = false;
+                }
+                tocancel.addAll(running);
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            final TaskCancellation self = TaskCancellation.current();
+            for (final TaskCancellation cancellation : tocancel) {
+                if (cancellation != self) {
+                    cancellation.cancel();
+                }
+            }
+        }
+
+        /**
+         * Return true if the dispatch was cancelled
+         *
+         * @return true if cancelled
+         */
+        public boolean isCancelled() {
+            lock.lock();
+            try {
+                return cancelled;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void run(final Callable<?> callable) {
+            final TaskCancellation cancellation = TaskCancellation.begin();
+            Throwable thrown = null;
+            try {
+                final boolean skip;
+                lock.lock();
+                try {
+                    //the dispatch may have been cancelled after the task was taken
+                    skip = cancelled;
+                    running.add(cancellation);
+                } finally {
+                    lock.unlock();
+                }
+                if (!skip) {
+                    callable.call();
+                }
+            } catch (Exception e) {
+                thrown = e;
+            } catch (Error e) {
+                thrown = e;
+                throw e;
+            } finally {
+                finish(cancellation, thrown);
+            }
+        }
+
+        private void finish(final TaskCancellation cancellation, final Throwable thrown) {
+            cancellation.end();
+            lock.lock();
+            try {
+                running.remove(cancellation);
+                active--;
+                remaining--;
+                activeTasks--;
+                completedTasks++;
+                if (null != thrown && null == failure) {
+                    failure = thrown;
+                }
+                //the finishing thread looks for work next, so no other thread needs to be woken
+                if (runnable() && !inReady) {
+                    ready.addLast(this);
+                    inReady = true;
+                }
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public int getMaxThreads() {
+        lock.lock();
+        try {
+            return maxThreads;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void setMaxThreads(final int maxThreads) {
+        if (maxThreads < 1) {
+            throw new IllegalArgumentException("maxThreads must be positive: " + maxThreads);
+        }
+        lock.lock();
+        try {
+            this.maxThreads = maxThreads;
+            work.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getThreadCount() {
+        lock.lock();
+        try {
+            return threadCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getIdleThreadCount() {
+        lock.lock();
+        try {
+            return idleThreads;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getQueuedTaskCount() {
+        lock.lock();
+        try {
+            return queuedTasks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getActiveTaskCount() {
+        lock.lock();
+        try {
+            return activeTasks;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int getDispatchCount() {
+        lock.lock();
+        try {
+            return dispatchCount;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getCompletedTaskCount() {
+        lock.lock();
+        try {
+            return completedTasks;
+        } finally {
+            lock.unlock();
+        }
+    }
+}
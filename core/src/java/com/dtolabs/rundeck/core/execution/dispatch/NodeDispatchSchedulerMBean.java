@@ -0,0 +1,68 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* NodeDispatchSchedulerMBean.java
+*
+*/
+package com.dtolabs.rundeck.core.execution.dispatch;
+
+/**
+ * NodeDispatchSchedulerMBean is the management interface of the {@link NodeDispatchScheduler}, exported via JMX.
+ */
+public interface NodeDispatchSchedulerMBean {
+    /**
+     * @return maximum number of pooled threads
+     */
+    public int getMaxThreads();
+
+    /**
+     * Set the maximum number of pooled threads, excess idle threads exit
+     *
+     * @param maxThreads maximum
+     */
+    public void setMaxThreads(int maxThreads);
+
+    /**
+     * @return number of pooled threads
+     */
+    public int getThreadCount();
+
+    /**
+     * @return number of pooled threads waiting for work
+     */
+    public int getIdleThreadCount();
+
+    /**
+     * @return number of node tasks waiting to run
+     */
+    public int getQueuedTaskCount();
+
+    /**
+     * @return number of node tasks running, including those run by the dispatching threads
+     */
+    public int getActiveTaskCount();
+
+    /**
+     * @return number of dispatches in progress
+     */
+    public int getDispatchCount();
+
+    /**
+     * @return number of node tasks completed
+     */
+    public long getCompletedTaskCount();
+}
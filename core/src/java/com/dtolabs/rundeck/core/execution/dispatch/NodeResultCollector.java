@@ -0,0 +1,114 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* NodeResultCollector.java
+*
+*/
+package com.dtolabs.rundeck.core.execution.dispatch;
+
+import com.dtolabs.rundeck.core.common.INodeEntry;
+import com.dtolabs.rundeck.core.execution.StatusResult;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * NodeResultCollector collects the node results of a dispatch as the node tasks complete, and passes each event on
+ * to another listener.  It may be used from the concurrent node tasks of a parallel dispatch.
+ */
+public class NodeResultCollector implements NodeDispatchListener {
+    private final ConcurrentHashMap<String, StatusResult> results = new ConcurrentHashMap<String, StatusResult>();
+    private final ConcurrentHashMap<String, Object> failures = new ConcurrentHashMap<String, Object>();
+    private final Set<String> abortedNodes = Collections.synchronizedSet(new HashSet<String>());
+    private final NodeDispatchListener listener;
+
+    /**
+     * Create a collector
+     *
+     * @param listener listener to notify of each event, may be null
+     */
+    public NodeResultCollector(final NodeDispatchListener listener) {
+        this.listener = listener;
+    }
+
+    public void nodeStarted(final INodeEntry node) {
+        if (null != listener) {
+            listener.nodeStarted(node);
+        }
+    }
+
+    public void nodeFinished(final INodeEntry node, final StatusResult result) {
+        results.put(node.getNodename(), result);
+        if (null != listener) {
+            listener.nodeFinished(node, result);
+        }
+    }
+
+    public void nodeFailed(final INodeEntry node, final Object failure) {
+        if (failure instanceof StatusResult) {
+            results.put(node.getNodename(), (StatusResult) failure);
+        }
+        failures.put(node.getNodename(), failure);
+        if (null != listener) {
+            listener.nodeFailed(node, failure);
+        }
+    }
+
+    /**
+     * Record that dispatch to the node was aborted
+     *
+     * @param nodeName node name
+     */
+    public void nodeAborted(final String nodeName) {
+        abortedNodes.add(nodeName);
+    }
+
+    /**
+     * Return true if the node has a result or failure
+     *
+     * @param nodeName node name
+     *
+     * @return true if completed
+     */
+    public boolean isCompleted(final String nodeName) {
+        return results.containsKey(nodeName) || failures.containsKey(nodeName);
+    }
+
+    /**
+     * @return map of node name to result, for completed nodes which produced a result
+     */
+    public Map<String, StatusResult> getResults() {
+        return results;
+    }
+
+    /**
+     * @return map of node name to failure, for failed nodes
+     */
+    public Map<String, Object> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return names of aborted nodes
+     */
+    public Set<String> getAbortedNodes() {
+        return abortedNodes;
+    }
+}
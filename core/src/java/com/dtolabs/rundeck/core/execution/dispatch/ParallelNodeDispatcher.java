@@ -24,7 +24,6 @@
 package com.dtolabs.rundeck.core.execution.dispatch;
 
 import com.dtolabs.rundeck.core.NodesetFailureException;
-import com.dtolabs.rundeck.core.cli.CallableWrapperTask;
 import com.dtolabs.rundeck.core.common.Framework;
 import com.dtolabs.rundeck.core.common.INodeEntry;
 import com.dtolabs.rundeck.core.common.NodeFileParserException;
@@ -35,27 +34,29 @@ import com.dtolabs.rundeck.core.execution.StatusResult;
 import com.dtolabs.rundeck.core.execution.commands.InterpreterResult;
 import com.dtolabs.rundeck.core.tasks.dispatch.NodeExecutionStatusTask;
 import com.dtolabs.rundeck.core.utils.NodeSet;
-import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
-import org.apache.tools.ant.Task;
-import org.apache.tools.ant.taskdefs.Parallel;
 import org.apache.tools.ant.taskdefs.Sequential;
 
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
 
 /**
- * MultiNodeExecutor is ...
+ * ParallelNodeDispatcher dispatches to the nodes concurrently using the shared {@link NodeDispatchScheduler}, running
+ * at most the thread count of the nodeset at once.
+ * <p/>
+ * If keepgoing is false, the first node failure cancels the dispatch: node tasks which have not started are not run,
+ * and running node tasks are interrupted. Those nodes are reported to the {@link FailedNodesListener} as aborted
+ * rather than failed.
+ * <p/>
+ * The {@link NodeDispatchListener} of the execution listener is notified as each node task starts and completes.
  *
  * @author Greg Schueler <a href="mailto:greg@dtosolutions.com">greg@dtosolutions.com</a>
  */
 public class ParallelNodeDispatcher implements NodeDispatcher {
     public static final String STATUS_LISTENER_REF_ID = ParallelNodeDispatcher.class.getName() + ":status.listener";
-    public static final String NODE_NAME_LOCAL_REF_ID = ParallelNodeDispatcher.class.getName() + ":node.name";
-    public static final String NODE_USER_LOCAL_REF_ID = ParallelNodeDispatcher.class.getName() + ":node.user";
 
     private Framework framework;
 
@@ -90,48 +91,60 @@ public class ParallelNodeDispatcher implements NodeDispatcher {
         final HashSet<String> nodeNames = new HashSet<String>();
         FailedNodesListener failedListener = context.getExecutionListener().getFailedNodesListener();
 
-        Project project = new Project();
-
         context.getExecutionListener().log(3,
             "preparing for parallel execution...(keepgoing? " + keepgoing + ", threads: " + nodeset.getThreadCount()
             + ")");
-        configureNodeContextThreadLocalsForProject(project);
-        final Parallel parallelTask = new Parallel();
-        parallelTask.setProject(project);
-        parallelTask.setThreadCount(nodeset.getThreadCount());
-        parallelTask.setFailOnAny(!keepgoing);
+        final NodeDispatchScheduler.Dispatch dispatch = NodeDispatchScheduler.getInstance().createDispatch(
+            nodeset.getThreadCount());
         boolean success = false;
-        final HashMap<String, StatusResult> resultMap = new HashMap<String, StatusResult>();
-        final HashMap<String, Object> failureMap = new HashMap<String, Object>();
+        final NodeResultCollector collector = new NodeResultCollector(
+            context.getExecutionListener().getNodeDispatchListener());
+        final Map<String, StatusResult> resultMap = collector.getResults();
+        final Map<String, Object> failureMap = collector.getFailures();
+        final Set<String> abortedNodes = collector.getAbortedNodes();
+        final NodeResults results = new NodeResults(dispatch, !keepgoing, collector);
         for (final Object node1 : nodes) {
             final INodeEntry node = (INodeEntry) node1;
             final Callable tocall;
             if (null != item) {
-                tocall = execItemCallable(context, item, resultMap, node, failureMap);
+                tocall = execItemCallable(context, item, results, node);
             } else {
-                tocall = dispatchableCallable(context, toDispatch, resultMap, node, failureMap);
+                tocall = dispatchableCallable(context, toDispatch, results, node);
             }
             nodeNames.add(node.getNodename());
             context.getExecutionListener().log(3, "Create task for node: " + node.getNodename());
-            final CallableWrapperTask callableWrapperTask1 = new CallableWrapperTask(tocall);
-            callableWrapperTask1.setProject(project);
-            parallelTask.addTask(callableWrapperTask1);
+            dispatch.add(tocall);
         }
         if (null != failedListener) {
             failedListener.matchedNodes(nodeNames);
         }
         context.getExecutionListener().log(3, "parallel dispatch to nodes: " + nodeNames);
-        BuildException buildException;
+        DispatcherException dispatchFailure = null;
         try {
-            parallelTask.execute();
+            dispatch.execute();
             success = true;
-        } catch (BuildException e) {
-            buildException=e;
+        } catch (DispatcherException e) {
             context.getExecutionListener().log(0, e.getMessage());
-            if (!keepgoing) {
-                throw new DispatcherException(e);
+            dispatchFailure = e;
+        }
+        if (dispatch.isCancelled()) {
+            //nodes without a result were not started
+            for (final String nodeName : nodeNames) {
+                if (!collector.isCompleted(nodeName)) {
+                    collector.nodeAborted(nodeName);
+                }
+            }
+        }
+        if (abortedNodes.size() > 0) {
+            context.getExecutionListener().log(1,
+                "Execution aborted on the following " + abortedNodes.size() + " nodes: " + abortedNodes);
+            if (null != failedListener) {
+                failedListener.nodesAborted(abortedNodes);
             }
         }
+        if (null != dispatchFailure && !keepgoing) {
+            throw dispatchFailure;
+        }
         //evaluate the failed nodes
         if (failureMap.size() > 0) {
             if (null != failedListener) {
@@ -165,150 +178,91 @@ public class ParallelNodeDispatcher implements NodeDispatcher {
     }
 
     private Callable dispatchableCallable(final ExecutionContext context, final Dispatchable toDispatch,
-                                          final HashMap<String, StatusResult> resultMap, final INodeEntry node,
-                                          final Map<String, Object> failureMap) {
-        return new Callable() {
-            public Object call() throws Exception {
-                try {
-                    final StatusResult dispatch = toDispatch.dispatch(context, node);
-                    if (!dispatch.isSuccess()) {
-                        failureMap.put(node.getNodename(), dispatch);
-                    }
-                    resultMap.put(node.getNodename(), dispatch);
-                    return dispatch;
-                } catch (Throwable t) {
-                    failureMap.put(node.getNodename(), t);
-                    return null;
-                }
+                                          final NodeResults results, final INodeEntry node) {
+        return new NodeCallable(results, node) {
+            StatusResult call(final INodeEntry node) throws Exception {
+                return toDispatch.dispatch(context, node);
             }
         };
     }
 
     private Callable execItemCallable(final ExecutionContext context, final ExecutionItem item,
-                                      final HashMap<String, StatusResult> resultMap, final INodeEntry node,
-                                      final Map<String, Object> failureMap) {
-        return new Callable() {
-            public Object call() throws Exception {
-                try {
-                    final InterpreterResult interpreterResult = framework.getExecutionService().interpretCommand(
-                        context, item, node);
-                    if (!interpreterResult.isSuccess()) {
-                        failureMap.put(node.getNodename(), interpreterResult);
-                    }
-                    resultMap.put(node.getNodename(), interpreterResult);
-                    return interpreterResult;
-                } catch (Throwable t) {
-                    failureMap.put(node.getNodename(), t);
-                    return null;
-                }
+                                      final NodeResults results, final INodeEntry node) {
+        return new NodeCallable(results, node) {
+            StatusResult call(final INodeEntry node) throws Exception {
+                return framework.getExecutionService().interpretCommand(context, item, node);
             }
         };
     }
 
     /**
-     * Adds InheritableNodeLocal references to the Project for use by the node context tasks
-     *
-     * @param project the project
+     * Records the results of the node tasks of a dispatch
      */
-    public static void configureNodeContextThreadLocalsForProject(final Project project) {
-        final InheritableThreadLocal<String> localNodeName = new InheritableThreadLocal<String>();
-        final InheritableThreadLocal<String> localUserName = new InheritableThreadLocal<String>();
-        if (null == project.getReference(NODE_NAME_LOCAL_REF_ID)) {
-            project.addReference(NODE_NAME_LOCAL_REF_ID, localNodeName);
+    private static class NodeResults {
+        final NodeDispatchScheduler.Dispatch dispatch;
+        final boolean failFast;
+        final NodeResultCollector collector;
+
+        NodeResults(final NodeDispatchScheduler.Dispatch dispatch, final boolean failFast,
+                    final NodeResultCollector collector) {
+            this.dispatch = dispatch;
+            this.failFast = failFast;
+            this.collector = collector;
         }
-        if (null == project.getReference(NODE_USER_LOCAL_REF_ID)) {
-            project.addReference(NODE_USER_LOCAL_REF_ID, localUserName);
-        }
-    }
 
-    /**
-     * Extract the threadlocal stored as a reference in the project, and return the string value or null.
-     *
-     * @param nodeNameLocalRefId refid for the thread local variable
-     * @param project            Project
-     *
-     * @return value of the variable, or null if it is not found or the refid doesn't refer to a valid thread local
-     */
-    public static String getThreadLocalForProject(final String nodeNameLocalRefId, final Project project) {
-        final Object o = project.getReference(nodeNameLocalRefId);
-        String thrNode = null;
-        if (null != o && o instanceof InheritableThreadLocal) {
-            InheritableThreadLocal<String> local = (InheritableThreadLocal<String>) o;
-            thrNode = local.get();
+        void start(final INodeEntry node) {
+            collector.nodeStarted(node);
         }
-        return thrNode;
-    }
-
-    /**
-     * Add tasks to the Sequential to set threadlocal values for the node name and username
-     *
-     * @param nodeentry node entry
-     * @param project   ant Project
-     * @param seq       Sequential
-     */
-    public static void addNodeContextTasks(final INodeEntry nodeentry, final Project project,
-                                           final Sequential seq) {
-        //set thread local node name
-        final Task nodenamelocal = genSetThreadLocalRefValue(NODE_NAME_LOCAL_REF_ID, nodeentry.getNodename());
-        nodenamelocal.setProject(project);
-        seq.addTask(nodenamelocal);
 
-        if (null != nodeentry.extractUserName()) {
-            //set thread local username
-            final Task userlocal = genSetThreadLocalRefValue(NODE_USER_LOCAL_REF_ID, nodeentry.extractUserName());
-            userlocal.setProject(project);
-            seq.addTask(userlocal);
+        /**
+         * Record the result of a node task. A failure of a task which was cancelled is recorded as aborted, otherwise
+         * it cancels the dispatch if failFast is true.
+         */
+        void record(final INodeEntry node, final StatusResult result, final Object failure) {
+            if (null == failure) {
+                collector.nodeFinished(node, result);
+                return;
+            }
+            final TaskCancellation cancellation = TaskCancellation.current();
+            if (null != cancellation && cancellation.isCancelled()) {
+                collector.nodeAborted(node.getNodename());
+                return;
+            }
+            collector.nodeFailed(node, failure);
+            if (failFast) {
+                dispatch.cancel();
+            }
         }
-
-    }
-
-    /**
-     * Return a task configured to set the thread local value for a particular refid
-     *
-     * @param refid the refid
-     * @param value the value to set
-     *
-     * @return the Task
-     */
-    private static Task genSetThreadLocalRefValue(final String refid, final String value) {
-        final setThreadLocalTask task = new setThreadLocalTask();
-        task.setRefid(refid);
-        task.setValue(value);
-        return task;
     }
 
-
     /**
-     * Task to set a threadlocal value given a refid. The refid should have been set in the project already, and be an
-     * InheritableThreadLocal instance.  The value will be set for the threadlocal variable
+     * Runs the node task and records the result
      */
-    public static class setThreadLocalTask extends Task {
-        private String value;
-        private String refid;
-
-        @Override
-        public void execute() throws BuildException {
-            final Object o = getProject().getReference(getRefid());
-            if (o instanceof InheritableThreadLocal) {
-                final InheritableThreadLocal<String> local = (InheritableThreadLocal<String>) o;
-                local.set(getValue());
-            }
-        }
+    private static abstract class NodeCallable implements Callable {
+        private final NodeResults results;
+        private final INodeEntry node;
 
-        public String getValue() {
-            return value;
+        NodeCallable(final NodeResults results, final INodeEntry node) {
+            this.results = results;
+            this.node = node;
         }
 
-        public void setValue(final String value) {
-            this.value = value;
-        }
-
-        public String getRefid() {
-            return refid;
-        }
+        abstract StatusResult call(INodeEntry node) throws Exception;
 
-        public void setRefid(final String refid) {
-            this.refid = refid;
+        public Object call() throws Exception {
+            results.start(node);
+            StatusResult result = null;
+            Object failure = null;
+            try {
+                result = call(node);
+                if (!result.isSuccess()) {
+                    failure = result;
+                }
+            } catch (Throwable t) {
+                failure = t;
+            }
+            results.record(node, result, failure);
+            return result;
         }
     }
 
@@ -82,6 +82,7 @@ public class SequentialNodeDispatcher implements NodeDispatcher {
         if (null != failedListener) {
             failedListener.matchedNodes(nodeNames);
         }
+        final NodeDispatchListener nodeListener = context.getExecutionListener().getNodeDispatchListener();
         boolean interrupted = false;
         final Thread thread = Thread.currentThread();
         boolean success = true;
@@ -104,6 +105,9 @@ public class SequentialNodeDispatcher implements NodeDispatcher {
                 }
                 final StatusResult result;
                 final ExecutionContext interimcontext = ExecutionContextImpl.createExecutionContextImpl(context, node);
+                if (null != nodeListener) {
+                    nodeListener.nodeStarted(node);
+                }
                 if (null != item) {
                     result = framework.getExecutionService().interpretCommand(
                         interimcontext, item, node);
@@ -125,15 +129,24 @@ public class SequentialNodeDispatcher implements NodeDispatcher {
                         failures.put(node.getNodename(),
                             "Failed execution, result was null: " + result);
                     }
+                    if (null != nodeListener) {
+                        nodeListener.nodeFailed(node, failures.get(node.getNodename()));
+                    }
                     if (!keepgoing) {
                         break;
                     }
                 } else {
                     nodeNames.remove(node.getNodename());
+                    if (null != nodeListener) {
+                        nodeListener.nodeFinished(node, result);
+                    }
                 }
             } catch (Throwable e) {
                 success = false;
                 failures.put(node.getNodename(), "Error dispatching command to the node: " + e.getMessage());
+                if (null != nodeListener) {
+                    nodeListener.nodeFailed(node, e);
+                }
 
                 if (!keepgoing) {
                     if (failures.size() > 0 && null != failedListener) {
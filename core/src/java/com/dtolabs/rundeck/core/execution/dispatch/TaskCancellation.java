@@ -0,0 +1,145 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* TaskCancellation.java
+*
+*/
+package com.dtolabs.rundeck.core.execution.dispatch;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * TaskCancellation is the cancellation state of a node task run by the {@link NodeDispatchScheduler}. Code running
+ * within the task can get it with {@link #current()}, and register a hook which stops blocking work, such as closing a
+ * remote channel, when the task is cancelled. Cancelling the task runs the hooks and then interrupts the thread running
+ * it.
+ */
+public class TaskCancellation {
+    static Logger logger = Logger.getLogger(TaskCancellation.class.getName());
+    private static final ThreadLocal<TaskCancellation> current = new ThreadLocal<TaskCancellation>();
+
+    private final Thread thread;
+    private final List<Runnable> hooks = new ArrayList<Runnable>();
+    private boolean cancelled;
+    private boolean interrupted;
+    private boolean ended;
+
+    private TaskCancellation(final Thread thread) {
+        this.thread = thread;
+    }
+
+    /**
+     * Return the cancellation state of the node task run by the current thread
+     *
+     * @return the state, or null if the thread is not running a node task
+     */
+    public static TaskCancellation current() {
+        return current.get();
+    }
+
+    /**
+     * Start a node task for the current thread
+     */
+    static TaskCancellation begin() {
+        final TaskCancellation cancellation = new TaskCancellation(Thread.currentThread());
+        current.set(cancellation);
+        return cancellation;
+    }
+
+    /**
+     * End the node task for the current thread, and clear the interrupt status if it was set by {@link #cancel()}
+     */
+    synchronized void end() {
+        current.remove();
+        ended = true;
+        if (interrupted) {
+            Thread.interrupted();
+        }
+    }
+
+    /**
+     * Return true if the task has been cancelled
+     *
+     * @return true if cancelled
+     */
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Add a hook to run when the task is cancelled.  If the task has already been cancelled, the hook is run
+     * immediately.
+     *
+     * @param hook the hook
+     *
+     * @return false if the task was already cancelled
+     */
+    public boolean addHook(final Runnable hook) {
+        synchronized (this) {
+            if (!cancelled) {
+                hooks.add(hook);
+                return true;
+            }
+        }
+        runHook(hook);
+        return false;
+    }
+
+    /**
+     * Remove a hook, when the work it stops has finished
+     *
+     * @param hook the hook
+     */
+    public synchronized void removeHook(final Runnable hook) {
+        hooks.remove(hook);
+    }
+
+    /**
+     * Cancel the task: run the hooks, then interrupt the thread if it is still running the task
+     */
+    void cancel() {
+        final ArrayList<Runnable> torun;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            torun = new ArrayList<Runnable>(hooks);
+            hooks.clear();
+        }
+        for (final Runnable hook : torun) {
+            runHook(hook);
+        }
+        synchronized (this) {
+            if (!ended && thread != Thread.currentThread()) {
+                interrupted = true;
+                thread.interrupt();
+            }
+        }
+    }
+
+    private static void runHook(final Runnable hook) {
+        try {
+            hook.run();
+        } catch (RuntimeException e) {
+            logger.warn("Error cancelling node task: " + e.getMessage(), e);
+        }
+    }
+}
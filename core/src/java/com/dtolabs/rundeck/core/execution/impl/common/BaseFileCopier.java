@@ -27,12 +27,11 @@ import com.dtolabs.rundeck.core.common.Framework;
 import com.dtolabs.rundeck.core.common.INodeEntry;
 import com.dtolabs.rundeck.core.dispatcher.DataContextUtils;
 import com.dtolabs.rundeck.core.execution.ExecutionContext;
-import com.dtolabs.rundeck.core.execution.script.ScriptfileUtils;
 import com.dtolabs.rundeck.core.execution.service.FileCopierException;
 
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.*;
 
 /**
@@ -85,13 +84,7 @@ public class BaseFileCopier {
         } catch (IOException e) {
             throw new FileCopierException("error writing script to tempfile: " + e.getMessage(), e);
         }
-//        System.err.println("Wrote script content to file: " + tempfile);
-        try {
-            ScriptfileUtils.setExecutePermissions(tempfile);
-        } catch (IOException e) {
-            System.err.println(
-                "Failed to set execute permissions on tempfile, execution may fail: " + tempfile.getAbsolutePath());
-        }
+        //the DataContextUtils methods have set execute permissions on the file
         return tempfile;
     }
 
@@ -149,4 +142,59 @@ public class BaseFileCopier {
 
         return remotedir + remoteFilename;
     }
+
+    /**
+     * Return a filepath for a file to be copied to the node, named by the digest of its content, so that the same file
+     * content is always copied to the same path.
+     *
+     * @param node           the destination node
+     * @param scriptfileName the name of the file to copy
+     * @param digest         digest of the file content, see {@link #digestFile(java.io.File)}
+     *
+     * @return a filepath specifying destination of the file to copy which is unique for the node and file content
+     */
+    public static String generateRemoteFilepathForNode(final INodeEntry node, final String scriptfileName,
+                                                       final String digest) {
+        final String remoteFilename = appendRemoteFileExtensionForNode(node, scriptfileName + "-" + digest);
+        final String remotedir = getRemoteDirForNode(node);
+
+        return remotedir + remoteFilename;
+    }
+
+    /**
+     * Return the SHA-1 digest of the file content as a hexadecimal string
+     *
+     * @param file the file
+     *
+     * @return digest string
+     *
+     * @throws FileCopierException if an IO problem occurs
+     */
+    public static String digestFile(final File file) throws FileCopierException {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new FileCopierException("SHA-1 digest is not available: " + e.getMessage(), e);
+        }
+        try {
+            final InputStream in = new FileInputStream(file);
+            try {
+                final byte[] buf = new byte[8192];
+                int len;
+                while ((len = in.read(buf)) >= 0) {
+                    digest.update(buf, 0, len);
+                }
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            throw new FileCopierException("error reading file: " + file.getAbsolutePath() + ": " + e.getMessage(), e);
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (final byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
 }
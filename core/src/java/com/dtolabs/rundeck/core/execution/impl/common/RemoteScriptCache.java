@@ -0,0 +1,207 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* RemoteScriptCache.java
+*
+*/
+package com.dtolabs.rundeck.core.execution.impl.common;
+
+import com.dtolabs.rundeck.core.common.Framework;
+import com.dtolabs.rundeck.core.common.FrameworkSupportService;
+import com.dtolabs.rundeck.core.common.INodeEntry;
+import org.apache.log4j.Logger;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RemoteScriptCache records which script files have already been copied to which nodes.  When caching is enabled for
+ * a node, scripts are copied to a path named by the digest of their content (see {@link
+ * BaseFileCopier#generateRemoteFilepathForNode(INodeEntry, String, String)}), so a path recorded here for the node
+ * does not need to be copied again. Entries expire after {@link #getTimeToLive()} milliseconds, after which the file
+ * copier checks the file on the node again, in case it has been removed. At most {@link #getMaxEntries()} entries are
+ * kept, and the least recently used entries are removed first.
+ * <p/>
+ * Caching is enabled by the node attribute {@value #FILE_COPY_CACHE_ATTRIBUTE}, or else the project or framework
+ * property {@value #FILE_COPY_CACHE_PROPERTY}, having the value "true".  It is not used for windows nodes.
+ * <p/>
+ * One cache is registered per {@link Framework} instance, see {@link #getInstanceForFramework(Framework)}.
+ */
+public class RemoteScriptCache implements FrameworkSupportService {
+    static final Logger logger = Logger.getLogger(RemoteScriptCache.class);
+    public static final String SERVICE_NAME = "RemoteScriptCache";
+    public static final String FILE_COPY_CACHE_ATTRIBUTE = "file-copy-cache";
+    public static final String FILE_COPY_CACHE_PROPERTY = "project.file-copy-cache";
+    public static final String FILE_COPY_CACHE_TTL_PROP = "framework.file-copy-cache.timeToLive";
+    public static final String FILE_COPY_CACHE_MAX_ENTRIES_PROP = "framework.file-copy-cache.maxEntries";
+    public static final long DEFAULT_TIME_TO_LIVE = 60 * 60 * 1000;
+    public static final int DEFAULT_MAX_ENTRIES = 100000;
+
+    private final long timeToLive;
+    private final int maxEntries;
+    /**
+     * time each entry was recorded, in access order
+     */
+    private final LinkedHashMap<String, Long> entries;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    public RemoteScriptCache(final long timeToLive, final int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be at least 1: " + maxEntries);
+        }
+        this.timeToLive = timeToLive;
+        this.maxEntries = maxEntries;
+        entries = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(final Map.Entry<String, Long> eldest) {
+                return size() > RemoteScriptCache.this.maxEntries;
+            }
+        };
+    }
+
+    public String getName() {
+        return SERVICE_NAME;
+    }
+
+    /**
+     * Return the cache for the framework, creating it from the framework properties if necessary.
+     */
+    public static RemoteScriptCache getInstanceForFramework(final Framework framework) {
+        if (null == framework.getService(SERVICE_NAME)) {
+            final RemoteScriptCache cache = new RemoteScriptCache(
+                longProperty(framework, FILE_COPY_CACHE_TTL_PROP, DEFAULT_TIME_TO_LIVE),
+                (int) longProperty(framework, FILE_COPY_CACHE_MAX_ENTRIES_PROP, DEFAULT_MAX_ENTRIES));
+            framework.setService(SERVICE_NAME, cache);
+        }
+        return (RemoteScriptCache) framework.getService(SERVICE_NAME);
+    }
+
+    private static long longProperty(final Framework framework, final String prop, final long defval) {
+        if (framework.hasProperty(prop)) {
+            try {
+                return Long.parseLong(framework.getProperty(prop).trim());
+            } catch (NumberFormatException e) {
+                logger.warn("Framework property " + prop + " was not a valid number, using default: " + defval);
+            }
+        }
+        return defval;
+    }
+
+    /**
+     * Return true if copied files should be cached for the node
+     *
+     * @param framework framework
+     * @param project   project name
+     * @param node      the node
+     *
+     * @return true if enabled
+     */
+    public static boolean isEnabled(final Framework framework, final String project, final INodeEntry node) {
+        if (null != node.getOsFamily() && "windows".equalsIgnoreCase(node.getOsFamily().trim())) {
+            return false;
+        }
+        String value = null;
+        if (null != node.getAttributes()) {
+            value = node.getAttributes().get(FILE_COPY_CACHE_ATTRIBUTE);
+        }
+        if (null == value && null != framework && null != project) {
+            value = framework.getProjectProperty(project, FILE_COPY_CACHE_PROPERTY);
+        }
+        return "true".equals(value);
+    }
+
+    /**
+     * Return true if the file path has been recorded for the node and has not expired
+     *
+     * @param node       the node
+     * @param remotepath path of the file on the node
+     *
+     * @return true if the file is known to be on the node
+     */
+    public synchronized boolean contains(final INodeEntry node, final String remotepath) {
+        final String key = key(node, remotepath);
+        final Long time = entries.get(key);
+        if (null != time && System.currentTimeMillis() - time < timeToLive) {
+            hitCount.incrementAndGet();
+            return true;
+        }
+        if (null != time) {
+            entries.remove(key);
+        }
+        missCount.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Record that the file path has been copied to the node
+     *
+     * @param node       the node
+     * @param remotepath path of the file on the node
+     */
+    public synchronized void add(final INodeEntry node, final String remotepath) {
+        entries.put(key(node, remotepath), System.currentTimeMillis());
+    }
+
+    /**
+     * Remove the record of a file path for the node
+     *
+     * @param node       the node
+     * @param remotepath path of the file on the node
+     */
+    public synchronized void remove(final INodeEntry node, final String remotepath) {
+        entries.remove(key(node, remotepath));
+    }
+
+    /**
+     * Remove all entries
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    private static String key(final INodeEntry node, final String remotepath) {
+        return node.extractUserName() + "@" + node.getHostname() + ":" + remotepath;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getTimeToLive() {
+        return timeToLive;
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Return the number of lookups which found the file recorded for the node
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Return the number of lookups which did not find the file recorded for the node
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+}
@@ -32,7 +32,7 @@ import com.dtolabs.rundeck.core.execution.ExecutionException;
 import com.dtolabs.rundeck.core.execution.ExecutionListener;
 import com.dtolabs.rundeck.core.execution.dispatch.ParallelNodeDispatcher;
 import com.dtolabs.rundeck.core.execution.impl.common.AntSupport;
-import com.dtolabs.rundeck.core.execution.service.NodeExecutor;
+import com.dtolabs.rundeck.core.execution.service.InputNodeExecutor;
 import com.dtolabs.rundeck.core.execution.service.NodeExecutorResult;
 import com.dtolabs.rundeck.core.tasks.net.ExtSSHExec;
 import com.dtolabs.rundeck.core.tasks.net.SSHTaskBuilder;
@@ -41,14 +41,16 @@ import org.apache.tools.ant.Project;
 import org.apache.tools.ant.Task;
 import org.apache.tools.ant.taskdefs.Sequential;
 
+import java.io.File;
 import java.util.Map;
 
 /**
- * JschNodeExecutor is ...
+ * JschNodeExecutor executes commands on the node via ssh.  A command with an input file receives the file contents on
+ * the standard input of the remote command.
  *
  * @author Greg Schueler <a href="mailto:greg@dtosolutions.com">greg@dtosolutions.com</a>
  */
-public class JschNodeExecutor implements NodeExecutor {
+public class JschNodeExecutor implements InputNodeExecutor {
     public static final String SERVICE_PROVIDER_TYPE = "jsch-ssh";
     private Framework framework;
 
@@ -58,6 +60,11 @@ public class JschNodeExecutor implements NodeExecutor {
 
     public NodeExecutorResult executeCommand(final ExecutionContext context, final String[] command, final INodeEntry node) throws
         ExecutionException {
+        return executeCommand(context, command, null, node);
+    }
+
+    public NodeExecutorResult executeCommand(final ExecutionContext context, final String[] command,
+                                             final File input, final INodeEntry node) throws ExecutionException {
         if (null == node.getHostname() || null == node.extractHostname()) {
             throw new ExecutionException(
                 "Hostname must be set to connect to remote node '" + node.getNodename() + "'");
@@ -80,6 +87,9 @@ public class JschNodeExecutor implements NodeExecutor {
         } catch (SSHTaskBuilder.BuilderException e) {
             throw new ExecutionException(e);
         }
+        if (null != input) {
+            sshexec.setInput(input);
+        }
         try {
             sshexec.execute();
             success = true;
@@ -30,19 +30,25 @@ import com.dtolabs.rundeck.core.common.Framework;
 import com.dtolabs.rundeck.core.common.INodeEntry;
 import com.dtolabs.rundeck.core.execution.ExecutionContext;
 import com.dtolabs.rundeck.core.execution.impl.common.BaseFileCopier;
+import com.dtolabs.rundeck.core.execution.impl.common.RemoteScriptCache;
 import com.dtolabs.rundeck.core.execution.service.FileCopier;
 import com.dtolabs.rundeck.core.execution.service.FileCopierException;
+import com.dtolabs.rundeck.core.tasks.net.ExtScp;
+import com.dtolabs.rundeck.core.tasks.net.SSHSessionPool;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
 import org.apache.tools.ant.Task;
 import org.apache.tools.ant.taskdefs.Echo;
 import org.apache.tools.ant.taskdefs.Sequential;
-import org.apache.tools.ant.taskdefs.optional.ssh.Scp;
 
 import java.io.*;
 
 /**
  * JschScpFileCopier is ...
+ * <p/>
+ * If the {@link RemoteScriptCache} is enabled for the node, the file is copied to a path named by the digest of its
+ * content.  The copy is skipped if the cache has recorded the path for the node, or if the file already exists on the
+ * node with the same digest and is owned by the remote user and not writable by others.
  *
  * @author Greg Schueler <a href="mailto:greg@dtosolutions.com">greg@dtosolutions.com</a>
  */
@@ -79,14 +85,32 @@ public class JschScpFileCopier extends BaseFileCopier implements FileCopier {
         final Sequential seq = new Sequential();
         seq.setProject(project);
 
-        final String remotefile = generateRemoteFilepathForNode(node, (null != scriptfile ? scriptfile.getName()
-                                                                                          : "dispatch-script"));
         //write the temp file and replace tokens in the script with values from the dataContext
         final File localTempfile = writeScriptTempFile(context, scriptfile, input, script, node);
+        final String filename = null != scriptfile ? scriptfile.getName() : "dispatch-script";
+
+        final RemoteScriptCache cache;
+        final String remotefile;
+        String digest = null;
+        if (RemoteScriptCache.isEnabled(framework, context.getFrameworkProject(), node)) {
+            cache = RemoteScriptCache.getInstanceForFramework(framework);
+            digest = digestFile(localTempfile);
+            remotefile = generateRemoteFilepathForNode(node, filename, digest);
+            if (cache.contains(node, remotefile)) {
+                context.getExecutionListener().log(Constants.DEBUG_LEVEL,
+                    "script already copied to: '" + node.getNodename() + ":" + remotefile + "'");
+                deleteTempfile(context, localTempfile);
+                return remotefile;
+            }
+        } else {
+            cache = null;
+            remotefile = generateRemoteFilepathForNode(node, filename);
+        }
 
 
 //        logger.debug("temp file for node " + node.getNodename() + ": " + temp.getAbsolutePath() + ", datacontext: " + dataContext);
-        final Task scp = createScp(context, node, project, remotefile, localTempfile);
+        final ExtScp scp = createScp(context, node, project, remotefile, localTempfile);
+        scp.setDigest(digest);
 
         /**
          * Copy the file over
@@ -101,11 +125,18 @@ public class JschScpFileCopier extends BaseFileCopier implements FileCopier {
             context.getExecutionListener().log(0, e.getMessage());
             throw new FileCopierException("[jsch-scp] Failed copying the file: " + e.getMessage(), e);
         }
+        if (null != cache) {
+            cache.add(node, remotefile);
+        }
+        deleteTempfile(context, localTempfile);
+        return remotefile;
+    }
+
+    private void deleteTempfile(final ExecutionContext context, final File localTempfile) {
         if (!localTempfile.delete()) {
             context.getExecutionListener().log(Constants.WARN_LEVEL,
                 "Unable to remove local temp file: " + localTempfile.getAbsolutePath());
         }
-        return remotefile;
     }
 
 
@@ -117,14 +148,14 @@ public class JschScpFileCopier extends BaseFileCopier implements FileCopier {
      * @param remotepath path
      * @param sourceFile
      *
-     * @return Scp object
+     * @return ExtScp object
      */
-    protected Scp createScp(final ExecutionContext context, final INodeEntry nodeentry, final Project project,
+    protected ExtScp createScp(final ExecutionContext context, final INodeEntry nodeentry, final Project project,
                             final String remotepath,
                             final File sourceFile) {
         final INodeAuthResolutionStrategy nodeAuth = framework.getNodeAuthResolutionStrategy();
 
-        final Scp scp = new Scp();
+        final ExtScp scp = new ExtScp();
         scp.setFailonerror(true);
         scp.setTrust(true); // set this true to avoid  "reject HostKey" errors
 
@@ -176,11 +207,15 @@ public class JschScpFileCopier extends BaseFileCopier implements FileCopier {
          * Set the local and remote file paths
          */
         scp.setLocalFile(sourceFile.getAbsolutePath());
-        final String sshUriPrefix = nodeentry.extractUserName() + "@" + nodeentry.extractHostname() + ":";
-        scp.setRemoteTofile(sshUriPrefix + remotepath);
+        scp.setRemotePath(remotepath);
 
         scp.setPassphrase(""); // set empty otherwise password will be required
         scp.setVerbose(context.getLoglevel() >= Project.MSG_VERBOSE);
+
+        final SSHSessionPool sessionPool = SSHSessionPool.getInstanceForFramework(framework);
+        if (sessionPool.isEnabled()) {
+            scp.setSessionPool(sessionPool);
+        }
         return scp;
     }
 
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* InputNodeExecutor.java
+* 
+*/
+package com.dtolabs.rundeck.core.execution.service;
+
+import com.dtolabs.rundeck.core.common.INodeEntry;
+import com.dtolabs.rundeck.core.execution.ExecutionContext;
+import com.dtolabs.rundeck.core.execution.ExecutionException;
+
+import java.io.File;
+
+/**
+ * InputNodeExecutor is a {@link NodeExecutor} which can send the contents of a local file to the standard input of the
+ * command.
+ */
+public interface InputNodeExecutor extends NodeExecutor {
+    /**
+     * Execute a command on a node with the file as its input, and return the result.
+     *
+     * @param context the execution context
+     * @param command the array of strings for the command line, with any necessary data context references replaced.
+     * @param input   local file to send to the standard input of the command
+     * @param node    the node to execute on
+     *
+     * @return a result
+     *
+     * @throws ExecutionException if there is an error performing the execution
+     */
+    public NodeExecutorResult executeCommand(ExecutionContext context, String[] command, File input,
+                                             INodeEntry node) throws ExecutionException;
+}
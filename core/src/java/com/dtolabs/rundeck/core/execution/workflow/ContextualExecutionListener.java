@@ -29,6 +29,7 @@ import com.dtolabs.rundeck.core.execution.*;
 import com.dtolabs.rundeck.core.execution.commands.InterpreterResult;
 import com.dtolabs.rundeck.core.execution.dispatch.Dispatchable;
 import com.dtolabs.rundeck.core.execution.dispatch.DispatcherResult;
+import com.dtolabs.rundeck.core.execution.dispatch.NodeDispatchListener;
 import com.dtolabs.rundeck.core.execution.service.NodeExecutorResult;
 
 import java.io.File;
@@ -42,6 +43,7 @@ import java.util.Map;
  */
 class ContextualExecutionListener implements ContextLoggerExecutionListener {
     private FailedNodesListener failedNodesListener;
+    private NodeDispatchListener nodeDispatchListener;
     private ContextLogger logger;
     private boolean terse;
     private String logFormat;
@@ -52,8 +54,19 @@ class ContextualExecutionListener implements ContextLoggerExecutionListener {
         final boolean terse,
         final String logFormat
     ) {
+        this(failedNodesListener, null, logger, terse, logFormat);
+    }
+
+    public ContextualExecutionListener(
+        final FailedNodesListener failedNodesListener,
+        final NodeDispatchListener nodeDispatchListener,
+        final ContextLogger logger,
+        final boolean terse,
+        final String logFormat
+    ) {
 
         this.failedNodesListener = failedNodesListener;
+        this.nodeDispatchListener = nodeDispatchListener;
         this.terse = terse;
         this.logFormat = logFormat;
         this.logger = logger;
@@ -134,6 +147,10 @@ class ContextualExecutionListener implements ContextLoggerExecutionListener {
         return failedNodesListener;
     }
 
+    public NodeDispatchListener getNodeDispatchListener() {
+        return nodeDispatchListener;
+    }
+
 
     public boolean isTerse() {
         return terse;
@@ -23,45 +23,75 @@
 */
 package com.dtolabs.rundeck.core.execution.workflow;
 
+import com.dtolabs.rundeck.core.common.INodeEntry;
 import com.dtolabs.rundeck.core.execution.FailedNodesListener;
+import com.dtolabs.rundeck.core.execution.StatusResult;
+import com.dtolabs.rundeck.core.execution.dispatch.NodeDispatchListener;
 
 import java.util.*;
 
 /**
- * NodeRecorder stores success/failure node list
+ * NodeRecorder stores success/failure node list.  As a {@link NodeDispatchListener} it also records each node as it
+ * starts and completes, so that the node state can be read while the execution is running.
  *
  * @author Greg Schueler <a href="mailto:greg@dtosolutions.com">greg@dtosolutions.com</a>
  */
-public class NodeRecorder implements FailedNodesListener {
+public class NodeRecorder implements FailedNodesListener, NodeDispatchListener {
     private HashSet<String> matchedNodes;
     private HashMap<String,Object> failedNodes;
+    private HashSet<String> abortedNodes;
+    private HashSet<String> runningNodes;
+    private HashSet<String> completedNodes;
     private boolean success=false;
 
     public NodeRecorder() {
         matchedNodes =new HashSet<String>();
         failedNodes=new HashMap<String,Object>();
+        abortedNodes=new HashSet<String>();
+        runningNodes=new HashSet<String>();
+        completedNodes=new HashSet<String>();
         success=false;
     }
 
-    public void nodesFailed(final Map<String,Object> failures) {
+    public synchronized void nodesFailed(final Map<String,Object> failures) {
         failedNodes.putAll(failures);
     }
 
-    public void nodesSucceeded() {
+    public synchronized void nodesAborted(final Collection<String> names) {
+        abortedNodes.addAll(names);
+    }
+
+    public synchronized void nodesSucceeded() {
         success = true;
     }
 
-    public void matchedNodes(final Collection<String> names) {
+    public synchronized void matchedNodes(final Collection<String> names) {
         matchedNodes.addAll(names);
     }
 
+    public synchronized void nodeStarted(final INodeEntry node) {
+        runningNodes.add(node.getNodename());
+    }
+
+    public synchronized void nodeFinished(final INodeEntry node, final StatusResult result) {
+        runningNodes.remove(node.getNodename());
+        completedNodes.add(node.getNodename());
+    }
+
+    public synchronized void nodeFailed(final INodeEntry node, final Object failure) {
+        runningNodes.remove(node.getNodename());
+        completedNodes.add(node.getNodename());
+        failedNodes.put(node.getNodename(), failure);
+    }
+
     /**
-     * Returns the matched nodes less the failed nodes.
+     * Returns the matched nodes less the failed and aborted nodes.
      * @return
      */
-    public HashSet<String> getSuccessfulNodes() {
+    public synchronized HashSet<String> getSuccessfulNodes() {
         final HashSet<String> successfulNodes = new HashSet<String>(matchedNodes);
         successfulNodes.removeAll(failedNodes.keySet());
+        successfulNodes.removeAll(abortedNodes);
         return successfulNodes;
     }
 
@@ -69,15 +99,39 @@ public class NodeRecorder implements FailedNodesListener {
      * Return the set of failed nodes
      * @return
      */
-    public HashMap<String,Object> getFailedNodes() {
-        return failedNodes;
+    public synchronized HashMap<String,Object> getFailedNodes() {
+        return new HashMap<String, Object>(failedNodes);
+    }
+
+    /**
+     * Return the set of aborted nodes
+     * @return
+     */
+    public synchronized HashSet<String> getAbortedNodes() {
+        return new HashSet<String>(abortedNodes);
+    }
+
+    /**
+     * Return the set of nodes which have started but not completed a dispatch
+     * @return
+     */
+    public synchronized HashSet<String> getRunningNodes() {
+        return new HashSet<String>(runningNodes);
+    }
+
+    /**
+     * Return the set of nodes which have completed at least one dispatch
+     * @return
+     */
+    public synchronized HashSet<String> getCompletedNodes() {
+        return new HashSet<String>(completedNodes);
     }
 
     /**
      * Return true if successful
      * @return
      */
-    public boolean isSuccess() {
+    public synchronized boolean isSuccess() {
         return success;
     }
 
@@ -85,7 +139,7 @@ public class NodeRecorder implements FailedNodesListener {
      * Return the set of matched nodes
      * @return
      */
-    public HashSet<String> getMatchedNodes() {
-        return matchedNodes;
+    public synchronized HashSet<String> getMatchedNodes() {
+        return new HashSet<String>(matchedNodes);
     }
 }
@@ -27,6 +27,8 @@ import com.dtolabs.rundeck.core.Constants;
 import com.dtolabs.rundeck.core.common.INodeEntry;
 import com.dtolabs.rundeck.core.execution.*;
 import com.dtolabs.rundeck.core.execution.commands.InterpreterResult;
+import com.dtolabs.rundeck.core.execution.dispatch.NodeDispatchListener;
+import com.dtolabs.rundeck.core.utils.ThreadContext;
 
 import java.util.*;
 
@@ -40,9 +42,12 @@ public class WorkflowExecutionListenerImpl extends ContextualExecutionListener i
     /**
      * Thread local context stack, inherited by sub threads.
      */
-    private InheritableThreadLocal<WFStepContext> localStep = new InheritableThreadLocal<WFStepContext>();
-    private InheritableThreadLocal<INodeEntry> localNode = new InheritableThreadLocal<INodeEntry>();
-    private InheritableThreadLocal<String> contextPrefix = new InheritableThreadLocal<String>();
+    private InheritableThreadLocal<WFStepContext> localStep = ThreadContext.register(
+        new InheritableThreadLocal<WFStepContext>());
+    private InheritableThreadLocal<INodeEntry> localNode = ThreadContext.register(
+        new InheritableThreadLocal<INodeEntry>());
+    private InheritableThreadLocal<String> contextPrefix = ThreadContext.register(
+        new InheritableThreadLocal<String>());
 
 
     public WorkflowExecutionListenerImpl(final FailedNodesListener failedNodesListener,
@@ -50,6 +55,12 @@ public class WorkflowExecutionListenerImpl extends ContextualExecutionListener i
         super(failedNodesListener, logger, terse, logFormat);
     }
 
+    public WorkflowExecutionListenerImpl(final FailedNodesListener failedNodesListener,
+                                         final NodeDispatchListener nodeDispatchListener,
+                                         final ContextLogger logger, final boolean terse, final String logFormat) {
+        super(failedNodesListener, nodeDispatchListener, logger, terse, logFormat);
+    }
+
     @Override
     public void beginInterpretCommand(final ExecutionContext context, final ExecutionItem item, final INodeEntry node) {
         super.beginInterpretCommand(context, item, node);
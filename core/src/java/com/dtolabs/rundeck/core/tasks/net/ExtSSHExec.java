@@ -25,6 +25,8 @@
 
 package com.dtolabs.rundeck.core.tasks.net;
 
+import com.dtolabs.rundeck.core.execution.dispatch.TaskCancellation;
+import com.dtolabs.rundeck.core.utils.RingBufferOutputStream;
 import com.jcraft.jsch.*;
 import org.apache.tools.ant.BuildException;
 import org.apache.tools.ant.Project;
@@ -48,6 +50,12 @@ public class ExtSSHExec extends SSHBase {
 
     private static final int BUFFER_SIZE = 8192;
     private static final int RETRY_INTERVAL = 500;
+    /** default size of the output retained for the outputproperty in streaming mode */
+    public static final int DEFAULT_OUTPUT_BUFFER_SIZE = 64 * 1024;
+    /** longest partial line held by a streaming pump before it is written without a line ending */
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+    /** time to wait for output pumps to finish after the channel is disconnected */
+    private static final int PUMP_STOP_WAIT = 1000;
 
     /** the command to execute via ssh */
     private String command = null;
@@ -67,8 +75,17 @@ public class ExtSSHExec extends SSHBase {
     private Resource commandResource = null;
     private List<Environment.Variable> envVars=null;
 
+    private SSHSessionPool sessionPool = null;
+    /** set if the session should not be reused after a failure */
+    private boolean sessionFailed = false;
+
+    private boolean streamingOutput = false;
+    private int outputBufferSize = DEFAULT_OUTPUT_BUFFER_SIZE;
+
     private static final String TIMEOUT_MESSAGE =
         "Timeout period exceeded, connection dropped.";
+    private static final String ABORTED_MESSAGE =
+        "Node task was cancelled, connection dropped.";
 
     /**
      * Constructor for SSHExecTask.
@@ -186,6 +203,38 @@ public class ExtSSHExec extends SSHBase {
         envVars.add(env);
     }
 
+    /**
+     * Set a session pool to acquire the ssh session from, if unset a new session is opened and
+     * disconnected for each execution.
+     *
+     * @param sessionPool the pool
+     */
+    public void setSessionPool(final SSHSessionPool sessionPool) {
+        this.sessionPool = sessionPool;
+    }
+
+    /**
+     * Enable streaming output. If true, the stdout and stderr of the remote command are read by pump threads started
+     * from the calling thread and written line by line to System.out as they arrive, the output file is written while
+     * the command runs, and only the last {@link #setOutputBufferSize(int)} bytes are kept for the outputproperty.
+     * If false (default) the output is collected in memory until the command finishes, as in the Ant task.
+     *
+     * @param streamingOutput true to stream output
+     */
+    public void setStreamingOutput(final boolean streamingOutput) {
+        this.streamingOutput = streamingOutput;
+    }
+
+    /**
+     * Set the maximum number of bytes of output retained for the outputproperty in streaming mode, older output is
+     * discarded. Default is {@link #DEFAULT_OUTPUT_BUFFER_SIZE}.
+     *
+     * @param outputBufferSize size in bytes
+     */
+    public void setOutputBufferSize(final int outputBufferSize) {
+        this.outputBufferSize = outputBufferSize;
+    }
+
     /**
      * Execute the command on the remote host.
      *
@@ -217,9 +266,22 @@ public class ExtSSHExec extends SSHBase {
         }
 
         Session session = null;
+        SSHSessionPool.Lease lease = null;
         StringBuffer output = new StringBuffer();
         try {
-            session = openSession();
+            if (null != sessionPool) {
+                //pooled sessions are shared, so sessions with a different timeout are not reused
+                lease = sessionPool.acquire(
+                    SSHSessionPool.SessionKey.create(getHost(), getPort(), getUserInfo(), (int) maxwait),
+                    new SSHSessionPool.SessionFactory() {
+                        public Session openSession() throws JSchException {
+                            return ExtSSHExec.this.openSession();
+                        }
+                    });
+                session = lease.getSession();
+            } else {
+                session = openSession();
+            }
             /* called once */
             if (command != null) {
                 if (getVerbose()) {
@@ -259,7 +321,13 @@ public class ExtSSHExec extends SSHBase {
             if (outputProperty != null) {
                 getProject().setNewProperty(outputProperty, output.toString());
             }
-            if (session != null && session.isConnected()) {
+            if (null != lease) {
+                if (sessionFailed) {
+                    lease.invalidate();
+                } else {
+                    lease.release();
+                }
+            } else if (session != null && session.isConnected()) {
                 session.disconnect();
             }
         }
@@ -267,56 +335,30 @@ public class ExtSSHExec extends SSHBase {
 
     private void executeCommand(Session session, String cmd, StringBuffer sb)
         throws BuildException {
+        if (streamingOutput) {
+            executeStreamingCommand(session, cmd, sb);
+            return;
+        }
         ByteArrayOutputStream out = new ByteArrayOutputStream();
         TeeOutputStream tee =
             new TeeOutputStream(out,
                                 KeepAliveOutputStream.wrapSystemOut());
 
-        InputStream istream = null ;
-        if (inputFile != null) {
-            try {
-                istream = new FileInputStream(inputFile) ;
-            } catch (IOException e) {
-                // because we checked the existence before, this one
-                // shouldn't happen What if the file exists, but there
-                // are no read permissions?
-                log("Failed to read " + inputFile + " because of: "
-                    + e.getMessage(), Project.MSG_WARN);
-            }
-        }
-        if (inputProperty != null) {
-            String inputData = getProject().getProperty(inputProperty) ;
-            if (inputData != null) {
-                istream = new ByteArrayInputStream(inputData.getBytes()) ;
-            }        	
-        }
-
+        InputStream istream = openInput();
+        ChannelExec channel = null;
+        Runnable abort = null;
         try {
-            final ChannelExec channel;
-            session.setTimeout((int) maxwait);
-            /* execute the command */
-            channel = (ChannelExec) session.openChannel("exec");
-            channel.setCommand(cmd);
+            channel = openExecChannel(session, cmd, istream);
             channel.setOutputStream(tee);
             channel.setExtOutputStream(tee);
-            if (istream != null) {
-                channel.setInputStream(istream);
-            }
-            channel.setPty(allocatePty);
-
-            /* set env vars if any are embedded */
-            if(null!=envVars && envVars.size()>0){
-                for(final Environment.Variable env:envVars) {
-                    channel.setEnv(env.getKey(), env.getValue());
-                }
-            }
-            
             channel.connect();
+            abort = addAbortHook(channel);
+            final ChannelExec execChannel = channel;
             // wait for it to finish
             thread =
                 new Thread() {
                     public void run() {
-                        while (!channel.isClosed()) {
+                        while (!execChannel.isClosed()) {
                             if (thread == null) {
                                 return;
                             }
@@ -332,59 +374,317 @@ public class ExtSSHExec extends SSHBase {
             thread.start();
             thread.join(maxwait);
 
+            checkAborted();
             if (thread.isAlive()) {
                 // ran out of time
                 thread = null;
-                if (getFailonerror()) {
-                    throw new BuildException(TIMEOUT_MESSAGE);
-                } else {
-                    log(TIMEOUT_MESSAGE, Project.MSG_ERR);
-                }
+                handleTimeout();
             } else {
                 //success
                 if (outputFile != null) {
                     writeToFile(out.toString(), append, outputFile);
                 }
+                checkExitStatus(channel);
+            }
+        } catch (BuildException e) {
+            throw e;
+        } catch (Exception e) {
+            checkAborted();
+            handleChannelException(e);
+        } finally {
+            removeAbortHook(abort);
+            if (null != sessionPool && null != channel) {
+                //the session stays open, so close the channel explicitly
+                channel.disconnect();
+            }
+            sb.append(out.toString());
+            FileUtils.close(istream);
+        }
+    }
 
-                // this is the wrong test if the remote OS is OpenVMS,
-                // but there doesn't seem to be a way to detect it.
-                exitStatus =channel.getExitStatus();
-                int ec = channel.getExitStatus();
-                if (ec != 0) {
-                    String msg = "Remote command failed with exit status " + ec;
-                    if (getFailonerror()) {
-                        throw new BuildException(msg);
-                    } else {
-                        log(msg, Project.MSG_ERR);
+    /**
+     * Execute the command in streaming mode. The channel output is read by pump threads, which end when the channel
+     * is closed, so the command is complete when the pumps have finished.
+     */
+    private void executeStreamingCommand(final Session session, final String cmd, final StringBuffer sb)
+        throws BuildException {
+        final RingBufferOutputStream tail =
+            null != outputProperty ? new RingBufferOutputStream(outputBufferSize) : null;
+        final InputStream istream = openInput();
+        OutputStream fileOut = null;
+        ChannelExec channel = null;
+        OutputPump[] pumps = null;
+        Runnable abort = null;
+        try {
+            OutputStream sink = KeepAliveOutputStream.wrapSystemOut();
+            if (null != tail) {
+                sink = new TeeOutputStream(sink, tail);
+            }
+            if (null != outputFile) {
+                fileOut = new FileOutputStream(outputFile, append);
+                sink = new TeeOutputStream(sink, fileOut);
+            }
+            channel = openExecChannel(session, cmd, istream);
+            pumps = new OutputPump[]{
+                new OutputPump(channel.getInputStream(), sink, "ssh stdout " + getHost()),
+                new OutputPump(channel.getExtInputStream(), sink, "ssh stderr " + getHost())
+            };
+            channel.connect();
+            abort = addAbortHook(channel);
+            for (final OutputPump pump : pumps) {
+                pump.start();
+            }
+
+            final boolean finished = joinPumps(pumps, maxwait);
+            checkAborted();
+            if (!finished) {
+                // ran out of time
+                handleTimeout();
+            } else {
+                //success
+                for (final OutputPump pump : pumps) {
+                    if (null != pump.getError()) {
+                        throw pump.getError();
                     }
                 }
+                checkExitStatus(channel);
             }
         } catch (BuildException e) {
             throw e;
-        } catch (JSchException e) {
-            if (e.getMessage().indexOf("session is down") >= 0) {
-                if (getFailonerror()) {
-                    throw new BuildException(TIMEOUT_MESSAGE, e);
-                } else {
-                    log(TIMEOUT_MESSAGE, Project.MSG_ERR);
+        } catch (Exception e) {
+            checkAborted();
+            handleChannelException(e);
+        } finally {
+            removeAbortHook(abort);
+            if (null != channel) {
+                //closes the channel streams, which stops the pumps if the command did not finish
+                channel.disconnect();
+            }
+            if (null != pumps) {
+                for (final OutputPump pump : pumps) {
+                    try {
+                        pump.join(PUMP_STOP_WAIT);
+                    } catch (InterruptedException e) {
+                        // ignored
+                    }
                 }
-            } else {
-                if (getFailonerror()) {
-                    throw new BuildException(e);
-                } else {
-                    log("Caught exception: " + e.getMessage(),
-                        Project.MSG_ERR);
+            }
+            FileUtils.close(fileOut);
+            if (null != tail) {
+                sb.append(tail.toString());
+            }
+            FileUtils.close(istream);
+        }
+    }
+
+    /**
+     * Wait for the pumps to finish
+     *
+     * @return false if the maxwait time elapsed before all pumps finished
+     */
+    private static boolean joinPumps(final Thread[] pumps, final long maxwait) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + maxwait;
+        for (final Thread pump : pumps) {
+            if (maxwait > 0) {
+                final long remaining = deadline - System.currentTimeMillis();
+                if (remaining > 0) {
+                    pump.join(remaining);
                 }
+            } else {
+                pump.join();
             }
-        } catch (Exception e) {
+            if (pump.isAlive()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Return the input stream for the remote command, or null
+     */
+    private InputStream openInput() {
+        InputStream istream = null ;
+        if (inputFile != null) {
+            try {
+                istream = new FileInputStream(inputFile) ;
+            } catch (IOException e) {
+                // because we checked the existence before, this one
+                // shouldn't happen What if the file exists, but there
+                // are no read permissions?
+                log("Failed to read " + inputFile + " because of: "
+                    + e.getMessage(), Project.MSG_WARN);
+            }
+        }
+        if (inputProperty != null) {
+            String inputData = getProject().getProperty(inputProperty) ;
+            if (inputData != null) {
+                istream = new ByteArrayInputStream(inputData.getBytes()) ;
+            }        	
+        }
+        return istream;
+    }
+
+    /**
+     * Open an exec channel for the command, without connecting it
+     */
+    private ChannelExec openExecChannel(final Session session, final String cmd, final InputStream istream) throws
+        JSchException {
+        if (null == sessionPool) {
+            //a pooled session already has the timeout of its key, and may be in use by other channels
+            session.setTimeout((int) maxwait);
+        }
+        /* execute the command */
+        final ChannelExec channel = (ChannelExec) session.openChannel("exec");
+        channel.setCommand(cmd);
+        if (istream != null) {
+            channel.setInputStream(istream);
+        }
+        channel.setPty(allocatePty);
+
+        /* set env vars if any are embedded */
+        if(null!=envVars && envVars.size()>0){
+            for(final Environment.Variable env:envVars) {
+                channel.setEnv(env.getKey(), env.getValue());
+            }
+        }
+        return channel;
+    }
+
+    private void checkExitStatus(final ChannelExec channel) {
+        // this is the wrong test if the remote OS is OpenVMS,
+        // but there doesn't seem to be a way to detect it.
+        exitStatus = channel.getExitStatus();
+        if (exitStatus != 0) {
+            String msg = "Remote command failed with exit status " + exitStatus;
+            if (getFailonerror()) {
+                throw new BuildException(msg);
+            } else {
+                log(msg, Project.MSG_ERR);
+            }
+        }
+    }
+
+    /**
+     * If running within a node task, add a hook which disconnects the channel when the task is cancelled, which ends
+     * the wait for the command to finish.
+     *
+     * @return the hook, or null
+     */
+    private static Runnable addAbortHook(final Channel channel) {
+        final TaskCancellation cancellation = TaskCancellation.current();
+        if (null == cancellation) {
+            return null;
+        }
+        final Runnable abort = new Runnable() {
+            public void run() {
+                channel.disconnect();
+            }
+        };
+        cancellation.addHook(abort);
+        return abort;
+    }
+
+    private static void removeAbortHook(final Runnable abort) {
+        final TaskCancellation cancellation = TaskCancellation.current();
+        if (null != abort && null != cancellation) {
+            cancellation.removeHook(abort);
+        }
+    }
+
+    /**
+     * Fail if the node task running the command was cancelled, regardless of failonerror
+     */
+    private void checkAborted() {
+        final TaskCancellation cancellation = TaskCancellation.current();
+        if (null != cancellation && cancellation.isCancelled()) {
+            sessionFailed = true;
+            throw new BuildException(ABORTED_MESSAGE);
+        }
+    }
+
+    private void handleTimeout() {
+        sessionFailed = true;
+        if (getFailonerror()) {
+            throw new BuildException(TIMEOUT_MESSAGE);
+        } else {
+            log(TIMEOUT_MESSAGE, Project.MSG_ERR);
+        }
+    }
+
+    private void handleChannelException(final Exception e) {
+        sessionFailed = true;
+        if (e instanceof JSchException && null != e.getMessage()
+            && e.getMessage().indexOf("session is down") >= 0) {
+            if (getFailonerror()) {
+                throw new BuildException(TIMEOUT_MESSAGE, e);
+            } else {
+                log(TIMEOUT_MESSAGE, Project.MSG_ERR);
+            }
+        } else {
             if (getFailonerror()) {
                 throw new BuildException(e);
             } else {
-                log("Caught exception: " + e.getMessage(), Project.MSG_ERR);
+                log("Caught exception: " + e.getMessage(),
+                    Project.MSG_ERR);
             }
-        } finally {
-            sb.append(out.toString());
-            FileUtils.close(istream);
+        }
+    }
+
+    /**
+     * Reads a channel output stream until it is closed, and writes each line to the sink with a single write, so
+     * that lines from stdout and stderr are not interleaved. The thread inherits the thread bound output streams of
+     * the thread which creates it.
+     */
+    private static class OutputPump extends Thread {
+        private final InputStream in;
+        private final OutputStream sink;
+        private IOException error;
+
+        OutputPump(final InputStream in, final OutputStream sink, final String name) {
+            super(name);
+            this.in = in;
+            this.sink = sink;
+            setDaemon(true);
+        }
+
+        public void run() {
+            final byte[] buf = new byte[BUFFER_SIZE];
+            final ByteArrayOutputStream line = new ByteArrayOutputStream();
+            try {
+                int len;
+                while ((len = in.read(buf)) >= 0) {
+                    int start = 0;
+                    for (int i = 0; i < len; i++) {
+                        if (buf[i] == '\n') {
+                            line.write(buf, start, i + 1 - start);
+                            emit(line);
+                            start = i + 1;
+                        }
+                    }
+                    line.write(buf, start, len - start);
+                    if (line.size() >= MAX_LINE_LENGTH) {
+                        emit(line);
+                    }
+                }
+                if (line.size() > 0) {
+                    emit(line);
+                }
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+
+        private void emit(final ByteArrayOutputStream line) throws IOException {
+            synchronized (sink) {
+                line.writeTo(sink);
+                sink.flush();
+            }
+            line.reset();
+        }
+
+        IOException getError() {
+            return error;
         }
     }
 
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* ExtScp.java
+*
+*/
+package com.dtolabs.rundeck.core.tasks.net;
+
+import com.jcraft.jsch.ChannelExec;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import org.apache.tools.ant.BuildException;
+import org.apache.tools.ant.Project;
+import org.apache.tools.ant.taskdefs.optional.ssh.SSHBase;
+import org.apache.tools.ant.taskdefs.optional.ssh.ScpToMessage;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Copies a single local file to a path on a remote host using scp. This is a reduced form of the Ant 1.8.1 Scp task
+ * which can use a {@link SSHSessionPool} instead of opening and disconnecting a session for each copy.
+ */
+public class ExtScp extends SSHBase {
+    private String localFile;
+    private String remotePath;
+    private SSHSessionPool sessionPool;
+    private String digest;
+    private boolean skipped;
+
+    /**
+     * Set the local file to copy
+     *
+     * @param localFile path to the file
+     */
+    public void setLocalFile(final String localFile) {
+        this.localFile = localFile;
+    }
+
+    /**
+     * Set the destination path on the remote host
+     *
+     * @param remotePath the path
+     */
+    public void setRemotePath(final String remotePath) {
+        this.remotePath = remotePath;
+    }
+
+    /**
+     * Set a session pool to acquire the ssh session from, if unset a new session is opened and disconnected for the
+     * copy.
+     *
+     * @param sessionPool the pool
+     */
+    public void setSessionPool(final SSHSessionPool sessionPool) {
+        this.sessionPool = sessionPool;
+    }
+
+    /**
+     * Set the SHA-1 digest of the local file.  If set, the file is not copied if the remote file already exists with
+     * the same digest, and is owned by the remote user and not writable by others.
+     *
+     * @param digest hexadecimal digest string
+     */
+    public void setDigest(final String digest) {
+        this.digest = digest;
+    }
+
+    /**
+     * Return true if the copy was skipped because the remote file already existed with the digest
+     */
+    public boolean isSkipped() {
+        return skipped;
+    }
+
+    /**
+     * Copy the file to the remote host.
+     *
+     * @throws BuildException if the file could not be copied
+     */
+    public void execute() throws BuildException {
+        if (getHost() == null) {
+            throw new BuildException("Host is required.");
+        }
+        if (getUserInfo().getName() == null) {
+            throw new BuildException("Username is required.");
+        }
+        if (getUserInfo().getKeyfile() == null
+            && getUserInfo().getPassword() == null) {
+            throw new BuildException("Password or Keyfile is required.");
+        }
+        if (null == localFile || null == remotePath) {
+            throw new BuildException("localFile and remotePath are required.");
+        }
+        SSHSessionPool.Lease lease = null;
+        Session session = null;
+        boolean failed = false;
+        try {
+            if (null != sessionPool) {
+                lease = sessionPool.acquire(SSHSessionPool.SessionKey.create(getHost(), getPort(), getUserInfo()),
+                    new SSHSessionPool.SessionFactory() {
+                        public Session openSession() throws JSchException {
+                            return ExtScp.this.openSession();
+                        }
+                    });
+                session = lease.getSession();
+            } else {
+                session = openSession();
+            }
+            if (null != digest && remoteDigestMatches(session)) {
+                skipped = true;
+                log("Remote file already exists: " + getHost() + ":" + remotePath, Project.MSG_VERBOSE);
+                return;
+            }
+            final ScpToMessage message = new ScpToMessage(getVerbose(), session, new File(localFile), remotePath);
+            message.setLogListener(this);
+            message.execute();
+        } catch (IOException e) {
+            failed = true;
+            handleError(e);
+        } catch (JSchException e) {
+            failed = true;
+            handleError(e);
+        } finally {
+            if (null != lease) {
+                if (failed) {
+                    lease.invalidate();
+                } else {
+                    lease.release();
+                }
+            } else if (null != session && session.isConnected()) {
+                session.disconnect();
+            }
+        }
+    }
+
+    /**
+     * Return true if the remote file exists and has the digest, checked by a command run in the session
+     */
+    private boolean remoteDigestMatches(final Session session) throws JSchException, IOException {
+        final ChannelExec channel = (ChannelExec) session.openChannel("exec");
+        try {
+            channel.setCommand(digestCheckCommand(remotePath, digest));
+            channel.setInputStream(null);
+            final InputStream in = channel.getInputStream();
+            channel.connect();
+            final byte[] buf = new byte[256];
+            while (in.read(buf) >= 0) {
+                //discard output
+            }
+            while (!channel.isClosed()) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while checking remote file: " + remotePath);
+                }
+            }
+            return 0 == channel.getExitStatus();
+        } finally {
+            channel.disconnect();
+        }
+    }
+
+    /**
+     * Return a shell command which succeeds if the file has the SHA-1 digest. It uses whichever of sha1sum, shasum or
+     * openssl is available, and fails if the file does not exist or none of them are.
+     * <p/>
+     * The file is in a shared directory under a predictable name, so it is only accepted if it is a regular file owned
+     * by the remote user which is not a symlink and is not writable by group or others.  Otherwise another user could
+     * create it with the same content, and change it after the check to run commands as the remote user.
+     *
+     * @param path   file path
+     * @param digest hexadecimal digest
+     *
+     * @return command string
+     */
+    static String digestCheckCommand(final String path, final String digest) {
+        final String file = quote(path);
+        return "test ! -L " + file
+               + " && test -f " + file
+               + " && test -O " + file
+               + " && test -z \"$(find " + file + " \\( -perm -020 -o -perm -002 \\) -print)\""
+               + " && test \"$( (sha1sum || shasum || openssl sha1 -r) 2>/dev/null <" + file
+               + " | cut -c1-40)\" = " + quote(digest);
+    }
+
+    private static String quote(final String value) {
+        return "'" + value.replace("'", "'\\''") + "'";
+    }
+
+    private void handleError(final Exception e) throws BuildException {
+        final String message = "Failed copying file to " + getHost() + ":" + remotePath + ": " + e.getMessage();
+        if (getFailonerror()) {
+            throw new BuildException(message, e);
+        } else {
+            log(message, Project.MSG_ERR);
+        }
+    }
+}
@@ -0,0 +1,592 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* SSHSessionPool.java
+*
+*/
+package com.dtolabs.rundeck.core.tasks.net;
+
+import com.dtolabs.rundeck.core.common.Framework;
+import com.dtolabs.rundeck.core.common.FrameworkSupportService;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import org.apache.log4j.Logger;
+import org.apache.tools.ant.taskdefs.optional.ssh.SSHUserInfo;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * SSHSessionPool keeps authenticated JSch sessions open so that several exec/scp channels to the same node can share
+ * a single connection and key exchange. Sessions are keyed by user, host, port and credentials. Each session allows
+ * up to {@link #getMaxChannelsPerSession()} concurrent leases, and at most {@link #getMaxSessionsPerHost()} sessions
+ * are opened to a single host:port; further callers wait for a lease to be released. Sessions idle longer than
+ * {@link #getIdleTimeout()} milliseconds are disconnected by a shared background timer.
+ * <p/>
+ * One pool is registered per {@link Framework} instance, see {@link #getInstanceForFramework(Framework)}.
+ */
+public class SSHSessionPool implements FrameworkSupportService {
+    static final Logger logger = Logger.getLogger(SSHSessionPool.class);
+    public static final String SERVICE_NAME = "SSHSessionPool";
+    public static final String SSH_SESSIONPOOL_ENABLED_PROP = "framework.ssh.sessionpool.enabled";
+    public static final String SSH_SESSIONPOOL_MAX_SESSIONS_PROP = "framework.ssh.sessionpool.maxSessionsPerHost";
+    public static final String SSH_SESSIONPOOL_MAX_CHANNELS_PROP = "framework.ssh.sessionpool.maxChannelsPerSession";
+    public static final String SSH_SESSIONPOOL_IDLE_TIMEOUT_PROP = "framework.ssh.sessionpool.idleTimeout";
+    public static final int DEFAULT_MAX_SESSIONS_PER_HOST = 4;
+    /**
+     * OpenSSH allows 10 sessions per connection by default (MaxSessions)
+     */
+    public static final int DEFAULT_MAX_CHANNELS_PER_SESSION = 8;
+    public static final long DEFAULT_IDLE_TIMEOUT = 30000;
+
+    /**
+     * Timer shared by all pools to disconnect idle sessions. A pool is only referenced by the timer while it has open
+     * sessions.
+     */
+    private static Timer evictionTimer;
+
+    private final boolean enabled;
+    private final int maxSessionsPerHost;
+    private final int maxChannelsPerSession;
+    private final long idleTimeout;
+
+    private final HashMap<SessionKey, List<PooledSession>> sessions = new HashMap<SessionKey, List<PooledSession>>();
+    /**
+     * count of open or opening sessions per host:port
+     */
+    private final HashMap<String, Integer> hostCounts = new HashMap<String, Integer>();
+    private TimerTask evictionTask;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong handshakeTime = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    public SSHSessionPool(final boolean enabled, final int maxSessionsPerHost, final int maxChannelsPerSession,
+                          final long idleTimeout) {
+        if (maxSessionsPerHost < 1) {
+            throw new IllegalArgumentException("maxSessionsPerHost must be at least 1: " + maxSessionsPerHost);
+        }
+        if (maxChannelsPerSession < 1) {
+            throw new IllegalArgumentException("maxChannelsPerSession must be at least 1: " + maxChannelsPerSession);
+        }
+        this.enabled = enabled;
+        this.maxSessionsPerHost = maxSessionsPerHost;
+        this.maxChannelsPerSession = maxChannelsPerSession;
+        this.idleTimeout = idleTimeout;
+    }
+
+    public String getName() {
+        return SERVICE_NAME;
+    }
+
+    /**
+     * Return the pool for the framework, creating it from the framework properties if necessary.
+     */
+    public static SSHSessionPool getInstanceForFramework(final Framework framework) {
+        //framework views share the same framework services, so synchronize on the class rather than the framework
+        synchronized (SSHSessionPool.class) {
+            if (null == framework.getService(SERVICE_NAME)) {
+                final SSHSessionPool pool = new SSHSessionPool(
+                    !framework.hasProperty(SSH_SESSIONPOOL_ENABLED_PROP)
+                    || "true".equals(framework.getProperty(SSH_SESSIONPOOL_ENABLED_PROP)),
+                    (int) longProperty(framework, SSH_SESSIONPOOL_MAX_SESSIONS_PROP, DEFAULT_MAX_SESSIONS_PER_HOST),
+                    (int) longProperty(framework, SSH_SESSIONPOOL_MAX_CHANNELS_PROP, DEFAULT_MAX_CHANNELS_PER_SESSION),
+                    longProperty(framework, SSH_SESSIONPOOL_IDLE_TIMEOUT_PROP, DEFAULT_IDLE_TIMEOUT));
+                framework.setService(SERVICE_NAME, pool);
+            }
+            return (SSHSessionPool) framework.getService(SERVICE_NAME);
+        }
+    }
+
+    private static long longProperty(final Framework framework, final String prop, final long defval) {
+        if (framework.hasProperty(prop)) {
+            try {
+                return Long.parseLong(framework.getProperty(prop).trim());
+            } catch (NumberFormatException e) {
+                logger.warn("Framework property " + prop + " was not a valid number, using default: " + defval);
+            }
+        }
+        return defval;
+    }
+
+    /**
+     * Factory used to open and authenticate a new session when the pool has none available
+     */
+    public static interface SessionFactory {
+        public Session openSession() throws JSchException;
+    }
+
+    /**
+     * Acquire a lease on a connected session for the key, opening a new session with the factory if no pooled
+     * session has a free channel.  The lease must be released when the caller has finished with its channel.
+     *
+     * @param key     session key
+     * @param factory factory to open a new session
+     *
+     * @return lease
+     *
+     * @throws JSchException if opening the session fails or the thread is interrupted while waiting for a session
+     */
+    public Lease acquire(final SessionKey key, final SessionFactory factory) throws JSchException {
+        final List<PooledSession> stale = new ArrayList<PooledSession>();
+        try {
+            synchronized (this) {
+                while (true) {
+                    final PooledSession found = findAvailable(key, stale);
+                    if (null != found) {
+                        found.leases++;
+                        hitCount.incrementAndGet();
+                        return new Lease(found);
+                    }
+                    if (getHostCount(key.getHostKey()) < maxSessionsPerHost) {
+                        adjustHostCount(key.getHostKey(), 1);
+                        break;
+                    }
+                    if (removeIdleForHost(key.getHostKey(), stale)) {
+                        //an unused session for other credentials made room
+                        continue;
+                    }
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new JSchException("Interrupted while waiting for an ssh session to " + key);
+                    }
+                }
+            }
+        } finally {
+            disconnectAll(stale);
+        }
+        missCount.incrementAndGet();
+        Session session = null;
+        final long start = System.currentTimeMillis();
+        try {
+            session = factory.openSession();
+        } finally {
+            if (null == session) {
+                synchronized (this) {
+                    adjustHostCount(key.getHostKey(), -1);
+                    notifyAll();
+                }
+            }
+        }
+        handshakeTime.addAndGet(System.currentTimeMillis() - start);
+        final PooledSession pooled = new PooledSession(key, session);
+        pooled.leases = 1;
+        synchronized (this) {
+            List<PooledSession> list = sessions.get(key);
+            if (null == list) {
+                list = new ArrayList<PooledSession>();
+                sessions.put(key, list);
+            }
+            list.add(pooled);
+            scheduleEviction();
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Opened pooled ssh session to " + key + " in " + (System.currentTimeMillis() - start) + "ms");
+        }
+        return new Lease(pooled);
+    }
+
+    /**
+     * Return a usable session with a free channel, and remove dead sessions into the stale list
+     */
+    private PooledSession findAvailable(final SessionKey key, final List<PooledSession> stale) {
+        final List<PooledSession> list = sessions.get(key);
+        if (null == list) {
+            return null;
+        }
+        PooledSession found = null;
+        for (final Iterator<PooledSession> iter = list.iterator(); iter.hasNext(); ) {
+            final PooledSession pooled = iter.next();
+            if (!pooled.invalid && !isAlive(pooled.session)) {
+                pooled.invalid = true;
+            }
+            if (pooled.invalid) {
+                if (pooled.leases < 1) {
+                    iter.remove();
+                    adjustHostCount(key.getHostKey(), -1);
+                    stale.add(pooled);
+                }
+            } else if (null == found && pooled.leases < maxChannelsPerSession) {
+                found = pooled;
+            }
+        }
+        if (list.isEmpty()) {
+            sessions.remove(key);
+        }
+        return found;
+    }
+
+    /**
+     * Remove one session without leases for the host:port into the stale list
+     */
+    private boolean removeIdleForHost(final String hostKey, final List<PooledSession> stale) {
+        for (final List<PooledSession> list : sessions.values()) {
+            for (final PooledSession pooled : list) {
+                if (pooled.leases < 1 && hostKey.equals(pooled.key.getHostKey())) {
+                    removeSession(pooled);
+                    stale.add(pooled);
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void release(final PooledSession pooled, final boolean invalidate) {
+        boolean remove = false;
+        synchronized (this) {
+            pooled.leases--;
+            pooled.lastUsed = System.currentTimeMillis();
+            if (invalidate) {
+                pooled.invalid = true;
+            }
+            if (pooled.leases < 1 && (pooled.invalid || !isAlive(pooled.session))) {
+                removeSession(pooled);
+                remove = true;
+            }
+            notifyAll();
+        }
+        if (remove) {
+            disconnectAll(Collections.singletonList(pooled));
+        }
+    }
+
+    private void removeSession(final PooledSession pooled) {
+        final List<PooledSession> list = sessions.get(pooled.key);
+        if (null != list && list.remove(pooled)) {
+            adjustHostCount(pooled.key.getHostKey(), -1);
+            if (list.isEmpty()) {
+                sessions.remove(pooled.key);
+            }
+        }
+    }
+
+    /**
+     * Disconnect any sessions without leases which have been idle at least the idle timeout.
+     *
+     * @param now current time in milliseconds
+     *
+     * @return number of sessions evicted
+     */
+    public int evictIdle(final long now) {
+        return evict(now, false);
+    }
+
+    /**
+     * Disconnect all sessions which are not currently leased
+     */
+    public int close() {
+        return evict(System.currentTimeMillis(), true);
+    }
+
+    private int evict(final long now, final boolean all) {
+        final List<PooledSession> evicted = new ArrayList<PooledSession>();
+        synchronized (this) {
+            for (final List<PooledSession> list : new ArrayList<List<PooledSession>>(sessions.values())) {
+                for (final PooledSession pooled : new ArrayList<PooledSession>(list)) {
+                    if (pooled.leases < 1 && (all || pooled.invalid || now - pooled.lastUsed >= idleTimeout
+                                              || !isAlive(pooled.session))) {
+                        removeSession(pooled);
+                        evicted.add(pooled);
+                    }
+                }
+            }
+            if (sessions.isEmpty() && null != evictionTask) {
+                evictionTask.cancel();
+                evictionTask = null;
+            }
+            if (evicted.size() > 0) {
+                notifyAll();
+            }
+        }
+        evictionCount.addAndGet(evicted.size());
+        disconnectAll(evicted);
+        return evicted.size();
+    }
+
+    private void scheduleEviction() {
+        if (null != evictionTask || idleTimeout <= 0) {
+            return;
+        }
+        evictionTask = new TimerTask() {
+            public void run() {
+                try {
+                    evictIdle(System.currentTimeMillis());
+                } catch (RuntimeException e) {
+                    logger.error("Error evicting idle ssh sessions: " + e.getMessage(), e);
+                }
+            }
+        };
+        final long period = Math.max(idleTimeout / 2, 1000);
+        getEvictionTimer().schedule(evictionTask, period, period);
+    }
+
+    private static synchronized Timer getEvictionTimer() {
+        if (null == evictionTimer) {
+            evictionTimer = new Timer("SSHSessionPool-evictor", true);
+        }
+        return evictionTimer;
+    }
+
+    private void disconnectAll(final List<PooledSession> list) {
+        for (final PooledSession pooled : list) {
+            try {
+                disconnect(pooled.session);
+            } catch (RuntimeException e) {
+                logger.debug("Error disconnecting ssh session to " + pooled.key + ": " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Return true if the session can still be used to open channels
+     */
+    protected boolean isAlive(final Session session) {
+        return session.isConnected();
+    }
+
+    /**
+     * Disconnect the session
+     */
+    protected void disconnect(final Session session) {
+        if (session.isConnected()) {
+            session.disconnect();
+        }
+    }
+
+    private int getHostCount(final String hostKey) {
+        final Integer count = hostCounts.get(hostKey);
+        return null != count ? count : 0;
+    }
+
+    private void adjustHostCount(final String hostKey, final int delta) {
+        final int count = getHostCount(hostKey) + delta;
+        if (count > 0) {
+            hostCounts.put(hostKey, count);
+        } else {
+            hostCounts.remove(hostKey);
+        }
+    }
+
+    /**
+     * Return the number of open sessions in the pool
+     */
+    public synchronized int getSessionCount() {
+        int count = 0;
+        for (final List<PooledSession> list : sessions.values()) {
+            count += list.size();
+        }
+        return count;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int getMaxSessionsPerHost() {
+        return maxSessionsPerHost;
+    }
+
+    public int getMaxChannelsPerSession() {
+        return maxChannelsPerSession;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * Return number of leases satisfied by an already open session
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Return number of leases which required a new session
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Return total time in milliseconds spent connecting and authenticating new sessions
+     */
+    public long getHandshakeTime() {
+        return handshakeTime.get();
+    }
+
+    /**
+     * Return number of idle sessions disconnected by the pool
+     */
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public String toString() {
+        return "SSHSessionPool{" +
+               "sessions=" + getSessionCount() +
+               ", hits=" + getHitCount() +
+               ", misses=" + getMissCount() +
+               ", handshakeTime=" + getHandshakeTime() +
+               ", evictions=" + getEvictionCount() +
+               '}';
+    }
+
+    private static class PooledSession {
+        final SessionKey key;
+        final Session session;
+        int leases;
+        long lastUsed;
+        boolean invalid;
+
+        PooledSession(final SessionKey key, final Session session) {
+            this.key = key;
+            this.session = session;
+            this.lastUsed = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * A lease on a pooled session, which must be released or invalidated exactly once.
+     */
+    public class Lease {
+        private final PooledSession pooled;
+        private boolean released;
+
+        private Lease(final PooledSession pooled) {
+            this.pooled = pooled;
+        }
+
+        public Session getSession() {
+            return pooled.session;
+        }
+
+        /**
+         * Return the session to the pool
+         */
+        public void release() {
+            finish(false);
+        }
+
+        /**
+         * Return the session to the pool and mark it as unusable, it will be disconnected when all leases are
+         * released.
+         */
+        public void invalidate() {
+            finish(true);
+        }
+
+        private synchronized void finish(final boolean invalidate) {
+            if (released) {
+                return;
+            }
+            released = true;
+            SSHSessionPool.this.release(pooled, invalidate);
+        }
+    }
+
+    /**
+     * Identifies sessions which can be shared: same user, host, port, credentials and socket timeout.
+     */
+    public static final class SessionKey {
+        private final String username;
+        private final String host;
+        private final int port;
+        private final String keyfile;
+        private final String password;
+        private final String passphrase;
+        private final int timeout;
+
+        public SessionKey(final String username, final String host, final int port, final String keyfile,
+                          final String password, final String passphrase) {
+            this(username, host, port, keyfile, password, passphrase, 0);
+        }
+
+        /**
+         * @param timeout socket timeout in milliseconds set on the session, 0 for no timeout
+         */
+        public SessionKey(final String username, final String host, final int port, final String keyfile,
+                          final String password, final String passphrase, final int timeout) {
+            this.username = username;
+            this.host = host;
+            this.port = port;
+            this.keyfile = keyfile;
+            this.password = password;
+            this.passphrase = passphrase;
+            this.timeout = timeout;
+        }
+
+        /**
+         * Create a key from the ant ssh connection info. A null passphrase is treated the same as an empty one.
+         */
+        public static SessionKey create(final String host, final int port, final SSHUserInfo userInfo) {
+            return create(host, port, userInfo, 0);
+        }
+
+        /**
+         * Create a key from the ant ssh connection info for sessions opened with the socket timeout.
+         */
+        public static SessionKey create(final String host, final int port, final SSHUserInfo userInfo,
+                                        final int timeout) {
+            return new SessionKey(userInfo.getName(), host, port, userInfo.getKeyfile(), userInfo.getPassword(),
+                null != userInfo.getPassphrase() ? userInfo.getPassphrase() : "", timeout);
+        }
+
+        String getHostKey() {
+            return host + ":" + port;
+        }
+
+        public boolean equals(final Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof SessionKey)) {
+                return false;
+            }
+            final SessionKey that = (SessionKey) o;
+            return port == that.port
+                   && timeout == that.timeout
+                   && eq(username, that.username)
+                   && eq(host, that.host)
+                   && eq(keyfile, that.keyfile)
+                   && eq(password, that.password)
+                   && eq(passphrase, that.passphrase);
+        }
+
+        private static boolean eq(final String a, final String b) {
+            return null == a ? null == b : a.equals(b);
+        }
+
+        public int hashCode() {
+            int result = username != null ? username.hashCode() : 0;
+            result = 31 * result + (host != null ? host.hashCode() : 0);
+            result = 31 * result + port;
+            result = 31 * result + timeout;
+            result = 31 * result + (keyfile != null ? keyfile.hashCode() : 0);
+            return result;
+        }
+
+        public String toString() {
+            return username + "@" + host + ":" + port;
+        }
+    }
+}
@@ -73,6 +73,8 @@ public class SSHTaskBuilder {
         sshexecTask.setVerbose(false);
         sshexecTask.setTimeout(timeout);
         sshexecTask.setOutputproperty("sshexec.output");
+        //stream output to the node log as it arrives, and keep only the tail for the output property
+        sshexecTask.setStreamingOutput(true);
 
         // If the node entry contains a non-default port, configure the connection to use it.
         if (nodeentry.containsPort()) {
@@ -134,6 +136,11 @@ public class SSHTaskBuilder {
         }
 
         DataContextUtils.addEnvVars(sshexecTask, dataContext);
+
+        final SSHSessionPool sessionPool = SSHSessionPool.getInstanceForFramework(framework);
+        if (sessionPool.isEnabled()) {
+            sshexecTask.setSessionPool(sessionPool);
+        }
         return sshexecTask;
 
     }
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* ExecutionLogConverter.java
+*
+*/
+package com.dtolabs.rundeck.core.utils;
+
+import java.io.*;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+/**
+ * ExecutionLogConverter converts a finished text execution log to an indexed execution log. The text format has one
+ * entry per "^^^" delimited section: <code>^^^time|level|user|module|command|node|context|message^^^</code>, or
+ * <code>^^^time|level|message^^^</code>, where the message may span multiple lines, and the log ends with
+ * <code>^^^END^^^</code>. Entries are parsed the same way as the execution output view parses them.
+ * <p/>
+ * The text format only records the time of day as "hh:mm:ss", which is converted to a time on the first day of the
+ * epoch so that it is formatted the same way again.
+ */
+public class ExecutionLogConverter {
+    /**
+     * Time format of the text log
+     */
+    public static final String TIME_FORMAT = "hh:mm:ss";
+    private static final String MARKER = "^^^";
+    private static final String END = "^^^END^^^";
+    /**
+     * number of fields in a text entry with context data, including the message
+     */
+    private static final int FIELD_COUNT = 8;
+
+    private final ExecutionLogWriter writer;
+    private final SimpleDateFormat format = new SimpleDateFormat(TIME_FORMAT, Locale.US);
+    private final String lSep = System.getProperty("line.separator");
+    private String[] fields;
+    private StringBuilder message;
+
+    private ExecutionLogConverter(final ExecutionLogWriter writer) {
+        this.writer = writer;
+    }
+
+    /**
+     * Convert a text log file to an indexed log file, replacing the indexed log file if it exists
+     *
+     * @param textFile the text log
+     * @param logFile  the indexed log
+     *
+     * @return the number of entries converted
+     *
+     * @throws IOException if an error occurs
+     */
+    public static long convert(final File textFile, final File logFile) throws IOException {
+        final BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(textFile)));
+        try {
+            final ExecutionLogWriter writer = new ExecutionLogWriter(logFile);
+            try {
+                new ExecutionLogConverter(writer).convert(reader);
+            } finally {
+                writer.close();
+            }
+            return writer.getCount();
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void convert(final BufferedReader reader) throws IOException {
+        String line;
+        while (null != (line = reader.readLine())) {
+            if (line.startsWith(END)) {
+                break;
+            }
+            if (line.startsWith(MARKER)) {
+                emit();
+                String text = line.substring(MARKER.length());
+                boolean full = false;
+                if (text.endsWith(MARKER) || "".equals(text)) {
+                    if (text.length() >= MARKER.length()) {
+                        text = text.substring(0, text.length() - MARKER.length());
+                    }
+                    full = true;
+                }
+                startEntry(text);
+                if (full) {
+                    emit();
+                }
+            } else if (null != fields && line.endsWith(MARKER)) {
+                message.append(lSep).append(line.substring(0, line.length() - MARKER.length()));
+                emit();
+            } else if (null != fields) {
+                message.append(lSep).append(line);
+            }
+        }
+        emit();
+    }
+
+    private void startEntry(final String text) {
+        final String[] arr = text.split("\\|", FIELD_COUNT);
+        if (arr.length < 3) {
+            return;
+        }
+        fields = new String[FIELD_COUNT];
+        fields[0] = arr[0].trim();
+        fields[1] = arr[1].trim();
+        message = new StringBuilder();
+        if (arr.length >= FIELD_COUNT - 1) {
+            for (int i = 2; i < FIELD_COUNT - 1; i++) {
+                fields[i] = arr[i].trim();
+            }
+            if (arr.length == FIELD_COUNT) {
+                message.append(arr[FIELD_COUNT - 1].trim());
+            }
+        } else {
+            for (int i = 2; i < arr.length; i++) {
+                if (i > 2) {
+                    message.append('|');
+                }
+                message.append(arr[i].trim());
+            }
+        }
+    }
+
+    private void emit() throws IOException {
+        if (null == fields) {
+            return;
+        }
+        long time = 0;
+        try {
+            time = format.parse(fields[0]).getTime();
+        } catch (ParseException e) {
+            //leave unset
+        }
+        writer.write(new ExecutionLogEntry(time, fields[1], fields[2], fields[3], fields[4], fields[5], fields[6],
+            message.toString()));
+        fields = null;
+        message = null;
+    }
+
+    /**
+     * Convert text log files to indexed log files with the same name and the suffix {@link
+     * ExecutionLogWriter#LOG_SUFFIX}
+     *
+     * @param args text log files
+     *
+     * @throws IOException if an error occurs
+     */
+    public static void main(final String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: ExecutionLogConverter <file.txt> [<file.txt> ...]");
+            System.exit(2);
+        }
+        for (final String arg : args) {
+            final File textFile = new File(arg);
+            final File logFile = ExecutionLogWriter.logFileFor(textFile);
+            final long start = System.currentTimeMillis();
+            final long count = convert(textFile, logFile);
+            System.out.println(textFile + ": " + count + " entries written to " + logFile + " in "
+                               + (System.currentTimeMillis() - start) + "ms");
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* ExecutionLogEntry.java
+*
+*/
+package com.dtolabs.rundeck.core.utils;
+
+/**
+ * ExecutionLogEntry is a single message of an indexed execution log, with its context data.
+ */
+public class ExecutionLogEntry {
+    private final long time;
+    private final String level;
+    private final String user;
+    private final String module;
+    private final String command;
+    private final String node;
+    private final String context;
+    private final String message;
+
+    /**
+     * Create an entry. Any of the context values may be null.
+     *
+     * @param time    time of the message in milliseconds
+     * @param level   log level name
+     * @param user    user
+     * @param module  module
+     * @param command command
+     * @param node    node name
+     * @param context context
+     * @param message message text, without a trailing line separator
+     */
+    public ExecutionLogEntry(final long time, final String level, final String user, final String module,
+                             final String command, final String node, final String context, final String message) {
+        this.time = time;
+        this.level = level;
+        this.user = user;
+        this.module = module;
+        this.command = command;
+        this.node = node;
+        this.context = context;
+        this.message = message;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public String getLevel() {
+        return level;
+    }
+
+    public String getUser() {
+        return user;
+    }
+
+    public String getModule() {
+        return module;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public String getNode() {
+        return node;
+    }
+
+    public String getContext() {
+        return context;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    @Override
+    public String toString() {
+        return "ExecutionLogEntry{" +
+               "time=" + time +
+               ", level='" + level + '\'' +
+               ", user='" + user + '\'' +
+               ", node='" + node + '\'' +
+               ", command='" + command + '\'' +
+               ", message='" + message + '\'' +
+               '}';
+    }
+}
@@ -0,0 +1,444 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* ExecutionLogReader.java
+*
+*/
+package com.dtolabs.rundeck.core.utils;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.dtolabs.rundeck.core.utils.ExecutionLogWriter.*;
+
+/**
+ * ExecutionLogReader reads an indexed execution log written by {@link ExecutionLogWriter}, which may still be in
+ * progress. Reading resumes from the offset returned by a previous read, and the last entries of the log are found
+ * using the index rather than by scanning the whole log. Incomplete records at the end of a log which is still being
+ * written are not returned.
+ */
+public class ExecutionLogReader implements Closeable {
+    private final File file;
+    private final RandomAccessFile data;
+    private final RandomAccessFile index;
+    private final int interval;
+
+    /**
+     * Open a log file and its index file
+     *
+     * @param file the log file
+     *
+     * @throws IOException if the files cannot be read or are not an indexed execution log
+     */
+    public ExecutionLogReader(final File file) throws IOException {
+        this.file = file;
+        data = new RandomAccessFile(file, "r");
+        RandomAccessFile idx = null;
+        try {
+            idx = new RandomAccessFile(indexFileFor(file), "r");
+            if (data.length() < HEADER_LENGTH || data.readInt() != LOG_MAGIC || data.readInt() != VERSION) {
+                throw new IOException("Not an indexed execution log: " + file);
+            }
+            interval = readInterval(idx, file);
+        } catch (IOException e) {
+            data.close();
+            if (null != idx) {
+                idx.close();
+            }
+            throw e;
+        }
+        index = idx;
+    }
+
+    private static int readInterval(final RandomAccessFile index, final File file) throws IOException {
+        if (index.length() < HEADER_LENGTH || index.readInt() != INDEX_MAGIC) {
+            throw new IOException("Not an indexed execution log index: " + indexFileFor(file));
+        }
+        final int interval = index.readInt();
+        if (interval < 1) {
+            throw new IOException("Invalid index interval " + interval + " in " + indexFileFor(file));
+        }
+        return interval;
+    }
+
+    /**
+     * Return true if the log file and its index file exist
+     *
+     * @param file the log file
+     *
+     * @return true if the log can be opened
+     */
+    public static boolean isAvailable(final File file) {
+        return file.isFile() && indexFileFor(file).isFile();
+    }
+
+    /**
+     * Read entries starting at an offset
+     *
+     * @param offset   offset of a record, as returned by a previous read, or 0 to read from the start
+     * @param max      maximum number of entries to return, or 0 for no limit
+     * @param maxBytes stop reading after this many bytes have been read, or 0 for no limit
+     * @param node     if not null, only return entries for this node
+     *
+     * @return the entries, and the offset to resume reading from
+     *
+     * @throws IOException if an error occurs
+     */
+    public Chunk read(final long offset, final int max, final long maxBytes, final String node) throws IOException {
+        final long start = Math.max(offset, HEADER_LENGTH);
+        final Cursor cursor = new Cursor(start, data.length());
+        final List<ExecutionLogEntry> entries = new ArrayList<ExecutionLogEntry>();
+        boolean completed = false;
+        while ((max <= 0 || entries.size() < max) && (maxBytes <= 0 || cursor.pos - start < maxBytes)) {
+            final int length = cursor.nextLength();
+            if (length < 0) {
+                break;
+            }
+            cursor.readContent(length);
+            if (TYPE_END == cursor.content[0]) {
+                completed = true;
+                break;
+            }
+            final ExecutionLogEntry entry = decode(cursor.content, length, node);
+            if (null != entry) {
+                entries.add(entry);
+            }
+        }
+        return new Chunk(entries, cursor.pos, completed);
+    }
+
+    /**
+     * Read the last entries of the log
+     *
+     * @param count number of entries
+     * @param node  if not null, only return entries for this node
+     *
+     * @return the entries, and the offset to resume reading from
+     *
+     * @throws IOException if an error occurs
+     */
+    public Chunk tail(final int count, final String node) throws IOException {
+        final Position end = locateEnd();
+        if (null == node) {
+            return read(seek(Math.max(0, end.count - count)), count, 0, null);
+        }
+        //scan backwards from the end for the matching entries
+        long pos = end.offset;
+        long first = end.offset;
+        int matched = 0;
+        final byte[] buf = new byte[4];
+        byte[] content = new byte[256];
+        while (matched < count && pos > HEADER_LENGTH) {
+            readAt(pos - 4, buf, 4);
+            final int length = toInt(buf);
+            final long recordStart = pos - length - RECORD_OVERHEAD;
+            if (length < 1 || recordStart < HEADER_LENGTH) {
+                throw new IOException("Corrupt record before offset " + pos + " in " + file);
+            }
+            if (content.length < length) {
+                content = new byte[length];
+            }
+            readAt(recordStart + 4, content, length);
+            if (TYPE_ENTRY == content[0] && null != decode(content, length, node)) {
+                matched++;
+                first = recordStart;
+            }
+            pos = recordStart;
+        }
+        return read(first, count, 0, node);
+    }
+
+    /**
+     * Return the number of complete entries in the log
+     *
+     * @return the count
+     *
+     * @throws IOException if an error occurs
+     */
+    public long count() throws IOException {
+        return locateEnd().count;
+    }
+
+    /**
+     * Return the offset of an entry, or of the end of the readable entries if there are fewer entries
+     *
+     * @param entry entry number, starting at 0
+     *
+     * @return the offset
+     *
+     * @throws IOException if an error occurs
+     */
+    public long seek(final long entry) throws IOException {
+        final long length = data.length();
+        final long slots = countSlots(length);
+        long slot = entry / interval;
+        if (slot >= slots) {
+            slot = slots - 1;
+        }
+        long pos = slot < 0 ? HEADER_LENGTH : readSlot(slot);
+        long skip = entry - (slot < 0 ? 0 : slot * interval);
+        final Cursor cursor = new Cursor(pos, length);
+        while (skip > 0) {
+            final int recordLength = cursor.nextLength();
+            if (recordLength < 0 || TYPE_END == cursor.skipContent(recordLength)) {
+                break;
+            }
+            pos = cursor.pos;
+            skip--;
+        }
+        return pos;
+    }
+
+    /**
+     * Find the number of entries and the offset following the last complete entry, by scanning from the last index
+     * offset
+     */
+    private Position locateEnd() throws IOException {
+        final long length = data.length();
+        final long slots = countSlots(length);
+        long pos = slots > 0 ? readSlot(slots - 1) : HEADER_LENGTH;
+        long count = slots > 0 ? (slots - 1) * interval : 0;
+        final Cursor cursor = new Cursor(pos, length);
+        while (true) {
+            final int recordLength = cursor.nextLength();
+            if (recordLength < 0 || TYPE_END == cursor.skipContent(recordLength)) {
+                break;
+            }
+            pos = cursor.pos;
+            count++;
+        }
+        return new Position(count, pos);
+    }
+
+    /**
+     * Return the number of index slots which refer to offsets within the log
+     */
+    private long countSlots(final long length) throws IOException {
+        long slots = (index.length() - HEADER_LENGTH) / 8;
+        while (slots > 0 && readSlot(slots - 1) >= length) {
+            slots--;
+        }
+        return slots;
+    }
+
+    private long readSlot(final long slot) throws IOException {
+        final byte[] buf = new byte[8];
+        final ByteBuffer buffer = ByteBuffer.wrap(buf);
+        final FileChannel channel = index.getChannel();
+        final long pos = HEADER_LENGTH + slot * 8;
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, pos + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of index: " + indexFileFor(file));
+            }
+        }
+        return buffer.getLong(0);
+    }
+
+    private void readAt(final long pos, final byte[] buf, final int length) throws IOException {
+        final ByteBuffer buffer = ByteBuffer.wrap(buf, 0, length);
+        final FileChannel channel = data.getChannel();
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, pos + buffer.position()) < 0) {
+                throw new EOFException("Unexpected end of log: " + file);
+            }
+        }
+    }
+
+    private static int toInt(final byte[] buf) {
+        return ((buf[0] & 0xff) << 24) | ((buf[1] & 0xff) << 16) | ((buf[2] & 0xff) << 8) | (buf[3] & 0xff);
+    }
+
+    /**
+     * Decode an entry record
+     *
+     * @return the entry, or null if it does not match the node
+     */
+    private static ExecutionLogEntry decode(final byte[] content, final int length, final String node) throws
+        IOException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(content, 0, length));
+        in.readByte();
+        final long time = in.readLong();
+        final String entryNode = readString(in);
+        if (null != node && !node.equals(entryNode)) {
+            return null;
+        }
+        final String level = readString(in);
+        final String user = readString(in);
+        final String module = readString(in);
+        final String command = readString(in);
+        final String context = readString(in);
+        final String message = readString(in);
+        return new ExecutionLogEntry(time, level, user, module, command, entryNode, context, message);
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, "UTF-8");
+    }
+
+    public void close() throws IOException {
+        try {
+            data.close();
+        } finally {
+            index.close();
+        }
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Reads records forward from an offset, up to a fixed end offset
+     */
+    private class Cursor {
+        private final DataInputStream in;
+        private final long end;
+        private long pos;
+        private byte[] content = new byte[256];
+
+        Cursor(final long pos, final long end) {
+            this.pos = pos;
+            this.end = end;
+            this.in = new DataInputStream(new BufferedInputStream(new ChannelInputStream(data.getChannel(), pos)));
+        }
+
+        /**
+         * Read the length of the next record
+         *
+         * @return the length, or -1 if there is no complete record
+         */
+        int nextLength() throws IOException {
+            if (pos + RECORD_OVERHEAD > end) {
+                return -1;
+            }
+            final int length = in.readInt();
+            if (length < 1 || pos + length + RECORD_OVERHEAD > end) {
+                return -1;
+            }
+            return length;
+        }
+
+        void readContent(final int length) throws IOException {
+            if (content.length < length) {
+                content = new byte[length];
+            }
+            in.readFully(content, 0, length);
+            finish(length);
+        }
+
+        /**
+         * Skip the content of the record
+         *
+         * @return the record type
+         */
+        byte skipContent(final int length) throws IOException {
+            final byte type = in.readByte();
+            int remaining = length - 1;
+            while (remaining > 0) {
+                final int skipped = in.skipBytes(remaining);
+                if (skipped <= 0) {
+                    throw new EOFException("Unexpected end of log: " + file);
+                }
+                remaining -= skipped;
+            }
+            finish(length);
+            return type;
+        }
+
+        private void finish(final int length) throws IOException {
+            if (in.readInt() != length) {
+                throw new IOException("Corrupt record at offset " + pos + " in " + file);
+            }
+            pos += length + RECORD_OVERHEAD;
+        }
+    }
+
+    /**
+     * InputStream reading a channel from a position, without changing the position of the channel
+     */
+    private static class ChannelInputStream extends InputStream {
+        private final FileChannel channel;
+        private long pos;
+
+        ChannelInputStream(final FileChannel channel, final long pos) {
+            this.channel = channel;
+            this.pos = pos;
+        }
+
+        @Override
+        public int read() throws IOException {
+            final byte[] b = new byte[1];
+            return read(b, 0, 1) < 0 ? -1 : b[0] & 0xff;
+        }
+
+        @Override
+        public int read(final byte[] b, final int off, final int len) throws IOException {
+            final int read = channel.read(ByteBuffer.wrap(b, off, len), pos);
+            if (read > 0) {
+                pos += read;
+            }
+            return read;
+        }
+    }
+
+    private static class Position {
+        final long count;
+        final long offset;
+
+        Position(final long count, final long offset) {
+            this.count = count;
+            this.offset = offset;
+        }
+    }
+
+    /**
+     * The result of a read: the entries, the offset to resume reading from, and whether the end of the log was read
+     */
+    public static class Chunk {
+        private final List<ExecutionLogEntry> entries;
+        private final long offset;
+        private final boolean completed;
+
+        Chunk(final List<ExecutionLogEntry> entries, final long offset, final boolean completed) {
+            this.entries = Collections.unmodifiableList(entries);
+            this.offset = offset;
+            this.completed = completed;
+        }
+
+        public List<ExecutionLogEntry> getEntries() {
+            return entries;
+        }
+
+        public long getOffset() {
+            return offset;
+        }
+
+        public boolean isCompleted() {
+            return completed;
+        }
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* ExecutionLogWriter.java
+*
+*/
+package com.dtolabs.rundeck.core.utils;
+
+import java.io.*;
+
+/**
+ * ExecutionLogWriter writes an indexed execution log. The log file contains a header followed by records, each record
+ * is the length of its content, the content, and the length again, so that the file can be read forwards or
+ * backwards. The content of an entry record is the type, time, node, level, user, module, command, context and
+ * message. The log is finished by an end record.
+ * <p/>
+ * The index file contains a header with the index interval, followed by the offset of every Nth entry record in the
+ * log, so the offset of entry number <i>n</i> is found by reading the index at slot <i>n/N</i> and skipping at most
+ * N-1 records.
+ */
+public class ExecutionLogWriter implements Closeable, Flushable {
+    /**
+     * Suffix of the log file name, added to the name of the text log file
+     */
+    public static final String LOG_SUFFIX = ".rdlog";
+    /**
+     * Suffix of the index file name, added to the name of the log file
+     */
+    public static final String INDEX_SUFFIX = ".idx";
+    public static final int DEFAULT_INDEX_INTERVAL = 256;
+
+    static final int LOG_MAGIC = 0x52444c47;
+    static final int INDEX_MAGIC = 0x52444958;
+    static final int VERSION = 1;
+    static final int HEADER_LENGTH = 8;
+    static final int RECORD_OVERHEAD = 8;
+    static final byte TYPE_ENTRY = 0;
+    static final byte TYPE_END = 1;
+
+    private final File file;
+    private final DataOutputStream data;
+    private final DataOutputStream index;
+    private final int interval;
+    private final ByteArrayOutputStream recordBytes = new ByteArrayOutputStream(256);
+    private final DataOutputStream record = new DataOutputStream(recordBytes);
+    private long offset;
+    private long count;
+    private boolean closed;
+
+    /**
+     * Create a writer with the default index interval. Existing files are replaced.
+     *
+     * @param file the log file, the index file is created next to it
+     *
+     * @throws IOException if the files cannot be created
+     */
+    public ExecutionLogWriter(final File file) throws IOException {
+        this(file, DEFAULT_INDEX_INTERVAL);
+    }
+
+    /**
+     * Create a writer. Existing files are replaced.
+     *
+     * @param file     the log file, the index file is created next to it
+     * @param interval number of entries between index offsets
+     *
+     * @throws IOException if the files cannot be created
+     */
+    public ExecutionLogWriter(final File file, final int interval) throws IOException {
+        if (interval < 1) {
+            throw new IllegalArgumentException("interval must be positive: " + interval);
+        }
+        this.file = file;
+        this.interval = interval;
+        data = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            index = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFileFor(file))));
+        } catch (IOException e) {
+            data.close();
+            throw e;
+        }
+        data.writeInt(LOG_MAGIC);
+        data.writeInt(VERSION);
+        index.writeInt(INDEX_MAGIC);
+        index.writeInt(interval);
+        offset = HEADER_LENGTH;
+    }
+
+    /**
+     * Return the indexed log file for a text log file
+     *
+     * @param textFile the text log file
+     *
+     * @return the log file
+     */
+    public static File logFileFor(final File textFile) {
+        return new File(textFile.getParentFile(), textFile.getName() + LOG_SUFFIX);
+    }
+
+    /**
+     * Return the index file for a log file
+     *
+     * @param logFile the log file
+     *
+     * @return the index file
+     */
+    public static File indexFileFor(final File logFile) {
+        return new File(logFile.getParentFile(), logFile.getName() + INDEX_SUFFIX);
+    }
+
+    /**
+     * Write an entry. The entry is not visible to readers until the writer is flushed.
+     *
+     * @param entry the entry
+     *
+     * @throws IOException if an error occurs
+     */
+    public synchronized void write(final ExecutionLogEntry entry) throws IOException {
+        if (closed) {
+            throw new IOException("Log is closed: " + file);
+        }
+        if (0 == count % interval) {
+            index.writeLong(offset);
+        }
+        recordBytes.reset();
+        record.writeByte(TYPE_ENTRY);
+        record.writeLong(entry.getTime());
+        writeString(record, entry.getNode());
+        writeString(record, entry.getLevel());
+        writeString(record, entry.getUser());
+        writeString(record, entry.getModule());
+        writeString(record, entry.getCommand());
+        writeString(record, entry.getContext());
+        writeString(record, entry.getMessage());
+        writeRecord();
+        count++;
+    }
+
+    private void writeRecord() throws IOException {
+        final int length = recordBytes.size();
+        data.writeInt(length);
+        recordBytes.writeTo(data);
+        data.writeInt(length);
+        offset += length + RECORD_OVERHEAD;
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        if (null == value) {
+            out.writeInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes("UTF-8");
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Flush written entries to the files. The log is flushed before the index, so the index never refers to a record
+     * which is not yet in the log.
+     *
+     * @throws IOException if an error occurs
+     */
+    public synchronized void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+        data.flush();
+        index.flush();
+    }
+
+    /**
+     * Write the end record and close the files
+     *
+     * @throws IOException if an error occurs
+     */
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        try {
+            recordBytes.reset();
+            record.writeByte(TYPE_END);
+            writeRecord();
+            flush();
+        } finally {
+            closed = true;
+            try {
+                data.close();
+            } finally {
+                index.close();
+            }
+        }
+    }
+
+    /**
+     * @return the number of entries written
+     */
+    public synchronized long getCount() {
+        return count;
+    }
+
+    public File getFile() {
+        return file;
+    }
+}
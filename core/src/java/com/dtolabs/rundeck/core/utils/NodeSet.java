@@ -658,7 +658,7 @@ public class NodeSet extends ProjectComponent {
          * Generate a Map of attribute names to values
          * @return
          */
-        Map<String,String> getAttributesMap(){
+        public Map<String,String> getAttributesMap(){
             if(null==attributesMap){
                 HashMap<String,String> attrs = new HashMap<String, String>();
                 if(null!=attributes){
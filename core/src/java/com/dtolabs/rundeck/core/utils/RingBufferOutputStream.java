@@ -0,0 +1,132 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* RingBufferOutputStream.java
+*
+*/
+package com.dtolabs.rundeck.core.utils;
+
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+
+/**
+ * RingBufferOutputStream retains only the last bytes written to it, up to a fixed capacity, so that the tail of an
+ * arbitrarily large output can be kept in constant memory.
+ */
+public class RingBufferOutputStream extends OutputStream {
+    private final byte[] buffer;
+    /**
+     * next write position
+     */
+    private int pos;
+    private boolean wrapped;
+    private long total;
+
+    /**
+     * Create a RingBufferOutputStream
+     *
+     * @param capacity maximum number of bytes to retain
+     */
+    public RingBufferOutputStream(final int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        buffer = new byte[capacity];
+    }
+
+    public synchronized void write(final int b) {
+        buffer[pos++] = (byte) b;
+        if (pos == buffer.length) {
+            pos = 0;
+            wrapped = true;
+        }
+        total++;
+    }
+
+    public synchronized void write(final byte[] b, final int off, final int len) {
+        total += len;
+        int start = off;
+        int count = len;
+        if (count >= buffer.length) {
+            //only the last capacity bytes are retained
+            start = off + count - buffer.length;
+            count = buffer.length;
+        }
+        final int first = Math.min(count, buffer.length - pos);
+        System.arraycopy(b, start, buffer, pos, first);
+        System.arraycopy(b, start + first, buffer, 0, count - first);
+        if (pos + count >= buffer.length) {
+            wrapped = true;
+        }
+        pos = (pos + count) % buffer.length;
+    }
+
+    /**
+     * Return the retained bytes, oldest first
+     *
+     * @return the bytes
+     */
+    public synchronized byte[] toByteArray() {
+        if (!wrapped) {
+            final byte[] result = new byte[pos];
+            System.arraycopy(buffer, 0, result, 0, pos);
+            return result;
+        }
+        final byte[] result = new byte[buffer.length];
+        System.arraycopy(buffer, pos, result, 0, buffer.length - pos);
+        System.arraycopy(buffer, 0, result, buffer.length - pos, pos);
+        return result;
+    }
+
+    /**
+     * Return the total number of bytes written, including those no longer retained
+     *
+     * @return the count
+     */
+    public synchronized long getTotalCount() {
+        return total;
+    }
+
+    /**
+     * Return true if some written bytes have been discarded
+     *
+     * @return true if truncated
+     */
+    public synchronized boolean isTruncated() {
+        return total > buffer.length;
+    }
+
+    /**
+     * Return the retained bytes decoded with the platform default charset
+     */
+    public String toString() {
+        return new String(toByteArray());
+    }
+
+    /**
+     * Return the retained bytes decoded with the given charset
+     *
+     * @param charsetName charset
+     *
+     * @return the string
+     *
+     * @throws UnsupportedEncodingException if the charset is not supported
+     */
+    public String toString(final String charsetName) throws UnsupportedEncodingException {
+        return new String(toByteArray(), charsetName);
+    }
+}
@@ -64,7 +64,8 @@ import java.io.PrintStream;
  */
 public class ThreadBoundOutputStream extends FilterOutputStream {
 
-    private InheritableThreadLocal<OutputStream> inheritOutputStream = new InheritableThreadLocal<OutputStream>();
+    private InheritableThreadLocal<OutputStream> inheritOutputStream = ThreadContext.register(
+        new InheritableThreadLocal<OutputStream>());
 
     private final OutputStream sink;
 
@@ -115,13 +116,40 @@ public class ThreadBoundOutputStream extends FilterOutputStream {
     }
 
 
-    public void write(final int i) throws IOException {
+    /**
+     * Return the stream to write to for the current thread, either the thread bound stream or the default sink
+     */
+    private OutputStream resolveStream() {
         final OutputStream out = getThreadLocalOutputStream();
         if (out == null || out == this) {
-            super.write(i);
-        } else {
-            out.write(i);
+            return sink;
         }
+        return out;
+    }
+
+    public void write(final int i) throws IOException {
+        resolveStream().write(i);
+    }
+
+    /**
+     * Writes the whole buffer to the stream for the current thread, the thread stream is resolved once per call.
+     */
+    public void write(final byte[] b) throws IOException {
+        resolveStream().write(b, 0, b.length);
+    }
+
+    /**
+     * Writes the bytes to the stream for the current thread, the thread stream is resolved once per call.
+     */
+    public void write(final byte[] b, final int off, final int len) throws IOException {
+        resolveStream().write(b, off, len);
+    }
+
+    /**
+     * Flushes the stream for the current thread
+     */
+    public void flush() throws IOException {
+        resolveStream().flush();
     }
 
     private static PrintStream origSystemOut;
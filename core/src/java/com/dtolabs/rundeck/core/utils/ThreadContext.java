@@ -0,0 +1,110 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* ThreadContext.java
+*
+*/
+package com.dtolabs.rundeck.core.utils;
+
+import java.util.*;
+
+/**
+ * ThreadContext is a snapshot of the values of registered {@link InheritableThreadLocal} variables. Values of
+ * inheritable thread locals are only passed to a thread when it is created, so work which is run by a pooled thread
+ * on behalf of another thread must have the values installed explicitly: the submitting thread calls {@link
+ * #capture()}, and the pooled thread calls {@link #install()} before running the work, and installs the returned
+ * context again afterwards.
+ */
+public class ThreadContext {
+    /**
+     * Registered variables, weakly referenced so that registering a variable does not keep its owner alive
+     */
+    private static final Map<InheritableThreadLocal<?>, Boolean> registered =
+        Collections.synchronizedMap(new WeakHashMap<InheritableThreadLocal<?>, Boolean>());
+
+    private final Map<InheritableThreadLocal<Object>, Object> values;
+
+    private ThreadContext(final Map<InheritableThreadLocal<Object>, Object> values) {
+        this.values = values;
+    }
+
+    /**
+     * Register a variable, so that its value is included in captured contexts
+     *
+     * @param local the variable
+     *
+     * @return the variable
+     */
+    public static <T> InheritableThreadLocal<T> register(final InheritableThreadLocal<T> local) {
+        registered.put(local, Boolean.TRUE);
+        return local;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<InheritableThreadLocal<Object>> listRegistered() {
+        synchronized (registered) {
+            final ArrayList<InheritableThreadLocal<Object>> locals = new ArrayList<InheritableThreadLocal<Object>>();
+            for (final InheritableThreadLocal<?> local : registered.keySet()) {
+                locals.add((InheritableThreadLocal<Object>) local);
+            }
+            return locals;
+        }
+    }
+
+    /**
+     * Capture the values of the registered variables for the current thread
+     *
+     * @return the context
+     */
+    public static ThreadContext capture() {
+        final IdentityHashMap<InheritableThreadLocal<Object>, Object> values =
+            new IdentityHashMap<InheritableThreadLocal<Object>, Object>();
+        for (final InheritableThreadLocal<Object> local : listRegistered()) {
+            values.put(local, local.get());
+        }
+        return new ThreadContext(values);
+    }
+
+    /**
+     * Remove the values of all registered variables for the current thread
+     */
+    public static void clear() {
+        for (final InheritableThreadLocal<Object> local : listRegistered()) {
+            local.remove();
+        }
+    }
+
+    /**
+     * Set the captured values for the current thread
+     *
+     * @return the previous values of the same variables for the current thread
+     */
+    public ThreadContext install() {
+        final IdentityHashMap<InheritableThreadLocal<Object>, Object> previous =
+            new IdentityHashMap<InheritableThreadLocal<Object>, Object>();
+        for (final Map.Entry<InheritableThreadLocal<Object>, Object> entry : values.entrySet()) {
+            final InheritableThreadLocal<Object> local = entry.getKey();
+            previous.put(local, local.get());
+            if (null == entry.getValue()) {
+                local.remove();
+            } else {
+                local.set(entry.getValue());
+            }
+        }
+        return new ThreadContext(previous);
+    }
+}
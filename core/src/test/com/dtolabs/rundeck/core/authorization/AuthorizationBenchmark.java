@@ -0,0 +1,126 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* AuthorizationBenchmark.java
+*
+*/
+package com.dtolabs.rundeck.core.authorization;
+
+import com.dtolabs.rundeck.core.authentication.Group;
+import com.dtolabs.rundeck.core.authentication.Username;
+import com.dtolabs.rundeck.core.authorization.providers.SAREAuthorization;
+
+import javax.security.auth.Subject;
+import java.io.File;
+import java.util.*;
+
+/**
+ * Compares the per-decision cost of evaluating 10, 100 and 1000 job resources against the job list actions, using
+ * single evaluations, {@link Authorization#evaluate(java.util.Set, javax.security.auth.Subject, java.util.Set,
+ * java.util.Set)} and {@link Authorization#evaluateMatrix(java.util.List, javax.security.auth.Subject, java.util.List,
+ * java.util.Set)}. Each measurement uses a new authorization object, so the decision cache starts out empty.
+ * <p/>
+ * Run with: java -cp build/classes/main:build/classes/test com.dtolabs.rundeck.core.authorization.AuthorizationBenchmark
+ * [policydir] [rounds]
+ */
+public class AuthorizationBenchmark {
+    private static final int[] RESOURCES = {10, 100, 1000};
+    private static final List<String> ACTIONS = Arrays.asList("workflow_create", "workflow_read", "workflow_delete",
+        "workflow_run", "workflow_update", "workflow_kill");
+
+    interface Evaluator {
+        void evaluate(Authorization authorization, List<Map<String, String>> resources, Subject subject);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final File dir = args.length > 0 ? new File(args[0]) : TestPolicies.getPath(
+            "com/dtolabs/rundeck/core/authorization");
+        final int rounds = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+
+        final Subject subject = new Subject();
+        subject.getPrincipals().add(new Username("testActionAuthorization"));
+        subject.getPrincipals().add(new Group("admin-action"));
+
+        final Evaluator single = new Evaluator() {
+            public void evaluate(final Authorization authorization, final List<Map<String, String>> resources,
+                                 final Subject subject) {
+                for (final Map<String, String> resource : resources) {
+                    for (final String action : ACTIONS) {
+                        authorization.evaluate(resource, subject, action, Collections.<Attribute>emptySet());
+                    }
+                }
+            }
+        };
+        final Evaluator set = new Evaluator() {
+            public void evaluate(final Authorization authorization, final List<Map<String, String>> resources,
+                                 final Subject subject) {
+                authorization.evaluate(new HashSet<Map<String, String>>(resources), subject,
+                    new HashSet<String>(ACTIONS), Collections.<Attribute>emptySet());
+            }
+        };
+        final Evaluator matrix = new Evaluator() {
+            public void evaluate(final Authorization authorization, final List<Map<String, String>> resources,
+                                 final Subject subject) {
+                authorization.evaluateMatrix(resources, subject, ACTIONS, Collections.<Attribute>emptySet());
+            }
+        };
+
+        //warm up
+        run(dir, resources(100), subject, single, rounds);
+        run(dir, resources(100), subject, set, rounds);
+        run(dir, resources(100), subject, matrix, rounds);
+
+        System.out.println("resources\tactions\tsingle us/decision\tset us/decision\tmatrix us/decision");
+        for (final int count : RESOURCES) {
+            final List<Map<String, String>> resources = resources(count);
+            System.out.println(count + "\t" + ACTIONS.size()
+                               + "\t" + format(run(dir, resources, subject, single, rounds))
+                               + "\t" + format(run(dir, resources, subject, set, rounds))
+                               + "\t" + format(run(dir, resources, subject, matrix, rounds)));
+        }
+    }
+
+    private static List<Map<String, String>> resources(final int count) {
+        final List<Map<String, String>> resources = new ArrayList<Map<String, String>>();
+        for (int i = 0; i < count; i++) {
+            final Map<String, String> resource = new HashMap<String, String>();
+            resource.put("job", "job" + i);
+            resource.put("group", "group/" + (i % 10));
+            resources.add(resource);
+        }
+        return resources;
+    }
+
+    private static String format(final double value) {
+        return Double.toString(Math.round(value * 100) / 100.0);
+    }
+
+    /**
+     * Return the average time per decision in microseconds
+     */
+    private static double run(final File dir, final List<Map<String, String>> resources, final Subject subject,
+                              final Evaluator evaluator, final int rounds) throws Exception {
+        long nanos = 0;
+        for (int i = 0; i < rounds; i++) {
+            final SAREAuthorization authorization = new SAREAuthorization(dir);
+            final long start = System.nanoTime();
+            evaluator.evaluate(authorization, resources, subject);
+            nanos += System.nanoTime() - start;
+        }
+        return nanos / 1000.0 / rounds / (resources.size() * ACTIONS.size());
+    }
+}
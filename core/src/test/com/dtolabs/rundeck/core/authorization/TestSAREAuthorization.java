@@ -20,9 +20,12 @@
 package com.dtolabs.rundeck.core.authorization;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -257,6 +260,38 @@ public class TestSAREAuthorization extends TestCase {
         
     }
     
+    public void testEvaluateMatrix() throws Exception {
+        Subject subject = createSubject("testActionAuthorization", "admin-action");
+        List<Map<String, String>> resources = new ArrayList<Map<String, String>>();
+        resources.add(declareScript("myScript", "bar/baz/boo"));
+        resources.add(declareScript("anyaction", "foobar"));
+        resources.add(declareModule("foobar", "moduleName"));
+        resources.add(declareScript("myScript", "bar/baz/boo"));
+        List<String> actions = Arrays.asList("workflow_run", "my_wacky_action", "", "foobar");
+
+        DecisionMatrix matrix = authorization.evaluateMatrix(resources, subject, actions, environment);
+        assertEquals(4, matrix.getResources().size());
+        assertEquals(4, matrix.getActions().size());
+        for(int r = 0; r < resources.size(); r++) {
+            for(int a = 0; a < actions.size(); a++) {
+                assertEquals(resources.get(r) + " " + actions.get(a),
+                        authorization.evaluate(resources.get(r), subject, actions.get(a), environment).isAuthorized(),
+                        matrix.isAuthorized(r, a));
+            }
+        }
+        assertTrue(matrix.isAuthorized(declareScript("anyaction", "foobar"), "my_wacky_action"));
+        assertFalse(matrix.isAuthorized(declareScript("anyaction", "foobar"), "not_in_matrix"));
+        assertEquals(3, matrix.getAuthorizedResources("workflow_run").size());
+
+        try {
+            resources.add(declareScript(null, "test"));
+            authorization.evaluateMatrix(resources, subject, actions, environment);
+            fail("A null resource key should not be evaluated.");
+        } catch (IllegalArgumentException e) {
+            // ignore...this is expected.
+        }
+    }
+    
     public void off_testProjectEnvironment() throws Exception {
         Map<String,String> resource = declareScript("adhocScript", "foo/bar");
         Subject subject = createSubject("testProjectEnvironment", "admin-environment");
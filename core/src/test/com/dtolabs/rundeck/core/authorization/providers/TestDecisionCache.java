@@ -0,0 +1,182 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* TestDecisionCache.java
+*
+*/
+package com.dtolabs.rundeck.core.authorization.providers;
+
+import com.dtolabs.rundeck.core.authentication.Group;
+import com.dtolabs.rundeck.core.authentication.Username;
+import com.dtolabs.rundeck.core.authorization.Attribute;
+import com.dtolabs.rundeck.core.authorization.Decision;
+import com.dtolabs.rundeck.core.authorization.Explanation;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import javax.security.auth.Subject;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * TestDecisionCache is ...
+ */
+public class TestDecisionCache extends TestCase {
+    private File policyDir;
+
+    public TestDecisionCache(final String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestDecisionCache.class);
+    }
+
+    protected void setUp() throws Exception {
+        policyDir = File.createTempFile("TestDecisionCache", "");
+        policyDir.delete();
+        policyDir.mkdirs();
+    }
+
+    protected void tearDown() throws Exception {
+        final File[] files = policyDir.listFiles();
+        if (null != files) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        policyDir.delete();
+    }
+
+    private static Subject subject(final String user, final String... groups) {
+        final Subject subject = new Subject();
+        subject.getPrincipals().add(new Username(user));
+        for (final String group : groups) {
+            subject.getPrincipals().add(new Group(group));
+        }
+        return subject;
+    }
+
+    private static Map<String, String> resource(final String group, final String job) {
+        final Map<String, String> resource = new HashMap<String, String>();
+        resource.put("group", group);
+        resource.put("job", job);
+        return resource;
+    }
+
+    private static DecisionCache.Key key(final Subject subject, final String job, final String action) {
+        return new DecisionCache.Key(subject, resource("/grp", job), action, null);
+    }
+
+    private void writePolicy(final String actions, final long modtime) throws IOException {
+        final File file = new File(policyDir, "test.aclpolicy");
+        final FileWriter writer = new FileWriter(file);
+        try {
+            writer.write("description: test\n"
+                         + "rules:\n"
+                         + "  /grp/.*:\n"
+                         + "    actions: '" + actions + "'\n"
+                         + "by:\n"
+                         + "  group: 'testgroup'\n");
+        } finally {
+            writer.close();
+        }
+        file.setLastModified(modtime);
+    }
+
+    public void testKey() throws Exception {
+        final Subject subject = subject("bob", "testgroup", "other");
+        final Map<String, String> resource = resource("/grp", "a");
+        final DecisionCache.Key key = new DecisionCache.Key(subject, resource, "read", null);
+        resource.put("job", "b");
+        assertFalse(key.equals(new DecisionCache.Key(subject, resource, "read", null)));
+        assertEquals(key, key(subject("bob", "other", "testgroup"), "a", "read"));
+        assertFalse(key.equals(key(subject("bob", "other"), "a", "read")));
+        assertFalse(key.equals(key(subject("bob", "testgroup", "other"), "a", "write")));
+
+        final Set<String> roles = DecisionCache.roles(subject("bob", "testgroup"));
+        assertEquals(2, roles.size());
+        assertTrue(roles.contains("user:bob"));
+        assertTrue(roles.contains("group:testgroup"));
+    }
+
+    public void testLeastRecentlyUsed() throws Exception {
+        final DecisionCache cache = new DecisionCache(2);
+        final Subject subject = subject("bob");
+        final Decision decision = new SAREAuthorization(policyDir).evaluate(resource("/grp", "a"), subject, "read",
+            null);
+        cache.get(key(subject, "a", "read"), 1);
+        cache.put(key(subject, "a", "read"), 1, decision);
+        cache.put(key(subject, "b", "read"), 1, decision);
+        assertSame(decision, cache.get(key(subject, "a", "read"), 1));
+        cache.put(key(subject, "c", "read"), 1, decision);
+        assertEquals(2, cache.size());
+        assertNull(cache.get(key(subject, "b", "read"), 1));
+        assertSame(decision, cache.get(key(subject, "a", "read"), 1));
+        assertSame(decision, cache.get(key(subject, "c", "read"), 1));
+
+        //new generation discards entries, and entries from an older generation are not added
+        assertNull(cache.get(key(subject, "a", "read"), 2));
+        assertEquals(0, cache.size());
+        cache.put(key(subject, "a", "read"), 1, decision);
+        assertEquals(0, cache.size());
+    }
+
+    public void testInvalidatedByPolicyChange() throws Exception {
+        final long modtime = System.currentTimeMillis() - 10000;
+        writePolicy("read", modtime);
+        final SAREAuthorization authorization = new SAREAuthorization(policyDir, 0, 10);
+        final Subject subject = subject("bob", "testgroup");
+
+        final Decision first = authorization.evaluate(resource("/grp", "a"), subject, "read", null);
+        assertTrue(first.isAuthorized());
+        assertEquals(Explanation.Code.GRANTED_ACTIONS_AND_COMMANDS_MATCHED, first.explain().getCode());
+        final Decision second = authorization.evaluate(resource("/grp", "a"), subject("alice", "other"), "read",
+            null);
+        assertFalse("different roles should not share a decision", second.isAuthorized());
+        final Decision third = authorization.evaluate(resource("/grp", "a"), subject("bob", "testgroup"), "read",
+            null);
+        assertTrue(third.isAuthorized());
+        assertSame(first.explain(), third.explain());
+        assertEquals("bob", third.getSubject().getPrincipals(Username.class).iterator().next().getName());
+
+        writePolicy("write", modtime + 5000);
+        assertFalse(authorization.evaluate(resource("/grp", "a"), subject, "read", null).isAuthorized());
+        assertTrue(authorization.evaluate(resource("/grp", "a"), subject, "write", null).isAuthorized());
+
+        new File(policyDir, "test.aclpolicy").delete();
+        assertFalse(authorization.evaluate(resource("/grp", "a"), subject, "write", null).isAuthorized());
+    }
+
+    public void testEnvironmentIsPartOfKey() throws Exception {
+        final Subject subject = subject("bob");
+        final Set<Attribute> env = new HashSet<Attribute>();
+        env.add(new Attribute(URI.create("http://dtolabs.com/rundeck/env/project"), "Lion"));
+        final DecisionCache.Key key = new DecisionCache.Key(subject, resource("/grp", "a"), "read", env);
+        assertFalse(key.equals(key(subject, "a", "read")));
+        final Set<Attribute> env2 = new HashSet<Attribute>();
+        env2.add(new Attribute(URI.create("http://dtolabs.com/rundeck/env/project"), "Lion"));
+        assertEquals(key, new DecisionCache.Key(subject, resource("/grp", "a"), "read", env2));
+    }
+}
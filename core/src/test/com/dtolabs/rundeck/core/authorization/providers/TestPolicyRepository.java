@@ -0,0 +1,150 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* TestPolicyRepository.java
+*
+*/
+package com.dtolabs.rundeck.core.authorization.providers;
+
+import com.dtolabs.rundeck.core.authentication.Group;
+import com.dtolabs.rundeck.core.authentication.Username;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import javax.security.auth.Subject;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * TestPolicyRepository is ...
+ */
+public class TestPolicyRepository extends TestCase {
+    private File policyDir;
+
+    public TestPolicyRepository(final String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestPolicyRepository.class);
+    }
+
+    protected void setUp() throws Exception {
+        policyDir = File.createTempFile("TestPolicyRepository", "");
+        policyDir.delete();
+        policyDir.mkdirs();
+    }
+
+    protected void tearDown() throws Exception {
+        final File[] files = policyDir.listFiles();
+        if (null != files) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        policyDir.delete();
+    }
+
+    private void writePolicy(final String name, final String group, final long modtime) throws IOException {
+        final File file = new File(policyDir, name);
+        final FileWriter writer = new FileWriter(file);
+        try {
+            writer.write("description: test\n"
+                         + "rules:\n"
+                         + "  /grp/.*:\n"
+                         + "    actions: 'read'\n"
+                         + "by:\n"
+                         + "  group: '" + group + "'\n");
+        } finally {
+            writer.close();
+        }
+        file.setLastModified(modtime);
+    }
+
+    private static Subject subject(final String user, final String group) {
+        final Subject subject = new Subject();
+        subject.getPrincipals().add(new Username(user));
+        subject.getPrincipals().add(new Group(group));
+        return subject;
+    }
+
+    private static Map<String, String> resource() {
+        final Map<String, String> resource = new HashMap<String, String>();
+        resource.put("group", "/grp");
+        resource.put("job", "a");
+        return resource;
+    }
+
+    public void testSharedInstance() throws Exception {
+        writePolicy("a.aclpolicy", "groupa", System.currentTimeMillis() - 10000);
+        final PolicyRepository repository = PolicyRepository.getInstance(policyDir);
+        assertSame(repository, PolicyRepository.getInstance(new File(policyDir, "../" + policyDir.getName())));
+        assertSame(repository.getDecisionCache(), new SAREAuthorization(policyDir).getRepository()
+            .getDecisionCache());
+        assertEquals(Arrays.asList("groupa"), repository.getSnapshot().listAllRoles());
+        assertEquals(Arrays.asList("groupa"), new SAREAuthorization(policyDir).getRepository().getSnapshot()
+            .listAllRoles());
+    }
+
+    public void testSnapshotReplacedOnChange() throws Exception {
+        final long modtime = System.currentTimeMillis() - 10000;
+        writePolicy("a.aclpolicy", "groupa", modtime);
+        final PolicyRepository repository = new PolicyRepository(policyDir, 0, 10);
+
+        final PolicyRepository.Snapshot first = repository.getSnapshot();
+        assertEquals(1, first.count());
+        assertSame(first, repository.getSnapshot());
+        assertEquals(1, first.narrowContext(subject("bob", "groupa"), null).size());
+        assertSame(first.narrowContext(subject("bob", "groupa"), null), first.narrowContext(subject("bob",
+            "groupa"), null));
+        assertEquals(0, first.narrowContext(subject("bob", "groupb"), null).size());
+
+        writePolicy("b.aclpolicy", "groupb", modtime);
+        final PolicyRepository.Snapshot second = repository.getSnapshot();
+        assertNotSame(first, second);
+        assertEquals(2, second.count());
+        assertEquals(1, second.narrowContext(subject("bob", "groupb"), null).size());
+        //the earlier snapshot is unchanged
+        assertEquals(1, first.count());
+
+        writePolicy("a.aclpolicy", "groupc", modtime + 5000);
+        final PolicyRepository.Snapshot third = repository.getSnapshot();
+        assertEquals(0, third.narrowContext(subject("bob", "groupa"), null).size());
+        assertEquals(1, third.narrowContext(subject("bob", "groupc"), null).size());
+
+        new File(policyDir, "b.aclpolicy").delete();
+        assertEquals(1, repository.getSnapshot().count());
+    }
+
+    public void testViewsShareDecisions() throws Exception {
+        writePolicy("a.aclpolicy", "groupa", System.currentTimeMillis() - 10000);
+        final PolicyRepository repository = new PolicyRepository(policyDir, 0, 10);
+        final SAREAuthorization auth1 = new SAREAuthorization(repository);
+        final SAREAuthorization auth2 = new SAREAuthorization(repository);
+
+        assertTrue(auth1.evaluate(resource(), subject("bob", "groupa"), "read", null).isAuthorized());
+        assertEquals(0, repository.getDecisionCache().getHitCount());
+        assertTrue(auth2.evaluate(resource(), subject("alice", "groupa"), "read", null).isAuthorized());
+        assertTrue(auth2.evaluate(resource(), subject("bob", "groupa"), "read", null).isAuthorized());
+        assertEquals(1, repository.getDecisionCache().getHitCount());
+    }
+}
@@ -107,6 +107,33 @@ public class TestFramework extends AbstractBaseTest {
 
     }
 
+    public void testCreateView() {
+        final Framework fw = Framework.getInstance(getBaseDir(), getFrameworkProjectsBase());
+        final Framework other = Framework.getInstance(getBaseDir(), getFrameworkProjectsBase());
+
+        final Framework view = fw.createView(other.getAuthenticationMgr(), other.getAuthorizationMgr());
+        assertNotSame(fw, view);
+        assertSame(other.getAuthenticationMgr(), view.getAuthenticationMgr());
+        assertSame(other.getAuthorizationMgr(), view.getAuthorizationMgr());
+        assertNotSame(fw.getAuthorizationMgr(), view.getAuthorizationMgr());
+        //shares services and configuration
+        assertSame(fw.services, view.services);
+        assertSame(fw.getService("NodeExecutor"), view.getService("NodeExecutor"));
+        assertSame(fw.getFrameworkProjectMgr(), view.getFrameworkProjectMgr());
+        assertSame(fw.getPropertyLookup(), view.getPropertyLookup());
+        assertEquals(fw.getBaseDir(), view.getBaseDir());
+        assertEquals(fw.getFrameworkNodeName(), view.getFrameworkNodeName());
+
+        //null managers use the framework's
+        final Framework view2 = fw.createView(null, null);
+        assertSame(fw.getAuthenticationMgr(), view2.getAuthenticationMgr());
+        assertSame(fw.getAuthorizationMgr(), view2.getAuthorizationMgr());
+
+        //view settings are independent
+        view2.setAllowUserInput(false);
+        assertTrue(fw.isAllowUserInput());
+    }
+
     /**
      * Test the allowUserInput property of Framework class
      */
@@ -0,0 +1,220 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* TestNodeIndex.java
+*
+*/
+package com.dtolabs.rundeck.core.common;
+
+import com.dtolabs.rundeck.core.utils.NodeSet;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.*;
+
+/**
+ * TestNodeIndex compares the results of the index with {@link NodeSet#shouldExclude(INodeEntry)}
+ */
+public class TestNodeIndex extends TestCase {
+    private List<INodeEntry> nodes;
+    private NodeIndex index;
+
+    public TestNodeIndex(final String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestNodeIndex.class);
+    }
+
+    protected void setUp() throws Exception {
+        nodes = new ArrayList<INodeEntry>();
+        nodes.add(node("test1.local", "testnode1", "windows", "x86", "Windows NT", "5.1",
+            Arrays.asList("priority1", "devenv", "serverbox"), null));
+        final HashMap<String, String> attrs2 = new HashMap<String, String>();
+        attrs2.put("testattribute1", "testvalue1");
+        attrs2.put("testattribute2", "testvalue2");
+        nodes.add(node("testnode2", "testnode2", "unix", "x386", "Mac OS X", "10.5.1",
+            Arrays.asList("priority2", "devenv", "workstation"), attrs2));
+        final HashMap<String, String> attrs3 = new HashMap<String, String>();
+        attrs3.put("testattribute1", "testvalue1");
+        attrs3.put("testattribute2", "testvalue2redux");
+        nodes.add(node("testnode3.local", "testnode3", "solaris", "intel", "Solaris Something", "3.7",
+            Arrays.asList("priority1", "workstation"), attrs3));
+        nodes.add(node("other", "a,b", "unix", "x86", "Linux", "2.6", Collections.<String>emptyList(), null));
+        index = new NodeIndex(nodes);
+    }
+
+    private static NodeEntryImpl node(final String hostname, final String name, final String osfamily,
+                                      final String osarch, final String osname, final String osversion,
+                                      final List<String> tags, final Map<String, String> attributes) {
+        final NodeEntryImpl node = new NodeEntryImpl(hostname, name);
+        node.setOsFamily(osfamily);
+        node.setOsArch(osarch);
+        node.setOsName(osname);
+        node.setOsVersion(osversion);
+        node.setTags(new HashSet<String>(tags));
+        if (null != attributes) {
+            node.setAttributes(attributes);
+        }
+        return node;
+    }
+
+    /**
+     * Return the node names not excluded by the nodeset, sorted
+     */
+    private List<String> expected(final NodeSet set) {
+        final List<String> names = new ArrayList<String>();
+        for (final INodeEntry node : nodes) {
+            if (!set.shouldExclude(node)) {
+                names.add(node.getNodename());
+            }
+        }
+        Collections.sort(names);
+        return names;
+    }
+
+    private List<String> actual(final NodeSet set) {
+        final List<String> names = new ArrayList<String>();
+        for (final INodeEntry node : index.filterNodes(set)) {
+            names.add(node.getNodename());
+        }
+        return names;
+    }
+
+    private void assertSame(final NodeSet set) {
+        assertEquals(set.toString(), expected(set), actual(set));
+    }
+
+    private static final String[] HOSTNAMES = {"test1.local", "test.*", "testnode2,test1.local", "/test\\d\\..*/",
+        "testnode2", " testnode2 ", "nomatch", "[invalid", "other,"};
+    private static final String[] TAGS = {"priority1", "priority1+devenv", "priority2,serverbox", "prior.*",
+        "/dev.*/", "workstation + priority1", "devenv+nomatch,serverbox", "nomatch", "+"};
+    private static final String[] NAMES = {"testnode1", "testnode.*", "a,b", "a", "b"};
+
+    public void testNullNodeSet() throws Exception {
+        assertEquals(nodes.size(), index.filterNodes(null).size());
+        assertEquals("a,b", index.filterNodes(null).get(0).getNodename());
+    }
+
+    public void testSingleNode() throws Exception {
+        assertSame(new NodeSet("testnode2"));
+        assertSame(new NodeSet("missing"));
+    }
+
+    public void testIncludes() throws Exception {
+        for (final String hostname : HOSTNAMES) {
+            final NodeSet set = new NodeSet();
+            set.createInclude().setHostname(hostname);
+            assertSame(set);
+        }
+        for (final String tags : TAGS) {
+            final NodeSet set = new NodeSet();
+            set.createInclude().setTags(tags);
+            assertSame(set);
+        }
+        for (final String name : NAMES) {
+            final NodeSet set = new NodeSet();
+            set.createInclude().setName(name);
+            assertSame(set);
+        }
+    }
+
+    public void testIncludeExcludeCombinations() throws Exception {
+        for (final String inc : HOSTNAMES) {
+            for (final String exc : TAGS) {
+                for (final boolean dominant : new boolean[]{true, false}) {
+                    final NodeSet set = new NodeSet();
+                    final NodeSet.Include include = set.createInclude();
+                    include.setHostname(inc);
+                    include.setDominant(dominant);
+                    set.createExclude().setTags(exc);
+                    assertSame(set);
+
+                    final NodeSet set2 = new NodeSet();
+                    final NodeSet.Include include2 = set2.createInclude();
+                    include2.setTags(exc);
+                    include2.setDominant(dominant);
+                    set2.createExclude().setHostname(inc);
+                    assertSame(set2);
+                }
+            }
+        }
+    }
+
+    public void testMultipleFields() throws Exception {
+        final NodeSet set = new NodeSet();
+        final NodeSet.Include include = set.createInclude();
+        include.setOsfamily("unix");
+        include.setOsarch("x.*");
+        assertSame(set);
+        assertEquals(Arrays.asList("a,b", "testnode2"), actual(set));
+
+        include.setTags("devenv");
+        assertSame(set);
+        assertEquals(Arrays.asList("testnode2"), actual(set));
+    }
+
+    public void testAttributes() throws Exception {
+        final NodeSet set = new NodeSet();
+        final HashMap<String, String> map = new HashMap<String, String>();
+        map.put("testattribute1", "testvalue1");
+        set.createInclude(map);
+        assertSame(set);
+        assertEquals(Arrays.asList("testnode2", "testnode3"), actual(set));
+
+        final NodeSet set2 = new NodeSet();
+        final HashMap<String, String> map2 = new HashMap<String, String>();
+        map2.put("testattribute2", "testvalue2");
+        map2.put("tags", "workstation");
+        set2.createInclude(map2);
+        assertSame(set2);
+        assertEquals(Arrays.asList("testnode2"), actual(set2));
+
+        final NodeSet set3 = new NodeSet();
+        final HashMap<String, String> map3 = new HashMap<String, String>();
+        map3.put("missing", "value");
+        set3.createExclude(map3);
+        assertSame(set3);
+        assertEquals(nodes.size(), actual(set3).size());
+    }
+
+    public void testBlankFilters() throws Exception {
+        final NodeSet set = new NodeSet();
+        assertSame(set);
+        set.createInclude();
+        assertSame(set);
+        set.createExclude();
+        assertSame(set);
+        assertEquals(0, actual(set).size());
+    }
+
+    public void testFilterCollection() throws Exception {
+        final NodeSet set = new NodeSet();
+        set.createInclude().setTags("workstation");
+        final List<INodeBase> input = new ArrayList<INodeBase>();
+        input.add(NodeEntryImpl.create("x", "testnode3"));
+        input.add(NodeEntryImpl.create("x", "testnode1"));
+        input.add(NodeEntryImpl.create("x", "testnode2"));
+        input.add(NodeEntryImpl.create("x", "unknown"));
+        final List<INodeEntry> result = index.filterNodes(input, set);
+        assertEquals(2, result.size());
+        assertEquals("testnode3", result.get(0).getNodename());
+        assertEquals("testnode2", result.get(1).getNodename());
+    }
+}
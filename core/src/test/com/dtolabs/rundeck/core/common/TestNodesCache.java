@@ -0,0 +1,124 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* TestNodesCache.java
+*
+*/
+package com.dtolabs.rundeck.core.common;
+
+import com.dtolabs.rundeck.core.tools.AbstractBaseTest;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+import org.apache.tools.ant.util.FileUtils;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * TestNodesCache is ...
+ */
+public class TestNodesCache extends AbstractBaseTest {
+    static String PROJECT_NAME = "TestNodesCache";
+    File xmlfile1;
+    File xmlfile2;
+    File nodesfile;
+    FrameworkProject project;
+
+    public TestNodesCache(final String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestNodesCache.class);
+    }
+
+    protected void setUp() {
+        super.setUp();
+        xmlfile1 = new File("src/test/com/dtolabs/rundeck/core/common/test-nodes1.xml");
+        xmlfile2 = new File("src/test/com/dtolabs/rundeck/core/common/test-nodes2.xml");
+        project = FrameworkProject.create(PROJECT_NAME, new File(getFrameworkProjectsBase()),
+            getFrameworkInstance().getFrameworkProjectMgr());
+        nodesfile = new File(project.getBaseDir(), "cache-test-nodes.xml");
+    }
+
+    protected void tearDown() throws Exception {
+        nodesfile.delete();
+        getFrameworkInstance().getFrameworkProjectMgr().getFrameworkProject(PROJECT_NAME).getBaseDir().delete();
+        getFrameworkInstance().getFrameworkProjectMgr().remove(PROJECT_NAME);
+    }
+
+    public void testConcurrentLoadParsesOnce() throws Exception {
+        FileUtils.getFileUtils().copyFile(xmlfile1, nodesfile, null, true);
+        final NodesCache cache = new NodesCache();
+        final int count = 50;
+        final Nodes[] results = new Nodes[count];
+        final Thread[] threads = new Thread[count];
+        final CountDownLatch start = new CountDownLatch(1);
+        for (int i = 0; i < count; i++) {
+            final int index = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        results[index] = cache.getNodes(project, nodesfile, Nodes.Format.resourcexml);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (final Thread thread : threads) {
+            thread.join(10000);
+        }
+        assertNotNull(results[0]);
+        for (final Nodes result : results) {
+            assertSame(results[0], result);
+        }
+        assertEquals(1, cache.getParseCount());
+        assertEquals(count - 1, cache.getHitCount());
+        assertTrue(results[0].hasNode("test1"));
+    }
+
+    public void testReloadWhenChanged() throws Exception {
+        FileUtils.getFileUtils().copyFile(xmlfile1, nodesfile, null, true);
+        final NodesCache cache = new NodesCache();
+        final Nodes nodes1 = cache.getNodes(project, nodesfile, Nodes.Format.resourcexml);
+        assertSame(nodes1, cache.getNodes(project, nodesfile, Nodes.Format.resourcexml));
+        assertEquals(1, cache.getParseCount());
+
+        FileUtils.getFileUtils().copyFile(xmlfile2, nodesfile, null, true);
+        final Nodes nodes2 = cache.getNodes(project, nodesfile, Nodes.Format.resourcexml);
+        assertNotSame(nodes1, nodes2);
+        assertEquals(2, cache.getParseCount());
+        assertFalse(nodes1.hasNode("testnode3"));
+        assertTrue(nodes2.hasNode("testnode3"));
+    }
+
+    public void testSharedAcrossFrameworkInstances() throws Exception {
+        FileUtils.getFileUtils().copyFile(xmlfile1, nodesfile, null, true);
+        final NodesCache cache = new NodesCache();
+        final Nodes nodes1 = cache.getNodes(project, nodesfile, Nodes.Format.resourcexml);
+
+        final Framework framework2 = Framework.getInstance(getBaseDir(), getFrameworkProjectsBase());
+        final FrameworkProject project2 = framework2.getFrameworkProjectMgr().getFrameworkProject(PROJECT_NAME);
+        assertNotSame(project, project2);
+        assertSame(nodes1, cache.getNodes(project2, nodesfile, Nodes.Format.resourcexml));
+        assertEquals(1, cache.getParseCount());
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* DataContextTemplateBenchmark.java
+*
+*/
+package com.dtolabs.rundeck.core.dispatcher;
+
+import org.apache.tools.ant.filters.ReplaceTokens;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compares the per-node cost of replacing script tokens and argument references with Ant ReplaceTokens and a regular
+ * expression compiled for each call, as DataContextUtils did previously, against rendering a {@link
+ * DataContextTemplate} compiled once.  Scripts of 10, 100 and 1000 lines are rendered for 100 nodes; the output is
+ * written to memory, so file system time is not included.
+ * <p/>
+ * Run with: java -cp build/classes/main:build/classes/test com.dtolabs.rundeck.core.dispatcher.DataContextTemplateBenchmark
+ * [rounds]
+ */
+public class DataContextTemplateBenchmark {
+    private static final int[] LINES = {10, 100, 1000};
+    private static final int NODES = 100;
+    private static final String[] ARGS = {"-name", "${node.name}", "-host", "${node.hostname}", "${option.opt1}",
+        "literal"};
+
+    interface Renderer {
+        void render(String script, Map<String, Map<String, String>> data, Writer writer) throws IOException;
+
+        String[] renderArgs(String[] args, Map<String, Map<String, String>> data);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        final Renderer previous = new Renderer() {
+            public void render(final String script, final Map<String, Map<String, String>> data,
+                               final Writer writer) throws IOException {
+                final ReplaceTokens replaceTokens = new ReplaceTokens(new StringReader(script));
+                DataContextUtils.configureReplaceTokens(DataContextUtils.flattenDataContext(data), replaceTokens);
+                final BufferedReader reader = new BufferedReader(replaceTokens);
+                final String linesep = System.getProperty("line.separator");
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    writer.write(line);
+                    writer.write(linesep);
+                }
+                reader.close();
+            }
+
+            public String[] renderArgs(final String[] args, final Map<String, Map<String, String>> data) {
+                final String[] result = new String[args.length];
+                for (int i = 0; i < args.length; i++) {
+                    result[i] = replaceDataReferences(args[i], data);
+                }
+                return result;
+            }
+        };
+        final Renderer compiled = new Renderer() {
+            public void render(final String script, final Map<String, Map<String, String>> data,
+                               final Writer writer) throws IOException {
+                DataContextUtils.compileScriptTokens(script).writeLines(data, writer);
+            }
+
+            public String[] renderArgs(final String[] args, final Map<String, Map<String, String>> data) {
+                return DataContextUtils.replaceDataReferences(args, data);
+            }
+        };
+
+        final List<Map<String, Map<String, String>>> contexts = createContexts();
+        System.out.println("lines\tprevious(us/node)\tcompiled(us/node)");
+        for (final int lines : LINES) {
+            final String script = createScript(lines);
+            //warm up, and check the results are the same
+            for (int i = 0; i < 5; i++) {
+                run(previous, script, contexts);
+                run(compiled, script, contexts);
+            }
+            final StringWriter prevOut = new StringWriter();
+            final StringWriter compOut = new StringWriter();
+            previous.render(script, contexts.get(0), prevOut);
+            compiled.render(script, contexts.get(0), compOut);
+            if (!prevOut.toString().equals(compOut.toString())) {
+                throw new IllegalStateException("results differ for script of " + lines + " lines");
+            }
+            long prevTime = 0;
+            long compTime = 0;
+            for (int i = 0; i < rounds; i++) {
+                prevTime += run(previous, script, contexts);
+                compTime += run(compiled, script, contexts);
+            }
+            System.out.println(lines + "\t" + format(prevTime, rounds) + "\t" + format(compTime, rounds));
+        }
+    }
+
+    private static String format(final long nanos, final int rounds) {
+        return Double.toString(Math.round(nanos / 1000.0 / rounds / NODES * 100) / 100.0);
+    }
+
+    /**
+     * Render the script and args for each node, and return the time in nanoseconds
+     */
+    private static long run(final Renderer renderer, final String script,
+                            final List<Map<String, Map<String, String>>> contexts) throws IOException {
+        final long start = System.nanoTime();
+        for (final Map<String, Map<String, String>> context : contexts) {
+            final StringWriter writer = new StringWriter(script.length() + 1024);
+            renderer.render(script, context, writer);
+            renderer.renderArgs(ARGS, context);
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static List<Map<String, Map<String, String>>> createContexts() {
+        final List<Map<String, Map<String, String>>> contexts = new ArrayList<Map<String, Map<String, String>>>(NODES);
+        for (int i = 0; i < NODES; i++) {
+            final HashMap<String, String> node = new HashMap<String, String>();
+            node.put("name", "node" + i);
+            node.put("hostname", "node" + i + ".example.com");
+            node.put("os-family", "unix");
+            node.put("username", "user" + i);
+            for (int j = 0; j < 20; j++) {
+                node.put("attr" + j, "value" + j);
+            }
+            final HashMap<String, String> option = new HashMap<String, String>();
+            for (int j = 0; j < 10; j++) {
+                option.put("opt" + j, "option value " + j);
+            }
+            final Map<String, Map<String, String>> context = new HashMap<String, Map<String, String>>();
+            context.put("node", node);
+            context.put("option", option);
+            contexts.add(context);
+        }
+        return contexts;
+    }
+
+    private static String createScript(final int lines) {
+        final StringBuilder sb = new StringBuilder("#!/bin/bash\n");
+        for (int i = 0; i < lines; i++) {
+            switch (i % 4) {
+                case 0:
+                    sb.append("echo \"running on @node.name@ (@node.hostname@) as @node.username@\"\n");
+                    break;
+                case 1:
+                    sb.append("VALUE=\"@option.opt").append(i % 10).append("@\"\n");
+                    break;
+                case 2:
+                    sb.append("mail -s report admin@example.com < /tmp/report.").append(i).append('\n');
+                    break;
+                default:
+                    sb.append("if [ -f /etc/config.").append(i).append(" ]; then cat /etc/config.").append(i)
+                        .append("; fi\n");
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * The previous implementation of {@link DataContextUtils#replaceDataReferences(String, java.util.Map)}
+     */
+    private static String replaceDataReferences(final String input, final Map<String, Map<String, String>> data) {
+        final Pattern p = Pattern.compile("\\$\\{([^\\s.]+)\\.([^\\s}]+)\\}");
+        final Matcher m = p.matcher(input);
+        final StringBuffer sb = new StringBuffer();
+        while (m.find()) {
+            final String key = m.group(1);
+            final String nm = m.group(2);
+            if (null != key && null != nm && null != data.get(key) && null != data.get(key).get(nm)) {
+                m.appendReplacement(sb, Matcher.quoteReplacement(DataContextUtils.escapeShell(data.get(key).get(
+                    nm))));
+            } else {
+                m.appendReplacement(sb, Matcher.quoteReplacement(m.group(0)));
+            }
+        }
+        m.appendTail(sb);
+        return sb.toString();
+    }
+}
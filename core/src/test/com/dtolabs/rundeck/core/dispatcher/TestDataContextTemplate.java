@@ -0,0 +1,132 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* TestDataContextTemplate.java
+*
+*/
+package com.dtolabs.rundeck.core.dispatcher;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+import org.apache.tools.ant.filters.ReplaceTokens;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * TestDataContextTemplate is ...
+ */
+public class TestDataContextTemplate extends TestCase {
+    public TestDataContextTemplate(final String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestDataContextTemplate.class);
+    }
+
+    private static Map<String, Map<String, String>> data() {
+        final Map<String, Map<String, String>> data = new HashMap<String, Map<String, String>>();
+        final HashMap<String, String> node = new HashMap<String, String>();
+        node.put("name", "node1");
+        node.put("empty", "");
+        node.put("a.b", "dotted");
+        data.put("node", node);
+        final HashMap<String, String> option = new HashMap<String, String>();
+        option.put("x", "a;b");
+        option.put("q", "'a;b'");
+        data.put("option", option);
+        return data;
+    }
+
+    /**
+     * Return the result of replacing tokens with Ant ReplaceTokens
+     */
+    private static String replaceTokens(final String input, final Map<String, Map<String, String>> data)
+        throws Exception {
+        final ReplaceTokens replaceTokens = new ReplaceTokens(new StringReader(input));
+        DataContextUtils.configureReplaceTokens(DataContextUtils.flattenDataContext(data), replaceTokens);
+        final StringBuilder sb = new StringBuilder();
+        int c;
+        while ((c = replaceTokens.read()) >= 0) {
+            sb.append((char) c);
+        }
+        return sb.toString();
+    }
+
+    public void testTokensMatchReplaceTokens() throws Exception {
+        final Map<String, Map<String, String>> data = data();
+        final String[] inputs = {
+            "",
+            "no tokens",
+            "@node.name@",
+            "echo @node.name@ on @node.name@",
+            "a@node.empty@b",
+            "@node.a.b@",
+            "user@example.com @node.name@",
+            "@missing.x@node.name@",
+            "@node.name",
+            "@@node.name@@",
+            "@@@",
+            "@node.name@@node.name@",
+            "@option.x@ @option.q@",
+            "line1\n@node.name@\nline3 @unterminated",
+            "@node.\nname@",
+        };
+        for (final String input : inputs) {
+            assertEquals(input, replaceTokens(input, data), DataContextTemplate.compileTokens(input).render(data));
+        }
+        assertEquals("@node.name@", DataContextTemplate.compileTokens("@node.name@").render(null));
+    }
+
+    public void testReferences() throws Exception {
+        final Map<String, Map<String, String>> data = data();
+        assertEquals("echo node1", DataContextTemplate.compileReferences("echo ${node.name}").render(data));
+        assertEquals("a\\;b 'a;b'", DataContextTemplate.compileReferences("${option.x} ${option.q}").render(data));
+        assertEquals("${missing.x} ${node.missing} node1",
+            DataContextTemplate.compileReferences("${missing.x} ${node.missing} ${node.name}").render(data));
+        assertEquals("$1 ${node} dotted", DataContextTemplate.compileReferences("$1 ${node} ${node.a.b}").render(
+            data));
+        assertEquals("${node.name}", DataContextTemplate.compileReferences("${node.name}").render(null));
+    }
+
+    public void testReferencesCompiledOnce() throws Exception {
+        final String input = "echo ${node.name}";
+        assertSame(DataContextUtils.compileDataReferences(input), DataContextUtils.compileDataReferences(
+            new String(input)));
+        assertSame(DataContextUtils.compileScriptTokens(input), DataContextUtils.compileScriptTokens(input));
+    }
+
+    public void testWriteLines() throws Exception {
+        final String sep = System.getProperty("line.separator");
+        final String[][] tests = {
+            {"", ""},
+            {"a", "a" + sep},
+            {"a\n", "a" + sep},
+            {"a\r\nb\rc\n\nd", "a" + sep + "b" + sep + "c" + sep + sep + "d" + sep},
+            {"@node.name@\r\n", "node1" + sep},
+        };
+        for (final String[] test : tests) {
+            final StringWriter writer = new StringWriter();
+            DataContextTemplate.compileTokens(test[0]).writeLines(data(), writer);
+            assertEquals(test[1], writer.toString());
+        }
+    }
+}
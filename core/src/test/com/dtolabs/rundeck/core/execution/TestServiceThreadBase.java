@@ -0,0 +1,129 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* TestServiceThreadBase.java
+*
+*/
+package com.dtolabs.rundeck.core.execution;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * TestServiceThreadBase is ...
+ */
+public class TestServiceThreadBase extends TestCase {
+    public TestServiceThreadBase(final String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestServiceThreadBase.class);
+    }
+
+    static class testThread extends ServiceThreadBase {
+        final CountDownLatch start = new CountDownLatch(1);
+
+        public void run() {
+            try {
+                start.await(5, TimeUnit.SECONDS);
+                success = !isAborted();
+            } catch (InterruptedException e) {
+                thrown = e;
+            } finally {
+                complete();
+            }
+        }
+    }
+
+    static class testListener implements ServiceThreadListener {
+        final List<ServiceThreadBase> threads = Collections.synchronizedList(new ArrayList<ServiceThreadBase>());
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile boolean successful;
+
+        public void threadCompleted(final ServiceThreadBase thread) {
+            successful = thread.isSuccessful();
+            threads.add(thread);
+            done.countDown();
+        }
+    }
+
+    public void testListenerNotified() throws Exception {
+        final testThread thread = new testThread();
+        final testListener listener = new testListener();
+        thread.addCompletionListener(listener);
+        thread.start();
+        assertFalse(thread.isCompleted());
+        assertEquals(0, listener.threads.size());
+
+        thread.start.countDown();
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+        assertTrue(thread.isCompleted());
+        assertTrue(listener.successful);
+        assertEquals(1, listener.threads.size());
+        assertSame(thread, listener.threads.get(0));
+        thread.join(5000);
+        assertEquals(1, listener.threads.size());
+    }
+
+    public void testListenerAddedAfterCompletion() throws Exception {
+        final testThread thread = new testThread();
+        thread.start();
+        thread.start.countDown();
+        thread.join(5000);
+        assertTrue(thread.isCompleted());
+
+        final testListener listener = new testListener();
+        thread.addCompletionListener(listener);
+        assertEquals(1, listener.threads.size());
+        assertTrue(listener.successful);
+    }
+
+    public void testAborted() throws Exception {
+        final testThread thread = new testThread();
+        final testListener listener = new testListener();
+        thread.addCompletionListener(listener);
+        thread.start();
+        thread.abort();
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+        assertFalse(listener.successful);
+        assertTrue(thread.isAborted());
+        assertTrue(thread.getThrowable() instanceof InterruptedException);
+    }
+
+    public void testListenerFailure() throws Exception {
+        final testThread thread = new testThread();
+        thread.addCompletionListener(new ServiceThreadListener() {
+            public void threadCompleted(final ServiceThreadBase thread) {
+                throw new RuntimeException("test failure");
+            }
+        });
+        final testListener listener = new testListener();
+        thread.addCompletionListener(listener);
+        thread.start();
+        thread.start.countDown();
+        assertTrue(listener.done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, listener.threads.size());
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* ScriptExecutionBenchmark.java
+*
+*/
+package com.dtolabs.rundeck.core.execution.commands;
+
+import com.dtolabs.rundeck.core.cli.CLIExecutionListener;
+import com.dtolabs.rundeck.core.cli.CLIToolLogger;
+import com.dtolabs.rundeck.core.common.Framework;
+import com.dtolabs.rundeck.core.common.INodeEntry;
+import com.dtolabs.rundeck.core.common.NodeEntryImpl;
+import com.dtolabs.rundeck.core.execution.ExecutionContext;
+import com.dtolabs.rundeck.core.execution.ExecutionContextImpl;
+import com.dtolabs.rundeck.core.utils.NodeSet;
+
+import java.io.InputStream;
+import java.util.Collection;
+import java.util.HashMap;
+
+/**
+ * Compares the time to run a small script step on a remote node in "copy" mode (copy the script, chmod, execute) and
+ * "pipe" mode (a single command reading the script from its input).  The node must be defined in the project and
+ * reachable via ssh with the configured credentials.
+ * <p/>
+ * Run with: java -cp build/classes/main:build/classes/test com.dtolabs.rundeck.core.execution.commands.ScriptExecutionBenchmark
+ * rdeck_base project nodename [rounds]
+ */
+public class ScriptExecutionBenchmark {
+    private static final String SCRIPT = "#!/bin/sh\necho \"benchmark $1 on @node.name@\"\n";
+
+    public static void main(final String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("usage: ScriptExecutionBenchmark rdeck_base project nodename [rounds]");
+            System.exit(2);
+        }
+        final Framework framework = Framework.getInstance(args[0]);
+        final String project = args[1];
+        final int rounds = args.length > 3 ? Integer.parseInt(args[3]) : 20;
+        final NodeSet nodeset = new NodeSet(args[2]);
+        final Collection<INodeEntry> nodes = framework.filterNodes(nodeset, project);
+        if (nodes.size() != 1) {
+            System.err.println("node not found: " + args[2]);
+            System.exit(2);
+        }
+        final INodeEntry node = nodes.iterator().next();
+        if (null == node.getAttributes()) {
+            ((NodeEntryImpl) node).setAttributes(new HashMap<String, String>());
+        }
+        final ExecutionContext context = ExecutionContextImpl.createExecutionContextImpl(project,
+            System.getProperty("user.name"), nodeset, null, 0, null, new CLIExecutionListener(null, new Logger(), 0),
+            framework);
+        final ScriptFileCommandInterpreter interpreter = new ScriptFileCommandInterpreter(framework);
+
+        //warm up
+        run(interpreter, context, node, ScriptFileCommandInterpreter.MODE_COPY, 2);
+        run(interpreter, context, node, ScriptFileCommandInterpreter.MODE_PIPE, 2);
+
+        System.out.println("mode\trounds\tms/step");
+        for (final String mode : new String[]{ScriptFileCommandInterpreter.MODE_COPY,
+            ScriptFileCommandInterpreter.MODE_PIPE}) {
+            System.out.println(mode + "\t" + rounds + "\t" + format(run(interpreter, context, node, mode, rounds)));
+        }
+    }
+
+    private static String format(final double value) {
+        return Double.toString(Math.round(value * 100) / 100.0);
+    }
+
+    /**
+     * Return the average time per script step in milliseconds
+     */
+    private static double run(final ScriptFileCommandInterpreter interpreter, final ExecutionContext context,
+                              final INodeEntry node, final String mode, final int rounds) throws Exception {
+        node.getAttributes().put(ScriptFileCommandInterpreter.SCRIPT_EXEC_MODE_ATTRIBUTE, mode);
+        final long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            final InterpreterResult result = interpreter.interpretCommand(context, new Script(i), node);
+            if (!result.isSuccess()) {
+                throw new IllegalStateException("script failed in " + mode + " mode: " + result);
+            }
+        }
+        return (System.nanoTime() - start) / 1000000.0 / rounds;
+    }
+
+    private static class Script extends ScriptFileCommand {
+        private final int round;
+
+        Script(final int round) {
+            this.round = round;
+        }
+
+        public String getScript() {
+            return SCRIPT;
+        }
+
+        public InputStream getScriptAsStream() {
+            return null;
+        }
+
+        public String getServerScriptFilePath() {
+            return null;
+        }
+
+        public String[] getArgs() {
+            return new String[]{Integer.toString(round)};
+        }
+    }
+
+    private static class Logger implements CLIToolLogger {
+        public void log(final String message) {
+        }
+
+        public void error(final String message) {
+            System.err.println(message);
+        }
+
+        public void warn(final String message) {
+            System.err.println(message);
+        }
+
+        public void verbose(final String message) {
+        }
+
+        public void debug(final String message) {
+        }
+    }
+}
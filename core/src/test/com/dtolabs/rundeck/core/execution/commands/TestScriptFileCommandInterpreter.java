@@ -35,10 +35,7 @@ import com.dtolabs.rundeck.core.tools.AbstractBaseTest;
 import com.dtolabs.rundeck.core.utils.FileUtils;
 import com.dtolabs.rundeck.core.utils.NodeSet;
 
-import java.io.ByteArrayInputStream;
-import java.io.File;
-import java.io.IOException;
-import java.io.InputStream;
+import java.io.*;
 import java.util.*;
 
 /**
@@ -137,6 +134,149 @@ public class TestScriptFileCommandInterpreter extends AbstractBaseTest {
 
     }
 
+    public static class pipeTestNodeExecutor extends multiTestNodeExecutor implements InputNodeExecutor {
+        List<String> testInput = new ArrayList<String>();
+
+        public NodeExecutorResult executeCommand(ExecutionContext context, String[] command, File input,
+                                                 INodeEntry node) throws ExecutionException {
+            try {
+                final BufferedReader reader = new BufferedReader(new FileReader(input));
+                try {
+                    testInput.add(reader.readLine() + "\n" + reader.readLine());
+                } finally {
+                    reader.close();
+                }
+            } catch (IOException e) {
+                throw new ExecutionException(e);
+            }
+            return executeCommand(context, command, node);
+        }
+    }
+
+    private static ScriptFileCommand scriptCommand(final String script, final String[] args) {
+        return new ScriptFileCommand() {
+            public String getScript() {
+                return script;
+            }
+
+            public InputStream getScriptAsStream() {
+                return null;
+            }
+
+            public String getServerScriptFilePath() {
+                return null;
+            }
+
+            public String[] getArgs() {
+                return args;
+            }
+        };
+    }
+
+    private ExecutionContext createContext(final Framework frameworkInstance) {
+        return new ExecutionContext() {
+            public String getFrameworkProject() {
+                return PROJ_NAME;
+            }
+
+            public Framework getFramework() {
+                return frameworkInstance;
+            }
+
+            public String getUser() {
+                return "blah";
+            }
+
+            public NodeSet getNodeSet() {
+                return null;
+            }
+
+            public String[] getArgs() {
+                return new String[0];
+            }
+
+            public int getLoglevel() {
+                return 0;
+            }
+
+            public Map<String, Map<String, String>> getDataContext() {
+                return null;
+            }
+
+            public ExecutionListener getExecutionListener() {
+                return null;
+            }
+        };
+    }
+
+    /**
+     * Pipe mode executes the shell once with the script as input, or copies the script if it is not a shell script
+     */
+    public void testInterpretCommandScriptContentPipe() throws Exception {
+        final Framework frameworkInstance = getFrameworkInstance();
+        ScriptFileCommandInterpreter interpret = new ScriptFileCommandInterpreter(frameworkInstance);
+
+        pipeTestNodeExecutor testexec = new pipeTestNodeExecutor();
+        NodeExecutorService service = NodeExecutorService.getInstanceForFramework(frameworkInstance);
+        service.registerInstance("local", testexec);
+
+        testFileCopier testcopier = new testFileCopier();
+        FileCopierService copyservice = FileCopierService.getInstanceForFramework(frameworkInstance);
+        copyservice.registerInstance("local", testcopier);
+
+        final NodeEntryImpl test1 = new NodeEntryImpl("testhost1", "test1");
+        test1.setOsFamily("unix");
+        test1.setAttributes(new HashMap<String, String>());
+        test1.getAttributes().put(ScriptFileCommandInterpreter.SCRIPT_EXEC_MODE_ATTRIBUTE,
+            ScriptFileCommandInterpreter.MODE_PIPE);
+        final ExecutionContext context = createContext(frameworkInstance);
+        final NodeExecutorResult execResult = new NodeExecutorResult() {
+            public int getResultCode() {
+                return 0;
+            }
+
+            public boolean isSuccess() {
+                return true;
+            }
+        };
+        testexec.testResult.add(execResult);
+
+        final InterpreterResult interpreterResult = interpret.interpretCommand(context,
+            scriptCommand("#!/bin/bash -e\necho @node.name@\n", new String[]{"arg1"}), test1);
+        assertEquals(execResult, interpreterResult);
+        assertNull(testcopier.testContext);
+        assertEquals(1, testexec.index);
+        assertEquals(Arrays.asList("/bin/bash", "-e", "-s", "--", "arg1"), Arrays.asList(testexec.testCommand.get(0)));
+        assertEquals(1, testexec.testInput.size());
+        assertEquals("#!/bin/bash -e\necho test1", testexec.testInput.get(0));
+
+        //not a shell script
+        testexec.testResult.add(execResult);
+        testexec.testResult.add(execResult);
+        testcopier.testResult = "/test/file/path";
+        interpret.interpretCommand(context, scriptCommand("#!/usr/bin/env python\nprint 1\n", null), test1);
+        assertEquals("#!/usr/bin/env python\nprint 1\n", testcopier.testScript);
+        assertEquals(3, testexec.index);
+        assertEquals(1, testexec.testInput.size());
+        assertEquals("chmod", testexec.testCommand.get(1)[0]);
+        assertEquals("/test/file/path", testexec.testCommand.get(2)[0]);
+    }
+
+    public void testPipeShellCommand() throws Exception {
+        assertEquals(Arrays.asList("sh", "-s", "--"), pipeShellCommand("echo hi"));
+        assertEquals(Arrays.asList("sh", "-s", "--"), pipeShellCommand(""));
+        assertEquals(Arrays.asList("/bin/sh", "-s", "--"), pipeShellCommand("#!/bin/sh\necho hi"));
+        assertEquals(Arrays.asList("/usr/bin/env", "bash", "-s", "--"), pipeShellCommand("#!/usr/bin/env bash"));
+        assertNull(pipeShellCommand("#!/usr/bin/perl"));
+        assertNull(pipeShellCommand("#!"));
+    }
+
+    private static List<String> pipeShellCommand(final String script) throws IOException {
+        final String[] command = ScriptFileCommandInterpreter.pipeShellCommand(new BufferedReader(new StringReader(
+            script)));
+        return null != command ? Arrays.asList(command) : null;
+    }
+
     /**
      * Unix target node will copy using file copier, then exec "chmod +x [destfile]", then execute the
      * filepath
@@ -0,0 +1,292 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* TestNodeDispatchScheduler.java
+*
+*/
+package com.dtolabs.rundeck.core.execution.dispatch;
+
+import com.dtolabs.rundeck.core.utils.ThreadContext;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TestNodeDispatchScheduler is ...
+ */
+public class TestNodeDispatchScheduler extends TestCase {
+    public TestNodeDispatchScheduler(final String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestNodeDispatchScheduler.class);
+    }
+
+    /**
+     * Task which records the maximum number of tasks running at once
+     */
+    private static class CountingTask implements Callable<Object> {
+        final AtomicInteger running;
+        final AtomicInteger max;
+        final List<String> order;
+        final String name;
+
+        CountingTask(final AtomicInteger running, final AtomicInteger max, final List<String> order,
+                     final String name) {
+            this.running = running;
+            this.max = max;
+            this.order = order;
+            this.name = name;
+        }
+
+        public Object call() throws Exception {
+            final int now = running.incrementAndGet();
+            synchronized (max) {
+                if (now > max.get()) {
+                    max.set(now);
+                }
+            }
+            order.add(name);
+            Thread.sleep(20);
+            running.decrementAndGet();
+            return null;
+        }
+    }
+
+    public void testConcurrencyLimit() throws Exception {
+        final NodeDispatchScheduler scheduler = new NodeDispatchScheduler(10, 1000);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger max = new AtomicInteger();
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final NodeDispatchScheduler.Dispatch dispatch = scheduler.createDispatch(3);
+        for (int i = 0; i < 12; i++) {
+            dispatch.add(new CountingTask(running, max, order, "t" + i));
+        }
+        dispatch.execute();
+        assertEquals(12, order.size());
+        assertEquals(3, max.get());
+        assertEquals(12, scheduler.getCompletedTaskCount());
+        assertEquals(0, scheduler.getQueuedTaskCount());
+        assertEquals(0, scheduler.getActiveTaskCount());
+        assertEquals(0, scheduler.getDispatchCount());
+        assertTrue(scheduler.getThreadCount() <= 3);
+    }
+
+    public void testGlobalLimitAndFairness() throws Exception {
+        final NodeDispatchScheduler scheduler = new NodeDispatchScheduler(2, 1000);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger max = new AtomicInteger();
+        final List<String> order = Collections.synchronizedList(new ArrayList<String>());
+        final NodeDispatchScheduler.Dispatch first = scheduler.createDispatch(10);
+        final NodeDispatchScheduler.Dispatch second = scheduler.createDispatch(10);
+        for (int i = 0; i < 20; i++) {
+            first.add(new CountingTask(running, max, order, "a" + i));
+            second.add(new CountingTask(running, max, order, "b" + i));
+        }
+        final CountDownLatch done = new CountDownLatch(1);
+        final Thread thread = new Thread() {
+            public void run() {
+                try {
+                    first.execute();
+                } catch (DispatcherException e) {
+                    fail(e.getMessage());
+                }
+                done.countDown();
+            }
+        };
+        thread.start();
+        second.execute();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(40, order.size());
+        //two pooled threads and the two dispatching threads
+        assertTrue("max: " + max.get(), max.get() <= 4);
+        assertTrue(scheduler.getThreadCount() <= 2);
+        //the second dispatch does not wait for the first to complete
+        assertTrue(order.indexOf("b5") < order.indexOf("a19"));
+    }
+
+    public void testContextPropagated() throws Exception {
+        final InheritableThreadLocal<String> local = ThreadContext.register(new InheritableThreadLocal<String>());
+        final NodeDispatchScheduler scheduler = new NodeDispatchScheduler(4, 1000);
+        final List<String> seen = Collections.synchronizedList(new ArrayList<String>());
+        for (final String value : new String[]{"first", "second"}) {
+            local.set(value);
+            final NodeDispatchScheduler.Dispatch dispatch = scheduler.createDispatch(4);
+            final CountDownLatch latch = new CountDownLatch(4);
+            for (int i = 0; i < 4; i++) {
+                dispatch.add(new Callable<Object>() {
+                    public Object call() throws Exception {
+                        latch.countDown();
+                        //wait so that the tasks are run by different threads
+                        latch.await(5, TimeUnit.SECONDS);
+                        seen.add(local.get());
+                        return null;
+                    }
+                });
+            }
+            dispatch.execute();
+        }
+        assertEquals(8, seen.size());
+        assertEquals(4, Collections.frequency(seen, "first"));
+        assertEquals(4, Collections.frequency(seen, "second"));
+        local.remove();
+    }
+
+    public void testNestedDispatch() throws Exception {
+        final NodeDispatchScheduler scheduler = new NodeDispatchScheduler(1, 1000);
+        final AtomicInteger count = new AtomicInteger();
+        final NodeDispatchScheduler.Dispatch outer = scheduler.createDispatch(2);
+        for (int i = 0; i < 2; i++) {
+            outer.add(new Callable<Object>() {
+                public Object call() throws Exception {
+                    final NodeDispatchScheduler.Dispatch inner = scheduler.createDispatch(2);
+                    for (int j = 0; j < 3; j++) {
+                        inner.add(new Callable<Object>() {
+                            public Object call() throws Exception {
+                                Thread.sleep(10);
+                                return count.incrementAndGet();
+                            }
+                        });
+                    }
+                    inner.execute();
+                    return null;
+                }
+            });
+        }
+        outer.execute();
+        assertEquals(6, count.get());
+    }
+
+    public void testFailure() throws Exception {
+        final NodeDispatchScheduler scheduler = new NodeDispatchScheduler(2, 1000);
+        final AtomicInteger count = new AtomicInteger();
+        final NodeDispatchScheduler.Dispatch dispatch = scheduler.createDispatch(2);
+        dispatch.add(new Callable<Object>() {
+            public Object call() throws Exception {
+                throw new Exception("test failure");
+            }
+        });
+        for (int i = 0; i < 3; i++) {
+            dispatch.add(new Callable<Object>() {
+                public Object call() throws Exception {
+                    return count.incrementAndGet();
+                }
+            });
+        }
+        try {
+            dispatch.execute();
+            fail("expected failure");
+        } catch (DispatcherException e) {
+            assertEquals("test failure", e.getCause().getMessage());
+        }
+        assertEquals(3, count.get());
+        try {
+            dispatch.add(new Callable<Object>() {
+                public Object call() throws Exception {
+                    return null;
+                }
+            });
+            fail("expected exception");
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    public void testCancel() throws Exception {
+        final NodeDispatchScheduler scheduler = new NodeDispatchScheduler(4, 1000);
+        final NodeDispatchScheduler.Dispatch dispatch = scheduler.createDispatch(2);
+        final AtomicInteger count = new AtomicInteger();
+        final CountDownLatch started = new CountDownLatch(1);
+        final AtomicInteger hooks = new AtomicInteger();
+        final AtomicInteger interrupted = new AtomicInteger();
+        //runs until cancelled
+        dispatch.add(new Callable<Object>() {
+            public Object call() throws Exception {
+                TaskCancellation.current().addHook(new Runnable() {
+                    public void run() {
+                        hooks.incrementAndGet();
+                    }
+                });
+                started.countDown();
+                try {
+                    Thread.sleep(10000);
+                } catch (InterruptedException e) {
+                    interrupted.incrementAndGet();
+                }
+                assertTrue(TaskCancellation.current().isCancelled());
+                return null;
+            }
+        });
+        //fails and cancels the dispatch
+        dispatch.add(new Callable<Object>() {
+            public Object call() throws Exception {
+                started.await(5, TimeUnit.SECONDS);
+                dispatch.cancel();
+                assertFalse(TaskCancellation.current().isCancelled());
+                assertFalse(Thread.currentThread().isInterrupted());
+                return null;
+            }
+        });
+        for (int i = 0; i < 5; i++) {
+            dispatch.add(new Callable<Object>() {
+                public Object call() throws Exception {
+                    return count.incrementAndGet();
+                }
+            });
+        }
+        final long start = System.currentTimeMillis();
+        dispatch.execute();
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertTrue(dispatch.isCancelled());
+        assertEquals(0, count.get());
+        assertEquals(1, hooks.get());
+        assertEquals(1, interrupted.get());
+        assertFalse(Thread.currentThread().isInterrupted());
+        assertEquals(0, scheduler.getQueuedTaskCount());
+        assertEquals(0, scheduler.getActiveTaskCount());
+        assertNull(TaskCancellation.current());
+
+        //hook added after cancellation is run immediately
+        final NodeDispatchScheduler.Dispatch second = scheduler.createDispatch(1);
+        second.add(new Callable<Object>() {
+            public Object call() throws Exception {
+                final TaskCancellation cancellation = TaskCancellation.current();
+                //the dispatch does not cancel the task of the cancelling thread
+                second.cancel();
+                cancellation.cancel();
+                assertFalse(cancellation.addHook(new Runnable() {
+                    public void run() {
+                        hooks.incrementAndGet();
+                    }
+                }));
+                return null;
+            }
+        });
+        second.execute();
+        assertTrue(second.isCancelled());
+        assertEquals(2, hooks.get());
+        assertFalse(Thread.currentThread().isInterrupted());
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* TestParallelNodeDispatcher.java
+*
+*/
+package com.dtolabs.rundeck.core.execution.dispatch;
+
+import com.dtolabs.rundeck.core.NodesetFailureException;
+import com.dtolabs.rundeck.core.common.Framework;
+import com.dtolabs.rundeck.core.common.FrameworkProject;
+import com.dtolabs.rundeck.core.common.INodeEntry;
+import com.dtolabs.rundeck.core.execution.ExecutionContext;
+import com.dtolabs.rundeck.core.execution.ExecutionContextImpl;
+import com.dtolabs.rundeck.core.execution.StatusResult;
+import com.dtolabs.rundeck.core.execution.workflow.ContextLogger;
+import com.dtolabs.rundeck.core.execution.workflow.NodeRecorder;
+import com.dtolabs.rundeck.core.execution.workflow.WorkflowExecutionListenerImpl;
+import com.dtolabs.rundeck.core.tools.AbstractBaseTest;
+import com.dtolabs.rundeck.core.utils.FileUtils;
+import com.dtolabs.rundeck.core.utils.NodeSet;
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TestParallelNodeDispatcher is ...
+ */
+public class TestParallelNodeDispatcher extends AbstractBaseTest {
+    Framework testFramework;
+    private static final String TEST_PROJECT = "TestParallelNodeDispatcher";
+
+    public TestParallelNodeDispatcher(String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestParallelNodeDispatcher.class);
+    }
+
+    protected void setUp() {
+        super.setUp();
+        testFramework = getFrameworkInstance();
+        final FrameworkProject frameworkProject = testFramework.getFrameworkProjectMgr().createFrameworkProject(
+            TEST_PROJECT);
+        File resourcesfile = new File(frameworkProject.getNodesResourceFilePath());
+        //copy test nodes to resources file
+        try {
+            FileUtils.copyFileStreams(new File("src/test/com/dtolabs/rundeck/core/common/test-nodes1.xml"),
+                resourcesfile);
+        } catch (IOException e) {
+            throw new RuntimeException("Caught Setup exception: " + e.getMessage(), e);
+        }
+    }
+
+    protected void tearDown() throws Exception {
+        super.tearDown();
+
+        File projectdir = new File(getFrameworkProjectsBase(), TEST_PROJECT);
+        FileUtils.deleteDir(projectdir);
+    }
+
+    static class testLogger implements ContextLogger {
+        public void log(String message, Map<String, String> context) {
+        }
+
+        public void error(String message, Map<String, String> context) {
+        }
+
+        public void warn(String message, Map<String, String> context) {
+        }
+
+        public void verbose(String message, Map<String, String> context) {
+        }
+
+        public void debug(String message, Map<String, String> context) {
+        }
+
+        public void log(String message) {
+        }
+
+        public void error(String message) {
+        }
+
+        public void warn(String message) {
+        }
+
+        public void verbose(String message) {
+        }
+
+        public void debug(String message) {
+        }
+    }
+
+    static class testResult implements StatusResult {
+        final boolean success;
+
+        testResult(final boolean success) {
+            this.success = success;
+        }
+
+        public boolean isSuccess() {
+            return success;
+        }
+    }
+
+    private ExecutionContext createContext(final NodeRecorder recorder, final boolean keepgoing) {
+        final NodeSet nodeset = new NodeSet();
+        nodeset.createInclude().setName(".*");
+        nodeset.setThreadCount(1);
+        nodeset.setKeepgoing(keepgoing);
+        return ExecutionContextImpl.createExecutionContextImpl(TEST_PROJECT, "user1", nodeset, null, 0, null,
+            new WorkflowExecutionListenerImpl(recorder, recorder, new testLogger(), false, null), testFramework);
+    }
+
+    public void testNodeEvents() throws Exception {
+        final NodeRecorder recorder = new NodeRecorder();
+        final ExecutionContext context = createContext(recorder, true);
+        final ParallelNodeDispatcher dispatcher = new ParallelNodeDispatcher(testFramework);
+        try {
+            dispatcher.dispatch(context, new Dispatchable() {
+                public StatusResult dispatch(final ExecutionContext context, final INodeEntry node) {
+                    //the previous node has completed
+                    assertEquals(1, recorder.getRunningNodes().size());
+                    assertTrue(recorder.getRunningNodes().contains(node.getNodename()));
+                    return new testResult("test1".equals(node.getNodename()));
+                }
+            });
+            fail("expected failure");
+        } catch (NodesetFailureException e) {
+            assertEquals(1, e.getNodeFailures().size());
+            assertTrue(e.getNodeFailures().containsKey("testnode2"));
+        }
+        assertEquals(0, recorder.getRunningNodes().size());
+        assertEquals(2, recorder.getCompletedNodes().size());
+        assertEquals(1, recorder.getFailedNodes().size());
+        assertTrue(recorder.getFailedNodes().get("testnode2") instanceof testResult);
+        assertEquals(1, recorder.getSuccessfulNodes().size());
+        assertTrue(recorder.getSuccessfulNodes().contains("test1"));
+        assertEquals(0, recorder.getAbortedNodes().size());
+    }
+
+    public void testFailFast() throws Exception {
+        final NodeRecorder recorder = new NodeRecorder();
+        final ExecutionContext context = createContext(recorder, false);
+        final ParallelNodeDispatcher dispatcher = new ParallelNodeDispatcher(testFramework);
+        final AtomicInteger count = new AtomicInteger();
+        try {
+            dispatcher.dispatch(context, new Dispatchable() {
+                public StatusResult dispatch(final ExecutionContext context, final INodeEntry node) {
+                    count.incrementAndGet();
+                    return new testResult(false);
+                }
+            });
+            fail("expected failure");
+        } catch (NodesetFailureException e) {
+            assertEquals(1, e.getNodeFailures().size());
+        }
+        //the second node is not started
+        assertEquals(1, count.get());
+        assertEquals(1, recorder.getFailedNodes().size());
+        assertEquals(1, recorder.getAbortedNodes().size());
+        assertFalse(recorder.getFailedNodes().keySet().containsAll(recorder.getAbortedNodes()));
+        assertEquals(0, recorder.getSuccessfulNodes().size());
+    }
+}
@@ -26,6 +26,8 @@ package com.dtolabs.rundeck.core.execution.impl.common;
 import com.dtolabs.rundeck.core.common.NodeEntryImpl;
 import junit.framework.TestCase;
 
+import java.io.File;
+import java.io.FileOutputStream;
 import java.util.*;
 
 /**
@@ -65,4 +67,28 @@ public class TestBaseFileCopier extends TestCase {
         assertEquals("test.bat", baseFileCopier.appendRemoteFileExtensionForNode(node, "test"));
         assertEquals("test.bat", baseFileCopier.appendRemoteFileExtensionForNode(node, "test.bat"));
     }
+
+    public void testRemoteFilepathForDigest() throws Exception {
+        NodeEntryImpl node = new NodeEntryImpl();
+        node.setOsFamily("unix");
+        assertEquals("/tmp/dispatch-script-abc123.sh", BaseFileCopier.generateRemoteFilepathForNode(node,
+            "dispatch-script", "abc123"));
+        node.setAttributes(new HashMap<String, String>());
+        node.getAttributes().put(BaseFileCopier.FILE_COPY_DESTINATION_DIR, "/var/tmp/");
+        assertEquals("/var/tmp/test.sh-abc123.sh", BaseFileCopier.generateRemoteFilepathForNode(node, "test.sh",
+            "abc123"));
+    }
+
+    public void testDigestFile() throws Exception {
+        final File file = File.createTempFile("test-digest", ".sh");
+        file.deleteOnExit();
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write("abc".getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+        assertEquals("a9993e364706816aba3e25717850c26c9cd0d89d", BaseFileCopier.digestFile(file));
+        file.delete();
+    }
 }
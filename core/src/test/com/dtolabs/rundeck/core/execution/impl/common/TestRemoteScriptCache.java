@@ -0,0 +1,93 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* TestRemoteScriptCache.java
+*
+*/
+package com.dtolabs.rundeck.core.execution.impl.common;
+
+import com.dtolabs.rundeck.core.common.NodeEntryImpl;
+import junit.framework.TestCase;
+
+import java.util.HashMap;
+
+/**
+ * TestRemoteScriptCache is ...
+ */
+public class TestRemoteScriptCache extends TestCase {
+
+    private static NodeEntryImpl node(final String hostname) {
+        final NodeEntryImpl node = new NodeEntryImpl(hostname, hostname);
+        node.setOsFamily("unix");
+        node.setUsername("user1");
+        node.setAttributes(new HashMap<String, String>());
+        return node;
+    }
+
+    public void testContains() throws Exception {
+        final RemoteScriptCache cache = new RemoteScriptCache(60000, 10);
+        final NodeEntryImpl node1 = node("host1");
+        final NodeEntryImpl node2 = node("host2");
+        assertFalse(cache.contains(node1, "/tmp/a.sh"));
+        cache.add(node1, "/tmp/a.sh");
+        assertTrue(cache.contains(node1, "/tmp/a.sh"));
+        assertFalse(cache.contains(node1, "/tmp/b.sh"));
+        assertFalse(cache.contains(node2, "/tmp/a.sh"));
+        node2.setUsername("user2");
+        cache.add(node2, "/tmp/a.sh");
+        assertTrue(cache.contains(node2, "/tmp/a.sh"));
+        node2.setUsername("user1");
+        assertFalse(cache.contains(node2, "/tmp/a.sh"));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(4, cache.getMissCount());
+
+        cache.remove(node1, "/tmp/a.sh");
+        assertFalse(cache.contains(node1, "/tmp/a.sh"));
+    }
+
+    public void testExpired() throws Exception {
+        final RemoteScriptCache cache = new RemoteScriptCache(0, 10);
+        final NodeEntryImpl node1 = node("host1");
+        cache.add(node1, "/tmp/a.sh");
+        assertEquals(1, cache.size());
+        assertFalse(cache.contains(node1, "/tmp/a.sh"));
+        assertEquals(0, cache.size());
+    }
+
+    public void testMaxEntries() throws Exception {
+        final RemoteScriptCache cache = new RemoteScriptCache(60000, 2);
+        final NodeEntryImpl node1 = node("host1");
+        cache.add(node1, "/tmp/a.sh");
+        cache.add(node1, "/tmp/b.sh");
+        //a is most recently used
+        assertTrue(cache.contains(node1, "/tmp/a.sh"));
+        cache.add(node1, "/tmp/c.sh");
+        assertEquals(2, cache.size());
+        assertTrue(cache.contains(node1, "/tmp/a.sh"));
+        assertFalse(cache.contains(node1, "/tmp/b.sh"));
+        assertTrue(cache.contains(node1, "/tmp/c.sh"));
+    }
+
+    public void testEnabled() throws Exception {
+        final NodeEntryImpl node1 = node("host1");
+        assertFalse(RemoteScriptCache.isEnabled(null, null, node1));
+        node1.getAttributes().put(RemoteScriptCache.FILE_COPY_CACHE_ATTRIBUTE, "true");
+        assertTrue(RemoteScriptCache.isEnabled(null, null, node1));
+        node1.setOsFamily("windows");
+        assertFalse(RemoteScriptCache.isEnabled(null, null, node1));
+    }
+}
@@ -33,6 +33,7 @@ import com.dtolabs.rundeck.core.execution.commands.InterpreterException;
 import com.dtolabs.rundeck.core.execution.commands.InterpreterResult;
 import com.dtolabs.rundeck.core.execution.dispatch.Dispatchable;
 import com.dtolabs.rundeck.core.execution.dispatch.DispatcherResult;
+import com.dtolabs.rundeck.core.execution.dispatch.NodeDispatchListener;
 import com.dtolabs.rundeck.core.execution.service.NodeExecutorResult;
 import com.dtolabs.rundeck.core.tools.AbstractBaseTest;
 import com.dtolabs.rundeck.core.utils.FileUtils;
@@ -125,6 +126,10 @@ public class TestNodeFirstWorkflowStrategy extends AbstractBaseTest {
             return null;
         }
 
+        public NodeDispatchListener getNodeDispatchListener() {
+            return null;
+        }
+
         public void beginExecution(ExecutionContext context, ExecutionItem item) {
         }
 
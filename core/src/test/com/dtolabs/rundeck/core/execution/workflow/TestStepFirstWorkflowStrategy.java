@@ -31,6 +31,7 @@ import com.dtolabs.rundeck.core.execution.*;
 import com.dtolabs.rundeck.core.execution.commands.*;
 import com.dtolabs.rundeck.core.execution.dispatch.Dispatchable;
 import com.dtolabs.rundeck.core.execution.dispatch.DispatcherResult;
+import com.dtolabs.rundeck.core.execution.dispatch.NodeDispatchListener;
 import com.dtolabs.rundeck.core.execution.service.NodeExecutorResult;
 import com.dtolabs.rundeck.core.tools.AbstractBaseTest;
 import com.dtolabs.rundeck.core.utils.FileUtils;
@@ -126,6 +127,10 @@ public class TestStepFirstWorkflowStrategy extends AbstractBaseTest {
             return null;
         }
 
+        public NodeDispatchListener getNodeDispatchListener() {
+            return null;
+        }
+
         public void beginExecution(ExecutionContext context, ExecutionItem item) {
         }
 
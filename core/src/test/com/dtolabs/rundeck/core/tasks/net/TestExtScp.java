@@ -0,0 +1,133 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* TestExtScp.java
+*
+*/
+package com.dtolabs.rundeck.core.tasks.net;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+
+/**
+ * TestExtScp tests the remote file check, running the command with the local shell if there is one
+ */
+public class TestExtScp extends TestCase {
+    File testDir;
+    File file;
+    String digest;
+
+    public TestExtScp(final String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestExtScp.class);
+    }
+
+    protected void setUp() throws Exception {
+        testDir = File.createTempFile("TestExtScp", "");
+        testDir.delete();
+        testDir.mkdirs();
+        file = new File(testDir, "script.sh-abc123.sh");
+        final byte[] content = "echo test\n".getBytes("UTF-8");
+        final FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+        final StringBuffer sb = new StringBuffer();
+        for (final byte b : MessageDigest.getInstance("SHA-1").digest(content)) {
+            sb.append(Integer.toHexString((b & 0xff) | 0x100).substring(1));
+        }
+        digest = sb.toString();
+    }
+
+    protected void tearDown() throws Exception {
+        final File[] files = testDir.listFiles();
+        if (null != files) {
+            for (final File f : files) {
+                f.delete();
+            }
+        }
+        testDir.delete();
+    }
+
+    public void testCommandChecksOwnership() throws Exception {
+        final String command = ExtScp.digestCheckCommand("/tmp/it's.sh", "abc123");
+        assertTrue(command.startsWith("test ! -L '/tmp/it'\\''s.sh'"));
+        assertTrue(command.contains("test -f '/tmp/it'\\''s.sh'"));
+        assertTrue(command.contains("test -O '/tmp/it'\\''s.sh'"));
+        assertTrue(command.contains("find '/tmp/it'\\''s.sh' \\( -perm -020 -o -perm -002 \\) -print"));
+        assertTrue(command.endsWith("= 'abc123'"));
+    }
+
+    public void testOwnedFile() throws Exception {
+        if (!canRun()) {
+            return;
+        }
+        chmod("644", file);
+        assertEquals(0, run(ExtScp.digestCheckCommand(file.getAbsolutePath(), digest)));
+        assertFalse(0 == run(ExtScp.digestCheckCommand(file.getAbsolutePath(), "abc123")));
+        assertFalse(0 == run(ExtScp.digestCheckCommand(new File(testDir, "missing").getAbsolutePath(), digest)));
+    }
+
+    public void testWritableFile() throws Exception {
+        if (!canRun()) {
+            return;
+        }
+        chmod("664", file);
+        assertFalse(0 == run(ExtScp.digestCheckCommand(file.getAbsolutePath(), digest)));
+        chmod("646", file);
+        assertFalse(0 == run(ExtScp.digestCheckCommand(file.getAbsolutePath(), digest)));
+    }
+
+    public void testSymlink() throws Exception {
+        if (!canRun()) {
+            return;
+        }
+        chmod("644", file);
+        final File link = new File(testDir, "link.sh");
+        assertEquals(0, exec(new String[]{"ln", "-s", file.getAbsolutePath(), link.getAbsolutePath()}));
+        assertFalse(0 == run(ExtScp.digestCheckCommand(link.getAbsolutePath(), digest)));
+    }
+
+    private static boolean canRun() {
+        return new File("/bin/sh").exists();
+    }
+
+    private static void chmod(final String mode, final File file) throws IOException, InterruptedException {
+        assertEquals(0, exec(new String[]{"chmod", mode, file.getAbsolutePath()}));
+    }
+
+    private static int run(final String command) throws IOException, InterruptedException {
+        return exec(new String[]{"/bin/sh", "-c", command});
+    }
+
+    private static int exec(final String[] command) throws IOException, InterruptedException {
+        final Process process = Runtime.getRuntime().exec(command);
+        process.getOutputStream().close();
+        return process.waitFor();
+    }
+}
@@ -0,0 +1,237 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* TestSSHSessionPool.java
+*
+*/
+package com.dtolabs.rundeck.core.tasks.net;
+
+import com.jcraft.jsch.JSch;
+import com.jcraft.jsch.JSchException;
+import com.jcraft.jsch.Session;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * TestSSHSessionPool tests the pooling logic using unconnected sessions
+ */
+public class TestSSHSessionPool extends TestCase {
+    public TestSSHSessionPool(final String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestSSHSessionPool.class);
+    }
+
+    /**
+     * Pool which treats sessions as alive until disconnected by the pool
+     */
+    static class TestPool extends SSHSessionPool {
+        final Set<Session> disconnected = new HashSet<Session>();
+
+        TestPool(final int maxSessionsPerHost, final int maxChannelsPerSession, final long idleTimeout) {
+            super(true, maxSessionsPerHost, maxChannelsPerSession, idleTimeout);
+        }
+
+        protected boolean isAlive(final Session session) {
+            synchronized (disconnected) {
+                return !disconnected.contains(session);
+            }
+        }
+
+        protected void disconnect(final Session session) {
+            synchronized (disconnected) {
+                disconnected.add(session);
+            }
+        }
+    }
+
+    static class TestFactory implements SSHSessionPool.SessionFactory {
+        int opened;
+        final String host;
+
+        TestFactory(final String host) {
+            this.host = host;
+        }
+
+        public Session openSession() throws JSchException {
+            opened++;
+            return new JSch().getSession("user", host, 22);
+        }
+    }
+
+    static SSHSessionPool.SessionKey key(final String user, final String host) {
+        return new SSHSessionPool.SessionKey(user, host, 22, "/keyfile", null, "");
+    }
+
+    public void testReuseReleasedSession() throws Exception {
+        final TestPool pool = new TestPool(2, 1, 0);
+        final TestFactory factory = new TestFactory("host1");
+
+        final SSHSessionPool.Lease lease1 = pool.acquire(key("user", "host1"), factory);
+        final Session session = lease1.getSession();
+        lease1.release();
+        final SSHSessionPool.Lease lease2 = pool.acquire(key("user", "host1"), factory);
+        assertSame(session, lease2.getSession());
+        lease2.release();
+
+        assertEquals(1, factory.opened);
+        assertEquals(1, pool.getMissCount());
+        assertEquals(1, pool.getHitCount());
+        assertEquals(1, pool.getSessionCount());
+    }
+
+    public void testMultipleChannelsPerSession() throws Exception {
+        final TestPool pool = new TestPool(2, 2, 0);
+        final TestFactory factory = new TestFactory("host1");
+
+        final SSHSessionPool.Lease lease1 = pool.acquire(key("user", "host1"), factory);
+        final SSHSessionPool.Lease lease2 = pool.acquire(key("user", "host1"), factory);
+        assertSame(lease1.getSession(), lease2.getSession());
+
+        //third lease exceeds channel limit
+        final SSHSessionPool.Lease lease3 = pool.acquire(key("user", "host1"), factory);
+        assertNotSame(lease1.getSession(), lease3.getSession());
+        assertEquals(2, factory.opened);
+        assertEquals(2, pool.getSessionCount());
+        lease1.release();
+        lease2.release();
+        lease3.release();
+    }
+
+    public void testDifferentKeysUseDifferentSessions() throws Exception {
+        final TestPool pool = new TestPool(2, 4, 0);
+        final TestFactory factory = new TestFactory("host1");
+
+        final SSHSessionPool.Lease lease1 = pool.acquire(key("user1", "host1"), factory);
+        final SSHSessionPool.Lease lease2 = pool.acquire(key("user2", "host1"), factory);
+        assertNotSame(lease1.getSession(), lease2.getSession());
+        assertEquals(2, pool.getMissCount());
+        lease1.release();
+        lease2.release();
+
+        //sessions with a different socket timeout are not shared
+        final SSHSessionPool.Lease lease3 = pool.acquire(
+            new SSHSessionPool.SessionKey("user1", "host1", 22, "/keyfile", null, "", 5000), factory);
+        assertNotSame(lease1.getSession(), lease3.getSession());
+        lease3.release();
+    }
+
+    public void testInvalidateDisconnects() throws Exception {
+        final TestPool pool = new TestPool(2, 4, 0);
+        final TestFactory factory = new TestFactory("host1");
+
+        final SSHSessionPool.Lease lease1 = pool.acquire(key("user", "host1"), factory);
+        final Session session = lease1.getSession();
+        lease1.invalidate();
+        assertTrue(pool.disconnected.contains(session));
+        assertEquals(0, pool.getSessionCount());
+
+        final SSHSessionPool.Lease lease2 = pool.acquire(key("user", "host1"), factory);
+        assertNotSame(session, lease2.getSession());
+        lease2.release();
+        //release twice is ignored
+        lease2.release();
+        assertEquals(1, pool.getSessionCount());
+    }
+
+    public void testHostLimitWaitsForRelease() throws Exception {
+        final TestPool pool = new TestPool(1, 1, 0);
+        final TestFactory factory = new TestFactory("host1");
+
+        final SSHSessionPool.Lease lease1 = pool.acquire(key("user", "host1"), factory);
+        final SSHSessionPool.Lease[] result = new SSHSessionPool.Lease[1];
+        final Thread thread = new Thread() {
+            public void run() {
+                try {
+                    result[0] = pool.acquire(key("user", "host1"), factory);
+                } catch (JSchException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        thread.start();
+        thread.join(200);
+        assertTrue("should be waiting for a session", thread.isAlive());
+        lease1.release();
+        thread.join(5000);
+        assertFalse(thread.isAlive());
+        assertNotNull(result[0]);
+        assertSame(lease1.getSession(), result[0].getSession());
+        assertEquals(1, factory.opened);
+        result[0].release();
+    }
+
+    public void testHostLimitReplacesIdleSessionForOtherKey() throws Exception {
+        final TestPool pool = new TestPool(1, 1, 0);
+        final TestFactory factory = new TestFactory("host1");
+
+        final SSHSessionPool.Lease lease1 = pool.acquire(key("user1", "host1"), factory);
+        final Session session1 = lease1.getSession();
+        lease1.release();
+
+        final SSHSessionPool.Lease lease2 = pool.acquire(key("user2", "host1"), factory);
+        assertNotSame(session1, lease2.getSession());
+        assertTrue(pool.disconnected.contains(session1));
+        assertEquals(1, pool.getSessionCount());
+        lease2.release();
+    }
+
+    public void testEvictIdle() throws Exception {
+        final TestPool pool = new TestPool(2, 1, 1000);
+        final TestFactory factory = new TestFactory("host1");
+
+        final SSHSessionPool.Lease lease1 = pool.acquire(key("user", "host1"), factory);
+        final SSHSessionPool.Lease lease2 = pool.acquire(key("user", "host1"), factory);
+        lease1.release();
+
+        assertEquals(0, pool.evictIdle(System.currentTimeMillis()));
+        assertEquals(1, pool.evictIdle(System.currentTimeMillis() + 1000));
+        assertTrue(pool.disconnected.contains(lease1.getSession()));
+        //leased session is not evicted
+        assertFalse(pool.disconnected.contains(lease2.getSession()));
+        assertEquals(1, pool.getSessionCount());
+
+        lease2.release();
+        assertEquals(1, pool.close());
+        assertEquals(0, pool.getSessionCount());
+        assertEquals(2, pool.getEvictionCount());
+    }
+
+    public void testFailedOpenReleasesHostSlot() throws Exception {
+        final TestPool pool = new TestPool(1, 1, 0);
+        try {
+            pool.acquire(key("user", "host1"), new SSHSessionPool.SessionFactory() {
+                public Session openSession() throws JSchException {
+                    throw new JSchException("Auth fail");
+                }
+            });
+            fail("expected exception");
+        } catch (JSchException e) {
+            assertEquals("Auth fail", e.getMessage());
+        }
+        final TestFactory factory = new TestFactory("host1");
+        final SSHSessionPool.Lease lease = pool.acquire(key("user", "host1"), factory);
+        assertNotNull(lease.getSession());
+        lease.release();
+    }
+}
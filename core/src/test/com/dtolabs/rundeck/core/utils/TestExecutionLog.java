@@ -0,0 +1,262 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* TestExecutionLog.java
+*
+*/
+package com.dtolabs.rundeck.core.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * TestExecutionLog tests {@link ExecutionLogWriter}, {@link ExecutionLogReader} and {@link ExecutionLogConverter}
+ */
+public class TestExecutionLog extends TestCase {
+    private File dir;
+    private File logFile;
+
+    public TestExecutionLog(final String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestExecutionLog.class);
+    }
+
+    protected void setUp() throws Exception {
+        dir = File.createTempFile("TestExecutionLog", "");
+        dir.delete();
+        dir.mkdirs();
+        logFile = new File(dir, "1.txt.rdlog");
+    }
+
+    protected void tearDown() throws Exception {
+        final File[] files = dir.listFiles();
+        if (null != files) {
+            for (final File file : files) {
+                file.delete();
+            }
+        }
+        dir.delete();
+    }
+
+    private static ExecutionLogEntry entry(final int i) {
+        return new ExecutionLogEntry(1000L * i, "INFO", "bob", null, "cmd", "node" + (i % 3), "ctx", "message " + i);
+    }
+
+    private ExecutionLogWriter write(final int count, final int interval) throws IOException {
+        final ExecutionLogWriter writer = new ExecutionLogWriter(logFile, interval);
+        for (int i = 0; i < count; i++) {
+            writer.write(entry(i));
+        }
+        writer.flush();
+        return writer;
+    }
+
+    public void testFileNames() throws Exception {
+        final File text = new File(dir, "1.txt");
+        assertEquals(logFile, ExecutionLogWriter.logFileFor(text));
+        assertEquals(new File(dir, "1.txt.rdlog.idx"), ExecutionLogWriter.indexFileFor(logFile));
+        assertFalse(ExecutionLogReader.isAvailable(logFile));
+        write(0, 4).close();
+        assertTrue(ExecutionLogReader.isAvailable(logFile));
+    }
+
+    public void testReadAll() throws Exception {
+        final ExecutionLogWriter writer = write(100, 16);
+        final ExecutionLogReader reader = new ExecutionLogReader(logFile);
+        try {
+            ExecutionLogReader.Chunk chunk = reader.read(0, 0, 0, null);
+            assertEquals(100, chunk.getEntries().size());
+            assertFalse(chunk.isCompleted());
+            final ExecutionLogEntry entry = chunk.getEntries().get(42);
+            assertEquals(42000L, entry.getTime());
+            assertEquals("INFO", entry.getLevel());
+            assertEquals("bob", entry.getUser());
+            assertNull(entry.getModule());
+            assertEquals("cmd", entry.getCommand());
+            assertEquals("node0", entry.getNode());
+            assertEquals("ctx", entry.getContext());
+            assertEquals("message 42", entry.getMessage());
+
+            //nothing new until more is written
+            final long offset = chunk.getOffset();
+            chunk = reader.read(offset, 0, 0, null);
+            assertEquals(0, chunk.getEntries().size());
+            assertEquals(offset, chunk.getOffset());
+
+            writer.write(entry(100));
+            writer.close();
+            chunk = reader.read(offset, 0, 0, null);
+            assertEquals(1, chunk.getEntries().size());
+            assertEquals("message 100", chunk.getEntries().get(0).getMessage());
+            assertTrue(chunk.isCompleted());
+            assertEquals(logFile.length(), chunk.getOffset());
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testResume() throws Exception {
+        write(50, 8).close();
+        final ExecutionLogReader reader = new ExecutionLogReader(logFile);
+        try {
+            long offset = 0;
+            int count = 0;
+            boolean completed = false;
+            while (!completed) {
+                final ExecutionLogReader.Chunk chunk = reader.read(offset, 7, 0, null);
+                for (final ExecutionLogEntry entry : chunk.getEntries()) {
+                    assertEquals("message " + count++, entry.getMessage());
+                }
+                offset = chunk.getOffset();
+                completed = chunk.isCompleted();
+            }
+            assertEquals(50, count);
+
+            //limited by size, at least one entry is read
+            final ExecutionLogReader.Chunk chunk = reader.read(0, 0, 1, null);
+            assertEquals(1, chunk.getEntries().size());
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testTail() throws Exception {
+        final ExecutionLogWriter writer = write(1000, 16);
+        final ExecutionLogReader reader = new ExecutionLogReader(logFile);
+        try {
+            assertEquals(1000, reader.count());
+            ExecutionLogReader.Chunk chunk = reader.tail(10, null);
+            assertEquals(10, chunk.getEntries().size());
+            assertEquals("message 990", chunk.getEntries().get(0).getMessage());
+            assertEquals("message 999", chunk.getEntries().get(9).getMessage());
+            assertFalse(chunk.isCompleted());
+
+            assertEquals("message 500", reader.read(reader.seek(500), 1, 0, null).getEntries().get(0)
+                .getMessage());
+            assertEquals(chunk.getOffset(), reader.seek(1000));
+            assertEquals(chunk.getOffset(), reader.seek(2000));
+
+            writer.close();
+            assertEquals(1000, reader.count());
+            chunk = reader.tail(2000, null);
+            assertEquals(1000, chunk.getEntries().size());
+            assertTrue(chunk.isCompleted());
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testNodeFilter() throws Exception {
+        write(100, 16).close();
+        final ExecutionLogReader reader = new ExecutionLogReader(logFile);
+        try {
+            final List<ExecutionLogEntry> entries = reader.read(0, 0, 0, "node1").getEntries();
+            assertEquals(33, entries.size());
+            for (final ExecutionLogEntry entry : entries) {
+                assertEquals("node1", entry.getNode());
+            }
+            final ExecutionLogReader.Chunk chunk = reader.tail(3, "node2");
+            assertEquals(3, chunk.getEntries().size());
+            assertEquals("message 92", chunk.getEntries().get(0).getMessage());
+            assertEquals("message 98", chunk.getEntries().get(2).getMessage());
+            assertEquals(0, reader.tail(3, "missing").getEntries().size());
+        } finally {
+            reader.close();
+        }
+    }
+
+    public void testIncompleteRecord() throws Exception {
+        final ExecutionLogWriter writer = write(20, 4);
+        final long length = logFile.length();
+        //simulate a partially written record and index slot
+        final FileOutputStream out = new FileOutputStream(logFile, true);
+        out.write(new byte[]{0, 0, 0, 100, 0, 0});
+        out.close();
+        final FileOutputStream idx = new FileOutputStream(ExecutionLogWriter.indexFileFor(logFile), true);
+        idx.write(new byte[]{0, 0, 0, 0, 0, 0, 0x7f, 0});
+        idx.close();
+
+        final ExecutionLogReader reader = new ExecutionLogReader(logFile);
+        try {
+            final ExecutionLogReader.Chunk chunk = reader.read(0, 0, 0, null);
+            assertEquals(20, chunk.getEntries().size());
+            assertEquals(length, chunk.getOffset());
+            assertEquals(20, reader.count());
+            assertEquals("message 19", reader.tail(1, null).getEntries().get(0).getMessage());
+            assertEquals("message 19", reader.tail(1, "node1").getEntries().get(0).getMessage());
+        } finally {
+            reader.close();
+            writer.close();
+        }
+    }
+
+    public void testConvert() throws Exception {
+        final File text = new File(dir, "1.txt");
+        final String lSep = System.getProperty("line.separator");
+        final FileWriter writer = new FileWriter(text);
+        try {
+            writer.write("^^^01:02:03|INFO|bob|mod|cmd|node1|ctx|single | line^^^" + lSep);
+            writer.write("^^^01:02:04|SEVERE|Command failed." + lSep);
+            writer.write("second line" + lSep);
+            writer.write("third line^^^" + lSep);
+            writer.write("^^^01:02:05|WARNING|bob|||node2||^^^" + lSep);
+            writer.write("^^^END^^^" + lSep);
+        } finally {
+            writer.close();
+        }
+        assertEquals(3, ExecutionLogConverter.convert(text, logFile));
+
+        final ExecutionLogReader reader = new ExecutionLogReader(logFile);
+        try {
+            final ExecutionLogReader.Chunk chunk = reader.read(0, 0, 0, null);
+            assertTrue(chunk.isCompleted());
+            final List<ExecutionLogEntry> entries = chunk.getEntries();
+            assertEquals(3, entries.size());
+
+            final SimpleDateFormat format = new SimpleDateFormat(ExecutionLogConverter.TIME_FORMAT, Locale.US);
+            assertEquals("01:02:03", format.format(new Date(entries.get(0).getTime())));
+            assertEquals("bob", entries.get(0).getUser());
+            assertEquals("mod", entries.get(0).getModule());
+            assertEquals("node1", entries.get(0).getNode());
+            assertEquals("ctx", entries.get(0).getContext());
+            assertEquals("single | line", entries.get(0).getMessage());
+
+            assertEquals("SEVERE", entries.get(1).getLevel());
+            assertNull(entries.get(1).getNode());
+            assertEquals("Command failed." + lSep + "second line" + lSep + "third line",
+                entries.get(1).getMessage());
+
+            assertEquals("node2", entries.get(2).getNode());
+            assertEquals("", entries.get(2).getMessage());
+        } finally {
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* TestRingBufferOutputStream.java
+*
+*/
+package com.dtolabs.rundeck.core.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * TestRingBufferOutputStream is ...
+ */
+public class TestRingBufferOutputStream extends TestCase {
+    public TestRingBufferOutputStream(final String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestRingBufferOutputStream.class);
+    }
+
+    public void testUnderCapacity() throws Exception {
+        final RingBufferOutputStream out = new RingBufferOutputStream(10);
+        out.write("abc".getBytes());
+        out.write('d');
+        assertEquals("abcd", out.toString());
+        assertEquals(4, out.getTotalCount());
+        assertFalse(out.isTruncated());
+    }
+
+    public void testExactCapacity() throws Exception {
+        final RingBufferOutputStream out = new RingBufferOutputStream(4);
+        out.write("abcd".getBytes());
+        assertEquals("abcd", out.toString());
+        assertFalse(out.isTruncated());
+        out.write('e');
+        assertEquals("bcde", out.toString());
+        assertTrue(out.isTruncated());
+    }
+
+    public void testWrapsAround() throws Exception {
+        final RingBufferOutputStream out = new RingBufferOutputStream(5);
+        out.write("abc".getBytes());
+        out.write("defg".getBytes());
+        assertEquals("cdefg", out.toString());
+        out.write("hi".getBytes(), 0, 1);
+        assertEquals("defgh", out.toString());
+        assertEquals(8, out.getTotalCount());
+    }
+
+    public void testWriteLargerThanCapacity() throws Exception {
+        final RingBufferOutputStream out = new RingBufferOutputStream(3);
+        out.write('x');
+        out.write("0123456789".getBytes(), 2, 6);
+        assertEquals("567", out.toString());
+        assertEquals(7, out.getTotalCount());
+        out.write("ab".getBytes());
+        assertEquals("7ab", out.toString());
+    }
+
+    public void testSingleBytes() throws Exception {
+        final RingBufferOutputStream out = new RingBufferOutputStream(3);
+        for (final byte b : "abcdefgh".getBytes()) {
+            out.write(b);
+        }
+        assertEquals("fgh", out.toString());
+    }
+
+    public void testInvalidCapacity() throws Exception {
+        try {
+            new RingBufferOutputStream(0);
+            fail("expected exception");
+        } catch (IllegalArgumentException e) {
+            assertNotNull(e.getMessage());
+        }
+    }
+}
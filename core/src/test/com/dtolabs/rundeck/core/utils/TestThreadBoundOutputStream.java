@@ -0,0 +1,138 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* TestThreadBoundOutputStream.java
+*
+*/
+package com.dtolabs.rundeck.core.utils;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * TestThreadBoundOutputStream is ...
+ */
+public class TestThreadBoundOutputStream extends TestCase {
+    public TestThreadBoundOutputStream(final String name) {
+        super(name);
+    }
+
+    public static Test suite() {
+        return new TestSuite(TestThreadBoundOutputStream.class);
+    }
+
+    /**
+     * Records the number of write and flush calls
+     */
+    static class CountingStream extends ByteArrayOutputStream {
+        int writes;
+        int flushes;
+
+        public synchronized void write(final int b) {
+            writes++;
+            super.write(b);
+        }
+
+        public synchronized void write(final byte[] b, final int off, final int len) {
+            writes++;
+            super.write(b, off, len);
+        }
+
+        public void flush() throws IOException {
+            flushes++;
+        }
+    }
+
+    public void testWriteDefaultSink() throws Exception {
+        final CountingStream sink = new CountingStream();
+        final ThreadBoundOutputStream stream = new ThreadBoundOutputStream(sink);
+        stream.write("test data".getBytes());
+        stream.write('\n');
+        stream.flush();
+        assertEquals("test data\n", sink.toString());
+        assertEquals(2, sink.writes);
+        assertEquals(1, sink.flushes);
+    }
+
+    public void testBulkWriteThreadStream() throws Exception {
+        final CountingStream sink = new CountingStream();
+        final CountingStream threadSink = new CountingStream();
+        final ThreadBoundOutputStream stream = new ThreadBoundOutputStream(sink);
+        stream.installThreadStream(threadSink);
+
+        final byte[] bytes = "abcdefghij".getBytes();
+        stream.write(bytes, 2, 5);
+        stream.flush();
+        assertEquals("cdefg", threadSink.toString());
+        assertEquals("buffer should be written in one call", 1, threadSink.writes);
+        assertEquals(1, threadSink.flushes);
+        assertEquals(0, sink.size());
+        assertEquals(0, sink.flushes);
+
+        assertSame(threadSink, stream.removeThreadStream());
+        stream.write(bytes);
+        assertEquals("abcdefghij", sink.toString());
+    }
+
+    public void testChildThreadInheritsStream() throws Exception {
+        final CountingStream sink = new CountingStream();
+        final CountingStream threadSink = new CountingStream();
+        final ThreadBoundOutputStream stream = new ThreadBoundOutputStream(sink);
+        final Thread thread = new Thread() {
+            public void run() {
+                stream.installThreadStream(threadSink);
+                final Thread child = new Thread() {
+                    public void run() {
+                        try {
+                            stream.write("child".getBytes());
+                        } catch (IOException e) {
+                            e.printStackTrace();
+                        }
+                    }
+                };
+                child.start();
+                try {
+                    child.join();
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+        stream.write("main".getBytes());
+        assertEquals("child", threadSink.toString());
+        assertEquals("main", sink.toString());
+    }
+
+    public void testPrintStream() throws Exception {
+        final CountingStream sink = new CountingStream();
+        final CountingStream threadSink = new CountingStream();
+        final ThreadBoundOutputStream stream = new ThreadBoundOutputStream(sink);
+        final ThreadBoundPrintStream print = new ThreadBoundPrintStream(stream);
+        stream.installThreadStream(threadSink);
+        print.print("a line of output");
+        print.flush();
+        assertEquals("a line of output", threadSink.toString());
+        assertEquals(1, threadSink.writes);
+        stream.removeThreadStream();
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* ThreadBoundOutputStreamBenchmark.java
+*
+*/
+package com.dtolabs.rundeck.core.utils;
+
+import java.io.*;
+
+/**
+ * Compares write throughput of a {@link ThreadBoundPrintStream} with a thread bound FileOutputStream per writer thread
+ * against writing to a FileOutputStream directly, for 1, 16 and 256 concurrent writer threads.
+ * <p/>
+ * Run with: java -cp build/classes/main:build/classes/test com.dtolabs.rundeck.core.utils.ThreadBoundOutputStreamBenchmark
+ * [linesPerThread]
+ */
+public class ThreadBoundOutputStreamBenchmark {
+    private static final int[] THREADS = {1, 16, 256};
+    private static final String LINE =
+        "[user@node1 dispatch][INFO] build output line from a remote node, with some typical log content";
+
+    interface StreamFactory {
+        /**
+         * Return the stream to write to in the current thread, given its file sink
+         */
+        PrintStream create(OutputStream fileout);
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final int lines = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        final File dir = File.createTempFile("tbos-bench", "");
+        dir.delete();
+        dir.mkdirs();
+
+        final ThreadBoundOutputStream bound = new ThreadBoundOutputStream(new ByteArrayOutputStream());
+        final ThreadBoundPrintStream boundPrint = new ThreadBoundPrintStream(bound);
+        final StreamFactory boundFactory = new StreamFactory() {
+            public PrintStream create(final OutputStream fileout) {
+                bound.installThreadStream(fileout);
+                return boundPrint;
+            }
+        };
+        final StreamFactory rawFactory = new StreamFactory() {
+            public PrintStream create(final OutputStream fileout) {
+                return new PrintStream(fileout);
+            }
+        };
+
+        //warm up
+        run(dir, 4, lines, boundFactory);
+        run(dir, 4, lines, rawFactory);
+
+        System.out.println("threads\tlines/thread\tbound MB/s\traw MB/s");
+        for (final int threads : THREADS) {
+            final double boundRate = run(dir, threads, lines, boundFactory);
+            final double rawRate = run(dir, threads, lines, rawFactory);
+            System.out.println(threads + "\t" + lines + "\t" + format(boundRate) + "\t" + format(rawRate));
+        }
+        FileUtils.deleteDir(dir);
+    }
+
+    private static String format(final double rate) {
+        return Double.toString(Math.round(rate * 100) / 100.0);
+    }
+
+    /**
+     * Write lines from the number of threads, and return the throughput in MB/s
+     */
+    private static double run(final File dir, final int threads, final int lines, final StreamFactory factory) throws
+        Exception {
+        final Thread[] workers = new Thread[threads];
+        final long[] written = new long[threads];
+        for (int i = 0; i < threads; i++) {
+            final int index = i;
+            final File file = new File(dir, "out-" + i + ".log");
+            workers[i] = new Thread() {
+                public void run() {
+                    try {
+                        final FileOutputStream fileout = new FileOutputStream(file);
+                        try {
+                            final PrintStream out = factory.create(fileout);
+                            for (int j = 0; j < lines; j++) {
+                                out.println(LINE);
+                            }
+                            out.flush();
+                            written[index] = file.length();
+                        } finally {
+                            fileout.close();
+                        }
+                    } catch (IOException e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+        }
+        final long start = System.nanoTime();
+        for (final Thread worker : workers) {
+            worker.start();
+        }
+        for (final Thread worker : workers) {
+            worker.join();
+        }
+        final long nanos = System.nanoTime() - start;
+        long total = 0;
+        for (final long count : written) {
+            total += count;
+        }
+        return (total / (1024.0 * 1024.0)) / (nanos / 1000000000.0);
+    }
+}
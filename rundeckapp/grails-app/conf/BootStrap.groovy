@@ -2,6 +2,7 @@ import java.io.File;
 
 import com.dtolabs.rundeck.core.Constants;
 import com.dtolabs.rundeck.core.utils.ThreadBoundOutputStream
+import com.dtolabs.rundeck.core.utils.ThreadBoundPrintStream
 import org.springframework.web.context.support.WebApplicationContextUtils
 import org.springframework.web.context.WebApplicationContext
 import org.apache.log4j.Logger
@@ -119,6 +120,17 @@ class BootStrap {
              servletContext.setAttribute("execution.follow.buffersize",(50*1024).toString())
              log.info("Execution Output Follow buffer size (default) = "+(50*1024).toString())
          }
+         //test for the key, as a value of 0 disables waiting
+         if(grailsApplication.config.execution.follow.containsKey('wait')){
+             servletContext.setAttribute("execution.follow.wait",grailsApplication.config.execution.follow.wait.toString())
+             log.info("Execution Output Follow wait = "+grailsApplication.config.execution.follow.wait)
+         }else{
+             servletContext.setAttribute("execution.follow.wait","10000")
+             log.info("Execution Output Follow wait (default) = 10000")
+         }
+         def maxWaiters=grailsApplication.config.execution.follow.maxWaiters
+         executionService.configureFollowWaiters(
+             null!=maxWaiters && maxWaiters.toString().isInteger() ? maxWaiters.toString().toInteger() : 50)
          if(grailsApplication.config.output.markdown.enabled){
              servletContext.setAttribute("output.markdown.enabled",grailsApplication.config.output.markdown.enabled=="true"?"true":"false")
          }else{
@@ -134,11 +146,43 @@ class BootStrap {
          }else{
              servletContext.setAttribute("output.download.formatted","true")
          }
+         if(grailsApplication.config.execution.log.indexed){
+             servletContext.setAttribute("execution.log.indexed",grailsApplication.config.execution.log.indexed =="false" ? "false":"true")
+         }else{
+             servletContext.setAttribute("execution.log.indexed","true")
+         }
+         //execution log records are written by a writer thread, 0 writes each record in the logging thread
+         if(grailsApplication.config.execution.log.containsKey('flushSize')){
+             servletContext.setAttribute("execution.log.flushSize",grailsApplication.config.execution.log.flushSize.toString())
+         }else{
+             servletContext.setAttribute("execution.log.flushSize","256")
+         }
+         if(grailsApplication.config.execution.log.containsKey('flushInterval')){
+             servletContext.setAttribute("execution.log.flushInterval",grailsApplication.config.execution.log.flushInterval.toString())
+         }else{
+             servletContext.setAttribute("execution.log.flushInterval","100")
+         }
          if(grailsApplication.config.logging.ant.metadata){
              servletContext.setAttribute("logging.ant.metadata",grailsApplication.config.logging.ant.metadata =="true" ? "true":"false")
          }else{
              servletContext.setAttribute("logging.ant.metadata","true")
          }
+         //configure the limits of running executions, 0 means no limit
+         def limits=['maxRunning','maxRunningPerProject','maxRunningPerJob'].collect{
+             def val=grailsApplication.config.execution.queue[it]
+             val && val.toString().isInteger() ? val.toString().toInteger() : 0
+         }
+         executionService.configureExecutionLimits(limits[0],limits[1],limits[2])
+         //configure the write-behind persistence of execution state
+         def batchSize=grailsApplication.config.execution.persist.batchSize
+         def maxLatency=grailsApplication.config.execution.persist.maxLatency
+         executionService.startPersistenceQueue(
+             batchSize && batchSize.toString().isInteger() ? batchSize.toString().toInteger() : 50,
+             maxLatency && maxLatency.toString().isLong() ? maxLatency.toString().toLong() : 200L)
+         //configure the time after which aborted executions which are still running are stopped
+         def stopAfter=grailsApplication.config.execution.abort.stopAfter
+         executionService.configureAbortStop(
+             null!=stopAfter && stopAfter.toString().isLong() ? stopAfter.toString().toLong() : 100000L)
 
          //configure mapped role definitions
          if(grailsApplication.config.mappedRoles && grailsApplication.config.mappedRoles instanceof Map){
@@ -158,8 +202,8 @@ class BootStrap {
              def ThreadBoundOutputStream newOut = new ThreadBoundOutputStream(oldout)
              def ThreadBoundOutputStream newErr = new ThreadBoundOutputStream(olderr)
 
-             System.setOut(new PrintStream(newOut));
-             System.setErr(new PrintStream(newErr));
+             System.setOut(new ThreadBoundPrintStream(newOut));
+             System.setErr(new ThreadBoundPrintStream(newErr));
 
              def WebApplicationContext appCtx = WebApplicationContextUtils.getRequiredWebApplicationContext(servletContext)
              appCtx.executionService.sysThreadBoundOut=newOut
@@ -182,6 +226,8 @@ class BootStrap {
      }
 
      def destroy = {
+         executionService.stopPersistenceQueue()
+         executionService.stopAbortWatchdog()
      }
 } 
 
@@ -85,7 +85,7 @@ log4j={
     warn 'org.mortbay.log'
     warn 'grails.app.filters.AuthorizationFilters'
     
-//    info 'com.dtolabs.rundeck.core.authorization.providers.SAREAuthorization'
+//    debug 'com.dtolabs.rundeck.core.authorization.providers.SAREAuthorization'
 }
 
 
@@ -1,4 +1,8 @@
 import com.dtolabs.rundeck.core.common.Framework
+import com.dtolabs.rundeck.core.utils.ExecutionLogConverter
+import com.dtolabs.rundeck.core.utils.ExecutionLogEntry
+import com.dtolabs.rundeck.core.utils.ExecutionLogReader
+import com.dtolabs.rundeck.core.utils.ExecutionLogWriter
 import java.text.SimpleDateFormat
 import grails.converters.JSON
 import com.dtolabs.client.utils.Constants
@@ -176,10 +180,17 @@ class ExecutionController {
             isFormatted = "true"==params.formatted
         }
 
-        def Map result = parseOutput(file,0,-1,null){ Map msgbuf ->
+        def writeEntry = { Map msgbuf ->
             response.outputStream << (isFormatted?"${msgbuf.time} [${msgbuf.user}@${msgbuf.node} ${msgbuf.context} ${msgbuf.command}][${msgbuf.level}] ${msgbuf.mesg}" : msgbuf.mesg)
             true
         }
+        def logfile = ExecutionLogWriter.logFileFor(file)
+        def Map result
+        if(ExecutionLogReader.isAvailable(logfile)){
+            result = readIndexedOutput(logfile,0,-1,0,null,writeEntry)
+        }else{
+            result = parseOutput(file,0,-1,null,writeEntry)
+        }
 
         storeoffset=result.storeoffset
         completed = result.completed
@@ -188,7 +199,9 @@ class ExecutionController {
      * tailExecutionOutput action, used by execution/show.gsp view to display output inline
      */
     def tailExecutionOutput = {
-        Execution e = Execution.get(Long.parseLong(params.id))
+        //use the live state of a running execution instead of loading it
+        def live = executionService.getLiveExecution(Long.parseLong(params.id))
+        def e = live ?: Execution.get(Long.parseLong(params.id))
         if(!e){
              render(contentType:"text/json"){
                 error("Execution with id "+params.id+" not found")
@@ -200,6 +213,34 @@ class ExecutionController {
             }
             return;
         }
+        //long poll: if the client has read all output up to the given sequence, wait for more output, unless too
+        //many requests are already waiting
+        def notifier = live?.outputNotifier
+        def String waitstr = servletContext.getAttribute("execution.follow.wait")
+        def long waittime = waitstr ? waitstr.toLong() : 0
+        if(notifier && waittime > 0 && null != params.long('sequence') && params.offset && !e.dateCompleted){
+            def long since = params.long('sequence')
+            if(executionService.awaitOutput(notifier, since, waittime) == since && !e.dateCompleted){
+                //no output was written, so respond without reading the log
+                render(contentType:"text/json"){
+                    delegate.message("Unmodified")
+                    delegate.id(params.id.toString())
+                    delegate.dataoffset(params.offset.toString())
+                    delegate.iscompleted(false)
+                    delegate.jobcompleted(false)
+                    delegate.failednodes(e.failedNodeList?true:false)
+                    delegate.jobstatus(e.status)
+                    delegate.jobcancelled(e.cancelled)
+                    delegate.duration(System.currentTimeMillis() - e.dateStarted.getTime())
+                    delegate.sequence(since)
+                    delegate.entries(){
+                    }
+                }
+                return
+            }
+        }
+        //output written after this sequence may not be included in the response
+        def long readSequence = notifier ? notifier.getSequence() : -1
         def long start = System.currentTimeMillis()
 
         def jobcomplete = e.dateCompleted!=null
@@ -263,6 +304,9 @@ class ExecutionController {
                 delegate.jobstatus(jobstat)
                 delegate.jobcancelled(jobcanc)
                 delegate.duration(execDuration)
+                if(notifier){
+                    delegate.sequence(readSequence)
+                }
                 delegate.entries(){
                 }
             }
@@ -291,11 +335,17 @@ class ExecutionController {
         def storeoffset=offset
         def entry=[]
         def completed=false
-        def totsize=file.length()
+        def logfile = ExecutionLogWriter.logFileFor(file)
+        def indexed = ExecutionLogReader.isAvailable(logfile)
+        def totsize=indexed?logfile.length():file.length()
         def isfollowoption=false
         def lastlines=0
         def max=0
-        if(params.lastlines){
+        if(params.lastlines && indexed){
+            //the indexed log finds the last X entries directly
+            isfollowoption=true
+            lastlines=Integer.parseInt(params.lastlines)
+        }else if(params.lastlines){
             //load only the last X lines of the file, by going to the end and searching backwards for the
             //line-end textual format X times, then reset the offset to that point.
             //we actually search for X+1 line-ends to find the one prior to the Xth line back
@@ -323,9 +373,18 @@ class ExecutionController {
         if(bufsize<(25*1024)){
             bufsize=25*1024
         }
-        def Map result = parseOutput(file,offset,bufsize,null){ data ->
-            entry << data
-            (0==max || entry.size()<max)
+        def Map result
+        if(indexed){
+            result = readIndexedOutput(logfile,offset,bufsize,lastlines,params.node){ data ->
+                entry << data
+            }
+        }else{
+            result = parseOutput(file,offset,bufsize,null){ data ->
+                if(!params.node || params.node==data.node){
+                    entry << data
+                }
+                (0==max || entry.size()<max)
+            }
         }
         storeoffset=result.storeoffset
         completed = result.completed || (jobcomplete && storeoffset==totsize)
@@ -356,6 +415,10 @@ class ExecutionController {
             delegate.duration(execDuration)
             delegate.percentLoaded(percent)
             delegate.totalsize(totsize)
+            if(notifier && storeoffset==totsize){
+                //the client has read all output, and can wait for more
+                delegate.sequence(readSequence)
+            }
             delegate.entries(){
                 entry.each{
                     if(it.mesghtml){
@@ -538,6 +601,54 @@ class ExecutionController {
         return [storeoffset:storeoffset, completed:completed]
     }
 
+    /**
+     * Number of entries read at a time from an indexed log when reading to the end
+     */
+    public static final int INDEXED_READ_ENTRIES=1000
+    /**
+     * readIndexedOutput reads entries from an indexed execution log, starting at the given offset, or the last entries
+     * of the log. Calls the callback closure with a map of data for each entry, in the same form as parseOutput.
+     * @param logfile the indexed log file
+     * @param offset offset to start from
+     * @param bufsize maximum amount of data to read if greater than 0, otherwise read until the end of the log
+     * @param lastlines if greater than 0, read this many entries from the end of the log instead of from the offset
+     * @param node if set, only read entries for this node
+     * @param callback a closure that has 1 parameter, the map of data read
+     * @return Map containing two keys, 'storeoffset': next offset to start at, and 'completed': boolean value if the log file has been completely read
+     */
+    public Map readIndexedOutput(File logfile, Long offset, Long bufsize, int lastlines, String node, Closure callback){
+        def String lSep = System.getProperty("line.separator");
+        def SimpleDateFormat fmt = new SimpleDateFormat(ExecutionLogConverter.TIME_FORMAT)
+        def ExecutionLogReader reader = new ExecutionLogReader(logfile)
+        def long storeoffset=offset
+        def boolean completed=false
+        try{
+            def boolean done=false
+            while(!done){
+                def ExecutionLogReader.Chunk chunk
+                if(lastlines>0){
+                    chunk = reader.tail(lastlines,node)
+                    done=true
+                }else if(bufsize>0){
+                    chunk = reader.read(storeoffset,0,bufsize,node)
+                    done=true
+                }else{
+                    chunk = reader.read(storeoffset,INDEXED_READ_ENTRIES,0,node)
+                    done = chunk.completed || chunk.offset==storeoffset
+                }
+                chunk.entries.each{ExecutionLogEntry it->
+                    callback([time:fmt.format(new Date(it.time)), level:it.level, mesg:it.message+lSep, user:it.user,
+                        module:it.module, command:it.command, node:it.node, context:it.context])
+                }
+                storeoffset=chunk.offset
+                completed=chunk.completed
+            }
+        }finally{
+            reader.close()
+        }
+        return [storeoffset:storeoffset, completed:completed]
+    }
+
 
 
     /**
@@ -548,20 +659,22 @@ class ExecutionController {
     public static String EXECUTION_SUCCEEDED = "succeeded"
     public static String EXECUTION_FAILED = "failed"
     public static String EXECUTION_ABORTED = "aborted"
+    public static String EXECUTION_QUEUED = "queued"
     public static String getExecutionState(Execution e){
         return null==e.dateCompleted?EXECUTION_RUNNING:"true"==e.status?EXECUTION_SUCCEEDED:e.cancelled?EXECUTION_ABORTED:EXECUTION_FAILED
     }
     /**
-     * Render execution list xml given a List of executions, and a builder delegate
+     * Render execution list xml given a List of executions, and a builder delegate, and optional collection of
+     * queued execution IDs
      */
-    public def renderApiExecutions= { execlist, delegate ->
+    public def renderApiExecutions= { execlist, delegate, queued=null ->
         delegate.'executions'(count: execlist.size()) {
             execlist.each {Execution e ->
                 execution(
                     /** attributes   **/
                     id: e.id,
                     href: g.createLink(controller: 'execution', action: 'follow', id: e.id, absolute: true),
-                    status: getExecutionState(e)
+                    status: queued?.contains(e.id) ? EXECUTION_QUEUED : getExecutionState(e)
                 ) {
                     /** elements   */
                     user(e.user)
@@ -589,8 +702,8 @@ class ExecutionController {
     /**
      * Utility, render xml response for a list of executions
      */
-    public def renderApiExecutionListResultXML={execlist ->
-        return new ApiController().success(renderApiExecutions.curry(execlist))
+    public def renderApiExecutionListResultXML={execlist, queued=null ->
+        return new ApiController().success{ delegate -> renderApiExecutions(execlist, delegate, queued) }
     }
     /**
      * API: /api/execution/{id} , version 1
@@ -6,6 +6,7 @@ import grails.converters.JSON
 import groovy.xml.MarkupBuilder
 import com.dtolabs.client.utils.Constants
 import com.dtolabs.rundeck.core.authorization.Decision
+import com.dtolabs.rundeck.core.authorization.DecisionMatrix
 
 class MenuController {
     FrameworkService frameworkService
@@ -58,7 +59,7 @@ class MenuController {
                     model.nowrunning.each{ Execution job ->
                         delegate.'item'{
                             id(job.id.toString())
-                            name(job.toString())
+                            name(model.queued?.contains(job.id) ? job.toString() + " (queued)" : job.toString())
                             url(g.createLink(controller:'execution',action:'follow',id:job.id))
                         }
                     }
@@ -220,28 +221,25 @@ class MenuController {
         long running=System.currentTimeMillis()
         
         //find currently running executions
-        def runlist = Execution.findAllByDateCompletedIsNullAndScheduledExecutionIsNotNull()
-        def nowrunning=[:]
-        runlist.each{
-            nowrunning[it.scheduledExecution.id.toString()]=it.id.toString()
-        }
+        def nowrunning=executionService.getRunningJobExecutions()
         log.debug("listWorkflows(running): "+(System.currentTimeMillis()-running));
         long preeval=System.currentTimeMillis()
 
         //collect all jobs and authorize the user for the set of available Job actions
         def jobnames=[:]
-        Set res = new HashSet()
+        def List res = []
         schedlist.each{ ScheduledExecution sched->
             if(!jobnames[sched.generateFullName()]){
                 jobnames[sched.generateFullName()]=[]
+                res.add(["job": sched.jobName, "group": sched.groupPath?:''])
             }
             jobnames[sched.generateFullName()]<<sched.id.toString()
-            res.add(["job": sched.jobName, "group": sched.groupPath?:''])
         }
         // Filter the groups by what the user is authorized to see.
 
         def authorization = frameworkService.getFrameworkFromUserSession(request.session, request).getAuthorizationMgr()
-        def decisions = authorization.evaluate(res, request.subject, new HashSet([UserAuth.WF_CREATE,UserAuth.WF_READ,UserAuth.WF_DELETE,UserAuth.WF_RUN,UserAuth.WF_UPDATE,UserAuth.WF_KILL]), Collections.emptySet())
+        def List actions = [UserAuth.WF_CREATE,UserAuth.WF_READ,UserAuth.WF_DELETE,UserAuth.WF_RUN,UserAuth.WF_UPDATE,UserAuth.WF_KILL]
+        def DecisionMatrix decisions = authorization.evaluateMatrix(res, request.subject, actions, Collections.emptySet())
 //        def decisions = authorization.evaluate(res, request.subject, new HashSet([UserAuth.WF_READ]), Collections.emptySet())
         log.debug("listWorkflows(evaluate): "+(System.currentTimeMillis()-preeval));
 
@@ -251,10 +249,13 @@ class MenuController {
         def Map jobauthorizations=[:]
 
         //produce map: [actionName:[id1,id2,...],actionName2:[...]] for all allowed actions for jobs
-        decisions.findAll { it.authorized}.groupBy { it.action }.each{k,v->
-            jobauthorizations[k] = new HashSet(v.collect {
-                jobnames[ScheduledExecution.generateFullName(it.resource.group,it.resource.job)]
-            }.flatten())
+        actions.each{k->
+            def List v = decisions.getAuthorizedResources(k)
+            if(v){
+                jobauthorizations[k] = new HashSet(v.collect {
+                    jobnames[ScheduledExecution.generateFullName(it.group,it.job)]
+                }.flatten())
+            }
         }
 
         def authorizemap=[:]
@@ -470,9 +471,16 @@ class MenuController {
             return chain(controller:'api',action:'error')
         }
 
+        //the result only changes when the running executions change
+        def etag = '"' + executionService.getRunningVersion() + '"'
+        response.setHeader("ETag", etag)
+        if(etag == request.getHeader("If-None-Match")){
+            response.setStatus(304)
+            return render(text:'')
+        }
         QueueQuery query = new QueueQuery(runningFilter:'running',projFilter:params.project)
         def results = nowrunning(query)
-        return new ExecutionController().renderApiExecutionListResultXML(results.nowrunning)
+        return new ExecutionController().renderApiExecutionListResultXML(results.nowrunning, results.queued)
     }
 }
 
@@ -75,7 +75,7 @@ class ReportsController {
         }else if (model.lastDate<1 && query.doendafterFilter  && (!query.doendbeforeFilter || curdate.time<query.endbeforeFilter.time)){
             model.lastDate=curdate.time
         }
-        if(query?.offset && query?.offset >0){
+        if(query?.offset && query?.offset >0 || query?.beforeTime){
             model.remove('lastDate')
         }
 //        System.err.println("lastDatex: "+model.lastDate);
@@ -545,6 +545,7 @@ class ScheduledExecutionController  {
                 scheduledExecution.removeFromExecutions(exec)
                 exec.scheduledExecution=null
             }
+            executionService.invalidateExecutionItemForJob(scheduledExecution.id)
             scheduledExecution.delete(flush:true)
             scheduledExecutionService.deleteJob(jobname,groupname)
             logJobChange(changeinfo, jobdata)
@@ -587,6 +588,7 @@ class ScheduledExecutionController  {
             def groupname = scheduledExecution.generateJobGroupName()
             def jobtitle=scheduledExecution.jobName
             if(params.deleteAffirm){
+                executionService.invalidateExecutionItemForJob(scheduledExecution.id)
                 scheduledExecution.delete()
                 scheduledExecutionService.deleteJob(jobname,groupname)
             }
@@ -993,6 +995,7 @@ class ScheduledExecutionController  {
             }
         }
         if(!failed && scheduledExecution.save(true)) {
+            executionService.invalidateExecutionItemForJob(scheduledExecution.id)
 
             if(scheduledExecution.scheduled){
                 def nextdate=null
@@ -1213,6 +1216,7 @@ class ScheduledExecutionController  {
             }
         }
         if(!failed && scheduledExecution.save(true)) {
+            executionService.invalidateExecutionItemForJob(scheduledExecution.id)
 
             if(scheduledExecution.scheduled){
                 def nextdate=null
@@ -2858,6 +2862,7 @@ class ScheduledExecutionController  {
             scheduledExecution.removeFromExecutions(exec)
             exec.scheduledExecution=null
         }
+        executionService.invalidateExecutionItemForJob(scheduledExecution.id)
         scheduledExecution.delete(flush:true)
         scheduledExecutionService.deleteJob(jobname,groupname)
         logJobChange(changeinfo,jobdata)
@@ -25,4 +25,9 @@ class BaseReport {
         status(nullable:false,inList:['succeed','fail','cancel'])
         actionType(nullable:false,inList:['create','update','delete','succeed','fail','cancel'])
     }
+
+    static mapping = {
+        ctxProject index:'REPORT_PROJECT_COMPLETED_IDX'
+        dateCompleted index:'REPORT_PROJECT_COMPLETED_IDX'
+    }
 }
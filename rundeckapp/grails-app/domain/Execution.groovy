@@ -48,6 +48,12 @@ class Execution extends ExecutionContext {
         abortedby(nullable:true, blank:true)
     }
 
+    static mapping = {
+        scheduledExecution index:'EXEC_JOB_STARTED_IDX'
+        dateStarted index:'EXEC_PROJECT_STARTED_IDX,EXEC_JOB_STARTED_IDX'
+        dateCompleted index:'EXEC_DATE_COMPLETED_IDX,EXEC_PROJECT_COMPLETED_IDX'
+    }
+
 
 
     public String toString() {
@@ -16,5 +16,10 @@ abstract class ExecutionContext extends BaseNodeFilters{
     String adhocLocalString
     String adhocFilepath
     Boolean adhocExecution=false
+
+    static mapping = {
+        //composite indexes with Execution.dateStarted and Execution.dateCompleted
+        project index:'EXEC_PROJECT_STARTED_IDX,EXEC_PROJECT_COMPLETED_IDX'
+    }
 }
 
@@ -7,6 +7,7 @@ import org.apache.log4j.Logger
 import com.dtolabs.rundeck.core.common.Framework
 import org.quartz.InterruptableJob
 import com.dtolabs.rundeck.core.execution.ExecutionServiceThread
+import com.dtolabs.rundeck.core.execution.ServiceThreadBase
 import com.dtolabs.rundeck.core.NodesetFailureException
 import org.apache.tools.ant.BuildException
 import com.dtolabs.rundeck.core.execution.workflow.NodeRecorder
@@ -24,15 +25,20 @@ class ExecutionJob implements InterruptableJob {
 //    def String adbase
 //    def Framework framework
 //    def isTemp
-    def boolean _interrupted
+    volatile boolean _interrupted
+    volatile ServiceThreadBase _thread
+    volatile ExecutionService _executionService
 //    def boolean success
 
     static triggers = {
         /** define no triggers here */
     }
     // Implements the Job interface, execute
+    /**
+     * Submits the execution to the admission queue and returns without waiting for it to finish.  The execution
+     * state is saved by the completion listener of the execution thread, or if the execution could not be started.
+     */
     void execute(JobExecutionContext context) {
-        def boolean success=false
         def Map initMap
         try{
             initMap= initialize(context)
@@ -40,21 +46,88 @@ class ExecutionJob implements InterruptableJob {
             log.error("Unable to start Job execution: ${t.message?t.message:'no message'}",t)
             return
         }
-        def result
         try {
             if(!_interrupted){
-                result=executeCommand(initMap.executionService,initMap.execution,initMap.framework,initMap.scheduledExecution)
-                success=result.success
+                //executions requested by a user are started from the queue before scheduled executions
+                def priority = initMap.executionId ? 1 : 0
+                initMap.executionService.admitExecution(initMap.execution, initMap.scheduledExecution, priority){ boolean queued->
+                    startExecution(initMap, queued)
+                }
+                return
+            }
+        }catch(Throwable t){
+            log.error("Failed executing Job: ${t.message?t.message:'no message'}",t)
+        }
+        try{
+            saveState(initMap.executionService, initMap.execution ? initMap.execution : (Execution) null, false,
+                _interrupted, initMap.isTemp, initMap.scheduledExecutionId ? initMap.scheduledExecutionId : -1L)
+        }catch(Throwable t){
+            log.error("Unable to save Job execution state: ${t.message?t.message:'no message'}",t)
+        }
+    }
+
+    /**
+     * Called when the execution is admitted, starts the execution or saves its state if it could not be started
+     * @param queued true if the execution was queued, and is being started by another thread
+     */
+    def startExecution(Map initMap, boolean queued) {
+        def Long executionId=initMap.execution.id
+        def execmap
+        try {
+            if(queued){
+                initMap.execution = Execution.get(executionId)
+                if(initMap.scheduledExecutionId){
+                    initMap.scheduledExecution = ScheduledExecution.get(initMap.scheduledExecutionId)
+                }
             }
+            if(!_interrupted && initMap.execution && null==initMap.execution.dateCompleted){
+                if(queued){
+                    //time spent in the queue is not part of the execution duration
+                    initMap.execution.dateStarted = new Date()
+                }
+                execmap=executeCommand(initMap)
+            }
+        }catch(Throwable t){
+            log.error("Failed executing Job: ${t.message?t.message:'no message'}",t)
+        }
+        if(execmap){
+            return
+        }
+        initMap.executionService.releaseExecution(executionId)
+        if(!initMap.execution || null!=initMap.execution.dateCompleted){
+            //deleted or aborted while queued
+            initMap.executionService.removeLiveExecution(executionId)
+            return
+        }
+        try{
+            saveState(initMap.executionService, initMap.execution, false, _interrupted, initMap.isTemp,
+                initMap.scheduledExecutionId ? initMap.scheduledExecutionId : -1L)
         }catch(Throwable t){
+            log.error("Unable to save Job execution state: ${t.message?t.message:'no message'}",t)
+        }
+    }
+
+    /**
+     * Called by the execution thread when the execution has finished, finishes the execution and saves its state
+     */
+    def finishExecution(Map initMap, Map execmap) {
+        def boolean success=false
+        try {
+            success = initMap.executionService.executeAsyncFinish(execmap)
+            log.info("ExecutionJob: execution successful? " + success +", interrupted? "+execmap.thread.isAborted())
+        } catch (Throwable t) {
             log.error("Failed executing Job: ${t.message?t.message:'no message'}",t)
         }
         try{
-            saveState(initMap.executionService, initMap.execution ? initMap.execution : (Execution) null, success,
-                _interrupted, initMap.isTemp, initMap.scheduledExecutionId ? initMap.scheduledExecutionId : -1L,result?.execmap)
+            Execution.withNewSession{
+                saveState(initMap.executionService, initMap.execution, success,
+                    _interrupted || execmap.thread.isAborted(), initMap.isTemp,
+                    initMap.scheduledExecutionId ? initMap.scheduledExecutionId : -1L, execmap)
+            }
         }catch(Throwable t){
             log.error("Unable to save Job execution state: ${t.message?t.message:'no message'}",t)
         }
+        initMap.executionService.releaseExecution(execmap.execution.id)
     }
 
     /**
@@ -85,6 +158,9 @@ class ExecutionJob implements InterruptableJob {
 
     public void interrupt(){
         _interrupted=true;
+        if(_thread){
+            _executionService.abortThread(_thread)
+        }
     }
 
     def initialize(JobExecutionContext context) {
@@ -149,48 +225,29 @@ class ExecutionJob implements InterruptableJob {
         return initMap
     }
 
-    def executeCommand(ExecutionService executionService,Execution execution, Framework framework, ScheduledExecution scheduledExecution=null) {
-        def success=false
+    /**
+     * Start the execution, with a listener to finish it when the execution thread completes
+     * @return the execution map, or null if it was not started
+     */
+    def Map executeCommand(Map initMap) {
         def execmap
         try{
-            execmap= executionService.executeAsyncBegin(framework,execution,scheduledExecution)
+            execmap= initMap.executionService.executeAsyncBegin(initMap.framework,initMap.execution,
+                initMap.scheduledExecution){ Map finished->
+                finishExecution(initMap, finished)
+            }
         }catch(Exception e){
             log.error("Execution failed: "+e.getMessage(), e)
             throw e
         }
-        if(!execmap){
-            //failed to start
-            return [success:false]
-        }
-
-        int killcount=0;
-        while(execmap.thread.isAlive()){
-            try{
-                execmap.thread.join(1000)
-            }catch(InterruptedException e){
-                //do nada
+        if(execmap){
+            _executionService=initMap.executionService
+            _thread=execmap.thread
+            if(_interrupted){
+                _executionService.abortThread(_thread)
             }
-            if (_interrupted) {
-                if(killcount<100){
-                    execmap.thread.abort()
-                    Thread.yield();
-                    killcount++;
-                }else{
-                    execmap.thread.stop()
-                }
-
-            }
-        }
-
-
-        try {
-            success = executionService.executeAsyncFinish(execmap)
-        } catch (Exception exc) {
-            throw new RuntimeException("Execution failed: "+exc.getMessage(), exc)
         }
-        log.info("ExecutionJob: execution successful? " + success +", interrupted? "+_interrupted)
-        return [success:success,execmap:execmap]
-
+        return execmap
     }
 
     def saveState(ExecutionService executionService,Execution execution, boolean success, boolean _interrupted, boolean isTemp, long scheduledExecutionId=-1, Map execmap=null) {
@@ -7,12 +7,19 @@ import com.dtolabs.rundeck.core.common.Framework
 import com.dtolabs.rundeck.core.common.INodeEntry
 import com.dtolabs.rundeck.core.execution.ExecutionItem
 import com.dtolabs.rundeck.core.execution.ExecutionListener
+import com.dtolabs.rundeck.core.execution.ServiceThreadBase
+import com.dtolabs.rundeck.core.execution.ServiceThreadListener
 import com.dtolabs.rundeck.core.execution.WorkflowExecutionServiceThread
+import com.dtolabs.rundeck.core.utils.ExecutionLogEntry
+import com.dtolabs.rundeck.core.utils.ExecutionLogWriter
 import com.dtolabs.rundeck.core.utils.NodeSet
 import com.dtolabs.rundeck.core.utils.ThreadBoundOutputStream
 import grails.util.GrailsWebUtil
 import java.text.MessageFormat
 import java.text.SimpleDateFormat
+import java.util.concurrent.Callable
+import java.util.concurrent.ConcurrentHashMap
+import java.util.concurrent.Semaphore
 import java.util.logging.Handler
 import java.util.logging.Level
 import java.util.logging.LogRecord
@@ -50,6 +57,45 @@ class ExecutionService implements ApplicationContextAware, CommandInterpreter{
     def String defaultLogLevel
 
     def ApplicationContext applicationContext
+    /**
+     * Job references resolved for each running execution, keyed by the execution listener of the execution
+     */
+    private final Map<ExecutionListener, JobRefCache> jobRefCaches = Collections.synchronizedMap(new WeakHashMap<ExecutionListener, JobRefCache>())
+    /**
+     * Workflow items created for Jobs
+     */
+    private final WorkflowItemCache workflowItemCache = new WorkflowItemCache()
+    /**
+     * Running executions, keyed by execution ID, with the map returned by executeAsyncBegin
+     */
+    private final ConcurrentHashMap<Long, Map> runningExecutions = new ConcurrentHashMap<Long, Map>()
+    /**
+     * Limits the number of executions running at once, limits are configured by BootStrap
+     */
+    private final ExecutionAdmissionQueue admissionQueue = new ExecutionAdmissionQueue(0, 0, 0,
+        ExecutionAdmissionQueue.createStarterExecutor())
+    /**
+     * Queued and running executions, used to list running executions without querying the database
+     */
+    private final LiveExecutionRegistry liveExecutions = new LiveExecutionRegistry()
+    /**
+     * Stops aborted execution threads which do not finish, the stop delay is configured by BootStrap
+     */
+    private final AbortWatchdog abortWatchdog = new AbortWatchdog(100000, 1000)
+    /**
+     * Limits the requests waiting for execution output, each of which holds a server thread, configured by BootStrap
+     */
+    private volatile Semaphore followWaiters = new Semaphore(50)
+    /**
+     * Saves the final state of executions, grouping the updates of several executions into one transaction
+     */
+    private final WriteBehindQueue persistenceQueue = new WriteBehindQueue({ List<Runnable> tasks ->
+        Execution.withNewSession{
+            Execution.withTransaction{
+                tasks*.run()
+            }
+        }
+    } as WriteBehindQueue.BatchRunner, 50, 200)
 
     // implement ApplicationContextAware interface
     def void setApplicationContext(ApplicationContext ac) throws BeansException {
@@ -57,22 +103,38 @@ class ExecutionService implements ApplicationContextAware, CommandInterpreter{
     }
 
 
+    /**
+     * Return a map of project name to the most recent executions for the project.  Each project is a separate
+     * top-N query, served by the project/dateStarted index.
+     */
     def listLastExecutionsPerProject(Framework framework, int max=5){
         def projects = frameworkService.projects(framework).collect{ it.name }
 
-        def c = Execution.createCriteria()
         def lastexecs=[:]
         projects.each { proj ->
-            def results = c.list {
+            lastexecs[proj] = Execution.createCriteria().list {
                 eq("project",proj)
                 maxResults(max)
                 order("dateCompleted","desc")
             }
-            lastexecs[proj]=results
         }
         return lastexecs
     }
 
+    /**
+     * Return the total count for a paged query, without a count query if the results did not fill the page
+     * @param results the page of results
+     * @param max the page size
+     * @param offset the page offset
+     * @param count closure returning the total count
+     */
+    private static int pageTotal(List results, int max, int offset, Closure count){
+        if(results.size() < max && (results || !offset)){
+            return offset + results.size()
+        }
+        return count()
+    }
+
     /**
      * query queue, returns map [:]:
      *
@@ -103,25 +165,9 @@ class ExecutionService implements ApplicationContextAware, CommandInterpreter{
         filters.putAll(txtfilters)
         filters.putAll(eqfilters)
 
-        def Date endAfterDate = new Date(System.currentTimeMillis()-1000*60*60)
-        if(query && query.doendafterFilter){
-            endAfterDate = query.endafterFilter
-        }
-        def Date nowDate = new Date()
-
-        def crit = Execution.createCriteria()
-        def runlist = crit.list{
-            if(query?.max){
-                maxResults(query?.max.toInteger())
-            }else{
-//                maxResults(grailsApplication.config.reportservice.pagination.default?grailsApplication.config.reportservice.pagination.default.toInteger():20)
-                maxResults(20)
-            }
-            if(query?.offset){
-                firstResult(query.offset.toInteger())
-            }
-
-             if(query ){
+        //criteria shared by the list and the count
+        def queueCriteria = {
+            if(query ){
                 txtfilters.each{ key,val ->
                     if(query["${key}Filter"]){
                         ilike(val,'%'+query["${key}Filter"]+'%')
@@ -153,102 +199,108 @@ class ExecutionService implements ApplicationContextAware, CommandInterpreter{
                         ilike('jobName','%'+query.jobFilter+'%')
                     }
                  }
-
-//                if(query.dostartafterFilter && query.dostartbeforeFilter && query.startbeforeFilter && query.startafterFilter){
-//                    between('dateStarted',query.startafterFilter,query.startbeforeFilter)
-//                }
-//                else if(query.dostartbeforeFilter && query.startbeforeFilter ){
-//                    le('dateStarted',query.startbeforeFilter)
-//                }else if (query.dostartafterFilter && query.startafterFilter ){
-//                    ge('dateStarted',query.startafterFilter)
-//                }
-                
-//                if(query.doendafterFilter && query.doendbeforeFilter && query.endafterFilter && query.endbeforeFilter){
-//                    between('dateCompleted',query.endafterFilter,query.endbeforeFilter)
-//                }
-//                else if(query.doendbeforeFilter && query.endbeforeFilter ){
-//                    le('dateCompleted',query.endbeforeFilter)
-//                }
-//                if(query.doendafterFilter && query.endafterFilter ){
-
-//                or{
-//                    between("dateCompleted", endAfterDate,nowDate)
-                    isNull("dateCompleted")
-//                }
-//                }
-            }else{
-//                and {
-//                    or{
-//                        between("dateCompleted", endAfterDate,nowDate)
-                        isNull("dateCompleted")
-//                    }
-//                }
-            }
-
-            if(query && query.sortBy && filters[query.sortBy]){
-                order(filters[query.sortBy],query.sortOrder=='ascending'?'asc':'desc')
-            }else{
-                order("dateStarted","desc")
             }
-
-        };
-        def currunning=[]
-        runlist.each{
-            currunning<<it
+            isNull("dateCompleted")
         }
+        queueCriteria.resolveStrategy = Closure.DELEGATE_FIRST
 
+        def max = query?.max ? query.max.toInteger() : 20
+        def offset = query?.offset ? query.offset.toInteger() : 0
+        def version = liveExecutions.getVersion()
+        def currunning=[]
         def jobs =[:]
-        currunning.each{
-            if(it.scheduledExecution && !jobs[it.scheduledExecution.id.toString()]){
-                jobs[it.scheduledExecution.id.toString()] = ScheduledExecution.get(it.scheduledExecution.id)
+        def total
+        if(isLiveQuery(query, filters)){
+            //list the running executions from the live registry, and load only the page of executions
+            def live = liveExecutions.getRunning().findAll{ex->
+                matchesFilter(ex.project, query?.projFilter) && matchesFilter(ex.user, query?.userFilter) &&
+                    (!query?.jobFilter || matchesFilter(ex.jobName, query.jobFilter))
             }
-        }
-
-
-        def total = Execution.createCriteria().count{
-
-             if(query ){
-                txtfilters.each{ key,val ->
-                    if(query["${key}Filter"]){
-                        ilike(val,'%'+query["${key}Filter"]+'%')
-                    }
+            if(query && query.sortBy && filters[query.sortBy]){
+                def prop = filters[query.sortBy]
+                live = live.sort{ it[prop] }
+                if(query.sortOrder!='ascending'){
+                    live = live.reverse()
                 }
-
-                eqfilters.each{ key,val ->
-                    if(query["${key}Filter"]){
-                        eq(val,query["${key}Filter"])
+            }
+            total = live.size()
+            def ids = offset < total ? live[offset..<Math.min(offset + max, total)]*.id : []
+            if(ids){
+                def found=[:]
+                Execution.createCriteria().list{
+                    'in'('id', ids)
+                    fetchMode('scheduledExecution', org.hibernate.FetchMode.JOIN)
+                }.each{
+                    found[it.id]=it
+                }
+                ids.each{
+                    if(found[it]){
+                        currunning<<found[it]
                     }
                 }
+            }
+        }else{
+            def crit = Execution.createCriteria()
+            def runlist = crit.list{
+                maxResults(max)
+                if(offset){
+                    firstResult(offset)
+                }
+                queueCriteria.delegate = delegate
+                queueCriteria()
+                //load the Jobs with the same query
+                fetchMode('scheduledExecution', org.hibernate.FetchMode.JOIN)
 
-                 //running status filter.
-                 if(query.runningFilter){
-                     if('running'==query.runningFilter){
-                        isNull("dateCompleted")
-                     }else {
-                         and{
-                            eq('status',"completed"==query.runningFilter?'true':'false')
-                            eq('cancelled',"killed"==query.runningFilter?'true':'false')
-                            isNotNull('dateCompleted')
-                         }
-                     }
-                 }
-
-                 //original Job name filter
-                 if(query.jobFilter){
-                    scheduledExecution{
-                        ilike('jobName','%'+query.jobFilter+'%')
-                    }
-                 }
+                if(query && query.sortBy && filters[query.sortBy]){
+                    order(filters[query.sortBy],query.sortOrder=='ascending'?'asc':'desc')
+                }else{
+                    order("dateStarted","desc")
+                }
 
-                isNull("dateCompleted")
-            }else{
-                isNull("dateCompleted")
+            };
+            runlist.each{
+                currunning<<it
             }
-        };
+            total = pageTotal(currunning, max, offset){
+                Execution.createCriteria().count{
+                    queueCriteria.delegate = delegate
+                    queueCriteria()
+                }
+            }
+        }
+        currunning.each{
+            if(it.scheduledExecution){
+                jobs[it.scheduledExecution.id.toString()] = it.scheduledExecution
+            }
+        }
 
         return [query:query, _filters:filters,
             jobs: jobs, nowrunning:currunning,
-            total: total]
+            queued: new HashSet<Long>(admissionQueue.getQueued()),
+            total: total, version: version]
+    }
+
+    /**
+     * Return true if the queue query can be answered from the live execution registry
+     */
+    private static boolean isLiveQuery(QueueQuery query, Map filters){
+        if(!query){
+            return true
+        }
+        if(query.objFilter || query.typeFilter || query.cmdFilter){
+            return false
+        }
+        if(query.runningFilter && 'running'!=query.runningFilter){
+            return false
+        }
+        return !(query.sortBy && filters[query.sortBy]) || query.sortBy in ['proj','user']
+    }
+
+    /**
+     * Return true if the filter is not set, or the value contains it ignoring case
+     */
+    private static boolean matchesFilter(String value, String filter){
+        return !filter || null!=value && value.toLowerCase().contains(filter.toLowerCase())
     }
 
     def public  finishQueueQuery = { query,params,model->
@@ -353,31 +405,25 @@ class ExecutionService implements ApplicationContextAware, CommandInterpreter{
     def listNowRunning(Framework framework, int max=10){
         //find currently running executions
 
-        def Date lastHour = new Date(System.currentTimeMillis()-1000*60*60)
-        def Date nowDate = new Date()
-
         def crit = Execution.createCriteria()
         def runlist = crit.list{
             maxResults(max)
             isNull("dateCompleted")
+            fetchMode('scheduledExecution', org.hibernate.FetchMode.JOIN)
             order("dateStarted","desc")
         };
         def currunning=[]
+        def jobs =[:]
         runlist.each{
             currunning<<it
-        }
-
-        def jobs =[:]
-        currunning.each{
-            if(it.scheduledExecution && !jobs[it.scheduledExecution.id.toString()]){
-                jobs[it.scheduledExecution.id.toString()] = ScheduledExecution.get(it.scheduledExecution.id)
+            if(it.scheduledExecution){
+                jobs[it.scheduledExecution.id.toString()] = it.scheduledExecution
             }
         }
 
-
-        def total = Execution.createCriteria().count{
-            isNull("dateCompleted")
-        };
+        def total = pageTotal(currunning, max, 0){
+            countNowRunning()
+        }
 
         return [jobs: jobs, nowrunning:currunning, total: total, max: max]
     }
@@ -386,8 +432,8 @@ class ExecutionService implements ApplicationContextAware, CommandInterpreter{
      * Set the result status to FAIL for any Executions that are not complete
      */
     def cleanupRunningJobs(){
-        Execution.findByDateCompleted(null).each{Execution e->
-            saveExecutionState(e.scheduledExecution?.id, e.id, [status: String.valueOf(false), dateCompleted: new Date(), cancelled: true],null)
+        Execution.findAllByDateCompletedIsNull().each{Execution e->
+            saveExecutionState(e.scheduledExecution?.id, e.id, [status: String.valueOf(false), dateCompleted: new Date(), cancelled: true],null,true)
             log.error("Stale Execution cleaned up: [${e.id}]")
         }
     }
@@ -431,7 +477,7 @@ class ExecutionService implements ApplicationContextAware, CommandInterpreter{
 
         reportMap.message=(issuccess?'Job completed successfully':iscancelled?('Job killed by: '+(abortedby?:user)):'Job failed')
         reportMap.dateCompleted=new Date()
-        def result=reportService.reportExecutionResult(reportMap)
+        def result=reportService.reportExecutionResult(reportMap, false)
         if(result.error){
             log.error("Failed to create report: "+result.report.errors.allErrors.collect{it.toString()}).join("; ")
         }
@@ -439,9 +485,168 @@ class ExecutionService implements ApplicationContextAware, CommandInterpreter{
 
 
     /**
-     * starts an execution in a separate thread, returning a map of [thread:Thread, loghandler:LogHandler]
+     * Set the limits of running executions, 0 means no limit
+     */
+    def configureExecutionLimits(int maxRunning, int maxRunningPerProject, int maxRunningPerJob){
+        admissionQueue.setLimits(maxRunning, maxRunningPerProject, maxRunningPerJob)
+        log.info("Execution limits: total: ${maxRunning}, per project: ${maxRunningPerProject}, per job: ${maxRunningPerJob}")
+    }
+
+    /**
+     * Configure and start the write-behind persistence queue
+     * @param maxBatchSize maximum number of executions saved in one transaction
+     * @param maxLatency maximum time in milliseconds before a completed execution is saved
+     */
+    def startPersistenceQueue(int maxBatchSize, long maxLatency){
+        persistenceQueue.setMaxBatchSize(maxBatchSize)
+        persistenceQueue.setMaxLatency(maxLatency)
+        persistenceQueue.start()
+        log.info("Execution persistence queue: batch size: ${maxBatchSize}, latency: ${maxLatency}ms")
+    }
+
+    /**
+     * Stop the write-behind persistence queue, after saving the queued executions
+     */
+    def stopPersistenceQueue(){
+        persistenceQueue.stop(30000)
+    }
+
+    /**
+     * Configure the time after which an aborted execution thread which is still running is stopped
+     * @param stopAfter time in milliseconds, 0 means aborted threads are never stopped
+     */
+    def configureAbortStop(long stopAfter){
+        abortWatchdog.setStopAfter(stopAfter)
+        log.info("Aborted executions are stopped after: ${stopAfter}ms")
+    }
+
+    /**
+     * Abort the execution thread, and stop it if it does not finish
+     */
+    def abortThread(ServiceThreadBase thread){
+        abortWatchdog.abort(thread)
+    }
+
+    /**
+     * Stop watching aborted execution threads
+     */
+    def stopAbortWatchdog(){
+        abortWatchdog.shutdown()
+    }
+
+    /**
+     * Return the number of completed executions waiting to be saved
+     */
+    def int getPersistenceBacklog(){
+        return persistenceQueue.getBacklog()
+    }
+
+    /**
+     * Return the live state of a queued or running execution, or null if the execution is not running in this server
+     * or its final state has been saved
+     */
+    def getLiveExecution(Long id){
+        return liveExecutions.get(id)
+    }
+
+    /**
+     * Configure the maximum number of requests waiting for execution output at once
+     * @param maxWaiters maximum waiting requests, 0 means requests do not wait
+     */
+    def configureFollowWaiters(int maxWaiters){
+        followWaiters = new Semaphore(maxWaiters > 0 ? maxWaiters : 0)
+        log.info("Execution output follow waiters: ${maxWaiters}")
+    }
+
+    /**
+     * Wait until output after the sequence has been written to the log, or the timeout has elapsed.  If the maximum
+     * number of requests are already waiting, this returns without waiting.
+     * @param notifier output notifier of the running execution
+     * @param since last sequence read by the caller
+     * @param timeout maximum time to wait in milliseconds
+     * @return the current sequence
+     */
+    def long awaitOutput(OutputAppendNotifier notifier, long since, long timeout){
+        def Semaphore waiters = followWaiters
+        if(!waiters.tryAcquire()){
+            return notifier.getSequence()
+        }
+        try{
+            return notifier.awaitAppend(since, timeout)
+        }finally{
+            waiters.release()
+        }
+    }
+
+    /**
+     * Return a map of Job ID to the ID of a running execution of the Job
+     */
+    def Map<String,String> getRunningJobExecutions(){
+        def running=[:]
+        liveExecutions.getRunningJobs().each{ jobId, execId ->
+            running[jobId.toString()]=execId.toString()
+        }
+        return running
+    }
+
+    /**
+     * Return the version of the running executions, which changes when executions are queued, started or completed
+     */
+    def long getRunningVersion(){
+        return liveExecutions.getVersion()
+    }
+
+    /**
+     * Submit an execution to the admission queue.  If it can run now the start closure is called by this thread with
+     * the argument false.  Otherwise it is queued, and the start closure is called with the argument true, within a
+     * new session, by the admission queue's starter thread. releaseExecution must be called when the
+     * execution finishes or fails to start.
+     * @param priority higher priority executions are started first from the queue
+     * @return true if the execution was started now
+     */
+    def boolean admitExecution(Execution execution, ScheduledExecution scheduledExecution, int priority, Closure start){
+        liveExecutions.queued(execution.id, scheduledExecution?.id, scheduledExecution?.jobName, execution.project,
+            execution.user, execution.dateStarted)
+        def admitted = admissionQueue.submit(execution.id, execution.project, scheduledExecution?.id, priority, {
+            Execution.withNewSession{
+                start.call(true)
+            }
+        } as Runnable)
+        if(admitted){
+            start.call(false)
+        }
+        return admitted
+    }
+
+    /**
+     * Release an admitted execution, and start queued executions which can then run
+     */
+    def releaseExecution(Long id){
+        admissionQueue.release(id)
+    }
+
+    /**
+     * Remove the live state of an execution which will not be started, and whose state is not saved by
+     * saveExecutionState
+     */
+    def removeLiveExecution(Long id){
+        liveExecutions.remove(id)
+    }
+
+    /**
+     * Return true if the execution is waiting in the admission queue
+     */
+    def boolean isExecutionQueued(Long id){
+        return admissionQueue.isQueued(id)
+    }
+
+    /**
+     * starts an execution in a separate thread, returning a map of [thread:Thread, loghandler:LogHandler].
+     * If an onComplete closure is given it is called with the same map by the execution thread when the execution
+     * finishes, otherwise the caller must wait for the thread to finish.  In either case executeAsyncFinish must be
+     * called when the execution finishes.
      */
-    def Map executeAsyncBegin(Framework framework, Execution execution, ScheduledExecution scheduledExecution=null){
+    def Map executeAsyncBegin(Framework framework, Execution execution, ScheduledExecution scheduledExecution=null, Closure onComplete=null){
         execution.refresh()
         String lognamespace="rundeck"
         if(execution.workflow){
@@ -455,8 +660,9 @@ class ExecutionService implements ApplicationContextAware, CommandInterpreter{
         def outfile = createOutputFilepathForExecution(execution, framework)
         execution.outputfilepath=outfile
         execution.save(flush:true)
+        def outputNotifier = new OutputAppendNotifier()
         def LogHandler loghandler = createLogHandler(lognamespace, execution.outputfilepath,execution.loglevel,
-            [user:execution.user,node:framework.getFrameworkNodeName()])
+            [user:execution.user,node:framework.getFrameworkNodeName()], outputNotifier)
 
         //install custom outputstreams for System.out and System.err for this thread and any child threads
         //output will be sent to loghandler instead.
@@ -473,23 +679,43 @@ class ExecutionService implements ApplicationContextAware, CommandInterpreter{
             jobcontext.username=execution.user
             jobcontext.project=execution.project
 
-            WorkflowExecutionItem item = createExecutionItemForExecutionContext(execution, framework, execution.user)
+            WorkflowExecutionItem item
+            if (scheduledExecution) {
+                item = createExecutionItemForJobExecution(execution, scheduledExecution, framework, execution.user)
+            } else {
+                item = createExecutionItemForExecutionContext(execution, framework, execution.user)
+            }
 
             NodeRecorder recorder = new NodeRecorder();//TODO: use workflow-aware listener for nodes
 
             //create listener to handle log messages and Ant build events
-            ExecutionListener executionListener = new WorkflowExecutionListenerImpl(recorder, loghandler,false,null);
+            ExecutionListener executionListener = new WorkflowExecutionListenerImpl(recorder, recorder, loghandler,false,null);
+            jobRefCaches.put(executionListener, new JobRefCache())
             com.dtolabs.rundeck.core.execution.ExecutionContext executioncontext = createContext(execution, framework, execution.user, jobcontext, executionListener)
 
             final cis = CommandInterpreterService.getInstanceForFramework(framework);
             cis.registerInstance(JobExecutionItem.COMMAND_TYPE, this)
 
             //create service object for the framework and listener
-            Thread thread = new WorkflowExecutionServiceThread(framework.getWorkflowExecutionService(),item, executioncontext)
+            WorkflowExecutionServiceThread thread = new WorkflowExecutionServiceThread(framework.getWorkflowExecutionService(),item, executioncontext)
+            def execmap = [thread:thread, loghandler:loghandler, noderecorder:recorder, execution: execution, scheduledExecution:scheduledExecution, executionListener:executionListener]
+            runningExecutions.put(execution.id, execmap)
+            liveExecutions.started(execution.id, scheduledExecution?.id, scheduledExecution?.jobName, execution.project,
+                execution.user, execution.dateStarted, outfile, recorder, outputNotifier)
+            if(onComplete){
+                thread.addCompletionListener({ ServiceThreadBase t -> onComplete.call(execmap) } as ServiceThreadListener)
+            }
             thread.start()
-            return [thread:thread, loghandler:loghandler, noderecorder:recorder, execution: execution, scheduledExecution:scheduledExecution]
+            if(onComplete){
+                //the thread has inherited the output streams, and the caller will not finish the execution
+                sysThreadBoundOut.removeThreadStream()
+                sysThreadBoundErr.removeThreadStream()
+            }
+            return execmap
         }catch(Exception e){
             loghandler.publish(new LogRecord(Level.SEVERE, 'Failed to start execution: ' + e.getClass().getName() + ": " + e.message))
+            runningExecutions.remove(execution.id)
+            liveExecutions.remove(execution.id)
             sysThreadBoundOut.removeThreadStream()
             sysThreadBoundErr.removeThreadStream()
             loghandler.close()
@@ -533,6 +759,53 @@ class ExecutionService implements ApplicationContextAware, CommandInterpreter{
     }
 
 
+    /**
+     * Return the ExecutionItem for a Job, which is created once for each version of the stored workflow, and reused
+     * until the Job is modified.
+     */
+    public WorkflowExecutionItem createExecutionItemForJob(ScheduledExecution se, Framework framework, String user) {
+        if (!se.workflow?.id) {
+            return createExecutionItemForExecutionContext(se, framework, user)
+        }
+        def String version = [se.workflow.id, se.workflow.version, user].join(':')
+        WorkflowExecutionItem item = workflowItemCache.get(se.id, version)
+        if (!item) {
+            item = createExecutionItemForExecutionContext(se, framework, user)
+            workflowItemCache.put(se.id, version, item)
+        }
+        return item
+    }
+
+    /**
+     * Return the ExecutionItem for an execution of a Job.  Each execution has its own copy of the workflow, so the
+     * cached item for the Job is used only if the copy has the same steps as the Job's workflow, otherwise the item is
+     * created from the copy, so that the execution runs the steps it was created with even if the Job was modified
+     * before it started.
+     */
+    public WorkflowExecutionItem createExecutionItemForJobExecution(Execution execution, ScheduledExecution se,
+                                                                    Framework framework, String user) {
+        if (se.workflow && execution.workflow && sameWorkflow(se.workflow, execution.workflow)) {
+            return createExecutionItemForJob(se, framework, user)
+        }
+        return createExecutionItemForExecutionContext(execution, framework, user)
+    }
+
+    /**
+     * Return true if the workflows would create the same ExecutionItem
+     */
+    private static boolean sameWorkflow(Workflow a, Workflow b) {
+        return a.threadcount == b.threadcount && a.toMap() == b.toMap()
+    }
+
+    /**
+     * Remove the ExecutionItem created for a Job, which must be called when the Job is modified or deleted
+     */
+    public void invalidateExecutionItemForJob(Long id) {
+        if (null != id) {
+            workflowItemCache.remove(id)
+        }
+    }
+
     /**
      * Return an ExecutionItem instance for the given workflow Execution, suitable for the ExecutionService layer
      */
@@ -633,6 +906,28 @@ class ExecutionService implements ApplicationContextAware, CommandInterpreter{
         return item
     }
 
+    /**
+     * Return an ExecutionContext for a Job reference, using the resolved Job
+     */
+    public com.dtolabs.rundeck.core.execution.ExecutionContext createJobRefContext(JobRefCache.Entry entry, Framework framework, Map<String, String> jobcontext, ExecutionListener listener, String[] inputargs) {
+        //convert argString into Map<String,String>
+        def String[] args = entry.argString ? CLIUtils.splitArgLine(entry.argString) : inputargs
+        def Map<String, String> optsmap = entry.argString ? frameworkService.parseOptsFromString(entry.argString) : null != args ? frameworkService.parseOptsFromArray(args) : null
+
+        def Map<String, Map<String, String>> datacontext = new HashMap<String, Map<String, String>>()
+        datacontext.put("option", optsmap)
+        datacontext.put("job", jobcontext)
+        return com.dtolabs.rundeck.core.execution.ExecutionContextImpl.createExecutionContextImpl(
+            entry.project,
+            entry.user,
+            entry.nodeSet,
+            args,
+            entry.loglevel,
+            datacontext,
+            listener,
+            framework)
+    }
+
     /**
      * cleans up executed job
      * @param framework the framework
@@ -669,6 +964,10 @@ class ExecutionService implements ApplicationContextAware, CommandInterpreter{
         }else{
             log.info("Execution successful: " + execMap.execution.id )
         }
+        if(execMap.executionListener){
+            jobRefCaches.remove(execMap.executionListener)
+        }
+        runningExecutions.remove(execMap.execution.id)
         sysThreadBoundOut.removeThreadStream()
         sysThreadBoundErr.removeThreadStream()
         loghandler.close()
@@ -680,7 +979,16 @@ class ExecutionService implements ApplicationContextAware, CommandInterpreter{
         def statusStr
         def abortstate
         def jobstate
-        if(scheduledExecutionService.existsJob(ident.jobname, ident.groupname)){
+        def execmap = runningExecutions.get(e.id)
+        if(execmap){
+            if(!e.abortedby){
+                e.abortedby=user
+                e.save()
+            }
+            abortThread(execmap.thread)
+            abortstate=ExecutionController.ABORT_PENDING
+            jobstate=ExecutionController.EXECUTION_RUNNING
+        }else if(scheduledExecutionService.existsJob(ident.jobname, ident.groupname)){
             if(!e.abortedby){
                 e.abortedby=user
                 e.save()
@@ -689,6 +997,7 @@ class ExecutionService implements ApplicationContextAware, CommandInterpreter{
             abortstate=didcancel?ExecutionController.ABORT_PENDING:ExecutionController.ABORT_FAILED
             jobstate=ExecutionController.EXECUTION_RUNNING
         }else if(null==e.dateCompleted){
+            admissionQueue.remove(e.id)
             saveExecutionState(
                 se?se.id:null,
                 e.id,
@@ -697,7 +1006,9 @@ class ExecutionService implements ApplicationContextAware, CommandInterpreter{
                     dateCompleted:new Date(),
                     cancelled:true,
                     abortedby:user
-                    ]
+                    ],
+                null,
+                true
                 )
             abortstate=ExecutionController.ABORT_ABORTED
             jobstate=ExecutionController.EXECUTION_ABORTED
@@ -973,6 +1284,27 @@ class ExecutionService implements ApplicationContextAware, CommandInterpreter{
      * defaultValue, and have null value in the input properties, then append the default option value to the argString
      */
     def String addArgStringOptionDefaults(ScheduledExecution scheduledExecution, args) throws ExecutionServiceException {
+        return addArgStringOptionDefaults(requiredOptionDefaults(scheduledExecution), args)
+    }
+
+    /**
+     * Return the default values of the Options defined for the Job which have required=true and a defaultValue
+     */
+    def Map<String, String> requiredOptionDefaults(ScheduledExecution scheduledExecution) {
+        def defaults = [:]
+        scheduledExecution.options?.each {Option opt ->
+            if (opt.required && opt.defaultValue) {
+                defaults[opt.name] = opt.defaultValue
+            }
+        }
+        return defaults
+    }
+
+    /**
+     * evaluate the options in the input argString, and append the default value of each option in the required
+     * defaults which has null value in the input properties
+     */
+    def String addArgStringOptionDefaults(Map<String, String> requiredDefaults, args) {
         def StringBuffer sb = new StringBuffer()
         def optparams = [:]
         if(args && args instanceof String){
@@ -983,12 +1315,11 @@ class ExecutionService implements ApplicationContextAware, CommandInterpreter{
             sb.append(args?args.join(" "):'')
         }
 
-        final options = scheduledExecution.options
-        if (options) {
+        if (requiredDefaults) {
             def defaultoptions=[:]
-            options.each {Option opt ->
-                if (opt.required && null==optparams[opt.name] && opt.defaultValue) {
-                    defaultoptions[opt.name]=opt.defaultValue
+            requiredDefaults.each {name, value ->
+                if (null==optparams[name]) {
+                    defaultoptions[name]=value
                 }
             }
             if(defaultoptions){
@@ -1123,7 +1454,11 @@ class ExecutionService implements ApplicationContextAware, CommandInterpreter{
 
     def static loglevels=['ERR':Project.MSG_ERR,'ERROR':Project.MSG_ERR,'WARN':Project.MSG_WARN,'INFO':Project.MSG_INFO,'VERBOSE':Project.MSG_VERBOSE,'DEBUG':Project.MSG_DEBUG]
 
-    def LogHandler createLogHandler(command, filepath,loglevel="WARN", Map defaultData=null){
+    /**
+     * Create the log handler for an execution
+     * @param notifier notified each time output is written, or null
+     */
+    def LogHandler createLogHandler(command, filepath,loglevel="WARN", Map defaultData=null, OutputAppendNotifier notifier=null){
         def namespace = "com.dtolabs.rundeck.core."+command
         if (!filepath) {
             throw new IllegalArgumentException("outputfilepath property value not set" )
@@ -1140,71 +1475,97 @@ class ExecutionService implements ApplicationContextAware, CommandInterpreter{
         }
 
 
-        return new HtTableLogger(namespace, new File(filepath), level,defaultData)
+        def indexed = "false" != applicationContext.getServletContext().getAttribute("execution.log.indexed")
+        def flushSize = applicationContext.getServletContext().getAttribute("execution.log.flushSize")
+        def flushInterval = applicationContext.getServletContext().getAttribute("execution.log.flushInterval")
+        def logger = new HtTableLogger(namespace, new File(filepath), level,defaultData,indexed,
+            flushSize ? Integer.parseInt(flushSize.toString()) : 0, flushInterval ? Long.parseLong(flushInterval.toString()) : 0)
+        logger.appendNotifier=notifier
+        return logger
+    }
+
+    /**
+     * Save the final state of an execution.  The Execution, the Job statistics and the execution report are saved by
+     * the write-behind persistence queue, grouped with other completed executions, and notifications are sent after
+     * they are saved.
+     * @param durable if true, wait until the state has been saved
+     */
+    def saveExecutionState( schedId, exId, Map props, Map execmap=null, boolean durable=false){
+        //summarize node success
+        String node=null
+        int sucCount=-1;
+        int failedCount=-1;
+        int totalCount=0;
+        if (execmap && execmap.noderecorder && execmap.noderecorder instanceof NodeRecorder) {
+            NodeRecorder rec = (NodeRecorder) execmap.noderecorder
+            final HashSet<String> success = rec.getSuccessfulNodes()
+            final Map<String,Object> failedMap = rec.getFailedNodes()
+            final HashSet<String> failed = new HashSet<String>(failedMap.keySet())
+            final HashSet<String> matched = rec.getMatchedNodes()
+            node = [success.size(),failed.size(),matched.size()].join("/")
+            sucCount=success.size()
+            failedCount=failed.size()
+            totalCount=matched.size()
+        }
+        liveExecutions.completed(exId, props.dateCompleted, props.status, props.cancelled ? true : false)
+        def boolean execSaved=false
+        persistenceQueue.submit({
+            //reset when the task is run again after its batch failed
+            execSaved=false
+            execSaved=persistExecutionState(schedId, exId, props, node)
+        } as Runnable, {
+            //run only once the state has been committed, and the saved state is then used instead of the live state.
+            //If saving fails the completed live state is kept, as the stored execution has not completed
+            liveExecutions.remove(exId)
+            if(execSaved && schedId){
+                Execution.withNewSession{
+                    notificationService.triggerJobNotification(props.status == 'true' ? 'success' : 'failure', schedId, [execution: Execution.get(exId),nodestatus:[succeeded:sucCount,failed:failedCount,total:totalCount]])
+                }
+            }
+        } as Runnable, durable)
     }
 
-    def saveExecutionState( schedId, exId, Map props, Map execmap=null){
+    /**
+     * Save the state of the execution, update the Job statistics and create the execution report, within the current
+     * transaction
+     * @return true if the execution was saved
+     */
+    def boolean persistExecutionState(schedId, exId, Map props, String node){
         def ScheduledExecution scheduledExecution
         def Execution execution = Execution.get(exId)
         execution.properties=props
         if (props.failedNodes) {
             execution.failedNodeList = props.failedNodes.join(",")
         }
-        def boolean execSaved=false
-        if (execution.save(flush:true)) {
-            log.debug("saved execution status. id: ${execution.id}")
-            execSaved=true
-        } else {
-
+        if (!execution.save()) {
             execution.errors.allErrors.each { log.warn(it.defaultMessage) }
             log.error("failed to save execution status")
+            return false
         }
+        log.debug("saved execution status. id: ${execution.id}")
 
         def jobname="adhoc"
         def jobid=null
         if (schedId) {
-            ScheduledExecution.withTransaction{
             scheduledExecution = ScheduledExecution.get(schedId)
-            execution = execution.merge()
-            jobname=scheduledExecution.groupPath?scheduledExecution.generateFullName():scheduledExecution.jobName
-            jobid=scheduledExecution.id
             if (scheduledExecution) {
-
-                    log.debug("saveExecutionState, schedExec version: "+scheduledExecution.version)
-                    try{
-                        updateScheduledExecState(scheduledExecution,execution)
-                    }catch(org.springframework.dao.OptimisticLockingFailureException e){
-                        log.error("lock problem, refreshing to try again: "+e)
-                        scheduledExecution.refresh()
-                        updateScheduledExecState(scheduledExecution,execution)
-                    }
-
-            }
-            }
-        }
-        if(execSaved) {
-            //summarize node success
-            String node=null
-            int sucCount=-1;
-            int failedCount=-1;
-            int totalCount=0;
-            if (execmap && execmap.noderecorder && execmap.noderecorder instanceof NodeRecorder) {
-                NodeRecorder rec = (NodeRecorder) execmap.noderecorder
-                final HashSet<String> success = rec.getSuccessfulNodes()
-                final Map<String,Object> failedMap = rec.getFailedNodes()
-                final HashSet<String> failed = new HashSet<String>(failedMap.keySet())
-                final HashSet<String> matched = rec.getMatchedNodes()
-                node = [success.size(),failed.size(),matched.size()].join("/")
-                sucCount=success.size()
-                failedCount=failed.size()
-                totalCount=matched.size()
+                jobname=scheduledExecution.groupPath?scheduledExecution.generateFullName():scheduledExecution.jobName
+                jobid=scheduledExecution.id
+                log.debug("saveExecutionState, schedExec version: "+scheduledExecution.version)
+                try{
+                    updateScheduledExecState(scheduledExecution,execution)
+                }catch(org.springframework.dao.OptimisticLockingFailureException e){
+                    log.error("lock problem, refreshing to try again: "+e)
+                    scheduledExecution.refresh()
+                    updateScheduledExecState(scheduledExecution,execution)
+                }
             }
-            def Framework fw = frameworkService.getFramework()
-            logExecution(null, execution.project, execution.user, "true" == execution.status, fw, exId,
-                execution.dateStarted, jobid, jobname, summarizeJob(scheduledExecution, execution), props.cancelled,
-                node, execution.abortedby)
-            notificationService.triggerJobNotification(props.status == 'true' ? 'success' : 'failure', schedId, [execution: execution,nodestatus:[succeeded:sucCount,failed:failedCount,total:totalCount]])
         }
+        def Framework fw = frameworkService.getFramework()
+        logExecution(null, execution.project, execution.user, "true" == execution.status, fw, exId,
+            execution.dateStarted, jobid, jobname, summarizeJob(scheduledExecution, execution), props.cancelled,
+            node, execution.abortedby)
+        return true
     }
     public static String summarizeJob(ScheduledExecution job=null,Execution exec){
 //        if(job){
@@ -1247,7 +1608,7 @@ class ExecutionService implements ApplicationContextAware, CommandInterpreter{
                 }
             }
         }
-        if (scheduledExecution.save(flush:true)) {
+        if (scheduledExecution.save()) {
             log.info("updated scheduled Execution")
         } else {
             scheduledExecution.errors.allErrors.each {log.warn(it.defaultMessage)}
@@ -1433,68 +1794,28 @@ class ExecutionService implements ApplicationContextAware, CommandInterpreter{
             requestAttributes = GrailsWebUtil.bindMockWebRequest(applicationContext)
             unbindrequest = true
         }
-        def id
         //lookup job, create item, submit to ExecutionService
         JobExecutionItem jitem = (JobExecutionItem) executionItem
         try{
-
-            def group = null
-            def name = null
-            def m = jitem.jobIdentifier =~ '^/?(.+)/([^/]+)$'
-            if (m.matches()) {
-                group = m.group(1)
-                name = m.group(2)
-            } else {
-                name = jitem.jobIdentifier
+            def JobRefCache.Entry entry
+            try {
+                entry = resolveJobRef(jitem.jobIdentifier, executionContext)
+            } catch (InterpreterException e) {
+                executionContext.getExecutionListener().log(0, e.getMessage())
+                throw e
             }
-            def c = ScheduledExecution.createCriteria()
-            def schedlist = c.list {
-                and {
-                    eq('jobName', name)
-                    if (!group) {
-                        or {
-                            eq('groupPath', '')
-                            isNull('groupPath')
-                        }
-                    } else {
-                        eq('groupPath', group)
-                    }
-                    eq('project', executionContext.getFrameworkProject())
-                }
-            }
-            if (schedlist && 1 == schedlist.size()) {
-                id = schedlist[0].id
-            }else{
-                executionContext.getExecutionListener().log(0,"Job ref [${jitem.jobIdentifier}] invalid: No Unique Job found for name: ${name}, group: ${group}, project: ${executionContext.getFrameworkProject()}")
-                throw new InterpreterException("Job ref [${jitem.jobIdentifier}] invalid: No Unique Job found for name: ${name}, group: ${group}, project: ${executionContext.getFrameworkProject()}")
-            }
-            def com.dtolabs.rundeck.core.execution.ExecutionContext newContext
-            def WorkflowExecutionItem newExecItem
-            ScheduledExecution.withTransaction{status->
-
-                ScheduledExecution se = ScheduledExecution.get(id)//.findByJobNameAndGroupPath(name, group)
-//                    se.refresh()
+            String[] newargs
+            if (null != executionContext.dataContext && null != jitem.args) {
                 //replace data context within arg string
-                String[] newargs = jitem.args
+                newargs = com.dtolabs.rundeck.core.dispatcher.DataContextUtils.replaceDataReferences(jitem.args, executionContext.getDataContext())
+            } else {
                 //try to set defaults for any missing args
-                def newargstring = addArgStringOptionDefaults(se, newargs)
+                def newargstring = addArgStringOptionDefaults(entry.optionDefaults, jitem.args)
                 final List<String> stringList = CLIUtils.splitArgLine(newargstring);
                 newargs = stringList.toArray(new String[stringList.size()]);
-
-                if (null != executionContext.dataContext && null != jitem.args) {
-                    newargs = com.dtolabs.rundeck.core.dispatcher.DataContextUtils.replaceDataReferences(jitem.args, executionContext.getDataContext())
-                }
-                //construct job data context
-                def jobcontext = new HashMap<String, String>()
-                jobcontext.id = se.id.toString()
-                jobcontext.name = se.jobName
-                jobcontext.group = se.groupPath
-                jobcontext.project = se.project
-                jobcontext.username = executionContext.getUser()
-                newExecItem = createExecutionItemForExecutionContext(se, executionContext.getFramework(), executionContext.getUser())
-                newContext= createContext(se, executionContext.getFramework(), executionContext.getUser(), jobcontext, executionContext.getExecutionListener(),newargs)
-
             }
+            def newExecItem = entry.item
+            def newContext = createJobRefContext(entry, executionContext.getFramework(), new HashMap<String, String>(entry.jobContext), executionContext.getExecutionListener(), newargs)
             def WorkflowExecutionService service = executionContext.getFramework().getWorkflowExecutionService()
 
             final WorkflowExecutionResult result = service.getExecutorForItem(newExecItem).executeWorkflow(newContext, newExecItem)
@@ -1509,6 +1830,77 @@ class ExecutionService implements ApplicationContextAware, CommandInterpreter{
         }
     }
 
+    /**
+     * Return the resolved Job for a Job reference, which is loaded once for each execution
+     */
+    private JobRefCache.Entry resolveJobRef(String jobIdentifier, com.dtolabs.rundeck.core.execution.ExecutionContext executionContext) throws InterpreterException {
+        def loader = {
+            loadJobRef(jobIdentifier, executionContext)
+        } as Callable
+        def JobRefCache cache = jobRefCaches.get(executionContext.getExecutionListener())
+        if (!cache) {
+            return loader.call()
+        }
+        return cache.get(executionContext.getFrameworkProject() + ":" + executionContext.getUser() + ":" + jobIdentifier, loader)
+    }
+
+    /**
+     * Find the Job for a Job reference, and create the workflow item and context data for it
+     */
+    private JobRefCache.Entry loadJobRef(String jobIdentifier, com.dtolabs.rundeck.core.execution.ExecutionContext executionContext) throws InterpreterException {
+        def id
+        def group = null
+        def name = null
+        def m = jobIdentifier =~ '^/?(.+)/([^/]+)$'
+        if (m.matches()) {
+            group = m.group(1)
+            name = m.group(2)
+        } else {
+            name = jobIdentifier
+        }
+        def c = ScheduledExecution.createCriteria()
+        def schedlist = c.list {
+            and {
+                eq('jobName', name)
+                if (!group) {
+                    or {
+                        eq('groupPath', '')
+                        isNull('groupPath')
+                    }
+                } else {
+                    eq('groupPath', group)
+                }
+                eq('project', executionContext.getFrameworkProject())
+            }
+        }
+        if (schedlist && 1 == schedlist.size()) {
+            id = schedlist[0].id
+        }else{
+            throw new InterpreterException("Job ref [${jobIdentifier}] invalid: No Unique Job found for name: ${name}, group: ${group}, project: ${executionContext.getFrameworkProject()}")
+        }
+        def JobRefCache.Entry entry
+        ScheduledExecution.withTransaction{status->
+
+            ScheduledExecution se = ScheduledExecution.get(id)
+            //construct job data context
+            def jobcontext = new HashMap<String, String>()
+            jobcontext.id = se.id.toString()
+            jobcontext.name = se.jobName
+            jobcontext.group = se.groupPath
+            jobcontext.project = se.project
+            jobcontext.username = executionContext.getUser()
+            def item = createExecutionItemForJob(se, executionContext.getFramework(), executionContext.getUser())
+            def User user = User.findByLogin(executionContext.getUser())
+            if (!user) {
+                throw new Exception(g.message(code: 'unauthorized.job.run.user', args: [executionContext.getUser()]))
+            }
+            entry = new JobRefCache.Entry(se.id, item, jobcontext, se.project, se.argString,
+                se.doNodedispatch ? filtersAsNodeSet(se) : new NodeSet(),
+                loglevels[null != se.loglevel ? se.loglevel : 'WARN'], requiredOptionDefaults(se), user.login)
+        }
+        return entry
+    }
+
     ///////////////
       //for loading i18n messages
       //////////////
@@ -1636,9 +2028,43 @@ class LogOutputStream extends OutputStream{
         }
 
     }
+    /**
+     * Write a buffer of bytes, splitting it into lines without going through write(int) for each byte
+     */
+    public void write(final byte[] b, final int off, final int len) {
+        int start = off
+        final int end = off + len
+        for (int i = off; i < end; i++) {
+            final byte c = b[i]
+            if (c == ('\n' as char) || c == ('\r' as char)) {
+                if (i > start) {
+                    appendBytes(b, start, i - start)
+                }
+                write((int) c)
+                start = i + 1
+            }
+        }
+        if (end > start) {
+            appendBytes(b, start, end - start)
+        }
+    }
+    private void appendBytes(final byte[] b, final int off, final int len){
+        if (crchar) {
+            logger.logOOB(level, null == prefix ? sb.toString() : prefix + sb.toString());
+            sb = new StringBuffer()
+            crchar = false;
+        }
+        sb.append(new String(b, off, len, "ISO-8859-1"))
+    }
+    /**
+     * Lines are logged when complete, so flush does not emit a partial line
+     */
     public void flush(){
+    }
+    public void close(){
         if(sb.size()>0){
             logger.logOOB(level,null==prefix?sb.toString():prefix+sb.toString());
+            sb = new StringBuffer()
         }
     }
 }
@@ -1646,6 +2072,10 @@ class LogOutputStream extends OutputStream{
   * HtTableLogger
   */
 class HtTableLogger extends Handler implements LogHandler, BuildLogger, CLIToolLogger, ContextLogger {
+    /**
+     * Reports indexed log failures. System.err may be bound to this logger, so it is not used
+     */
+    static internalLog = org.apache.log4j.Logger.getLogger("ExecutionService")
     def PrintStream printstream
     def String namespace
     def File outfile
@@ -1653,21 +2083,68 @@ class HtTableLogger extends Handler implements LogHandler, BuildLogger, CLIToolL
     def int msgOutputLevel
     def long startTime
     def Map defaultEntries=[:]
+    /**
+     * Indexed log written alongside the text log, or null
+     */
+    def ExecutionLogWriter logWriter
+    /**
+     * Notified when entries are written and when the log is closed, or null
+     */
+    def OutputAppendNotifier appendNotifier
+    /**
+     * Writes records queued by the logging threads, or null to write them in the logging thread
+     */
+    def AsyncLogWriter asyncWriter
 
     def HtTableLogger(final String namespace, File outfile, int msglevel) {
         this(namespace,outfile,msglevel,null)
     }
     def HtTableLogger(final String namespace, File outfile, int msglevel, Map defaultEntries) {
+        this(namespace,outfile,msglevel,defaultEntries,false)
+    }
+    /**
+     * @param indexed if true, also write an indexed log file next to the text log file
+     */
+    def HtTableLogger(final String namespace, File outfile, int msglevel, Map defaultEntries, boolean indexed) {
+        this(namespace,outfile,msglevel,defaultEntries,indexed,0,0)
+    }
+    /**
+     * @param indexed if true, also write an indexed log file next to the text log file
+     * @param flushSize if greater than 0, records are queued and written by a writer thread, and the log is flushed
+     * after at most this many records
+     * @param flushInterval maximum time in milliseconds a queued record waits before it is written
+     */
+    def HtTableLogger(final String namespace, File outfile, int msglevel, Map defaultEntries, boolean indexed,
+                      int flushSize, long flushInterval) {
         this.namespace = namespace
         this.outfile = outfile
         if(null!=defaultEntries){
             this.defaultEntries=new HashMap(defaultEntries)
         }
-        printstream = new PrintStream(new FileOutputStream(outfile))
+        if(flushSize>0){
+            printstream = new PrintStream(new BufferedOutputStream(new FileOutputStream(outfile), 64 * 1024))
+        }else{
+            printstream = new PrintStream(new FileOutputStream(outfile))
+        }
+        if(indexed){
+            try{
+                logWriter = new ExecutionLogWriter(ExecutionLogWriter.logFileFor(outfile))
+            }catch(IOException e){
+                indexedLogFailed("create", e)
+            }
+        }
         msgOutputLevel=msglevel
+        setFormatter(new HtFormatter())
+        if(flushSize>0){
+            def sink = [
+                write: {Object[] record -> writeRecord((LogRecord)record[0], (Map)record[1]) },
+                flush: { flushOutput() }
+            ] as AsyncLogWriter.RecordWriter
+            asyncWriter = new AsyncLogWriter("ExecutionLog-"+outfile.name, sink, flushSize, flushInterval,
+                { appendNotifier?.appended() } as Runnable)
+        }
         def Logger logger = Logger.getLogger(namespace)
         logger.addHandler(this);
-        setFormatter(new HtFormatter())
     }
 
     void setMessageOutputLevel(int i){
@@ -1932,7 +2409,7 @@ class HtTableLogger extends Handler implements LogHandler, BuildLogger, CLIToolL
             return;
         }
         if(lr.getLevel().intValue()>=getLevelForPriority(msgOutputLevel).intValue()){
-            printstream.println(getFormatter().format(lr))
+            emit(lr,null)
         }
     }
     public void publish(final LogRecord lr,final Map data) {
@@ -1943,8 +2420,84 @@ class HtTableLogger extends Handler implements LogHandler, BuildLogger, CLIToolL
             return;
         }
         if(lr.getLevel().intValue()>=getLevelForPriority(msgOutputLevel).intValue()){
+            emit(lr,data)
+        }
+    }
+    /**
+     * Queue the record for the writer thread, or write it and flush if there is no writer thread
+     */
+    private void emit(final LogRecord lr, final Map data) {
+        //the record is formatted later by the writer thread, so the caller's map is copied in case it is reused
+        if(null!=asyncWriter){
+            def Map entries = null==data || data.is(defaultEntries) ? data : new HashMap(data)
+            if(asyncWriter.submit([lr, entries] as Object[])){
+                return
+            }
+        }
+        if(closed){
+            return
+        }
+        writeRecord(lr,data)
+        flushOutput()
+        appendNotifier?.appended()
+    }
+    /**
+     * Write the record to the text log and the indexed log without flushing
+     */
+    private void writeRecord(final LogRecord lr, final Map data) {
+        if(null!=data){
             printstream.println(getHtFormatter().format(lr,data))
+        }else{
+            printstream.println(getFormatter().format(lr))
         }
+        writeIndexed(lr,data)
+    }
+    private void flushOutput() {
+        printstream.flush()
+        if(null!=logWriter){
+            try{
+                logWriter.flush()
+            }catch(IOException e){
+                indexedLogFailed("write", e)
+            }
+        }
+    }
+    /**
+     * Write the record to the indexed log. If it fails the indexed log is removed, so that readers use the text log
+     */
+    private void writeIndexed(final LogRecord lr, final Map data) {
+        if(null==logWriter){
+            return
+        }
+        String mesg = lr.getMessage()
+        while(mesg.endsWith('\r')){
+            mesg = mesg.substring(0,mesg.length()-1)
+        }
+        try{
+            logWriter.write(new ExecutionLogEntry(lr.getMillis(), lr.getLevel().toString(), data?.user, data?.module,
+                data?.command, data?.node, data?.context, mesg))
+        }catch(IOException e){
+            indexedLogFailed("write", e)
+        }
+    }
+    /**
+     * Stop writing the indexed log and remove it.  The writer is cleared before the failure is reported, so that
+     * output produced while reporting it is not written to the indexed log again
+     */
+    private void indexedLogFailed(final String action, final Exception e) {
+        def writer = logWriter
+        logWriter=null
+        try{
+            writer?.close()
+        }catch(IOException e2){
+        }
+        removeIndexedLog()
+        internalLog.error("Unable to ${action} indexed log for ${outfile}: ${e}")
+    }
+    private void removeIndexedLog(){
+        def logfile = ExecutionLogWriter.logFileFor(outfile)
+        ExecutionLogWriter.indexFileFor(logfile).delete()
+        logfile.delete()
     }
     public HtFormatter getHtFormatter(){
         return (HtFormatter)getFormatter()
@@ -1952,14 +2505,27 @@ class HtTableLogger extends Handler implements LogHandler, BuildLogger, CLIToolL
     public void close() {
         if(!closed ){
             closed=true;
+            //write and flush the queued records
+            asyncWriter?.close()
             if(null!=getFormatter()){
                 printstream.println (getFormatter().getTail(this))
             }
-            flush()
+            flushOutput()
 
             this.printstream.close()
+            if(null!=logWriter){
+                def writer = logWriter
+                logWriter=null
+                try{
+                    writer.close()
+                }catch(IOException e){
+                    removeIndexedLog()
+                    internalLog.error("Unable to close indexed log for ${outfile}: ${e}")
+                }
+            }
             def Logger logger = Logger.getLogger(namespace)
             logger.removeHandler(this);
+            appendNotifier?.close()
         }
     }
     public void flush() {
@@ -2015,10 +2581,18 @@ class HtFormatter extends java.util.logging.Formatter{
         
     }
     def SimpleDateFormat fmt = new SimpleDateFormat("hh:mm:ss");
+    /**
+     * Format the time, records may be formatted by several threads at once if there is no writer thread
+     */
+    private String formatDate(Date d){
+        synchronized(fmt){
+            return fmt.format(d)
+        }
+    }
     public String format(LogRecord record,Map data){
 
         def Date d = new Date(record.getMillis());
-        def String dDate = fmt.format(d);
+        def String dDate = formatDate(d);
         String dMesg = record.getMessage();
         while(dMesg.endsWith('\r')){
             dMesg = dMesg.substring(0,dMesg.length()-1)
@@ -2048,7 +2622,7 @@ class HtFormatter extends java.util.logging.Formatter{
     public String format(LogRecord record){
 
         def Date d = new Date(record.getMillis());
-        def String dDate = fmt.format(d);
+        def String dDate = formatDate(d);
         String dMesg = record.getMessage();
         while(dMesg.endsWith('\r')){
             dMesg = dMesg.substring(0,dMesg.length()-1)
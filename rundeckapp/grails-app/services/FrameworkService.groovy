@@ -53,6 +53,7 @@ class FrameworkService implements ApplicationContextAware {
         
         depsdir= props.getProperty("framework.projects.dir")
         log.warn("rdeck.base is: "+rundeckbase)
+        getSharedFramework(rundeckbase)
 
         initialized = true 
     }
@@ -110,18 +111,38 @@ class FrameworkService implements ApplicationContextAware {
     def getFrameworkForUserAndRoles(String user, List rolelist){
         return getFrameworkForUserAndRoles(user, rolelist, getRundeckBase())
     }
+    /**
+     * Return a Framework for the user and roles. This is a lightweight view of the Framework shared by all users, which
+     * only carries the user's authentication and authorization.
+     */
     public static Framework getFrameworkForUserAndRoles(String user, List rolelist, String rundeckbase){
-        def Framework fw = Framework.getInstance(rundeckbase)
+        def Framework shared = getSharedFramework(rundeckbase)
+        def authen = null
+        def author = null
         if(null!=user && null != rolelist){
-            def authen = new SingleUserAuthentication(user,"")
-            def author = new SingleUserAclsAuthorization(fw,new File(Constants.getFrameworkConfigDir(rundeckbase)), user, rolelist.toArray(new String[0]))
-            fw.setAuthenticationMgr(authen)
-            fw.setAuthorizationMgr(author)
+            authen = new SingleUserAuthentication(user,"")
+            author = new SingleUserAclsAuthorization(shared,new File(Constants.getFrameworkConfigDir(rundeckbase)), user, rolelist.toArray(new String[0]))
         }
+        def Framework fw = shared.createView(authen, author)
         fw.setAllowUserInput(false)
         return fw
     }
 
+    private static Map<String,Framework> sharedFrameworks = new HashMap<String,Framework>()
+
+    /**
+     * Return the Framework shared by all users for the rundeck base dir, which is created on first use.  The
+     * framework.properties configuration is read and the framework services are created only once.
+     */
+    public static synchronized Framework getSharedFramework(String rundeckbase){
+        def Framework fw = sharedFrameworks.get(rundeckbase)
+        if(null==fw){
+            fw = Framework.getInstance(rundeckbase)
+            sharedFrameworks.put(rundeckbase, fw)
+        }
+        return fw
+    }
+
     def List getUserRoleList(request, List availableRoles){
         List rolelist = availableRoles.findAll {request.isUserInRole(it)}
         return rolelist
@@ -3,7 +3,11 @@ class ReportService  {
 
     def grailsApplication
 
-    public Map reportExecutionResult(Map fields) {
+    /**
+     * Create a report
+     * @param flush if false, the report is saved when the current session is flushed
+     */
+    public Map reportExecutionResult(Map fields, boolean flush=true) {
         /**
          * allowed fields are specified
          */
@@ -42,7 +46,7 @@ class ReportService  {
 
         //TODO: authorize event creation?
 
-        if (rep && !rep.save(flush: true)) {
+        if (rep && !rep.save(flush: flush)) {
 //            System.err.println("error saving report: ${fields}")
 //            rep.errors.allErrors.each {
 //                System.err.println(it)
@@ -160,16 +164,26 @@ class ReportService  {
         filters.putAll(eqfilters)
 
 
+        def max = query?.max ? query.max.toInteger() : grailsApplication.config.reportservice.pagination.default ? grailsApplication.config.reportservice.pagination.default.toInteger() : 20
+        //keyset pagination: continue after the given report, when sorted by completion date
+        def keyset = query?.beforeTime && !(query.sortBy && filters[query.sortBy])
+
         def crit = BaseReport.createCriteria()
         def runlist = crit.list{
-            if(query?.max){
-                maxResults(query?.max.toInteger())
-            }else{
-                maxResults(grailsApplication.config.reportservice.pagination.default?grailsApplication.config.reportservice.pagination.default.toInteger():20)
-            }
-            if(query?.offset){
+            maxResults(max)
+            if(query?.offset && !keyset){
                 firstResult(query.offset.toInteger())
             }
+            if(keyset){
+                def before = new Date(query.beforeTime)
+                or{
+                    lt('dateCompleted', before)
+                    and{
+                        eq('dateCompleted', before)
+                        lt('id', query.beforeId ?: Long.MAX_VALUE)
+                    }
+                }
+            }
 
             if(query ){
                 txtfilters.each{ key,val ->
@@ -212,6 +226,7 @@ class ReportService  {
                 order(filters[query.sortBy],query.sortOrder=='ascending'?'asc':'desc')
             }else{
                 order("dateCompleted",'desc')
+                order("id",'desc')
             }
 
         };
@@ -223,6 +238,11 @@ class ReportService  {
                 lastDate=it.dateCompleted.time
             }
         }
+        def nextPage=null
+        if(executions.size() >= max && !(query?.sortBy && filters[query.sortBy])){
+            def last = executions[-1]
+            nextPage = [beforeTime: last.dateCompleted.time, beforeId: last.id]
+        }
 
         def total=countCombinedReports(query);
         filters.remove('proj')
@@ -232,6 +252,8 @@ class ReportService  {
             reports:executions,
             total: total,
             lastDate:lastDate,
+            nextPage:nextPage,
+            keyset:keyset ? true : false,
             _filters:filters
             ]
 	}
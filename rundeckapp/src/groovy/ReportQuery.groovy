@@ -51,6 +51,12 @@ class ReportQuery extends BaseQuery{
     String reportIdFilter
     String tagsFilter
     String abortedByFilter
+    /**
+     * Keyset pagination: list the reports completed before this time (in ms), or at this time with an id lower than
+     * beforeId, instead of using offset
+     */
+    Long beforeTime
+    Long beforeId
 
     public void configureFilter(){
         if(recentFilter){
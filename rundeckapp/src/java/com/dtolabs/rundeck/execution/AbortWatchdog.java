@@ -0,0 +1,153 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* AbortWatchdog.java
+*
+*/
+package com.dtolabs.rundeck.execution;
+
+import com.dtolabs.rundeck.core.execution.ServiceThreadBase;
+import org.apache.log4j.Logger;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AbortWatchdog aborts execution threads, and makes sure they finish.  An aborted thread is interrupted again at each
+ * check interval while it is running, and if it is still running after the stop delay it is stopped with {@link
+ * Thread#stop()}, so that a thread blocked in a call which ignores interrupts does not keep running, and holding its
+ * admission slot, forever.  A stop delay of 0 means aborted threads are never stopped.
+ */
+public class AbortWatchdog {
+    static Logger logger = Logger.getLogger(AbortWatchdog.class.getName());
+    private final ScheduledExecutorService scheduler;
+    private final ConcurrentHashMap<ServiceThreadBase, Long> watched = new ConcurrentHashMap<ServiceThreadBase, Long>();
+    private final AtomicLong stopCount = new AtomicLong();
+    private volatile long stopAfter;
+    private volatile long checkInterval;
+
+    /**
+     * Create a watchdog
+     *
+     * @param stopAfter     time in milliseconds after the abort before a running thread is stopped, or 0
+     * @param checkInterval time in milliseconds between checks of an aborted thread
+     */
+    public AbortWatchdog(final long stopAfter, final long checkInterval) {
+        setStopAfter(stopAfter);
+        setCheckInterval(checkInterval);
+        scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "AbortWatchdog");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Abort the thread, and watch it until it has finished
+     *
+     * @param thread the thread
+     */
+    public void abort(final ServiceThreadBase thread) {
+        thread.abort();
+        if (!thread.isAlive()) {
+            return;
+        }
+        if (null != watched.putIfAbsent(thread, System.currentTimeMillis())) {
+            //already watched
+            return;
+        }
+        schedule(thread);
+    }
+
+    private void schedule(final ServiceThreadBase thread) {
+        scheduler.schedule(new Runnable() {
+            public void run() {
+                check(thread);
+            }
+        }, checkInterval, TimeUnit.MILLISECONDS);
+    }
+
+    @SuppressWarnings("deprecation")
+    private void check(final ServiceThreadBase thread) {
+        final Long aborted = watched.get(thread);
+        if (null == aborted) {
+            return;
+        }
+        if (!thread.isAlive()) {
+            watched.remove(thread);
+            return;
+        }
+        if (stopAfter > 0 && System.currentTimeMillis() - aborted >= stopAfter) {
+            watched.remove(thread);
+            logger.warn("Execution thread " + thread.getName() + " did not finish " + stopAfter
+                        + "ms after it was aborted, stopping it");
+            stopCount.incrementAndGet();
+            try {
+                thread.stop();
+            } catch (Throwable t) {
+                logger.error("Unable to stop execution thread " + thread.getName() + ": " + t.getMessage(), t);
+            }
+            return;
+        }
+        thread.abort();
+        schedule(thread);
+    }
+
+    /**
+     * Stop watching threads
+     */
+    public void shutdown() {
+        scheduler.shutdownNow();
+        watched.clear();
+    }
+
+    /**
+     * Return the number of aborted threads which have not finished
+     */
+    public int getWatchedCount() {
+        return watched.size();
+    }
+
+    /**
+     * Return the number of threads which were stopped
+     */
+    public long getStopCount() {
+        return stopCount.get();
+    }
+
+    public long getStopAfter() {
+        return stopAfter;
+    }
+
+    public void setStopAfter(final long stopAfter) {
+        this.stopAfter = stopAfter > 0 ? stopAfter : 0;
+    }
+
+    public long getCheckInterval() {
+        return checkInterval;
+    }
+
+    public void setCheckInterval(final long checkInterval) {
+        this.checkInterval = checkInterval > 0 ? checkInterval : 1;
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* AsyncLogWriter.java
+*
+*/
+package com.dtolabs.rundeck.execution;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * AsyncLogWriter accepts log records from any number of threads without locking, and writes them with a single
+ * writer thread to a {@link RecordWriter}, which buffers its output.  The output is flushed after each group of
+ * records: the writer waits until the flush size is reached or the flush interval has elapsed, then writes up to the
+ * flush size of the queued records and flushes them together.
+ * <p/>
+ * {@link #close()} waits until every record accepted by {@link #submit(Object)} has been written and flushed.
+ */
+public class AsyncLogWriter<T> {
+    static Logger logger = Logger.getLogger(AsyncLogWriter.class.getName());
+    private final ConcurrentLinkedQueue<T> queue = new ConcurrentLinkedQueue<T>();
+    private final AtomicInteger pending = new AtomicInteger();
+    /**
+     * Number of threads within submit, which close waits for so that no record is queued after the last drain
+     */
+    private final AtomicInteger submitting = new AtomicInteger();
+    private final AtomicLong writtenCount = new AtomicLong();
+    private final AtomicLong flushCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private final RecordWriter<T> recordWriter;
+    private final Runnable onFlush;
+    private final int flushSize;
+    private final long flushInterval;
+    private final Thread writer;
+    private volatile boolean closed;
+
+    /**
+     * Writes records to buffered output
+     */
+    public static interface RecordWriter<T> {
+        /**
+         * Write a record
+         *
+         * @param record the record
+         *
+         * @throws IOException if the record cannot be written
+         */
+        public void write(T record) throws IOException;
+
+        /**
+         * Flush the written records
+         *
+         * @throws IOException if the output cannot be flushed
+         */
+        public void flush() throws IOException;
+    }
+
+    /**
+     * Create a writer and start its writer thread
+     *
+     * @param name          name of the writer thread
+     * @param recordWriter  writes the records
+     * @param flushSize     maximum number of records written before the output is flushed
+     * @param flushInterval maximum time in milliseconds a record is queued before it is written
+     * @param onFlush       run by the writer thread after each flush, or null
+     */
+    public AsyncLogWriter(final String name, final RecordWriter<T> recordWriter, final int flushSize,
+                          final long flushInterval, final Runnable onFlush) {
+        this.recordWriter = recordWriter;
+        this.flushSize = flushSize > 0 ? flushSize : 1;
+        this.flushInterval = flushInterval > 0 ? flushInterval : 1;
+        this.onFlush = onFlush;
+        writer = new Thread(name) {
+            public void run() {
+                writeQueued();
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Queue a record to be written
+     *
+     * @param record the record
+     *
+     * @return false if the writer is closed and the record was not queued
+     */
+    public boolean submit(final T record) {
+        submitting.incrementAndGet();
+        try {
+            if (closed) {
+                return false;
+            }
+            queue.offer(record);
+            if (pending.incrementAndGet() == flushSize) {
+                LockSupport.unpark(writer);
+            }
+            return true;
+        } finally {
+            submitting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Write and flush all queued records, and stop the writer thread.  This waits for the writer thread even if the
+     * calling thread is interrupted, so that the output is complete when an execution is aborted.
+     */
+    public void close() {
+        closed = true;
+        //threads which had not seen the closed flag finish queueing their records
+        while (submitting.get() > 0) {
+            Thread.yield();
+        }
+        LockSupport.unpark(writer);
+        if (Thread.currentThread() == writer) {
+            return;
+        }
+        boolean interrupted = false;
+        while (writer.isAlive()) {
+            try {
+                writer.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        //write records queued after the writer thread saw the closed flag
+        while (writeGroup() > 0) {
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void writeQueued() {
+        final long intervalNanos = flushInterval * 1000000L;
+        while (true) {
+            if (!closed && pending.get() < flushSize) {
+                LockSupport.parkNanos(this, intervalNanos);
+            }
+            //records queued before the closed flag was seen are written before the thread finishes
+            final boolean finish = closed;
+            while (writeGroup() >= flushSize) {
+            }
+            if (finish) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Write up to the flush size of queued records and flush them
+     *
+     * @return the number of records written
+     */
+    private int writeGroup() {
+        int count = 0;
+        T record;
+        while (count < flushSize && null != (record = queue.poll())) {
+            count++;
+            try {
+                recordWriter.write(record);
+            } catch (Throwable t) {
+                failureCount.incrementAndGet();
+                logger.error("Failed to write log record: " + t.getMessage(), t);
+            }
+        }
+        if (count < 1) {
+            return 0;
+        }
+        pending.addAndGet(-count);
+        try {
+            recordWriter.flush();
+        } catch (Throwable t) {
+            failureCount.incrementAndGet();
+            logger.error("Failed to flush log: " + t.getMessage(), t);
+        }
+        writtenCount.addAndGet(count);
+        flushCount.incrementAndGet();
+        if (null != onFlush) {
+            try {
+                onFlush.run();
+            } catch (Throwable t) {
+                logger.error("Log flush listener failed: " + t.getMessage(), t);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Return the number of queued records which have not been written
+     */
+    public int getPending() {
+        return pending.get();
+    }
+
+    /**
+     * Return the number of records written
+     */
+    public long getWrittenCount() {
+        return writtenCount.get();
+    }
+
+    /**
+     * Return the number of times the output was flushed
+     */
+    public long getFlushCount() {
+        return flushCount.get();
+    }
+
+    /**
+     * Return the number of records or flushes which failed
+     */
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+}
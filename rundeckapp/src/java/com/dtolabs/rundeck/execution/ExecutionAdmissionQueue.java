@@ -0,0 +1,333 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* ExecutionAdmissionQueue.java
+*
+*/
+package com.dtolabs.rundeck.execution;
+
+import org.apache.log4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * ExecutionAdmissionQueue limits the number of executions running at once, in total, per project and per Job.  An
+ * execution which can not be admitted when it is submitted is queued, and is started when running executions are
+ * released.  Queued executions are started in order of priority, then in order of submission, but an execution
+ * which is blocked by a project or Job limit does not hold up other queued executions.  A limit of 0 means no limit.
+ */
+public class ExecutionAdmissionQueue {
+    static Logger logger = Logger.getLogger(ExecutionAdmissionQueue.class.getName());
+    private int maxRunning;
+    private int maxRunningPerProject;
+    private int maxRunningPerJob;
+    private final Executor executor;
+
+    private final TreeSet<Pending> queue = new TreeSet<Pending>();
+    private final HashMap<Long, Pending> queued = new HashMap<Long, Pending>();
+    private final HashMap<Long, Pending> running = new HashMap<Long, Pending>();
+    private final HashMap<String, Integer> runningPerProject = new HashMap<String, Integer>();
+    private final HashMap<Long, Integer> runningPerJob = new HashMap<Long, Integer>();
+    private long sequence = 0;
+
+    private static class Pending implements Comparable<Pending> {
+        final Long id;
+        final String project;
+        final Long jobId;
+        final int priority;
+        final long sequence;
+        final Runnable starter;
+
+        Pending(final Long id, final String project, final Long jobId, final int priority, final long sequence,
+                final Runnable starter) {
+            this.id = id;
+            this.project = project;
+            this.jobId = jobId;
+            this.priority = priority;
+            this.sequence = sequence;
+            this.starter = starter;
+        }
+
+        public int compareTo(final Pending o) {
+            if (priority != o.priority) {
+                return priority > o.priority ? -1 : 1;
+            }
+            return sequence < o.sequence ? -1 : sequence == o.sequence ? 0 : 1;
+        }
+    }
+
+    public ExecutionAdmissionQueue() {
+        this(0, 0, 0);
+    }
+
+    /**
+     * Create a queue with the limits
+     *
+     * @param maxRunning           maximum running executions, or 0
+     * @param maxRunningPerProject maximum running executions for a project, or 0
+     * @param maxRunningPerJob     maximum running executions for a Job, or 0
+     */
+    public ExecutionAdmissionQueue(final int maxRunning, final int maxRunningPerProject, final int maxRunningPerJob) {
+        this(maxRunning, maxRunningPerProject, maxRunningPerJob, null);
+    }
+
+    /**
+     * Create a queue with the limits, which runs the starters of queued executions with the executor
+     *
+     * @param maxRunning           maximum running executions, or 0
+     * @param maxRunningPerProject maximum running executions for a project, or 0
+     * @param maxRunningPerJob     maximum running executions for a Job, or 0
+     * @param executor             runs the starters of admitted executions, or null to run them in the thread which
+     *                             releases an execution
+     */
+    public ExecutionAdmissionQueue(final int maxRunning, final int maxRunningPerProject, final int maxRunningPerJob,
+                                   final Executor executor) {
+        this.maxRunning = maxRunning;
+        this.maxRunningPerProject = maxRunningPerProject;
+        this.maxRunningPerJob = maxRunningPerJob;
+        this.executor = executor;
+    }
+
+    /**
+     * Return an executor which runs starters in order on a single daemon thread
+     */
+    public static ExecutorService createStarterExecutor() {
+        return Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "ExecutionAdmissionQueue-starter");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Submit an execution.  If it can be admitted it is recorded as running and true is returned, and the caller must
+     * start it.  Otherwise it is queued and false is returned, and the starter is run by the executor when the
+     * execution is admitted.
+     *
+     * @param id       execution ID
+     * @param project  project name
+     * @param jobId    Job ID, or null
+     * @param priority priority, higher values are started first
+     * @param starter  starts the execution if it is queued
+     *
+     * @return true if the execution was admitted
+     */
+    public boolean submit(final Long id, final String project, final Long jobId, final int priority,
+                          final Runnable starter) {
+        synchronized (this) {
+            final Pending pending = new Pending(id, project, jobId, priority, sequence++, starter);
+            if (canAdmit(pending)) {
+                admit(pending);
+                return true;
+            }
+            queue.add(pending);
+            queued.put(id, pending);
+            logger.info("execution queued: " + id + ", position: " + queue.headSet(pending).size());
+            return false;
+        }
+    }
+
+    /**
+     * Release a running execution, and start any queued executions which can then be admitted
+     *
+     * @param id execution ID
+     */
+    public void release(final Long id) {
+        synchronized (this) {
+            final Pending pending = running.remove(id);
+            if (null == pending) {
+                return;
+            }
+            decrement(runningPerProject, pending.project);
+            if (null != pending.jobId) {
+                decrement(runningPerJob, pending.jobId);
+            }
+        }
+        startAdmitted();
+    }
+
+    /**
+     * Remove a queued execution without starting it
+     *
+     * @param id execution ID
+     *
+     * @return true if the execution was queued
+     */
+    public boolean remove(final Long id) {
+        synchronized (this) {
+            final Pending pending = queued.remove(id);
+            if (null == pending) {
+                return false;
+            }
+            queue.remove(pending);
+            return true;
+        }
+    }
+
+    /**
+     * Change the limits, and start any queued executions which can then be admitted
+     *
+     * @param maxRunning           maximum running executions, or 0
+     * @param maxRunningPerProject maximum running executions for a project, or 0
+     * @param maxRunningPerJob     maximum running executions for a Job, or 0
+     */
+    public void setLimits(final int maxRunning, final int maxRunningPerProject, final int maxRunningPerJob) {
+        synchronized (this) {
+            this.maxRunning = maxRunning;
+            this.maxRunningPerProject = maxRunningPerProject;
+            this.maxRunningPerJob = maxRunningPerJob;
+        }
+        startAdmitted();
+    }
+
+    /**
+     * Admit queued executions in order, and run their starters with the executor
+     */
+    private void startAdmitted() {
+        final List<Pending> admitted = new ArrayList<Pending>();
+        synchronized (this) {
+            for (final Iterator<Pending> iter = queue.iterator(); iter.hasNext();) {
+                if (maxRunning > 0 && running.size() >= maxRunning) {
+                    break;
+                }
+                final Pending pending = iter.next();
+                if (canAdmit(pending)) {
+                    iter.remove();
+                    queued.remove(pending.id);
+                    admit(pending);
+                    admitted.add(pending);
+                }
+            }
+        }
+        for (final Pending pending : admitted) {
+            if (null == executor) {
+                start(pending);
+                continue;
+            }
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        start(pending);
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                //the executor has been shut down
+                logger.error("Failed to start queued execution: " + pending.id + ": " + e.getMessage(), e);
+                release(pending.id);
+            }
+        }
+    }
+
+    /**
+     * Run the starter, and release the execution if it fails
+     */
+    private void start(final Pending pending) {
+        logger.info("starting queued execution: " + pending.id);
+        try {
+            pending.starter.run();
+        } catch (Throwable t) {
+            logger.error("Failed to start queued execution: " + pending.id + ": " + t.getMessage(), t);
+            release(pending.id);
+        }
+    }
+
+    private boolean canAdmit(final Pending pending) {
+        if (maxRunning > 0 && running.size() >= maxRunning) {
+            return false;
+        }
+        if (maxRunningPerProject > 0 && count(runningPerProject, pending.project) >= maxRunningPerProject) {
+            return false;
+        }
+        return !(null != pending.jobId && maxRunningPerJob > 0
+                 && count(runningPerJob, pending.jobId) >= maxRunningPerJob);
+    }
+
+    private void admit(final Pending pending) {
+        running.put(pending.id, pending);
+        runningPerProject.put(pending.project, count(runningPerProject, pending.project) + 1);
+        if (null != pending.jobId) {
+            runningPerJob.put(pending.jobId, count(runningPerJob, pending.jobId) + 1);
+        }
+    }
+
+    private static <K> int count(final Map<K, Integer> counts, final K key) {
+        final Integer count = counts.get(key);
+        return null != count ? count : 0;
+    }
+
+    private static <K> void decrement(final Map<K, Integer> counts, final K key) {
+        final int count = count(counts, key);
+        if (count > 1) {
+            counts.put(key, count - 1);
+        } else {
+            counts.remove(key);
+        }
+    }
+
+    /**
+     * Return true if the execution is queued
+     *
+     * @param id execution ID
+     */
+    public synchronized boolean isQueued(final Long id) {
+        return queued.containsKey(id);
+    }
+
+    /**
+     * Return the IDs of queued executions, in the order they will be considered for starting
+     */
+    public synchronized List<Long> getQueued() {
+        final ArrayList<Long> ids = new ArrayList<Long>(queue.size());
+        for (final Pending pending : queue) {
+            ids.add(pending.id);
+        }
+        return ids;
+    }
+
+    /**
+     * Return the number of queued executions
+     */
+    public synchronized int getQueuedCount() {
+        return queue.size();
+    }
+
+    /**
+     * Return the number of running executions
+     */
+    public synchronized int getRunningCount() {
+        return running.size();
+    }
+
+    public synchronized int getMaxRunning() {
+        return maxRunning;
+    }
+
+    public synchronized int getMaxRunningPerProject() {
+        return maxRunningPerProject;
+    }
+
+    public synchronized int getMaxRunningPerJob() {
+        return maxRunningPerJob;
+    }
+}
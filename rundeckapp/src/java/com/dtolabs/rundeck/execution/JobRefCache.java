@@ -0,0 +1,157 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* JobRefCache.java
+*
+*/
+package com.dtolabs.rundeck.execution;
+
+import com.dtolabs.rundeck.core.execution.workflow.WorkflowExecutionItem;
+import com.dtolabs.rundeck.core.utils.NodeSet;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * JobRefCache holds the referenced Jobs resolved by Job reference steps during a single execution, so that a Job
+ * reference run for many nodes loads the Job once. Each Job is loaded by the first thread to request it, other threads
+ * requesting the same Job wait for that result.  A failed load is not cached.
+ */
+public class JobRefCache {
+    private final ConcurrentHashMap<String, FutureTask<Entry>> entries =
+        new ConcurrentHashMap<String, FutureTask<Entry>>();
+
+    /**
+     * A resolved Job, with the data needed to execute it detached from the database session.
+     */
+    public static class Entry {
+        private final Long id;
+        private final WorkflowExecutionItem item;
+        private final Map<String, String> jobContext;
+        private final String project;
+        private final String argString;
+        private final NodeSet nodeSet;
+        private final int loglevel;
+        private final Map<String, String> optionDefaults;
+        private final String user;
+
+        /**
+         * Create an entry
+         *
+         * @param id             job ID
+         * @param item           workflow item for the job
+         * @param jobContext     job data context
+         * @param project        project name
+         * @param argString      argString defined for the job, or null
+         * @param nodeSet        node set for the job
+         * @param loglevel       log level
+         * @param optionDefaults default values of required options
+         * @param user           user login
+         */
+        public Entry(final Long id, final WorkflowExecutionItem item, final Map<String, String> jobContext,
+                     final String project, final String argString, final NodeSet nodeSet, final int loglevel,
+                     final Map<String, String> optionDefaults, final String user) {
+            this.id = id;
+            this.item = item;
+            this.jobContext = Collections.unmodifiableMap(jobContext);
+            this.project = project;
+            this.argString = argString;
+            this.nodeSet = nodeSet;
+            this.loglevel = loglevel;
+            this.optionDefaults = Collections.unmodifiableMap(optionDefaults);
+            this.user = user;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public WorkflowExecutionItem getItem() {
+            return item;
+        }
+
+        public Map<String, String> getJobContext() {
+            return jobContext;
+        }
+
+        public String getProject() {
+            return project;
+        }
+
+        public String getArgString() {
+            return argString;
+        }
+
+        public NodeSet getNodeSet() {
+            return nodeSet;
+        }
+
+        public int getLoglevel() {
+            return loglevel;
+        }
+
+        public Map<String, String> getOptionDefaults() {
+            return optionDefaults;
+        }
+
+        public String getUser() {
+            return user;
+        }
+    }
+
+    /**
+     * Return the cached entry for the key, or load it
+     *
+     * @param key    cache key
+     * @param loader loads the entry if it is not cached
+     *
+     * @return the entry
+     *
+     * @throws Exception if the loader throws an exception
+     */
+    public Entry get(final String key, final Callable<Entry> loader) throws Exception {
+        FutureTask<Entry> task = entries.get(key);
+        if (null == task) {
+            final FutureTask<Entry> newtask = new FutureTask<Entry>(loader);
+            task = entries.putIfAbsent(key, newtask);
+            if (null == task) {
+                task = newtask;
+                newtask.run();
+            }
+        }
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            entries.remove(key, task);
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * Return the number of cached entries
+     */
+    public int size() {
+        return entries.size();
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* LiveExecutionRegistry.java
+*
+*/
+package com.dtolabs.rundeck.execution;
+
+import com.dtolabs.rundeck.core.execution.workflow.NodeRecorder;
+
+import java.io.File;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * LiveExecutionRegistry holds the state of executions which are queued or running in this server, so that lists of
+ * running executions do not need to query the database.  An execution is registered when it is submitted, is updated
+ * when it starts and completes, and is removed once its final state has been saved.
+ * <p/>
+ * The version is incremented each time an execution is added, started, completed or removed, so that a client can
+ * tell whether the set of running executions has changed.  It starts at the time the registry is created, so that a
+ * version seen before a restart is not reused after it.  Node progress and log size are read from the running
+ * execution and do not change the version.
+ */
+public class LiveExecutionRegistry {
+    private final ConcurrentHashMap<Long, LiveExecution> executions = new ConcurrentHashMap<Long, LiveExecution>();
+    private final AtomicLong version = new AtomicLong(System.currentTimeMillis());
+
+    /**
+     * The state of a queued or running execution
+     */
+    public static class LiveExecution {
+        private final Long id;
+        private final Long jobId;
+        private final String jobName;
+        private final String project;
+        private final String user;
+        private volatile Date dateStarted;
+        private volatile boolean started;
+        private volatile String outputfilepath;
+        private volatile NodeRecorder nodeRecorder;
+        private volatile OutputAppendNotifier outputNotifier;
+        private volatile Date dateCompleted;
+        private volatile String status;
+        private volatile boolean cancelled;
+
+        LiveExecution(final Long id, final Long jobId, final String jobName, final String project,
+                      final String user, final Date dateStarted) {
+            this.id = id;
+            this.jobId = jobId;
+            this.jobName = jobName;
+            this.project = project;
+            this.user = user;
+            this.dateStarted = dateStarted;
+        }
+
+        public Long getId() {
+            return id;
+        }
+
+        public Long getJobId() {
+            return jobId;
+        }
+
+        public String getJobName() {
+            return jobName;
+        }
+
+        public String getProject() {
+            return project;
+        }
+
+        public String getUser() {
+            return user;
+        }
+
+        public Date getDateStarted() {
+            return dateStarted;
+        }
+
+        /**
+         * Return true if the execution has started, false if it is queued
+         */
+        public boolean isStarted() {
+            return started;
+        }
+
+        /**
+         * Return true if the execution has not completed
+         */
+        public boolean isRunning() {
+            return null == dateCompleted;
+        }
+
+        public String getOutputfilepath() {
+            return outputfilepath;
+        }
+
+        /**
+         * Return the notifier for output written by the execution, or null if it has not started
+         */
+        public OutputAppendNotifier getOutputNotifier() {
+            return outputNotifier;
+        }
+
+        public Date getDateCompleted() {
+            return dateCompleted;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Return the comma separated names of the nodes which have failed so far, or null
+         */
+        public String getFailedNodeList() {
+            final NodeRecorder recorder = nodeRecorder;
+            if (null == recorder) {
+                return null;
+            }
+            final Set<String> failed = recorder.getFailedNodes().keySet();
+            if (failed.isEmpty()) {
+                return null;
+            }
+            final StringBuilder sb = new StringBuilder();
+            for (final String node : failed) {
+                if (sb.length() > 0) {
+                    sb.append(",");
+                }
+                sb.append(node);
+            }
+            return sb.toString();
+        }
+
+        /**
+         * Return the number of nodes matched by the execution
+         */
+        public int getMatchedNodeCount() {
+            final NodeRecorder recorder = nodeRecorder;
+            return null != recorder ? recorder.getMatchedNodes().size() : 0;
+        }
+
+        /**
+         * Return the number of nodes which have completed a dispatch
+         */
+        public int getCompletedNodeCount() {
+            final NodeRecorder recorder = nodeRecorder;
+            return null != recorder ? recorder.getCompletedNodes().size() : 0;
+        }
+
+        /**
+         * Return the number of nodes which have failed
+         */
+        public int getFailedNodeCount() {
+            final NodeRecorder recorder = nodeRecorder;
+            return null != recorder ? recorder.getFailedNodes().size() : 0;
+        }
+
+        /**
+         * Return the size of the output file, or 0 if it does not exist
+         */
+        public long getOutputLength() {
+            final String path = outputfilepath;
+            return null != path ? new File(path).length() : 0;
+        }
+    }
+
+    private static final Comparator<LiveExecution> STARTED_DESC = new Comparator<LiveExecution>() {
+        public int compare(final LiveExecution a, final LiveExecution b) {
+            final long ta = null != a.dateStarted ? a.dateStarted.getTime() : 0;
+            final long tb = null != b.dateStarted ? b.dateStarted.getTime() : 0;
+            if (ta != tb) {
+                return ta > tb ? -1 : 1;
+            }
+            return b.id.compareTo(a.id);
+        }
+    };
+
+    /**
+     * Register an execution which has been submitted but not started
+     *
+     * @param id          execution ID
+     * @param jobId       Job ID, or null
+     * @param jobName     Job name, or null
+     * @param project     project name
+     * @param user        user name
+     * @param dateStarted start date
+     *
+     * @return the registered execution
+     */
+    public LiveExecution queued(final Long id, final Long jobId, final String jobName, final String project,
+                                final String user, final Date dateStarted) {
+        final LiveExecution live = new LiveExecution(id, jobId, jobName, project, user, dateStarted);
+        final LiveExecution existing = executions.putIfAbsent(id, live);
+        if (null != existing) {
+            return existing;
+        }
+        version.incrementAndGet();
+        return live;
+    }
+
+    /**
+     * Record that an execution has started, registering it if necessary
+     *
+     * @param id             execution ID
+     * @param jobId          Job ID, or null
+     * @param jobName        Job name, or null
+     * @param project        project name
+     * @param user           user name
+     * @param dateStarted    start date
+     * @param outputfilepath path of the output file
+     * @param nodeRecorder   records the node results of the execution
+     * @param outputNotifier notified when output is written, or null
+     *
+     * @return the registered execution
+     */
+    public LiveExecution started(final Long id, final Long jobId, final String jobName, final String project,
+                                 final String user, final Date dateStarted, final String outputfilepath,
+                                 final NodeRecorder nodeRecorder, final OutputAppendNotifier outputNotifier) {
+        LiveExecution live = executions.get(id);
+        if (null == live) {
+            final LiveExecution created = new LiveExecution(id, jobId, jobName, project, user, dateStarted);
+            live = executions.putIfAbsent(id, created);
+            if (null == live) {
+                live = created;
+            }
+        }
+        live.dateStarted = dateStarted;
+        live.outputfilepath = outputfilepath;
+        live.nodeRecorder = nodeRecorder;
+        live.outputNotifier = outputNotifier;
+        live.started = true;
+        version.incrementAndGet();
+        return live;
+    }
+
+    /**
+     * Record that an execution has completed.  It remains registered until it is removed.
+     *
+     * @param id            execution ID
+     * @param dateCompleted completion date
+     * @param status        result status
+     * @param cancelled     true if the execution was killed
+     */
+    public void completed(final Long id, final Date dateCompleted, final String status, final boolean cancelled) {
+        final LiveExecution live = executions.get(id);
+        if (null == live) {
+            return;
+        }
+        live.status = status;
+        live.cancelled = cancelled;
+        live.dateCompleted = null != dateCompleted ? dateCompleted : new Date();
+        version.incrementAndGet();
+    }
+
+    /**
+     * Remove an execution
+     *
+     * @param id execution ID
+     */
+    public void remove(final Long id) {
+        if (null != executions.remove(id)) {
+            version.incrementAndGet();
+        }
+    }
+
+    /**
+     * Return the registered execution, or null
+     *
+     * @param id execution ID
+     */
+    public LiveExecution get(final Long id) {
+        return executions.get(id);
+    }
+
+    /**
+     * Return the executions which have not completed, most recently started first
+     */
+    public List<LiveExecution> getRunning() {
+        final ArrayList<LiveExecution> running = new ArrayList<LiveExecution>(executions.size());
+        for (final LiveExecution live : executions.values()) {
+            if (live.isRunning()) {
+                running.add(live);
+            }
+        }
+        Collections.sort(running, STARTED_DESC);
+        return running;
+    }
+
+    /**
+     * Return a map of Job ID to the ID of an execution of the Job which has not completed
+     */
+    public Map<Long, Long> getRunningJobs() {
+        final HashMap<Long, Long> jobs = new HashMap<Long, Long>();
+        for (final LiveExecution live : executions.values()) {
+            if (null != live.jobId && live.isRunning()) {
+                jobs.put(live.jobId, live.id);
+            }
+        }
+        return jobs;
+    }
+
+    /**
+     * Return the number of registered executions, including completed executions which have not been removed
+     */
+    public int size() {
+        return executions.size();
+    }
+
+    /**
+     * Return the version, which changes when executions are added, started, completed or removed
+     */
+    public long getVersion() {
+        return version.get();
+    }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* OutputAppendNotifier.java
+*
+*/
+package com.dtolabs.rundeck.execution;
+
+/**
+ * OutputAppendNotifier lets readers of an execution's output wait until more output has been written.  The writer
+ * calls {@link #appended()} after writing entries to the log, and {@link #close()} when the log is closed.  Each call
+ * increments a sequence number, so a reader can wait for any output written after the sequence it last saw.
+ */
+public class OutputAppendNotifier {
+    private long sequence;
+    private boolean closed;
+
+    /**
+     * Record that output has been written, and wake waiting readers
+     */
+    public synchronized void appended() {
+        sequence++;
+        notifyAll();
+    }
+
+    /**
+     * Record that the output is closed, and wake waiting readers
+     */
+    public synchronized void close() {
+        if (!closed) {
+            closed = true;
+            sequence++;
+            notifyAll();
+        }
+    }
+
+    /**
+     * Wait until output is written after the given sequence, the output is closed, or the timeout elapses
+     *
+     * @param since   the last sequence seen by the reader
+     * @param timeout maximum time to wait in milliseconds
+     *
+     * @return the current sequence, which is equal to since if no output was written
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized long awaitAppend(final long since, final long timeout) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + timeout;
+        while (sequence == since && !closed) {
+            final long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                break;
+            }
+            wait(remaining);
+        }
+        return sequence;
+    }
+
+    /**
+     * Return the current sequence
+     */
+    public synchronized long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Return true if the output is closed
+     */
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+}
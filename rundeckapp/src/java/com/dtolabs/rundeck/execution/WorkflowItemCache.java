@@ -0,0 +1,111 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* WorkflowItemCache.java
+*
+*/
+package com.dtolabs.rundeck.execution;
+
+import com.dtolabs.rundeck.core.execution.workflow.WorkflowExecutionItem;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WorkflowItemCache holds the workflow item created for each Job, so that running a Job does not create it from the
+ * stored workflow each time.  Each item is stored with a version key, which identifies the stored workflow it was
+ * created from, and is only returned for the same version key.  Items should also be removed when a Job is modified
+ * or deleted.
+ */
+public class WorkflowItemCache {
+    private final ConcurrentHashMap<Long, Entry> entries = new ConcurrentHashMap<Long, Entry>();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    private static class Entry {
+        final String version;
+        final WorkflowExecutionItem item;
+
+        Entry(final String version, final WorkflowExecutionItem item) {
+            this.version = version;
+            this.item = item;
+        }
+    }
+
+    /**
+     * Return the item for the Job if it was stored with the same version key
+     *
+     * @param id      Job ID
+     * @param version version key
+     *
+     * @return the item, or null
+     */
+    public WorkflowExecutionItem get(final Long id, final String version) {
+        final Entry entry = entries.get(id);
+        if (null != entry && entry.version.equals(version)) {
+            hitCount.incrementAndGet();
+            return entry.item;
+        }
+        missCount.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Store the item for the Job
+     *
+     * @param id      Job ID
+     * @param version version key
+     * @param item    the item
+     */
+    public void put(final Long id, final String version, final WorkflowExecutionItem item) {
+        entries.put(id, new Entry(version, item));
+    }
+
+    /**
+     * Remove the item for the Job
+     *
+     * @param id Job ID
+     */
+    public void remove(final Long id) {
+        entries.remove(id);
+    }
+
+    /**
+     * Remove all items
+     */
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    /**
+     * Return the number of lookups which found an item
+     */
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Return the number of lookups which did not find an item
+     */
+    public long getMissCount() {
+        return missCount.get();
+    }
+}
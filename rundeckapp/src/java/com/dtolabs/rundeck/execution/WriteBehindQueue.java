@@ -0,0 +1,325 @@
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+/*
+* WriteBehindQueue.java
+*
+*/
+package com.dtolabs.rundeck.execution;
+
+import org.apache.log4j.Logger;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * WriteBehindQueue runs persistence tasks on a single writer thread, grouping the tasks submitted within a short time
+ * into a batch which is run by a {@link BatchRunner}, typically within one transaction.  A batch is started when the
+ * first task is queued, and is run when it holds the maximum number of tasks or the maximum latency has elapsed.  If a
+ * batch fails each of its tasks is run again as a batch of its own, so that one failing task does not discard the
+ * others.
+ * <p/>
+ * Each task may have an "after" task, which is run by the writer thread once its task has been run successfully. The
+ * after task is not run if the task fails, including when the transaction of its batch fails.  A caller may wait until
+ * its task has been run.
+ */
+public class WriteBehindQueue {
+    static Logger logger = Logger.getLogger(WriteBehindQueue.class.getName());
+    /**
+     * A warning is logged each time the backlog grows by this number of tasks
+     */
+    static final int BACKLOG_WARNING = 1000;
+    private final LinkedBlockingQueue<Request> queue = new LinkedBlockingQueue<Request>();
+    private final BatchRunner runner;
+    private final AtomicInteger backlog = new AtomicInteger();
+    private final AtomicLong batchCount = new AtomicLong();
+    private final AtomicLong taskCount = new AtomicLong();
+    private final AtomicLong failureCount = new AtomicLong();
+    private volatile int maxBatchSize;
+    private volatile long maxLatency;
+    private volatile Thread writer;
+    private volatile boolean stopped;
+    /**
+     * Queued to wake the writer thread when it is stopped
+     */
+    private final Request stopRequest = new Request(null, null);
+
+    /**
+     * Runs a batch of tasks
+     */
+    public static interface BatchRunner {
+        /**
+         * Run the tasks, in order
+         *
+         * @param tasks the tasks
+         *
+         * @throws Exception if the batch fails
+         */
+        public void runBatch(List<Runnable> tasks) throws Exception;
+    }
+
+    private static class Request {
+        final Runnable task;
+        final Runnable after;
+        final CountDownLatch done = new CountDownLatch(1);
+        boolean succeeded;
+
+        Request(final Runnable task, final Runnable after) {
+            this.task = task;
+            this.after = after;
+        }
+    }
+
+    /**
+     * Create a queue
+     *
+     * @param runner       runs the batches
+     * @param maxBatchSize maximum number of tasks in a batch
+     * @param maxLatency   maximum time in milliseconds a task waits for the batch to fill
+     */
+    public WriteBehindQueue(final BatchRunner runner, final int maxBatchSize, final long maxLatency) {
+        this.runner = runner;
+        setMaxBatchSize(maxBatchSize);
+        setMaxLatency(maxLatency);
+    }
+
+    /**
+     * Start the writer thread
+     */
+    public synchronized void start() {
+        if (null != writer) {
+            return;
+        }
+        stopped = false;
+        writer = new Thread("WriteBehindQueue") {
+            public void run() {
+                write();
+            }
+        };
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Stop the writer thread, after the queued tasks have been run
+     *
+     * @param timeout maximum time in milliseconds to wait for the queued tasks
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void stop(final long timeout) throws InterruptedException {
+        final Thread thread;
+        synchronized (this) {
+            thread = writer;
+            stopped = true;
+        }
+        if (null == thread) {
+            return;
+        }
+        queue.put(stopRequest);
+        thread.join(timeout);
+        if (thread.isAlive()) {
+            logger.warn("WriteBehindQueue writer did not finish, backlog: " + backlog.get());
+            return;
+        }
+        synchronized (this) {
+            writer = null;
+        }
+        //run any tasks queued after the writer finished
+        final ArrayList<Request> remaining = new ArrayList<Request>();
+        queue.drainTo(remaining);
+        remaining.remove(stopRequest);
+        if (!remaining.isEmpty()) {
+            run(remaining, true);
+        }
+    }
+
+    /**
+     * Queue a task.  If the writer thread is not running or has been stopped, or this is the writer thread, the task
+     * is run by this thread.
+     *
+     * @param task  the task to run within a batch
+     * @param after task to run after the task has been run successfully, or null
+     * @param wait  if true, wait until the task has been run
+     *
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void submit(final Runnable task, final Runnable after, final boolean wait) throws InterruptedException {
+        final Request request = new Request(task, after);
+        final boolean inline;
+        synchronized (this) {
+            //checked under the lock of stop, so that a request is not queued after the queue has been drained
+            inline = null == writer || stopped || Thread.currentThread() == writer;
+            if (!inline) {
+                final int size = backlog.incrementAndGet();
+                if (size % BACKLOG_WARNING == 0) {
+                    logger.warn("WriteBehindQueue backlog: " + size);
+                }
+                queue.put(request);
+            }
+        }
+        if (inline) {
+            run(Collections.singletonList(request), false);
+            return;
+        }
+        if (wait) {
+            request.done.await();
+        }
+    }
+
+    private void write() {
+        final ArrayList<Request> batch = new ArrayList<Request>();
+        while (!stopped || !queue.isEmpty()) {
+            try {
+                final Request first = queue.take();
+                if (first != stopRequest) {
+                    batch.add(first);
+                }
+                final long deadline = System.currentTimeMillis() + maxLatency;
+                while (!batch.isEmpty() && batch.size() < maxBatchSize) {
+                    final long remaining = deadline - System.currentTimeMillis();
+                    final Request next = remaining > 0 && !stopped ? queue.poll(remaining, TimeUnit.MILLISECONDS)
+                                                                   : queue.poll();
+                    if (null == next) {
+                        break;
+                    }
+                    if (next != stopRequest) {
+                        batch.add(next);
+                    }
+                }
+            } catch (InterruptedException e) {
+                logger.warn("WriteBehindQueue writer interrupted");
+            }
+            if (!batch.isEmpty()) {
+                run(batch, true);
+                batch.clear();
+            }
+        }
+    }
+
+    /**
+     * Run the batch, and release the callers waiting for it
+     *
+     * @param queued true if the requests were counted in the backlog
+     */
+    private void run(final List<Request> batch, final boolean queued) {
+        final ArrayList<Runnable> tasks = new ArrayList<Runnable>(batch.size());
+        for (final Request request : batch) {
+            tasks.add(request.task);
+        }
+        batchCount.incrementAndGet();
+        try {
+            runner.runBatch(tasks);
+            taskCount.addAndGet(tasks.size());
+            for (final Request request : batch) {
+                request.succeeded = true;
+            }
+        } catch (Throwable t) {
+            if (batch.size() > 1) {
+                logger.warn("Batch of " + batch.size() + " tasks failed, running each task separately: " + t
+                    .getMessage());
+                for (final Request request : batch) {
+                    request.succeeded = runSingle(request);
+                }
+            } else {
+                failureCount.incrementAndGet();
+                logger.error("Persistence task failed: " + t.getMessage(), t);
+            }
+        }
+        //the backlog is updated before waiting callers are released
+        if (queued) {
+            backlog.addAndGet(-batch.size());
+        }
+        for (final Request request : batch) {
+            if (request.succeeded && null != request.after) {
+                try {
+                    request.after.run();
+                } catch (Throwable t) {
+                    logger.error("Persistence task failed: " + t.getMessage(), t);
+                }
+            }
+            request.done.countDown();
+        }
+    }
+
+    /**
+     * Run the task as a batch of its own
+     *
+     * @return true if it succeeded
+     */
+    private boolean runSingle(final Request request) {
+        batchCount.incrementAndGet();
+        try {
+            runner.runBatch(Collections.singletonList(request.task));
+            taskCount.incrementAndGet();
+            return true;
+        } catch (Throwable t) {
+            failureCount.incrementAndGet();
+            logger.error("Persistence task failed: " + t.getMessage(), t);
+            return false;
+        }
+    }
+
+    /**
+     * Return the number of queued tasks which have not been run
+     */
+    public int getBacklog() {
+        return backlog.get();
+    }
+
+    /**
+     * Return the number of batches run
+     */
+    public long getBatchCount() {
+        return batchCount.get();
+    }
+
+    /**
+     * Return the number of tasks run successfully
+     */
+    public long getTaskCount() {
+        return taskCount.get();
+    }
+
+    /**
+     * Return the number of tasks which failed
+     */
+    public long getFailureCount() {
+        return failureCount.get();
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public void setMaxBatchSize(final int maxBatchSize) {
+        this.maxBatchSize = maxBatchSize > 0 ? maxBatchSize : 1;
+    }
+
+    public long getMaxLatency() {
+        return maxLatency;
+    }
+
+    public void setMaxLatency(final long maxLatency) {
+        this.maxLatency = maxLatency > 0 ? maxLatency : 0;
+    }
+}
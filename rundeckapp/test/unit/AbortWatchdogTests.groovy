@@ -0,0 +1,130 @@
+import com.dtolabs.rundeck.core.execution.ServiceThreadBase
+import com.dtolabs.rundeck.execution.AbortWatchdog
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+/*
+ * AbortWatchdogTests.groovy
+ */
+
+public class AbortWatchdogTests extends GroovyTestCase {
+
+    void testInterruptedThreadNotStopped() {
+        def watchdog = new AbortWatchdog(5000, 10)
+        def thread = new WatchdogTestThread(interrupts: 1)
+        thread.start()
+        assertTrue thread.started.await(5, TimeUnit.SECONDS)
+        watchdog.abort(thread)
+        thread.join(5000)
+        assertFalse thread.alive
+        assertTrue thread.completed
+        assertTrue thread.aborted
+        assertTrue thread.failure instanceof InterruptedException
+        assertEquals 0L, watchdog.stopCount
+        watchdog.shutdown()
+    }
+
+    void testAbortRepeated() {
+        //the thread ignores the first interrupts, and finishes when it is interrupted again
+        def watchdog = new AbortWatchdog(5000, 10)
+        def thread = new WatchdogTestThread(interrupts: 3)
+        thread.start()
+        assertTrue thread.started.await(5, TimeUnit.SECONDS)
+        watchdog.abort(thread)
+        thread.join(5000)
+        assertFalse thread.alive
+        assertTrue thread.failure instanceof InterruptedException
+        assertEquals 0L, watchdog.stopCount
+        watchdog.shutdown()
+    }
+
+    void testStopThreadIgnoringInterrupts() {
+        def watchdog = new AbortWatchdog(100, 10)
+        def thread = new WatchdogTestThread(interrupts: -1)
+        thread.start()
+        assertTrue thread.started.await(5, TimeUnit.SECONDS)
+        watchdog.abort(thread)
+        //aborting again does not watch it twice
+        watchdog.abort(thread)
+        assertEquals 1, watchdog.watchedCount
+        thread.join(5000)
+        assertFalse thread.alive
+        //stopped threads are completed, so that the execution is finished
+        assertTrue thread.completed
+        assertTrue thread.failure instanceof ThreadDeath
+        assertEquals 1L, watchdog.stopCount
+        assertEquals 0, watchdog.watchedCount
+        watchdog.shutdown()
+    }
+
+    void testNoStop() {
+        def watchdog = new AbortWatchdog(0, 10)
+        def thread = new WatchdogTestThread(interrupts: -1)
+        thread.start()
+        assertTrue thread.started.await(5, TimeUnit.SECONDS)
+        watchdog.abort(thread)
+        thread.join(200)
+        assertTrue thread.alive
+        assertEquals 0L, watchdog.stopCount
+        watchdog.shutdown()
+        thread.release = true
+        thread.interrupt()
+        thread.join(5000)
+        assertFalse thread.alive
+    }
+
+    void testFinishedThread() {
+        def watchdog = new AbortWatchdog(100, 10)
+        def thread = new WatchdogTestThread(interrupts: 1)
+        watchdog.abort(thread)
+        assertEquals 0, watchdog.watchedCount
+        assertFalse thread.aborted
+        watchdog.shutdown()
+    }
+}
+
+/**
+ * Waits until it has been interrupted the given number of times, or forever if it is negative
+ */
+class WatchdogTestThread extends ServiceThreadBase {
+    int interrupts
+    volatile boolean release
+    volatile Throwable failure
+    def started = new CountDownLatch(1)
+
+    public void run() {
+        try {
+            started.countDown()
+            def count = 0
+            while (!release) {
+                try {
+                    Thread.sleep(10000)
+                } catch (InterruptedException e) {
+                    count++
+                    if (interrupts >= 0 && count >= interrupts) {
+                        throw e
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            failure = t
+        } finally {
+            complete()
+        }
+    }
+}
@@ -0,0 +1,139 @@
+import com.dtolabs.rundeck.execution.AsyncLogWriter
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+/*
+ * AsyncLogWriterTests.groovy
+ */
+
+public class AsyncLogWriterTests extends GroovyTestCase {
+
+    /**
+     * Return a RecordWriter which adds records to the list, and adds the list size to the flushes list on flush
+     */
+    def recordWriter(List written, List flushes) {
+        return [
+            write: {record -> written << record },
+            flush: { flushes << written.size() }
+        ] as AsyncLogWriter.RecordWriter
+    }
+
+    void testCloseWritesQueued() {
+        def written = Collections.synchronizedList([])
+        def flushes = Collections.synchronizedList([])
+        def flushed = 0
+        def writer = new AsyncLogWriter('test', recordWriter(written, flushes), 100, 60000, { flushed++ } as Runnable)
+        (1..10).each { assertTrue writer.submit(it) }
+        writer.close()
+        assertEquals((1..10).toList(), written)
+        assertEquals([10], flushes)
+        assertEquals 1, flushed
+        assertEquals 10L, writer.writtenCount
+        assertEquals 1L, writer.flushCount
+        assertEquals 0, writer.pending
+        assertTrue writer.closed
+        assertFalse writer.submit(11)
+        assertEquals 10, written.size()
+    }
+
+    void testFlushSize() {
+        def written = Collections.synchronizedList([])
+        def flushes = Collections.synchronizedList([])
+        def writer = new AsyncLogWriter('test', recordWriter(written, flushes), 5, 60000, null)
+        (1..5).each { writer.submit(it) }
+        def deadline = System.currentTimeMillis() + 5000
+        while (written.size() < 5 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+        //written without waiting for the flush interval
+        assertEquals((1..5).toList(), written)
+        assertEquals([5], flushes)
+        writer.close()
+    }
+
+    void testFlushInterval() {
+        def written = Collections.synchronizedList([])
+        def flushes = Collections.synchronizedList([])
+        def appended = new CountDownLatch(1)
+        def writer = new AsyncLogWriter('test', recordWriter(written, flushes), 100, 50, { appended.countDown() } as Runnable)
+        writer.submit('a')
+        writer.submit('b')
+        assertTrue appended.await(5, TimeUnit.SECONDS)
+        assertEquals(['a', 'b'], written)
+        assertEquals([2], flushes)
+        writer.close()
+    }
+
+    void testCloseWhileInterrupted() {
+        def written = Collections.synchronizedList([])
+        def writer = new AsyncLogWriter('test', recordWriter(written, []), 100, 60000, null)
+        (1..10).each { writer.submit(it) }
+        Thread.currentThread().interrupt()
+        writer.close()
+        //interrupt status is kept
+        assertTrue Thread.interrupted()
+        assertEquals((1..10).toList(), written)
+    }
+
+    void testConcurrentProducers() {
+        def written = Collections.synchronizedList([])
+        def writer = new AsyncLogWriter('test', recordWriter(written, []), 64, 10, null)
+        def start = new CountDownLatch(1)
+        def threads = (1..50).collect {num ->
+            Thread.start {
+                start.await()
+                (1..200).each { writer.submit([num, it]) }
+            }
+        }
+        start.countDown()
+        threads*.join()
+        writer.close()
+        assertEquals 10000, written.size()
+        assertEquals 10000L, writer.writtenCount
+        //records from each thread are written in order
+        def byThread = written.groupBy { it[0] }
+        assertEquals 50, byThread.size()
+        byThread.each {num, records ->
+            assertEquals((1..200).toList(), records.collect { it[1] })
+        }
+    }
+
+    void testCloseWhileSubmitting() {
+        def written = Collections.synchronizedList([])
+        def writer = new AsyncLogWriter('test', recordWriter(written, []), 16, 10, null)
+        def accepted = Collections.synchronizedList([])
+        def start = new CountDownLatch(1)
+        def threads = (1..20).collect {num ->
+            Thread.start {
+                start.await()
+                def count = 0
+                while (writer.submit([num, count])) {
+                    count++
+                }
+                accepted << count
+            }
+        }
+        start.countDown()
+        Thread.sleep(50)
+        writer.close()
+        threads*.join()
+        //every accepted record is written
+        assertEquals accepted.sum(), written.size()
+        assertEquals written.size(), writer.writtenCount
+    }
+}
@@ -0,0 +1,164 @@
+import com.dtolabs.rundeck.execution.ExecutionAdmissionQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+/*
+ * ExecutionAdmissionQueueTests.groovy
+ */
+
+public class ExecutionAdmissionQueueTests extends GroovyTestCase {
+
+    void testNoLimits() {
+        def queue = new ExecutionAdmissionQueue()
+        (1..50).each {
+            assertTrue queue.submit(it as Long, 'test', 1L, 0, {fail('should not be queued')} as Runnable)
+        }
+        assertEquals 50, queue.runningCount
+        assertEquals 0, queue.queuedCount
+    }
+
+    void testGlobalLimit() {
+        def queue = new ExecutionAdmissionQueue(2, 0, 0)
+        def started = []
+        assertTrue queue.submit(1L, 'a', null, 0, {started << 1L} as Runnable)
+        assertTrue queue.submit(2L, 'b', null, 0, {started << 2L} as Runnable)
+        assertFalse queue.submit(3L, 'c', null, 0, {started << 3L} as Runnable)
+        assertFalse queue.submit(4L, 'd', null, 0, {started << 4L} as Runnable)
+        assertTrue queue.isQueued(3L)
+        assertEquals([3L, 4L], queue.queued)
+        assertEquals([], started)
+
+        queue.release(1L)
+        assertEquals([3L], started)
+        assertFalse queue.isQueued(3L)
+        assertEquals 2, queue.runningCount
+
+        //releasing an unknown execution has no effect
+        queue.release(1L)
+        assertEquals([3L], started)
+
+        queue.release(2L)
+        assertEquals([3L, 4L], started)
+        assertEquals 0, queue.queuedCount
+    }
+
+    void testPriority() {
+        def queue = new ExecutionAdmissionQueue(1, 0, 0)
+        def started = []
+        assertTrue queue.submit(1L, 'a', null, 0, {started << 1L} as Runnable)
+        assertFalse queue.submit(2L, 'a', null, 0, {started << 2L} as Runnable)
+        assertFalse queue.submit(3L, 'a', null, 1, {started << 3L} as Runnable)
+        assertFalse queue.submit(4L, 'a', null, 0, {started << 4L} as Runnable)
+        assertEquals([3L, 2L, 4L], queue.queued)
+
+        queue.release(1L)
+        queue.release(3L)
+        queue.release(2L)
+        assertEquals([3L, 2L, 4L], started)
+    }
+
+    void testProjectAndJobLimits() {
+        def queue = new ExecutionAdmissionQueue(0, 2, 1)
+        def started = []
+        assertTrue queue.submit(1L, 'a', 10L, 0, {started << 1L} as Runnable)
+        //same job
+        assertFalse queue.submit(2L, 'a', 10L, 0, {started << 2L} as Runnable)
+        assertTrue queue.submit(3L, 'a', 11L, 0, {started << 3L} as Runnable)
+        //project a is full
+        assertFalse queue.submit(4L, 'a', 12L, 0, {started << 4L} as Runnable)
+        //other projects are not blocked
+        assertTrue queue.submit(5L, 'b', 20L, 0, {started << 5L} as Runnable)
+        assertTrue queue.submit(6L, 'b', null, 0, {started << 6L} as Runnable)
+
+        //job 10 is still running, so 4 is started before 2
+        queue.release(3L)
+        assertEquals([4L], started)
+        queue.release(1L)
+        assertEquals([4L, 2L], started)
+    }
+
+    void testRemove() {
+        def queue = new ExecutionAdmissionQueue(1, 0, 0)
+        def started = []
+        assertTrue queue.submit(1L, 'a', null, 0, {started << 1L} as Runnable)
+        assertFalse queue.submit(2L, 'a', null, 0, {started << 2L} as Runnable)
+        assertTrue queue.remove(2L)
+        assertFalse queue.remove(2L)
+        queue.release(1L)
+        assertEquals([], started)
+        assertEquals 0, queue.runningCount
+    }
+
+    void testStarterFailure() {
+        def queue = new ExecutionAdmissionQueue(1, 0, 0)
+        def started = []
+        assertTrue queue.submit(1L, 'a', null, 0, {started << 1L} as Runnable)
+        assertFalse queue.submit(2L, 'a', null, 0, {throw new RuntimeException('failed')} as Runnable)
+        assertFalse queue.submit(3L, 'a', null, 0, {started << 3L} as Runnable)
+        queue.release(1L)
+        //the failed execution is released, and the next is started
+        assertEquals([3L], started)
+        assertEquals 1, queue.runningCount
+    }
+
+    void testSetLimits() {
+        def queue = new ExecutionAdmissionQueue(1, 0, 0)
+        def started = []
+        assertTrue queue.submit(1L, 'a', null, 0, {started << 1L} as Runnable)
+        assertFalse queue.submit(2L, 'a', null, 0, {started << 2L} as Runnable)
+        queue.setLimits(0, 0, 0)
+        assertEquals([2L], started)
+        assertEquals 2, queue.runningCount
+    }
+
+    void testStartWithExecutor() {
+        def executor = ExecutionAdmissionQueue.createStarterExecutor()
+        def queue = new ExecutionAdmissionQueue(1, 0, 0, executor)
+        def threads = Collections.synchronizedList([])
+        def done = new CountDownLatch(1)
+        assertTrue queue.submit(1L, 'a', null, 0, {fail('should not be queued')} as Runnable)
+        assertFalse queue.submit(2L, 'a', null, 0, {
+            threads << Thread.currentThread()
+            throw new RuntimeException('failed')
+        } as Runnable)
+        assertFalse queue.submit(3L, 'a', null, 0, {threads << Thread.currentThread(); done.countDown()} as Runnable)
+        queue.release(1L)
+        assertTrue done.await(5, TimeUnit.SECONDS)
+        //both starters are run by the executor thread, and the failed execution is released
+        assertEquals 2, threads.size()
+        assertFalse threads.contains(Thread.currentThread())
+        assertEquals 1, threads.unique().size()
+        assertEquals 1, queue.runningCount
+        executor.shutdown()
+    }
+
+    void testStartRejected() {
+        def executor = ExecutionAdmissionQueue.createStarterExecutor()
+        def queue = new ExecutionAdmissionQueue(1, 0, 0, executor)
+        def started = []
+        assertTrue queue.submit(1L, 'a', null, 0, {fail('should not be queued')} as Runnable)
+        assertFalse queue.submit(2L, 'a', null, 0, {started << 2L} as Runnable)
+        assertFalse queue.submit(3L, 'a', null, 0, {started << 3L} as Runnable)
+        executor.shutdown()
+        queue.release(1L)
+        //executions which could not be given to the executor are released
+        assertEquals([], started)
+        assertEquals 0, queue.runningCount
+        assertEquals 0, queue.queuedCount
+    }
+}
@@ -0,0 +1,93 @@
+import com.dtolabs.rundeck.execution.JobRefCache
+import com.dtolabs.rundeck.core.utils.NodeSet
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicInteger
+
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+/*
+ * JobRefCacheTests.groovy
+ */
+
+public class JobRefCacheTests extends GroovyTestCase {
+
+    private static JobRefCache.Entry entry(Long id) {
+        return new JobRefCache.Entry(id, null, [id: id.toString()], 'test', null, new NodeSet(), 1, [:], 'user1')
+    }
+
+    void testLoadedOnce() {
+        def cache = new JobRefCache()
+        def loads = new AtomicInteger()
+        def loader = {
+            loads.incrementAndGet()
+            entry(1L)
+        } as Callable
+        def e1 = cache.get('test:user1:group/job1', loader)
+        def e2 = cache.get('test:user1:group/job1', loader)
+        assertSame e1, e2
+        assertEquals 1, loads.get()
+        assertEquals '1', e1.jobContext.id
+
+        def e3 = cache.get('test:user1:group/job2', {entry(2L)} as Callable)
+        assertEquals 2L, e3.id
+        assertEquals 2, cache.size()
+    }
+
+    void testConcurrentLoad() {
+        def cache = new JobRefCache()
+        def loads = new AtomicInteger()
+        def start = new CountDownLatch(1)
+        def loader = {
+            loads.incrementAndGet()
+            Thread.sleep(50)
+            entry(1L)
+        } as Callable
+        def results = Collections.synchronizedList([])
+        def threads = (1..8).collect {
+            Thread.start {
+                start.await(5, TimeUnit.SECONDS)
+                results << cache.get('test:user1:job1', loader)
+            }
+        }
+        start.countDown()
+        threads*.join()
+        assertEquals 8, results.size()
+        assertEquals 1, loads.get()
+        assertEquals 1, results.unique().size()
+    }
+
+    void testFailureNotCached() {
+        def cache = new JobRefCache()
+        def loads = new AtomicInteger()
+        def loader = {
+            if (loads.incrementAndGet() == 1) {
+                throw new IllegalStateException('not found')
+            }
+            entry(1L)
+        } as Callable
+        try {
+            cache.get('test:user1:job1', loader)
+            fail('expected exception')
+        } catch (IllegalStateException e) {
+            assertEquals 'not found', e.message
+        }
+        assertEquals 0, cache.size()
+        assertEquals 1L, cache.get('test:user1:job1', loader).id
+        assertEquals 2, loads.get()
+    }
+}
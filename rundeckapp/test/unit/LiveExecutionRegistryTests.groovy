@@ -0,0 +1,97 @@
+import com.dtolabs.rundeck.execution.LiveExecutionRegistry
+import com.dtolabs.rundeck.core.execution.workflow.NodeRecorder
+
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+/*
+ * LiveExecutionRegistryTests.groovy
+ */
+
+public class LiveExecutionRegistryTests extends GroovyTestCase {
+
+    void testLifecycle() {
+        def registry = new LiveExecutionRegistry()
+        def version = registry.version
+        def live = registry.queued(1L, 10L, 'job1', 'test', 'bob', new Date(1000))
+        assertTrue registry.version > version
+        assertFalse live.started
+        assertTrue live.running
+        assertNull live.outputfilepath
+
+        def recorder = new NodeRecorder()
+        version = registry.version
+        registry.started(1L, 10L, 'job1', 'test', 'bob', new Date(2000), '/tmp/1.txt', recorder, null)
+        assertTrue registry.version > version
+        assertSame live, registry.get(1L)
+        assertTrue live.started
+        assertEquals 2000L, live.dateStarted.time
+        assertEquals '/tmp/1.txt', live.outputfilepath
+        assertNull live.failedNodeList
+        recorder.matchedNodes(['a', 'b'])
+        recorder.nodesFailed([b: 'failed'])
+        assertEquals 'b', live.failedNodeList
+        assertEquals 2, live.matchedNodeCount
+        assertEquals 1, live.failedNodeCount
+
+        version = registry.version
+        registry.completed(1L, new Date(3000), 'false', true)
+        assertTrue registry.version > version
+        assertFalse live.running
+        assertTrue live.cancelled
+        assertEquals 'false', live.status
+        assertEquals 0, registry.running.size()
+        assertEquals 1, registry.size()
+
+        registry.remove(1L)
+        assertNull registry.get(1L)
+        version = registry.version
+        registry.remove(1L)
+        assertEquals version, registry.version
+    }
+
+    void testStartedWithoutQueued() {
+        def registry = new LiveExecutionRegistry()
+        registry.started(1L, null, null, 'test', 'bob', new Date(), '/tmp/1.txt', null, null)
+        assertNotNull registry.get(1L)
+        assertTrue registry.get(1L).started
+        assertNull registry.get(1L).failedNodeList
+        assertEquals 0, registry.get(1L).matchedNodeCount
+
+        //completing an unknown execution has no effect
+        def version = registry.version
+        registry.completed(2L, new Date(), 'true', false)
+        assertEquals version, registry.version
+    }
+
+    void testRunning() {
+        def registry = new LiveExecutionRegistry()
+        registry.queued(1L, 10L, 'job1', 'test', 'bob', new Date(1000))
+        registry.queued(2L, null, null, 'test', 'bob', new Date(3000))
+        registry.queued(3L, 11L, 'job2', 'test', 'bob', new Date(2000))
+        registry.queued(4L, 12L, 'job3', 'test', 'bob', new Date(4000))
+        registry.completed(4L, new Date(5000), 'true', false)
+
+        assertEquals([2L, 3L, 1L], registry.running*.id)
+        assertEquals([10L: 1L, 11L: 3L], registry.runningJobs)
+    }
+
+    void testVersionStartsAtCreation() {
+        //a registry created after a restart does not reuse versions seen before it
+        def start = System.currentTimeMillis()
+        def registry = new LiveExecutionRegistry()
+        assertTrue registry.version >= start
+    }
+}
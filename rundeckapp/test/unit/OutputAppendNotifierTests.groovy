@@ -0,0 +1,69 @@
+import com.dtolabs.rundeck.execution.OutputAppendNotifier
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+/*
+ * OutputAppendNotifierTests.groovy
+ */
+
+public class OutputAppendNotifierTests extends GroovyTestCase {
+
+    void testTimeout() {
+        def notifier = new OutputAppendNotifier()
+        def start = System.currentTimeMillis()
+        assertEquals 0L, notifier.awaitAppend(0, 100)
+        assertTrue System.currentTimeMillis() - start >= 100
+    }
+
+    void testAlreadyAppended() {
+        def notifier = new OutputAppendNotifier()
+        notifier.appended()
+        notifier.appended()
+        //returns without waiting
+        assertEquals 2L, notifier.awaitAppend(0, 5000)
+        assertEquals 2L, notifier.awaitAppend(1, 5000)
+    }
+
+    void testWakeOnAppend() {
+        def notifier = new OutputAppendNotifier()
+        def waiting = new CountDownLatch(1)
+        def result = []
+        def thread = Thread.start {
+            waiting.countDown()
+            result << notifier.awaitAppend(0, 5000)
+        }
+        assertTrue waiting.await(5, TimeUnit.SECONDS)
+        notifier.appended()
+        thread.join(5000)
+        assertEquals([1L], result)
+    }
+
+    void testClose() {
+        def notifier = new OutputAppendNotifier()
+        notifier.appended()
+        notifier.close()
+        assertTrue notifier.closed
+        assertEquals 2L, notifier.sequence
+        notifier.close()
+        assertEquals 2L, notifier.sequence
+        //no waiting once closed
+        def start = System.currentTimeMillis()
+        assertEquals 2L, notifier.awaitAppend(2, 5000)
+        assertTrue System.currentTimeMillis() - start < 5000
+    }
+}
@@ -0,0 +1,53 @@
+import com.dtolabs.rundeck.execution.WorkflowItemCache
+import com.dtolabs.rundeck.core.execution.workflow.WorkflowExecutionItemImpl
+import com.dtolabs.rundeck.core.execution.workflow.WorkflowImpl
+
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+/*
+ * WorkflowItemCacheTests.groovy
+ */
+
+public class WorkflowItemCacheTests extends GroovyTestCase {
+
+    void testVersion() {
+        def cache = new WorkflowItemCache()
+        def item = new WorkflowExecutionItemImpl(new WorkflowImpl([], 1, false, 'node-first'))
+        assertNull cache.get(1L, '10:0:user1')
+        cache.put(1L, '10:0:user1', item)
+        assertSame item, cache.get(1L, '10:0:user1')
+        assertNull cache.get(2L, '10:0:user1')
+        //modified workflow or different user
+        assertNull cache.get(1L, '10:1:user1')
+        assertNull cache.get(1L, '11:0:user1')
+        assertNull cache.get(1L, '10:0:user2')
+        assertEquals 1, cache.getHitCount()
+        assertEquals 5, cache.getMissCount()
+    }
+
+    void testRemove() {
+        def cache = new WorkflowItemCache()
+        def item = new WorkflowExecutionItemImpl(new WorkflowImpl([], 1, false, 'node-first'))
+        cache.put(1L, '10:0:user1', item)
+        cache.put(2L, '20:0:user1', item)
+        assertEquals 2, cache.size()
+        cache.remove(1L)
+        assertNull cache.get(1L, '10:0:user1')
+        assertSame item, cache.get(2L, '20:0:user1')
+        cache.clear()
+        assertEquals 0, cache.size()
+    }
+}
@@ -0,0 +1,120 @@
+import com.dtolabs.rundeck.execution.WriteBehindQueue
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+/*
+ * Copyright 2011 DTO Solutions, Inc. (http://dtosolutions.com)
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *  you may not use this file except in compliance with the License.
+ *  You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+/*
+ * WriteBehindQueueTests.groovy
+ */
+
+public class WriteBehindQueueTests extends GroovyTestCase {
+
+    void testNotStarted() {
+        def batches = []
+        def queue = new WriteBehindQueue({ List tasks -> batches << tasks.size(); tasks*.run() } as WriteBehindQueue.BatchRunner, 10, 1000)
+        def results = []
+        queue.submit({results << 1} as Runnable, {results << 'after'} as Runnable, false)
+        assertEquals([1, 'after'], results)
+        assertEquals([1], batches)
+    }
+
+    void testBatched() {
+        def batches = Collections.synchronizedList([])
+        def block = new CountDownLatch(1)
+        def queue = new WriteBehindQueue({ List tasks ->
+            block.await(5, TimeUnit.SECONDS)
+            batches << tasks.size()
+            tasks*.run()
+        } as WriteBehindQueue.BatchRunner, 3, 1000)
+        queue.start()
+        def results = Collections.synchronizedList([])
+        try {
+            (1..7).each {num ->
+                queue.submit({results << num} as Runnable, null, false)
+            }
+            assertTrue queue.backlog > 0
+            block.countDown()
+            queue.submit({results << 8} as Runnable, null, true)
+            assertEquals((1..8).toList(), results)
+            assertEquals 8, batches.sum()
+            assertEquals 3, batches.max()
+            assertEquals 0, queue.backlog
+            assertEquals 8L, queue.taskCount
+        } finally {
+            queue.stop(5000)
+        }
+    }
+
+    void testLatency() {
+        def queue = new WriteBehindQueue({ List tasks -> tasks*.run() } as WriteBehindQueue.BatchRunner, 100, 50)
+        queue.start()
+        try {
+            def done = new CountDownLatch(1)
+            queue.submit({} as Runnable, {done.countDown()} as Runnable, false)
+            //the batch is not full, but is run after the latency
+            assertTrue done.await(2, TimeUnit.SECONDS)
+        } finally {
+            queue.stop(5000)
+        }
+    }
+
+    void testFailedBatchRetried() {
+        def batches = Collections.synchronizedList([])
+        def queue = new WriteBehindQueue({ List tasks ->
+            batches << tasks.size()
+            tasks*.run()
+        } as WriteBehindQueue.BatchRunner, 10, 200)
+        queue.start()
+        def results = Collections.synchronizedList([])
+        try {
+            queue.submit({results << 1} as Runnable, null, false)
+            queue.submit({throw new RuntimeException('failed')} as Runnable, {results << 'after2'} as Runnable, false)
+            queue.submit({results << 3} as Runnable, {results << 'after3'} as Runnable, true)
+            //the batch failed after running task 1, then each task is run again separately, and the after task of
+            //the failed task is not run
+            assertEquals([1, 1, 3, 'after3'], results)
+            assertEquals 1L, queue.failureCount
+            assertEquals 2L, queue.taskCount
+            assertEquals([3, 1, 1, 1], batches)
+        } finally {
+            queue.stop(5000)
+        }
+    }
+
+    void testStopRunsQueuedTasks() {
+        def block = new CountDownLatch(1)
+        def queue = new WriteBehindQueue({ List tasks ->
+            block.await(5, TimeUnit.SECONDS)
+            tasks*.run()
+        } as WriteBehindQueue.BatchRunner, 2, 10)
+        queue.start()
+        def results = Collections.synchronizedList([])
+        (1..5).each {num ->
+            queue.submit({results << num} as Runnable, null, false)
+        }
+        block.countDown()
+        queue.stop(5000)
+        assertEquals((1..5).toList(), results)
+        assertEquals 0, queue.backlog
+
+        //runs by the submitting thread after stop
+        queue.submit({results << 6} as Runnable, null, false)
+        assertEquals 6, results.size()
+        queue.submit({results << 7} as Runnable, null, true)
+        assertEquals 7, results.size()
+    }
+}
@@ -503,6 +503,8 @@ var FollowControl = Class.create({
         this.runningcmd.jobcancelled = data.jobcancelled;
         this.runningcmd.failednodes = data.failednodes;
         this.runningcmd.percent = data.percentLoaded;
+        //present if all output has been read, the server waits for more output after this sequence
+        this.runningcmd.sequence = data.sequence;
 
         var entries = $A(data.entries);
         if (null != data.duration) {
@@ -667,6 +669,7 @@ var FollowControl = Class.create({
         if(this.isrunning){
             new Ajax.Request(url, {
                 parameters: "id=" + id + "&offset=" + offset + ((this.tailmode && this.lastlines) ? "&lastlines=" + this.lastlines : "")
+                    + ((this.runningcmd && null != this.runningcmd.sequence) ? "&sequence=" + this.runningcmd.sequence : "")
                     + this.extraParams ,
                 onSuccess: function(transport) {
                     obj.appendCmdOutput(transport.responseText);